@@ -0,0 +1,295 @@
+package csulb.cecs323.app;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of the catalog operations, so that a burst of callers queues
+ * briefly or is turned away instead of exhausting the EntityManagers and piling up on
+ * Derby's locks until they time out.
+ * <p>
+ * Operations are admitted in four lanes, adds, info lookups, updates and deletes, each
+ * with a limit on how many of its operations run at once and a bounded queue of callers
+ * waiting for their turn. A caller finding the queue full, or waiting longer than the
+ * maximum wait, is rejected at once with a {@link RejectedExecutionException}.
+ * <p>
+ * Each lane adapts its limit to the latency it observes, increasing additively and
+ * decreasing multiplicatively. Two moving averages of the lane's latency are kept, a
+ * recent one and a slow baseline. While the recent average stays within
+ * {@code TOLERANCE} times the baseline, the limit grows by one per limit's worth of
+ * operations; when it rises above, or an operation fails on a lock timeout or deadlock,
+ * the limit is cut by a quarter, at most once per operation's duration. Averages rather
+ * than the fastest latency are compared because a lane mixes cache hits with queries.
+ */
+public class AdmissionController {
+
+	/** System property that turns admission control on in the application when {@code true}. */
+	public static final String ENABLED_PROPERTY = "jpabooks.admission";
+	/** System property setting the most callers waiting in each lane. */
+	public static final String QUEUE_PROPERTY = "jpabooks.admission.queue";
+	/** System property setting the longest a caller waits in a lane's queue, in milliseconds. */
+	public static final String WAIT_PROPERTY = "jpabooks.admission.wait";
+	/** System property setting the most operations of a lane running at once. */
+	public static final String MAX_LIMIT_PROPERTY = "jpabooks.admission.limit";
+
+	// Recent latency above this multiple of the baseline counts as congestion
+	private static final double TOLERANCE = 2.0;
+	// Weights of the newest operation in the recent and the baseline averages
+	private static final double RECENT_WEIGHT = 0.1;
+	private static final double BASELINE_WEIGHT = 0.005;
+	private static final double DECREASE = 0.75;
+	private static final double MIN_LIMIT = 1;
+	// Derby's SQLStates for a lock wait timeout and a deadlock
+	private static final String LOCK_TIMEOUT = "40XL1";
+	private static final String DEADLOCK = "40001";
+
+	/**
+	 * The kinds of operation admitted separately.
+	 */
+	public enum Lane {
+		ADD, INFO, UPDATE, DELETE;
+
+		/**
+		 * @return the lane of a catalog operation; lookups and listings are info
+		 */
+		public static Lane of(CatalogOperation operation) {
+			String name = operation.name();
+			if (name.startsWith("ADD_")) return ADD;
+			if (name.startsWith("UPDATE_")) return UPDATE;
+			if (name.startsWith("DELETE_")) return DELETE;
+			return INFO;
+		}
+	}
+
+	private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+
+	/**
+	 * @param queueCapacity the most callers waiting in each lane
+	 * @param maxWaitMillis the longest a caller waits in a lane's queue before it is rejected
+	 * @param maxLimit the most operations of a lane running at once, however fast they are
+	 */
+	public AdmissionController(int queueCapacity, long maxWaitMillis, int maxLimit) {
+		if (queueCapacity < 0 || maxWaitMillis < 0 || maxLimit < 1) throw new IllegalArgumentException("Invalid queue capacity, wait or limit.");
+		for (Lane lane : Lane.values()) {
+			lanes.put(lane, new LaneState(lane, queueCapacity, TimeUnit.MILLISECONDS.toNanos(maxWaitMillis), maxLimit));
+		}
+	}
+
+	/**
+	 * @return a controller configured by the {@code jpabooks.admission} system properties, or
+	 * 			{@code null} if admission control was not requested
+	 */
+	public static AdmissionController fromEnvironment() {
+		if (!Boolean.getBoolean(ENABLED_PROPERTY)) return null;
+		return new AdmissionController(Integer.getInteger(QUEUE_PROPERTY, 32), Long.getLong(WAIT_PROPERTY, 1_000),
+				Integer.getInteger(MAX_LIMIT_PROPERTY, 16));
+	}
+
+	/**
+	 * Run an operation once its lane admits it.
+	 * @param lane the lane of the operation
+	 * @param operation the operation
+	 * @return the operation's result
+	 * @throws RejectedExecutionException if the lane's queue is full or the wait too long
+	 */
+	public <T> T admit(Lane lane, Supplier<T> operation) {
+		LaneState state = lanes.get(lane);
+		state.acquire();
+		long start = System.nanoTime();
+		boolean congested = false;
+		try {
+			return operation.get();
+		} catch (RuntimeException e) {
+			congested = isLockTrouble(e);
+			throw e;
+		} finally {
+			state.release(System.nanoTime() - start, congested);
+		}
+	}
+
+	/**
+	 * Run an operation that returns nothing once its lane admits it.
+	 * @param lane the lane of the operation
+	 * @param operation the operation
+	 * @throws RejectedExecutionException if the lane's queue is full or the wait too long
+	 */
+	public void admit(Lane lane, Runnable operation) {
+		admit(lane, () -> {
+			operation.run();
+			return null;
+		});
+	}
+
+	/**
+	 * @return the current limit of a lane
+	 */
+	public double getLimit(Lane lane) {
+		return lanes.get(lane).limit;
+	}
+
+	/**
+	 * @return the number of callers a lane has rejected, whether its queue was full or they waited too long
+	 */
+	public long getRejectedCount(Lane lane) {
+		LaneState state = lanes.get(lane);
+		return state.rejected.sum() + state.timedOut.sum();
+	}
+
+	/**
+	 * @return how long the admitted callers of a lane waited in its queue
+	 */
+	public LatencyRecorder getQueueWait(Lane lane) {
+		return lanes.get(lane).queueWait;
+	}
+
+	/**
+	 * @return an account of each lane that has seen any operation, one per line
+	 */
+	public String summary() {
+		StringBuilder summary = new StringBuilder();
+		for (LaneState state : lanes.values()) {
+			if (state.admitted.sum() + state.rejected.sum() + state.timedOut.sum() == 0) continue;
+			if (summary.length() > 0) summary.append(System.lineSeparator());
+			summary.append(state.summary());
+		}
+		return summary.length() == 0 ? "no operations" : summary.toString();
+	}
+
+	/**
+	 * @return {@code true} if the failure, or one of its causes, is a lock timeout or deadlock
+	 */
+	private static boolean isLockTrouble(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException sql) {
+				for (SQLException next = sql; next != null; next = next.getNextException()) {
+					if (LOCK_TIMEOUT.equals(next.getSQLState()) || DEADLOCK.equals(next.getSQLState())) return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The limit, queue and metrics of one lane.
+	 */
+	private static final class LaneState {
+
+		private final Lane lane;
+		private final int queueCapacity;
+		private final long maxWaitNanos;
+		private final int maxLimit;
+
+		private final ReentrantLock lock = new ReentrantLock(true);
+		private final Condition available = lock.newCondition();
+		private volatile double limit;
+		private int running;
+		private int waiting;
+		private int maxDepth;
+		private double recentNanos;
+		private double baselineNanos;
+		private long nextDecreaseNanos;
+
+		private final LongAdder admitted = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final LongAdder timedOut = new LongAdder();
+		private final LongAdder decreases = new LongAdder();
+		private final LatencyRecorder queueWait = new LatencyRecorder();
+		private final LatencyRecorder latency = new LatencyRecorder();
+
+		LaneState(Lane lane, int queueCapacity, long maxWaitNanos, int maxLimit) {
+			this.lane = lane;
+			this.queueCapacity = queueCapacity;
+			this.maxWaitNanos = maxWaitNanos;
+			this.maxLimit = maxLimit;
+			// Start low and let the latency show how far to go
+			this.limit = Math.min(maxLimit, 4);
+		}
+
+		void acquire() {
+			long start = System.nanoTime();
+			lock.lock();
+			try {
+				if (running >= (int) limit) {
+					if (waiting >= queueCapacity) {
+						rejected.increment();
+						throw new RejectedExecutionException(lane + " operations are saturated: "
+								+ running + " running and " + waiting + " waiting.");
+					}
+					waiting++;
+					maxDepth = Math.max(maxDepth, waiting);
+					try {
+						long remaining = maxWaitNanos;
+						while (running >= (int) limit) {
+							if (remaining <= 0) {
+								timedOut.increment();
+								throw new RejectedExecutionException(lane + " operation waited more than "
+										+ TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms to be admitted.");
+							}
+							remaining = available.awaitNanos(remaining);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						timedOut.increment();
+						throw new RejectedExecutionException("Interrupted while waiting to be admitted.", e);
+					} finally {
+						waiting--;
+					}
+				}
+				running++;
+				admitted.increment();
+			} finally {
+				lock.unlock();
+			}
+			queueWait.recordSince(start);
+		}
+
+		void release(long nanos, boolean congested) {
+			latency.record(nanos);
+			lock.lock();
+			try {
+				running--;
+				if (baselineNanos == 0) {
+					recentNanos = nanos;
+					baselineNanos = nanos;
+				} else {
+					recentNanos += (nanos - recentNanos) * RECENT_WEIGHT;
+					baselineNanos += (nanos - baselineNanos) * BASELINE_WEIGHT;
+				}
+
+				long now = System.nanoTime();
+				if (congested || recentNanos > baselineNanos * TOLERANCE) {
+					// One cut per round of operations, or a single slow spell would collapse the limit
+					if (now >= nextDecreaseNanos) {
+						limit = Math.max(MIN_LIMIT, limit * DECREASE);
+						nextDecreaseNanos = now + nanos;
+						decreases.increment();
+					}
+				} else {
+					limit = Math.min(maxLimit, limit + 1 / limit);
+				}
+				available.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		String summary() {
+			lock.lock();
+			try {
+				return String.format("%s limit=%.1f running=%d waiting=%d maxDepth=%d admitted=%d rejected=%d timedOut=%d decreases=%d%n"
+								+ "  wait[%s]%n  latency[%s]",
+						lane, limit, running, waiting, maxDepth, admitted.sum(), rejected.sum(), timedOut.sum(),
+						decreases.sum(), queueWait.summary(), latency.summary());
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs catalog queries in the background and returns their results as
+ * {@link CompletableFuture}s, so that a screen needing several lists can ask for all
+ * of them at once and combine the results, instead of waiting for each in turn.
+ * <p>
+ * Queries run on a fixed number of threads, each query with a fresh EntityManager of its
+ * own that is closed when the query ends; the returned entities are therefore detached.
+ * Queries wait in a bounded queue for a free thread; when the queue is full, further
+ * queries fail at once with a {@link RejectedExecutionException} rather than piling up.
+ */
+public class AsyncQueries implements AutoCloseable {
+
+	/** System property setting the number of query threads. */
+	public static final String THREADS_PROPERTY = "jpabooks.async.threads";
+
+	private final EntityManagerFactory factory;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param factory the database to query
+	 * @param threads the most queries running at once
+	 * @param queueCapacity the most queries waiting for a thread
+	 */
+	public AsyncQueries(EntityManagerFactory factory, int threads, int queueCapacity) {
+		this.factory = factory;
+		AtomicInteger created = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+			Thread thread = new Thread(runnable, "async-query-" + created.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * @return queries on {@code jpabooks.async.threads} threads (default 4) with room for 256 waiting
+	 */
+	public static AsyncQueries fromEnvironment(EntityManagerFactory factory) {
+		return new AsyncQueries(factory, Integer.getInteger(THREADS_PROPERTY, 4), 256);
+	}
+
+	/**
+	 * Run any read in the background.
+	 * @param query the read, given a service with an EntityManager of its own
+	 * @return a future of the query's result
+	 */
+	public <T> CompletableFuture<T> query(Function<CatalogService, T> query) {
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				EntityManager entityManager = factory.createEntityManager();
+				try {
+					return query.apply(new CatalogService(entityManager));
+				} finally {
+					entityManager.close();
+				}
+			}, executor);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	public CompletableFuture<Publishers> getPublisher(String name) {
+		return query(service -> service.getPublisher(name));
+	}
+
+	public CompletableFuture<Books> getBook(String isbn) {
+		return query(service -> service.getBook(isbn));
+	}
+
+	public CompletableFuture<List<Publishers>> getPublishers() {
+		return query(CatalogService::getPublishers);
+	}
+
+	public CompletableFuture<List<Authoring_Entities>> getAuthors() {
+		return query(CatalogService::getAuthors);
+	}
+
+	public CompletableFuture<List<Writing_Groups>> getWritingGroups() {
+		return query(CatalogService::getWritingGroups);
+	}
+
+	public CompletableFuture<List<Books>> getBooks() {
+		return query(CatalogService::getBooks);
+	}
+
+	/**
+	 * @return the number of queries waiting for a thread
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Let the queries already submitted finish, and refuse new ones.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+}
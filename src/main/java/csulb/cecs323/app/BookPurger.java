@@ -0,0 +1,231 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Books;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Removes soft-deleted books from the {@code BOOKS} table in the background.
+ * <p>
+ * In soft-delete mode a delete on the console only marks the book, a one-column update
+ * that holds its lock briefly; the row itself, with its index entries, is removed here
+ * later. The purger checks periodically for quiet, meaning no foreground operation for a
+ * while, and then deletes the marked books a batch to a transaction, pausing between
+ * batches and stopping as soon as foreground work resumes.
+ * <p>
+ * The application reports its foreground operations through {@link #recordForeground},
+ * which is how the purger knows when it is quiet, and which splits their latency by
+ * whether a purge was running at the time, to show what purging costs the operators.
+ */
+public class BookPurger implements AutoCloseable {
+
+	/** System property that turns soft deletes, and the purger, on in the application when {@code true}. */
+	public static final String ENABLED_PROPERTY = "jpabooks.softdelete";
+	/** System property setting the most books deleted per transaction. */
+	public static final String BATCH_PROPERTY = "jpabooks.purge.batch";
+	/** System property setting how long without foreground work counts as quiet, in milliseconds. */
+	public static final String QUIET_PROPERTY = "jpabooks.purge.quiet";
+	/** System property setting the pause between two batches, in milliseconds. */
+	public static final String PAUSE_PROPERTY = "jpabooks.purge.pause";
+
+	// How often to check for quiet and for books to purge
+	private static final long CHECK_MILLIS = 1_000;
+	// Foreground work this close to a batch counts as running during the purge
+	private static final long OVERLAP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final EntityManagerFactory factory;
+	private final int batchSize;
+	private final long quietNanos;
+	private final long pauseMillis;
+	private final ScheduledExecutorService purging;
+
+	private volatile long lastForegroundNanos = System.nanoTime();
+	private volatile long lastBatchNanos = Long.MIN_VALUE / 2;
+	private volatile boolean purgingBatch;
+	private volatile long pending = -1;
+
+	private final LongAdder purged = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder purgeNanos = new LongAdder();
+	// Runs put off or cut short by foreground work
+	private final LongAdder deferred = new LongAdder();
+	private final LongAdder failedBatches = new LongAdder();
+	private final LatencyRecorder duringPurge = new LatencyRecorder();
+	private final LatencyRecorder otherwise = new LatencyRecorder();
+
+	/**
+	 * @param factory the factory of the catalog to purge
+	 * @param batchSize the most books deleted per transaction
+	 * @param quietMillis how long without foreground work counts as quiet; 0 purges regardless
+	 * @param pauseMillis the pause between two batches
+	 * @param background whether to purge periodically on a thread of its own, rather than
+	 *                   only when {@link #purge()} is called
+	 */
+	public BookPurger(EntityManagerFactory factory, int batchSize, long quietMillis, long pauseMillis, boolean background) {
+		if (batchSize < 1 || quietMillis < 0 || pauseMillis < 0) throw new IllegalArgumentException("Invalid purge batch size, quiet period or pause.");
+		this.factory = factory;
+		this.batchSize = batchSize;
+		this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+		this.pauseMillis = pauseMillis;
+		if (!background) {
+			this.purging = null;
+			return;
+		}
+		this.purging = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "book-purger");
+			thread.setDaemon(true);
+			return thread;
+		});
+		purging.scheduleWithFixedDelay(this::purge, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return a background purger configured by the {@code jpabooks.purge} system properties,
+	 * 			or {@code null} if soft deletes were not requested
+	 */
+	public static BookPurger fromEnvironment(EntityManagerFactory factory) {
+		if (!Boolean.getBoolean(ENABLED_PROPERTY)) return null;
+		return new BookPurger(factory, Integer.getInteger(BATCH_PROPERTY, 100),
+				Long.getLong(QUIET_PROPERTY, 2_000), Long.getLong(PAUSE_PROPERTY, 50), true);
+	}
+
+	/**
+	 * Record a foreground operation, which keeps the purger off for the quiet period.
+	 * @param startNanos {@link System#nanoTime()} when the operation started
+	 */
+	public void recordForeground(long startNanos) {
+		long now = System.nanoTime();
+		boolean overlapped = purgingBatch || now - lastBatchNanos < OVERLAP_NANOS;
+		(overlapped ? duringPurge : otherwise).record(now - startNanos);
+		lastForegroundNanos = now;
+	}
+
+	/**
+	 * Delete soft-deleted books, a batch at a time, until there are none left or foreground
+	 * work resumes.
+	 * @return the number of books deleted
+	 */
+	public synchronized long purge() {
+		long deleted = 0;
+		EntityManager manager = factory.createEntityManager();
+		try {
+			while (isQuiet()) {
+				long start = System.nanoTime();
+				int count;
+				purgingBatch = true;
+				try {
+					count = purgeBatch(manager);
+				} catch (RuntimeException e) {
+					// The books stay marked; the next check tries them again
+					failedBatches.increment();
+					break;
+				} finally {
+					purgingBatch = false;
+					lastBatchNanos = System.nanoTime();
+				}
+				purgeNanos.add(lastBatchNanos - start);
+				if (count == 0) break;
+				batches.increment();
+				purged.add(count);
+				deleted += count;
+				if (pauseMillis > 0) Thread.sleep(pauseMillis);
+			}
+			if (!isQuiet()) deferred.increment();
+			pending = ((Number) manager.createNativeQuery("SELECT COUNT(*) FROM BOOKS WHERE DELETED = 1")
+					.getSingleResult()).longValue();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			failedBatches.increment();
+		} finally {
+			manager.close();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Delete up to one batch of soft-deleted books in one transaction, and drop them from
+	 * the shared cache.
+	 * @return the number of books deleted
+	 */
+	private int purgeBatch(EntityManager manager) {
+		EntityTransaction tx = manager.getTransaction();
+		tx.begin();
+		try {
+			List<?> isbns = manager.createNativeQuery("SELECT ISBN FROM BOOKS WHERE DELETED = 1 FETCH FIRST ? ROWS ONLY")
+					.setParameter(1, batchSize).getResultList();
+			int deleted = 0;
+			for (Object isbn : isbns) {
+				// A book brought back since it was selected is left alone
+				deleted += manager.createNativeQuery("DELETE FROM BOOKS WHERE ISBN = ? AND DELETED = 1")
+						.setParameter(1, isbn).executeUpdate();
+			}
+			tx.commit();
+			for (Object isbn : isbns) factory.getCache().evict(Books.class, isbn);
+			return deleted;
+		} finally {
+			if (tx.isActive()) tx.rollback();
+			manager.clear();
+		}
+	}
+
+	private boolean isQuiet() {
+		return System.nanoTime() - lastForegroundNanos >= quietNanos;
+	}
+
+	/**
+	 * @return the number of books purged so far
+	 */
+	public long getPurgedCount() {
+		return purged.sum();
+	}
+
+	/**
+	 * @return the number of books purged per second spent purging
+	 */
+	public double getPurgeRate() {
+		long nanos = purgeNanos.sum();
+		return nanos == 0 ? 0 : purged.sum() / (nanos / 1e9);
+	}
+
+	/**
+	 * @return the latency of the foreground operations that ran while a batch was being purged
+	 */
+	public LatencyRecorder getDuringPurge() {
+		return duringPurge;
+	}
+
+	/**
+	 * @return the latency of the other foreground operations
+	 */
+	public LatencyRecorder getOtherwise() {
+		return otherwise;
+	}
+
+	/**
+	 * @return an account of the purger: its progress, then the foreground latency with and without it
+	 */
+	public String summary() {
+		return String.format("purged=%d batches=%d rate=%.0f/s pending=%d deferred=%d failedBatches=%d%n"
+						+ "  foreground during purge[%s]%n  foreground otherwise[%s]",
+				getPurgedCount(), batches.sum(), getPurgeRate(), pending, deferred.sum(), failedBatches.sum(),
+				duringPurge.summary(), otherwise.summary());
+	}
+
+	/**
+	 * Stop purging; books still marked are purged by the next run of the application.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		if (purging == null) return;
+		purging.shutdown();
+		purging.awaitTermination(10, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,194 @@
+package csulb.cecs323.app;
+
+import java.util.List;
+
+/**
+ * Every operation the {@link CatalogService} performs, as recorded in a workload journal.
+ * Each operation knows how to run itself again from the arguments that were recorded.
+ */
+public enum CatalogOperation {
+
+	ADD_PUBLISHER(1) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.addPublisher(args.get(0), args.get(1), args.get(2));
+		}
+	},
+	ADD_WRITING_GROUP(2) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.addWritingGroup(args.get(0), args.get(1), args.get(2), Integer.parseInt(args.get(3)));
+		}
+	},
+	ADD_INDIVIDUAL_AUTHOR(3) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.addIndividualAuthor(args.get(0), args.get(1));
+		}
+	},
+	ADD_AD_HOC_TEAM(4) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.addAdHocTeam(args.get(0), args.get(1));
+		}
+	},
+	ADD_TEAM_MEMBERSHIP(5) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.addTeamMembership(args.get(0), args.get(1));
+		}
+	},
+	ADD_BOOK(6) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.addBook(args.get(0), args.get(1), Integer.parseInt(args.get(2)), args.get(3), args.get(4));
+		}
+	},
+	INFO_PUBLISHER(7) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getPublisher(args.get(0));
+		}
+	},
+	INFO_BOOK(8) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getBook(args.get(0));
+		}
+	},
+	INFO_WRITING_GROUP(9) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getWritingGroup(args.get(0));
+		}
+	},
+	UPDATE_BOOK_AUTHOR(10) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.updateBookAuthor(args.get(0), args.get(1));
+		}
+	},
+	DELETE_BOOK(11) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.deleteBook(args.get(0));
+		}
+	},
+	LIST_PUBLISHERS(12) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getPublishers();
+		}
+	},
+	LIST_BOOKS(13) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getBooks();
+		}
+	},
+	LIST_AUTHORS(14) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getAuthors();
+		}
+	},
+	LIST_WRITING_GROUPS(15) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getWritingGroups();
+		}
+	},
+	LIST_INDIVIDUAL_AUTHORS(16) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getIndividualAuthors();
+		}
+	},
+	LIST_AD_HOC_TEAMS(17) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getAdHocTeams();
+		}
+	},
+	INFO_WORK_COUNT(18) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.countWorks(args.get(0));
+		}
+	},
+	LIST_WORKS_PAGE(19) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getWorksPage(args.get(0), Integer.parseInt(args.get(1)), Integer.parseInt(args.get(2)));
+		}
+	},
+	INFO_HAS_WORK(20) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.hasWork(args.get(0), args.get(1));
+		}
+	},
+	LIST_BOOKS_BY_YEAR(21) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getBooksByYear(Integer.parseInt(args.get(0)), Integer.parseInt(args.get(1)));
+		}
+	},
+	LIST_PUBLISHER_BOOKS_BY_YEAR(22) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getPublisherBooksByYear(args.get(0), Integer.parseInt(args.get(1)), Integer.parseInt(args.get(2)));
+		}
+	},
+	LIST_NEWEST_BOOKS(23) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getNewestBooks(args.get(0), Integer.parseInt(args.get(1)));
+		}
+	},
+	LIST_OLDEST_BOOKS(24) {
+		@Override
+		public void replay(CatalogService service, List<String> args) {
+			service.getOldestBooks(args.get(0), Integer.parseInt(args.get(1)));
+		}
+	};
+
+	// Codes are written to journals, so they must never change or be reused
+	private final int code;
+
+	CatalogOperation(int code) {
+		this.code = code;
+	}
+
+	/**
+	 * @return the stable number identifying this operation in a journal
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * @return {@code true} if the operation only reads the catalog
+	 */
+	public boolean isReadOnly() {
+		return name().startsWith("INFO_") || name().startsWith("LIST_");
+	}
+
+	/**
+	 * Run the operation again with the arguments it was recorded with.
+	 * @param service the service to run it on, inside an open transaction
+	 * @param args the recorded arguments
+	 */
+	public abstract void replay(CatalogService service, List<String> args);
+
+	/**
+	 * @param code a number read from a journal
+	 * @return the operation with that number
+	 */
+	public static CatalogOperation fromCode(int code) {
+		for (CatalogOperation operation : values()) {
+			if (operation.code == code) return operation;
+		}
+		throw new IllegalArgumentException("Unknown operation code " + code);
+	}
+}
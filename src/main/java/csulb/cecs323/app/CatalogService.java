@@ -0,0 +1,421 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import csulb.cecs323.feed.TransactionCallbacks;
+import csulb.cecs323.jfr.CatalogOperationEvent;
+import org.eclipse.persistence.config.CacheUsage;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The operations of the application, identified by primary keys rather than by
+ * objects picked from a menu, so that they can be run from the console, recorded
+ * and replayed alike. The service never begins or ends transactions; callers run
+ * its methods inside a transaction of the service's {@code EntityManager}.
+ */
+public class CatalogService {
+
+	private static final Logger LOGGER = Logger.getLogger(CatalogService.class.getName());
+
+	private static final Map<String, Object> READ_ONLY = Map.of(QueryHints.READ_ONLY, HintValues.TRUE);
+	private static final Map<String, Object> CACHE_ONLY = Map.of(QueryHints.CACHE_USAGE, CacheUsage.CheckCacheOnly);
+
+	private final EntityManager entityManager;
+	private final WorkloadJournal journal;
+	private final CatalogStatistics statistics;
+	private final boolean readOnly;
+	private boolean softDelete;
+
+	/**
+	 * @param entityManager the EntityManager to run every operation with
+	 */
+	public CatalogService(EntityManager entityManager) {
+		this(entityManager, null, null);
+	}
+
+	/**
+	 * @param entityManager the EntityManager to run every operation with
+	 * @param journal where to record each operation performed, or {@code null} not to record
+	 */
+	public CatalogService(EntityManager entityManager, WorkloadJournal journal) {
+		this(entityManager, journal, null);
+	}
+
+	/**
+	 * @param entityManager the EntityManager to run every operation with
+	 * @param journal where to record each operation performed, or {@code null} not to record
+	 * @param statistics the statistics to keep current as books change, or {@code null} for none
+	 */
+	public CatalogService(EntityManager entityManager, WorkloadJournal journal, CatalogStatistics statistics) {
+		this(entityManager, journal, statistics, false);
+	}
+
+	private CatalogService(EntityManager entityManager, WorkloadJournal journal, CatalogStatistics statistics,
+	                       boolean readOnly) {
+		this.entityManager = entityManager;
+		this.journal = journal;
+		this.statistics = statistics;
+		this.readOnly = readOnly;
+	}
+
+	/**
+	 * Create a service that only reads. Its queries return the objects of EclipseLink's shared
+	 * cache as they are, without copying them into the EntityManager or tracking their
+	 * changes, so they must never be modified; its writes fail.
+	 * @param entityManager the EntityManager to run every operation with
+	 * @param journal where to record each operation performed, or {@code null} not to record
+	 * @return the read-only service
+	 */
+	public static CatalogService readOnly(EntityManager entityManager, WorkloadJournal journal) {
+		return new CatalogService(entityManager, journal, null, true);
+	}
+
+	/**
+	 * @return {@code true} if this service only reads
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	public EntityManager getEntityManager() {
+		return entityManager;
+	}
+
+	/**
+	 * In soft-delete mode, deleting a book only marks it deleted, which hides it from every
+	 * query; a {@link BookPurger} removes the row later, away from the interactive transaction.
+	 * @param softDelete whether deletes mark books rather than remove them
+	 */
+	public void setSoftDelete(boolean softDelete) {
+		this.softDelete = softDelete;
+	}
+
+	// ---- Writes ----
+
+	public void addPublisher(String name, String email, String phone) {
+		run(CatalogOperation.ADD_PUBLISHER, () -> {
+			entityManager.persist(new Publishers(name, email, phone));
+			return null;
+		}, name, email, phone);
+	}
+
+	public void addWritingGroup(String name, String email, String headWriter, int yearFormed) {
+		run(CatalogOperation.ADD_WRITING_GROUP, () -> {
+			Writing_Groups writingGroup = new Writing_Groups();
+			writingGroup.setName(name);
+			writingGroup.setEmail(email);
+			writingGroup.setHeadWriter(headWriter);
+			writingGroup.setYearFormed(yearFormed);
+			entityManager.persist(writingGroup);
+			return null;
+		}, name, email, headWriter, Integer.toString(yearFormed));
+	}
+
+	public void addIndividualAuthor(String name, String email) {
+		run(CatalogOperation.ADD_INDIVIDUAL_AUTHOR, () -> {
+			IndividualAuthor author = new IndividualAuthor();
+			author.setName(name);
+			author.setIndividual_authors_email(email);
+			entityManager.persist(author);
+			return null;
+		}, name, email);
+	}
+
+	public void addAdHocTeam(String name, String email) {
+		run(CatalogOperation.ADD_AD_HOC_TEAM, () -> {
+			AdHocTeam team = new AdHocTeam();
+			team.setName(name);
+			team.setAd_hoc_teams_email(email);
+			entityManager.persist(team);
+			return null;
+		}, name, email);
+	}
+
+	/**
+	 * Add an individual author to the members of an ad hoc team.
+	 * @param teamEmail email of the team
+	 * @param authorEmail email of the individual author
+	 */
+	public void addTeamMembership(String teamEmail, String authorEmail) {
+		run(CatalogOperation.ADD_TEAM_MEMBERSHIP, () -> {
+			AdHocTeam team = require(AdHocTeam.class, teamEmail, "Ad Hoc Team");
+			IndividualAuthor author = require(IndividualAuthor.class, authorEmail, "Individual Author");
+			team.addTeamMembers(author);
+			return null;
+		}, teamEmail, authorEmail);
+	}
+
+	public void addBook(String isbn, String title, int yearPublished, String authorEmail, String publisherName) {
+		run(CatalogOperation.ADD_BOOK, () -> {
+			if (softDelete) {
+				// A soft-deleted book keeps its ISBN until it is purged: purge it now rather than
+				// clash with it. A copy this EntityManager still holds may be of a row the purger
+				// has already removed, so it is forgotten rather than brought back.
+				Books stale = entityManager.find(Books.class, isbn, CACHE_ONLY);
+				if (stale != null && stale.isDeleted()) entityManager.detach(stale);
+				entityManager.createNativeQuery("DELETE FROM BOOKS WHERE ISBN = ? AND DELETED = 1")
+						.setParameter(1, isbn).executeUpdate();
+			}
+			Books book = new Books();
+			book.setISBN(isbn);
+			book.setTitle(title);
+			book.setYearPublished(yearPublished);
+			book.setAuthor(require(Authoring_Entities.class, authorEmail, "authoring entity"));
+			book.setPublisher(require(Publishers.class, publisherName, "publisher"));
+			entityManager.persist(book);
+			if (statistics != null) statistics.bookAdded(entityManager, book);
+			return null;
+		}, isbn, title, Integer.toString(yearPublished), authorEmail, publisherName);
+	}
+
+	/**
+	 * Give a book a different authoring entity.
+	 * @param isbn ISBN of the book
+	 * @param authorEmail email of the new authoring entity
+	 */
+	public void updateBookAuthor(String isbn, String authorEmail) {
+		run(CatalogOperation.UPDATE_BOOK_AUTHOR, () -> {
+			Books book = require(Books.class, isbn, "book");
+			Authoring_Entities before = book.getAuthor();
+			book.setAuthor(require(Authoring_Entities.class, authorEmail, "authoring entity"));
+			if (statistics != null) statistics.authorChanged(entityManager, before, book.getAuthor());
+			return null;
+		}, isbn, authorEmail);
+	}
+
+	public void deleteBook(String isbn) {
+		run(CatalogOperation.DELETE_BOOK, () -> {
+			Books book = require(Books.class, isbn, "book");
+			if (softDelete) {
+				book.setDeleted(true);
+				// Other EntityManagers must not find it in the shared cache
+				TransactionCallbacks.afterCommit(entityManager, () -> entityManager.getEntityManagerFactory().getCache().evict(Books.class, isbn));
+			} else {
+				entityManager.remove(book);
+			}
+			if (statistics != null) statistics.bookRemoved(entityManager, book);
+			return null;
+		}, isbn);
+	}
+
+	// ---- Point lookups ----
+
+	/**
+	 * @return the publisher with the given name, or {@code null} if there is none
+	 */
+	public Publishers getPublisher(String name) {
+		return run(CatalogOperation.INFO_PUBLISHER, () -> first(named("ReturnPublisher", Publishers.class)
+				.setParameter(1, name).getResultList()), name);
+	}
+
+	/**
+	 * @return the book with the given ISBN, or {@code null} if there is none
+	 */
+	public Books getBook(String isbn) {
+		return run(CatalogOperation.INFO_BOOK, () -> first(named("ReturnBooks", Books.class)
+				.setParameter(1, isbn).getResultList()), isbn);
+	}
+
+	/**
+	 * @return the writing group with the given email, or {@code null} if there is none
+	 */
+	public Writing_Groups getWritingGroup(String email) {
+		return run(CatalogOperation.INFO_WRITING_GROUP, () -> readOnly
+				? entityManager.find(Writing_Groups.class, email, READ_ONLY)
+				: entityManager.find(Writing_Groups.class, email), email);
+	}
+
+	// ---- Works of an authoring entity ----
+
+	/**
+	 * @param authorEmail email of an authoring entity
+	 * @return the number of books credited to it, counted without loading them
+	 */
+	public long countWorks(String authorEmail) {
+		return run(CatalogOperation.INFO_WORK_COUNT, () -> ((Number) entityManager.createNamedQuery("CountWorks")
+				.setParameter(1, authorEmail).getSingleResult()).longValue(), authorEmail);
+	}
+
+	/**
+	 * Read one page of the books credited to an authoring entity, ordered by year published
+	 * and then by ISBN.
+	 * @param authorEmail email of an authoring entity
+	 * @param offset the number of books to skip
+	 * @param limit the most books to return
+	 * @return the books of the page, empty past the last one
+	 */
+	public List<Books> getWorksPage(String authorEmail, int offset, int limit) {
+		if (offset < 0 || limit < 1) throw new IllegalArgumentException("Invalid page: offset " + offset + ", limit " + limit + ".");
+		return run(CatalogOperation.LIST_WORKS_PAGE, () -> named("ReturnWorksPage", Books.class)
+						.setParameter(1, authorEmail).setParameter(2, offset).setParameter(3, limit).getResultList(),
+				authorEmail, Integer.toString(offset), Integer.toString(limit));
+	}
+
+	/**
+	 * @param authorEmail email of an authoring entity
+	 * @param isbn ISBN of a book
+	 * @return {@code true} if the book is credited to the authoring entity
+	 */
+	public boolean hasWork(String authorEmail, String isbn) {
+		return run(CatalogOperation.INFO_HAS_WORK, () -> ((Number) entityManager.createNamedQuery("ContainsWork")
+				.setParameter(1, authorEmail).setParameter(2, isbn).getSingleResult()).longValue() > 0, authorEmail, isbn);
+	}
+
+	// ---- Books by year ----
+
+	/**
+	 * @param fromYear the first year to include
+	 * @param toYear the last year to include
+	 * @return the books published in the range, oldest first
+	 */
+	public List<Books> getBooksByYear(int fromYear, int toYear) {
+		return run(CatalogOperation.LIST_BOOKS_BY_YEAR, () -> named("ReturnBooksByYear", Books.class)
+						.setParameter(1, fromYear).setParameter(2, toYear).getResultList(),
+				Integer.toString(fromYear), Integer.toString(toYear));
+	}
+
+	/**
+	 * @param publisherName name of a publisher
+	 * @param fromYear the first year to include
+	 * @param toYear the last year to include
+	 * @return the books of the publisher published in the range, oldest first
+	 */
+	public List<Books> getPublisherBooksByYear(String publisherName, int fromYear, int toYear) {
+		return run(CatalogOperation.LIST_PUBLISHER_BOOKS_BY_YEAR, () -> named("ReturnPublisherBooksByYear", Books.class)
+						.setParameter(1, publisherName).setParameter(2, fromYear).setParameter(3, toYear).getResultList(),
+				publisherName, Integer.toString(fromYear), Integer.toString(toYear));
+	}
+
+	/**
+	 * @param publisherName name of a publisher
+	 * @param count the most books to return
+	 * @return the publisher's most recently published books, newest first
+	 */
+	public List<Books> getNewestBooks(String publisherName, int count) {
+		return run(CatalogOperation.LIST_NEWEST_BOOKS, () -> topBooks("ReturnNewestBooksOfPublisher", publisherName, count),
+				publisherName, Integer.toString(count));
+	}
+
+	/**
+	 * @param publisherName name of a publisher
+	 * @param count the most books to return
+	 * @return the publisher's earliest published books, oldest first
+	 */
+	public List<Books> getOldestBooks(String publisherName, int count) {
+		return run(CatalogOperation.LIST_OLDEST_BOOKS, () -> topBooks("ReturnOldestBooksOfPublisher", publisherName, count),
+				publisherName, Integer.toString(count));
+	}
+
+	private List<Books> topBooks(String queryName, String publisherName, int count) {
+		if (count < 1) throw new IllegalArgumentException("The number of books must be at least 1.");
+		return named(queryName, Books.class)
+				.setParameter(1, publisherName).setParameter(2, count).getResultList();
+	}
+
+	// ---- Listings ----
+
+	public List<Publishers> getPublishers() {
+		return run(CatalogOperation.LIST_PUBLISHERS, () ->
+				named("ReturnAllPublishers", Publishers.class).getResultList());
+	}
+
+	public List<Authoring_Entities> getAuthors() {
+		return run(CatalogOperation.LIST_AUTHORS, () ->
+				named("ReturnAllAuthors", Authoring_Entities.class).getResultList());
+	}
+
+	public List<Writing_Groups> getWritingGroups() {
+		return run(CatalogOperation.LIST_WRITING_GROUPS, () ->
+				named("ReturnAllWritingGroups", Writing_Groups.class).getResultList());
+	}
+
+	public List<IndividualAuthor> getIndividualAuthors() {
+		return run(CatalogOperation.LIST_INDIVIDUAL_AUTHORS, () ->
+				named("ReturnAllIndividualAuthors", IndividualAuthor.class).getResultList());
+	}
+
+	public List<AdHocTeam> getAdHocTeams() {
+		return run(CatalogOperation.LIST_AD_HOC_TEAMS, () ->
+				named("ReturnAllAdHocTeams", AdHocTeam.class).getResultList());
+	}
+
+	public List<Books> getBooks() {
+		return run(CatalogOperation.LIST_BOOKS, () ->
+				named("ReturnAllBooks", Books.class).getResultList());
+	}
+
+	// ---- Helpers ----
+
+	/**
+	 * Perform an operation, timing it and recording it in the journal if there is one, and
+	 * as a {@link CatalogOperationEvent} if Flight Recorder is recording them. Writes are
+	 * journaled once their transaction commits.
+	 */
+	private <T> T run(CatalogOperation operation, Supplier<T> body, String... args) {
+		if (readOnly && !operation.isReadOnly()) throw new IllegalStateException(operation + " is a write; this service only reads.");
+		long start = System.nanoTime();
+		CatalogOperationEvent event = new CatalogOperationEvent();
+		event.begin();
+		T result;
+		try {
+			result = body.get();
+			event.succeeded = true;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.operation = operation.name();
+				event.key = args.length > 0 ? args[0] : null;
+				event.argumentCount = args.length;
+				event.readOnly = readOnly;
+				event.commit();
+			}
+		}
+		if (journal != null) {
+			long duration = System.nanoTime() - start;
+			// A write is only replayed if its transaction commits
+			if (operation.isReadOnly()) record(operation, duration, args);
+			else TransactionCallbacks.afterCommit(entityManager, () -> record(operation, duration, args));
+		}
+		return result;
+	}
+
+	private void record(CatalogOperation operation, long durationNanos, String... args) {
+		try {
+			journal.record(operation, durationNanos, args);
+		} catch (IOException e) {
+			// Losing the journal must never fail the operation itself
+			LOGGER.log(Level.WARNING, "Could not record " + operation + " in the workload journal", e);
+		}
+	}
+
+	/**
+	 * Create a named query, marked read-only if the service is.
+	 */
+	private <E> TypedQuery<E> named(String name, Class<E> type) {
+		TypedQuery<E> query = entityManager.createNamedQuery(name, type);
+		if (readOnly) query.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+		return query;
+	}
+
+	private <E> E require(Class<E> type, String key, String description) {
+		E entity = entityManager.find(type, key);
+		// Found in a cache before the deletion became visible to the query filter
+		if (entity instanceof Books book && book.isDeleted()) entity = null;
+		if (entity == null) throw new IllegalArgumentException("No " + description + " exists with key " + key + ".");
+		return entity;
+	}
+
+	private static <E> E first(List<E> results) {
+		return results.isEmpty() ? null : results.get(0);
+	}
+}
@@ -0,0 +1,218 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.feed.TransactionCallbacks;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+
+import javax.persistence.DiscriminatorValue;
+import org.eclipse.persistence.sessions.UnitOfWork;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Book counts per publisher, per kind of authoring entity and per year, kept current as
+ * books are added, deleted and reassigned so that reports never have to count the books.
+ * <p>
+ * The counts live in the {@code CATALOG_STATISTICS} table and in memory. A
+ * {@link CatalogService} given this object collects the adjustments of a transaction and
+ * writes them to the table as that transaction commits, ahead of the changes to the books,
+ * so the two always agree; the in-memory counts are adjusted once it has committed.
+ * Nothing is written while an operation runs, so an error in the book's own row, such as
+ * a duplicate ISBN, is still reported at commit. Books loaded behind the application's back, such as by the
+ * load script or the {@code SeedLoader}, are picked up by {@link #rebuild(EntityManager)},
+ * which the application runs at startup.
+ * <p>
+ * Only changes made through this process are seen in memory; another node sharing the
+ * database through the network server updates the table but not this node's counts.
+ */
+public class CatalogStatistics {
+
+	/**
+	 * The ways books are counted, as stored in the {@code DIMENSION} column.
+	 */
+	public enum Dimension {
+		/** Books per publisher name. */
+		PUBLISHER,
+		/** Books per kind of authoring entity: WritingGroup, IndividualAuthor or AdHocTeam. */
+		AUTHOR_TYPE,
+		/** Books per year published. */
+		YEAR
+	}
+
+	private static final String UPDATE_SQL =
+			"UPDATE CATALOG_STATISTICS SET BOOK_COUNT = BOOK_COUNT + ? WHERE DIMENSION = ? AND BUCKET = ?";
+	private static final String INSERT_SQL =
+			"INSERT INTO CATALOG_STATISTICS (DIMENSION, BUCKET, BOOK_COUNT) VALUES (?, ?, ?)";
+	// Derby's SQLState for a duplicate key
+	private static final String DUPLICATE_KEY = "23505";
+
+	private final Map<Dimension, Map<String, Long>> counts = new EnumMap<>(Dimension.class);
+	// The adjustments of each open transaction on this thread, by unit of work
+	private final ThreadLocal<Map<Object, Map<Dimension, Map<String, Long>>>> pending =
+			ThreadLocal.withInitial(IdentityHashMap::new);
+
+	public CatalogStatistics() {
+		for (Dimension dimension : Dimension.values()) counts.put(dimension, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * Recount every book, replacing the contents of the summary table and the in-memory
+	 * counts. Must run inside a transaction of the given EntityManager.
+	 * @param entityManager the EntityManager to count with
+	 */
+	public void rebuild(EntityManager entityManager) {
+		entityManager.createNativeQuery("DELETE FROM CATALOG_STATISTICS").executeUpdate();
+		entityManager.createNativeQuery(
+				"INSERT INTO CATALOG_STATISTICS (DIMENSION, BUCKET, BOOK_COUNT) " +
+				"SELECT 'PUBLISHER', PUBLISHER_NAME, COUNT(*) FROM BOOKS WHERE DELETED = 0 GROUP BY PUBLISHER_NAME").executeUpdate();
+		entityManager.createNativeQuery(
+				"INSERT INTO CATALOG_STATISTICS (DIMENSION, BUCKET, BOOK_COUNT) " +
+				"SELECT 'AUTHOR_TYPE', A.AUTHORING_ENTITY_TYPE, COUNT(*) " +
+				"FROM BOOKS B JOIN AUTHORING_ENTITIES A ON B.AUTHORING_ENTITY_NAME = A.EMAIL WHERE B.DELETED = 0 " +
+				"GROUP BY A.AUTHORING_ENTITY_TYPE").executeUpdate();
+		entityManager.createNativeQuery(
+				"INSERT INTO CATALOG_STATISTICS (DIMENSION, BUCKET, BOOK_COUNT) " +
+				"SELECT 'YEAR', TRIM(CAST(YEAR_PUBLISHED AS CHAR(11))), COUNT(*) FROM BOOKS WHERE DELETED = 0 GROUP BY YEAR_PUBLISHED").executeUpdate();
+
+		Map<Dimension, Map<String, Long>> recounted = new EnumMap<>(Dimension.class);
+		for (Dimension dimension : Dimension.values()) recounted.put(dimension, new TreeMap<>());
+		List<?> rows = entityManager.createNativeQuery("SELECT DIMENSION, BUCKET, BOOK_COUNT FROM CATALOG_STATISTICS").getResultList();
+		for (Object row : rows) {
+			Object[] columns = (Object[]) row;
+			recounted.get(Dimension.valueOf((String) columns[0])).put((String) columns[1], ((Number) columns[2]).longValue());
+		}
+		TransactionCallbacks.afterCommit(entityManager, () -> {
+			for (Dimension dimension : Dimension.values()) {
+				counts.get(dimension).clear();
+				counts.get(dimension).putAll(recounted.get(dimension));
+			}
+		});
+	}
+
+	/**
+	 * @param dimension how to count the books
+	 * @return the number of books in each bucket with at least one, in bucket order
+	 */
+	public SortedMap<String, Long> getCounts(Dimension dimension) {
+		return new TreeMap<>(counts.get(dimension));
+	}
+
+	/**
+	 * @return the number of books in the catalog
+	 */
+	public long getTotalBooks() {
+		long total = 0;
+		for (long count : counts.get(Dimension.PUBLISHER).values()) total += count;
+		return total;
+	}
+
+	// ---- Maintenance, called by CatalogService inside the transaction making the change ----
+
+	void bookAdded(EntityManager entityManager, Books book) {
+		adjustAll(entityManager, book, book.getAuthor(), 1);
+	}
+
+	void bookRemoved(EntityManager entityManager, Books book) {
+		adjustAll(entityManager, book, book.getAuthor(), -1);
+	}
+
+	void authorChanged(EntityManager entityManager, Authoring_Entities before, Authoring_Entities after) {
+		String typeBefore = authorType(before);
+		String typeAfter = authorType(after);
+		if (typeBefore.equals(typeAfter)) return;
+		adjust(entityManager, Dimension.AUTHOR_TYPE, typeBefore, -1);
+		adjust(entityManager, Dimension.AUTHOR_TYPE, typeAfter, 1);
+	}
+
+	private void adjustAll(EntityManager entityManager, Books book, Authoring_Entities author, long delta) {
+		adjust(entityManager, Dimension.PUBLISHER, book.getPublisher().getName(), delta);
+		adjust(entityManager, Dimension.AUTHOR_TYPE, authorType(author), delta);
+		adjust(entityManager, Dimension.YEAR, Integer.toString(book.getYearPublished()), delta);
+	}
+
+	/**
+	 * Add to the count of one bucket, in the table as the transaction commits and in memory
+	 * once it has.
+	 */
+	private void adjust(EntityManager entityManager, Dimension dimension, String bucket, long delta) {
+		Object unitOfWork = entityManager.unwrap(UnitOfWork.class);
+		Map<Dimension, Map<String, Long>> deltas = pending.get().get(unitOfWork);
+		if (deltas == null) {
+			// Sorted, so that transactions touching the same buckets lock them in the same order
+			Map<Dimension, Map<String, Long>> added = new EnumMap<>(Dimension.class);
+			for (Dimension each : Dimension.values()) added.put(each, new TreeMap<>());
+			pending.get().put(unitOfWork, added);
+			TransactionCallbacks.beforeCommit(entityManager, () -> write(entityManager, added));
+			TransactionCallbacks.afterCommit(entityManager, () -> {
+				forget(unitOfWork);
+				added.forEach((each, buckets) -> buckets.forEach((key, change) ->
+						counts.get(each).merge(key, change, (a, b) -> a + b == 0 ? null : a + b)));
+			});
+			TransactionCallbacks.afterRollback(entityManager, () -> forget(unitOfWork));
+			deltas = added;
+		}
+		deltas.get(dimension).merge(bucket, delta, Long::sum);
+	}
+
+	private void forget(Object unitOfWork) {
+		Map<Object, Map<Dimension, Map<String, Long>>> open = pending.get();
+		open.remove(unitOfWork);
+		if (open.isEmpty()) pending.remove();
+	}
+
+	/**
+	 * Write the adjustments of a transaction to the summary table, over its connection.
+	 */
+	private static void write(EntityManager entityManager, Map<Dimension, Map<String, Long>> deltas) {
+		Connection connection = entityManager.unwrap(Connection.class);
+		try (PreparedStatement update = connection.prepareStatement(UPDATE_SQL);
+		     PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+			for (Map.Entry<Dimension, Map<String, Long>> dimension : deltas.entrySet()) {
+				for (Map.Entry<String, Long> bucket : dimension.getValue().entrySet()) {
+					long delta = bucket.getValue();
+					if (delta == 0) continue;
+					if (update(update, dimension.getKey(), bucket.getKey(), delta) > 0) continue;
+					insert.setString(1, dimension.getKey().name());
+					insert.setString(2, bucket.getKey());
+					insert.setLong(3, delta);
+					try {
+						insert.executeUpdate();
+					} catch (SQLException e) {
+						// Another transaction added the bucket since the update found none; Derby
+						// undid only the failed insert, so add to that transaction's row instead
+						if (!DUPLICATE_KEY.equals(e.getSQLState())) throw e;
+						update(update, dimension.getKey(), bucket.getKey(), delta);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			throw new PersistenceException("Could not update the catalog statistics.", e);
+		}
+	}
+
+	private static int update(PreparedStatement update, Dimension dimension, String bucket, long delta) throws SQLException {
+		update.setLong(1, delta);
+		update.setString(2, dimension.name());
+		update.setString(3, bucket);
+		return update.executeUpdate();
+	}
+
+	/**
+	 * @return the discriminator value of an authoring entity, e.g. {@code WritingGroup}
+	 */
+	static String authorType(Authoring_Entities author) {
+		DiscriminatorValue value = author.getClass().getAnnotation(DiscriminatorValue.class);
+		return value != null ? value.value() : author.getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,277 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The publishers, authoring entities and books looked up most often, kept across restarts
+ * so that a new process can load them before the operators ask for them.
+ * <p>
+ * Every lookup on an info screen counts towards its entity. Periodically, and when the
+ * application exits, the keys of the most looked up entities of each kind are written to
+ * a snapshot file, hottest first. At startup, {@link #warmUp} reads the snapshot back and
+ * loads those entities in batches, several batches at once in the background, which fills
+ * both EclipseLink's shared cache and Derby's page cache.
+ * <p>
+ * To show whether that pays, the time the warm-up took and the latency of the lookups of
+ * the first minute after startup are recorded.
+ */
+public class HotSet implements AutoCloseable {
+
+	/** System property naming the snapshot file; the hot set is off without it. */
+	public static final String FILE_PROPERTY = "jpabooks.hotset";
+	/** System property setting how many entities of each kind the snapshot keeps. */
+	public static final String SIZE_PROPERTY = "jpabooks.hotset.size";
+	/** System property setting the interval between snapshots, in seconds; 0 for on exit only. */
+	public static final String INTERVAL_PROPERTY = "jpabooks.hotset.interval";
+	/** System property that makes startup wait for the warm-up to finish when {@code true}. */
+	public static final String WAIT_PROPERTY = "jpabooks.hotset.wait";
+
+	// Entities loaded by each warm-up query
+	private static final int BATCH_SIZE = 100;
+	// Lookups count towards the first-minute latency until this long after startup
+	private static final long FIRST_MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * The kinds of entity tracked, each with the query loading a batch of them by key.
+	 */
+	private enum Kind {
+		PUBLISHER("SELECT p FROM Publishers p WHERE p.name IN :keys"),
+		AUTHOR("SELECT a FROM Authoring_Entities a WHERE a.email IN :keys"),
+		// A book's info screen also shows its author and publisher
+		BOOK("SELECT b FROM Books b LEFT JOIN FETCH b.author LEFT JOIN FETCH b.publisher WHERE b.ISBN IN :keys");
+
+		final String query;
+
+		Kind(String query) {
+			this.query = query;
+		}
+	}
+
+	private final Path file;
+	private final int size;
+	private final Map<Kind, Map<String, Long>> counts = new EnumMap<>(Kind.class);
+	private final ScheduledExecutorService snapshots;
+	private final long startedNanos = System.nanoTime();
+
+	private final LongAdder saved = new LongAdder();
+	private final LongAdder warmed = new LongAdder();
+	private final LongAdder failedBatches = new LongAdder();
+	private final LatencyRecorder firstMinute = new LatencyRecorder();
+	private volatile long warmUpNanos = -1;
+
+	/**
+	 * @param file the snapshot file
+	 * @param size how many entities of each kind to keep in the snapshot
+	 * @param intervalSeconds the interval between snapshots, or 0 to write one only on {@link #close()}
+	 */
+	public HotSet(Path file, int size, long intervalSeconds) {
+		if (size < 1 || intervalSeconds < 0) throw new IllegalArgumentException("Invalid hot set size or interval.");
+		this.file = file;
+		this.size = size;
+		for (Kind kind : Kind.values()) counts.put(kind, new ConcurrentHashMap<>());
+		if (intervalSeconds == 0) {
+			this.snapshots = null;
+			return;
+		}
+		this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "hot-set-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		snapshots.scheduleWithFixedDelay(() -> {
+			try {
+				save();
+			} catch (IOException e) {
+				// The next snapshot, or the one on exit, tries again
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return a hot set configured by the {@code jpabooks.hotset} system properties, or
+	 * 			{@code null} if no snapshot file was given
+	 */
+	public static HotSet fromEnvironment() {
+		String file = System.getProperty(FILE_PROPERTY);
+		if (file == null) return null;
+		return new HotSet(Path.of(file), Integer.getInteger(SIZE_PROPERTY, 500), Long.getLong(INTERVAL_PROPERTY, 60));
+	}
+
+	/**
+	 * Count a lookup of an entity; anything other than a publisher, authoring entity or book
+	 * is ignored, as is {@code null}.
+	 * @param entity the entity looked up
+	 */
+	public void touch(Object entity) {
+		if (entity instanceof Publishers publisher) touch(Kind.PUBLISHER, publisher.getName());
+		else if (entity instanceof Authoring_Entities author) touch(Kind.AUTHOR, author.getEmail());
+		else if (entity instanceof Books book) touch(Kind.BOOK, book.getISBN());
+	}
+
+	/**
+	 * Record the latency of a lookup, if it happened within the first minute after startup.
+	 * @param startNanos {@link System#nanoTime()} when the lookup started
+	 */
+	public void recordLookup(long startNanos) {
+		if (startNanos - startedNanos < FIRST_MINUTE_NANOS) firstMinute.recordSince(startNanos);
+	}
+
+	/**
+	 * Write the snapshot: for each kind, the keys of the most looked up entities, hottest
+	 * first. The file is replaced in one step, so a crash leaves the previous snapshot whole.
+	 */
+	public void save() throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		if (file.getParent() != null) Files.createDirectories(file.getParent());
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(temporary))) {
+			for (Kind kind : Kind.values()) {
+				for (String key : hottest(kind)) out.println(kind + "\t" + key);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		saved.increment();
+	}
+
+	/**
+	 * Load the entities of the last snapshot in the background, {@code BATCH_SIZE} to a
+	 * query, as many queries at once as {@code queries} runs. Missing or unreadable
+	 * snapshots, and keys no longer in the catalog, are skipped.
+	 * @param queries where to run the loading queries
+	 * @return a future completed once every batch has been loaded or has failed
+	 */
+	public CompletableFuture<Void> warmUp(AsyncQueries queries) {
+		long start = System.nanoTime();
+		Map<Kind, List<String>> snapshot = load();
+		List<CompletableFuture<Void>> batches = new ArrayList<>();
+		for (Map.Entry<Kind, List<String>> entry : snapshot.entrySet()) {
+			List<String> keys = entry.getValue();
+			for (int from = 0; from < keys.size(); from += BATCH_SIZE) {
+				List<String> batch = keys.subList(from, Math.min(keys.size(), from + BATCH_SIZE));
+				String query = entry.getKey().query;
+				batches.add(queries.query(service -> service.getEntityManager().createQuery(query)
+								.setParameter("keys", batch).getResultList().size())
+						.handle((loaded, failure) -> {
+							if (failure != null) failedBatches.increment();
+							else warmed.add(loaded);
+							return null;
+						}));
+			}
+		}
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+				.thenRun(() -> warmUpNanos = System.nanoTime() - start);
+	}
+
+	/**
+	 * @return the number of entities the warm-up loaded
+	 */
+	public long getWarmedCount() {
+		return warmed.sum();
+	}
+
+	/**
+	 * @return how long the warm-up took in milliseconds, or -1 if it has not finished
+	 */
+	public double getWarmUpMillis() {
+		long nanos = warmUpNanos;
+		return nanos < 0 ? -1 : nanos / 1e6;
+	}
+
+	/**
+	 * @return the latency of the lookups of the first minute after startup
+	 */
+	public LatencyRecorder getFirstMinute() {
+		return firstMinute;
+	}
+
+	/**
+	 * @return a one-line account of the hot set
+	 */
+	public String summary() {
+		return String.format("tracked=%d snapshots=%d warmed=%d failedBatches=%d warmUp=%.1fms firstMinute[%s]",
+				counts.values().stream().mapToInt(Map::size).sum(), saved.sum(), getWarmedCount(),
+				failedBatches.sum(), getWarmUpMillis(), firstMinute.summary());
+	}
+
+	/**
+	 * Stop the periodic snapshots and write a last one, once a periodic one still being
+	 * written has finished, as both write the same temporary file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (snapshots != null) {
+			snapshots.shutdownNow();
+			try {
+				snapshots.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the last periodic snapshot.");
+			}
+		}
+		save();
+	}
+
+	private void touch(Kind kind, String key) {
+		Map<String, Long> kindCounts = counts.get(kind);
+		kindCounts.merge(key, 1L, Long::sum);
+		// Keep the counts bounded: age them all, which also lets old favourites cool down
+		if (kindCounts.size() > size * 4) {
+			synchronized (kindCounts) {
+				if (kindCounts.size() > size * 4) {
+					kindCounts.replaceAll((ignored, count) -> count / 2);
+					kindCounts.values().removeIf(count -> count == 0);
+				}
+			}
+		}
+	}
+
+	private List<String> hottest(Kind kind) {
+		return counts.get(kind).entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+				.limit(size)
+				.map(Map.Entry::getKey)
+				.toList();
+	}
+
+	private Map<Kind, List<String>> load() {
+		Map<Kind, List<String>> snapshot = new EnumMap<>(Kind.class);
+		try (BufferedReader in = Files.newBufferedReader(file)) {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				int tab = line.indexOf('\t');
+				if (tab < 0) continue;
+				Kind kind;
+				try {
+					kind = Kind.valueOf(line.substring(0, tab));
+				} catch (IllegalArgumentException e) {
+					continue;
+				}
+				snapshot.computeIfAbsent(kind, ignored -> new ArrayList<>()).add(line.substring(tab + 1));
+			}
+		} catch (NoSuchFileException e) {
+			// Nothing to warm up on the first run
+		} catch (IOException e) {
+			// A damaged snapshot only costs the warm-up
+		}
+		return snapshot;
+	}
+}
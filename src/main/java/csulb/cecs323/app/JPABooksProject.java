@@ -13,6 +13,8 @@
 package csulb.cecs323.app;
 
 // Import all of the entity classes that we have written for this application.
+import csulb.cecs323.feed.CacheCoordinator;
+import csulb.cecs323.jfr.MenuEvent;
 
 import csulb.cecs323.model.*;
 import org.apache.derby.shared.common.error.DerbySQLIntegrityConstraintViolationException;
@@ -20,9 +22,14 @@ import org.apache.derby.shared.common.error.DerbySQLIntegrityConstraintViolation
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
-import javax.persistence.Persistence;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +44,65 @@ public class JPABooksProject {
 	 */
 	private final EntityManager entityManager;
 
+	/**
+	 * Every operation on the catalog goes through the service, which can record it in a workload journal.
+	 */
+	private final CatalogService service;
+
+	/**
+	 * Book counts for the statistics report, kept current by the service.
+	 */
+	private final CatalogStatistics statistics;
+
+	/**
+	 * In write-behind mode (-Djpabooks.writebehind=true), the queue that commits added objects
+	 * in groups in the background; {@code null} when every add is committed by the console.
+	 */
+	private WriteBehindQueue writeBehind;
+
+	/**
+	 * Runs queries in the background, for screens that need several lists at once.
+	 */
+	private AsyncQueries queries;
+
+	/**
+	 * Runs the info and listing screens on read-only EntityManagers of their own, outside the
+	 * console's read-write transaction.
+	 */
+	private SessionRouter router;
+
+	/**
+	 * With -Djpabooks.prefetch=true, loads what the info screens are likely to show next;
+	 * {@code null} when every screen queries only when it is shown.
+	 */
+	private Prefetcher prefetcher;
+
+	/**
+	 * With -Djpabooks.cluster.port=..., keeps this process's cache consistent with other
+	 * instances of the application; {@code null} when running alone.
+	 */
+	private CacheCoordinator coordinator;
+
+	/**
+	 * With -Djpabooks.hotset=<file>, remembers the entities looked up most across restarts and
+	 * loads them at startup; {@code null} otherwise.
+	 */
+	private HotSet hotSet;
+
+	/**
+	 * With -Djpabooks.softdelete=true, removes the books deleted on the console, which are
+	 * only marked deleted, in the background; {@code null} when deletes remove books at once.
+	 */
+	private BookPurger purger;
+
+	/**
+	 * With -Djpabooks.admission=true, admits the router's lookups and writes in bounded lanes
+	 * and turns them away when the catalog is saturated; {@code null} to run them all. The
+	 * console's own writes are not admitted: its transaction stays open across prompts, so a
+	 * lane could not time the operation and its commit without the user's thinking time.
+	 */
+	private AdmissionController admission;
+
 	/**
 	 * The Logger can easily be configured to log to a file, rather than, or in addition to, the console.
 	 * We use it because it is easy to control how much or how little logging gets done without having to
@@ -50,39 +116,126 @@ public class JPABooksProject {
 	// A static reference to the JPA project instance so that entities can be persisted from static methods
 	private static JPABooksProject jpa;
 
+	// How many works of an authoring entity are shown at a time
+	private static final int WORKS_PAGE_SIZE = 10;
+
+	// How many of a publisher's newest books its info screen shows
+	private static final int NEWEST_BOOKS_SHOWN = 10;
+
+	// The main menu's choices as Flight Recorder reports them
+	private static final Map<Integer, String> MENU_CHOICES = Map.of(1, "add", 2, "info", 3, "delete", 4, "update",
+			5, "primary keys", -1, "quit");
+
 	/**
 	 * The constructor for the CustomerOrders class.  All that it does is stash the provided EntityManager
 	 * for use later in the application.
 	 * @param manager    The EntityManager that we will use.
 	 */
 	public JPABooksProject(EntityManager manager) {
+		this(manager, null);
+	}
+
+	/**
+	 * Create the application with a journal recording every operation performed.
+	 * @param manager    The EntityManager that we will use.
+	 * @param journal    The journal to record operations in, or {@code null} not to record.
+	 */
+	public JPABooksProject(EntityManager manager, WorkloadJournal journal) {
 		this.entityManager = manager;
+		this.statistics = new CatalogStatistics();
+		this.service = new CatalogService(manager, journal, statistics);
 	}
 
 	public static void main(String[] args) {
 		LOGGER.setLevel(Level.OFF);
-		EntityManagerFactory factory = Persistence.createEntityManagerFactory("JPABooksProject");
+		// The profile (on-disk, in-memory or network server) is chosen with -Djpabooks.profile=...
+		PersistenceProfile profile = PersistenceProfile.fromEnvironment();
+		NetworkServer server = null;
+		if (NetworkServer.isServerNode()) {
+			// This node serves the catalog to the others, and opens it directly itself
+			try {
+				server = NetworkServer.start();
+			} catch (Exception e) {
+				System.out.println("Error: could not start the network server: " + e.getMessage());
+				return;
+			}
+			profile = PersistenceProfile.EMBEDDED;
+		}
+		EntityManagerFactory factory = profile.createEntityManagerFactory();
 		EntityManager manager = factory.createEntityManager();
+
+		// Record every operation if a journal was requested with -Djpabooks.journal=<file>
+		WorkloadJournal journal = null;
+		try {
+			journal = WorkloadJournal.fromEnvironment();
+		} catch (IOException e) {
+			System.out.println("Error: could not open the workload journal: " + e.getMessage());
+		}
+
 		// Create an instance of CustomerOrders and store our new EntityManager as an instance variable.
-		jpa = new JPABooksProject(manager);
+		jpa = new JPABooksProject(manager, journal);
 
 		// Any changes to the database need to be done within a transaction.
 		// See: https://en.wikibooks.org/wiki/Java_Persistence/Transactions
 		EntityTransaction tx = manager.getTransaction();
 
+		jpa.writeBehind = WriteBehindQueue.fromEnvironment(factory, journal, jpa.statistics);
+		jpa.queries = AsyncQueries.fromEnvironment(factory);
+		jpa.router = SessionRouter.fromEnvironment(factory, journal, jpa.statistics);
+		jpa.admission = AdmissionController.fromEnvironment();
+		jpa.router.setAdmission(jpa.admission);
+		jpa.prefetcher = Prefetcher.fromEnvironment(jpa.queries);
+		try {
+			jpa.coordinator = CacheCoordinator.fromEnvironment(factory);
+		} catch (Exception e) {
+			System.out.println("Error: could not join the other instances, running alone: " + e.getMessage());
+		}
+		if (jpa.coordinator != null && jpa.prefetcher != null) {
+			jpa.coordinator.addListener(event -> jpa.prefetcher.invalidate());
+		}
+		jpa.purger = BookPurger.fromEnvironment(factory);
+		if (jpa.purger != null) jpa.service.setSoftDelete(true);
+		jpa.hotSet = HotSet.fromEnvironment();
+		if (jpa.hotSet != null) {
+			// Load last run's hot set in the background, or before the first prompt if asked to
+			CompletableFuture<Void> warmUp = jpa.hotSet.warmUp(jpa.queries);
+			if (Boolean.getBoolean(HotSet.WAIT_PROPERTY)) warmUp.join();
+		}
+
+		// Count the books once; from here on every change keeps the counts current
+		try {
+			tx.begin();
+			jpa.statistics.rebuild(manager);
+			tx.commit();
+		} catch (Exception e) {
+			if (tx.isActive()) tx.rollback();
+			System.out.println("Error: could not compute the catalog statistics: " + e.getMessage());
+		}
+
 		Scanner scanner = new Scanner(System.in);
 
 		boolean quit = false;
 
 		while (!quit) {
 
+			MenuEvent menu = new MenuEvent();
 			try {
 
-				// begin a new transaction
-				tx.begin();
-
 				// prompt for choice
 				int choice = promptForMainMenuChoice(scanner);
+				menu.begin();
+				menu.choice = MENU_CHOICES.getOrDefault(choice, "invalid");
+
+				// Only writes need a transaction; info and primary key listings are read-only
+				// and run on the router's read-only EntityManagers instead
+				boolean writes = choice == 1 || choice == 3 || choice == 4;
+				if (writes) {
+					// Start from the shared cache, which other instances may have invalidated,
+					// rather than from entities this EntityManager loaded earlier
+					if (jpa.coordinator != null) manager.clear();
+					tx.begin();
+					if (jpa.prefetcher != null) jpa.prefetcher.invalidateOnCommit(manager);
+				}
 
 				// condition for whether any changes made should be committed
 				boolean validTransaction;
@@ -106,23 +259,44 @@ public class JPABooksProject {
 
 				// If the user chose to quit, do that.
 				if (quit) {
+					menu.outcome = "quit";
 					System.out.println("\nExiting application.\n");
-					tx.rollback();
+				}
+				// A read has nothing to commit
+				else if (!writes) {
+					menu.outcome = validTransaction ? "read" : "cancelled";
+					if (!validTransaction) System.out.println("\nCancelled.\n");
 				}
 				// If the transaction is valid, commit it; else rollback
 				else if (validTransaction) {
+					long commitStart = System.nanoTime();
 					tx.commit();
-					System.out.println("\nSuccessful transaction, committing to database.\n");
-					// ^ print this AFTER calling commit so that if an error occurs during the commit it does not print
+					if (jpa.purger != null) jpa.purger.recordForeground(commitStart);
+					// In write-behind mode an add was only queued, as its screen said, and may
+					// still fail; the transaction committed here is empty
+					if (choice == 1 && jpa.writeBehind != null) {
+						menu.outcome = "queued";
+					} else {
+						menu.outcome = "committed";
+						System.out.println("\nSuccessful transaction, committing to database.\n");
+						// ^ print this AFTER calling commit so that if an error occurs during the commit it does not print
+					}
 				}
 				else {
 					System.out.println("\nTransaction failed (or cancelled). Rolling back changes.\n");
 					tx.rollback();
+					menu.outcome = "rolled back";
 				}
 
 			} catch (Exception e) {
+				if (tx.isActive()) tx.rollback();
+				menu.outcome = "failed";
 				String message = e.getMessage();
-				if (message.contains("DerbySQLIntegrityConstraintViolationException")) {
+				// A read turned away by admission control ends the screen it was made for
+				if (e instanceof RejectedExecutionException) {
+					System.out.println("\nError: the catalog is busy" + (message == null ? "" : " (" + message + ")")
+							+ "; please try again.");
+				} else if (message != null && message.contains("DerbySQLIntegrityConstraintViolationException")) {
 					if (message.contains("INSERT INTO PUBLISHERS")) {
 						System.out.println("\nError: a publisher already exists with the given information.");
 					} else if (message.contains("INSERT INTO AUTHORING_ENTITIES")) {
@@ -132,11 +306,98 @@ public class JPABooksProject {
 					}
 				}
 			}
+			// Only a choice that was made is recorded, not the wait at the prompt
+			if (menu.choice != null) menu.commit();
 		}
 
 		scanner.close();
+		if (jpa.writeBehind != null) {
+			try {
+				// Commits whatever is still queued
+				jpa.writeBehind.close();
+			} catch (InterruptedException e) {
+				System.out.println("Error: interrupted while committing queued changes.");
+			}
+		}
+		if (Boolean.getBoolean(StatementCacheMonitor.ENABLED_PROPERTY)) {
+			System.out.println("Statement cache: " + StatementCacheMonitor.summary());
+		}
+		if (jpa.prefetcher != null) {
+			System.out.println("Prefetch: " + jpa.prefetcher.summary());
+			try {
+				jpa.prefetcher.close();
+			} catch (Exception e) {
+				System.out.println("Error: could not stop prefetching: " + e.getMessage());
+			}
+		}
+		if (jpa.hotSet != null) {
+			try {
+				jpa.hotSet.close();
+			} catch (IOException e) {
+				System.out.println("Error: could not save the hot set: " + e.getMessage());
+			}
+			System.out.println("Hot set: " + jpa.hotSet.summary());
+		}
+		if (jpa.admission != null) {
+			System.out.println("Admission: " + jpa.admission.summary());
+		}
+		if (jpa.purger != null) {
+			try {
+				jpa.purger.close();
+			} catch (InterruptedException e) {
+				System.out.println("Error: interrupted while stopping the purger.");
+			}
+			System.out.println("Purge: " + jpa.purger.summary());
+		}
+		if (jpa.coordinator != null) {
+			System.out.println("Cache coordination: " + jpa.coordinator.summary());
+			try {
+				jpa.coordinator.close();
+			} catch (Exception e) {
+				System.out.println("Error: could not leave the other instances: " + e.getMessage());
+			}
+		}
+		jpa.router.close();
+		try {
+			jpa.queries.close();
+		} catch (InterruptedException e) {
+			System.out.println("Error: interrupted while finishing background queries.");
+		}
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.out.println("Error: could not close the workload journal: " + e.getMessage());
+			}
+		}
+		factory.close();
+		if (server != null) {
+			try {
+				server.close();
+			} catch (Exception e) {
+				System.out.println("Error: could not stop the network server: " + e.getMessage());
+			}
+		}
 	} // End of the main method
 
+	/**
+	 * Make a write through the service: right away, inside the console's transaction, or in
+	 * write-behind mode by queueing it to be committed with others in the background, in
+	 * which case a failure is reported whenever it happens.
+	 * @param description what the write does, for the error message
+	 * @param write the write to make
+	 */
+	private static void write(String description, Consumer<CatalogService> write) {
+		if (jpa.writeBehind == null) {
+			write.accept(jpa.service);
+			return;
+		}
+		jpa.writeBehind.submit(write).whenComplete((ignored, failure) -> {
+			if (failure != null) System.out.println("\nError: could not " + description + ": " + failure.getMessage());
+		});
+		System.out.println("Queued; it will be committed in the background.");
+	}
+
 	/**
 	 * Display the main menu and prompt the user to make a choice.
 	 * @param scanner the scanner to use for getting input
@@ -207,6 +468,8 @@ public class JPABooksProject {
 					default -> throw new IllegalArgumentException("Please select a valid option (1-3).");
 				}
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -267,6 +530,8 @@ public class JPABooksProject {
 								}
 							}
 				}
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -318,16 +583,12 @@ public class JPABooksProject {
 				if (yearFormedStr.trim().isEmpty()) throw new IllegalArgumentException("Year formed cannot be empty.");
 				int yearFormed = Integer.parseInt(yearFormedStr);
 
-				Writing_Groups writingGroup = new Writing_Groups();
-				writingGroup.setName(name);
-				writingGroup.setEmail(email);
-				writingGroup.setHeadWriter(headWriter);
-				writingGroup.setYearFormed(yearFormed);
-
-				jpa.entityManager.persist(writingGroup);
+				write("add writing group " + name, service -> service.addWritingGroup(name, email, headWriter, yearFormed));
 
 				return true;
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -358,15 +619,12 @@ public class JPABooksProject {
 				else if (adHocTeamName.trim().isEmpty()) throw new IllegalArgumentException("Ad Hoc Team Name cannot be empty.");
 				else if (adHocTeamName.length() > 30) throw new IllegalArgumentException("Ad Hoc Team email cannot exceed 30 characters long.");
 
-				AdHocTeam team = new AdHocTeam();
-
-				team.setAd_hoc_teams_email(adHocTeamEmail);
-				team.setName(adHocTeamName);
-
-				jpa.entityManager.persist(team);
+				write("add ad hoc team " + adHocTeamName, service -> service.addAdHocTeam(adHocTeamName, adHocTeamEmail));
 
 				return true;
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -398,16 +656,13 @@ public class JPABooksProject {
 				else if (individualAuthorName.trim().isEmpty()) throw new IllegalArgumentException("Individual Author Name cannot be empty.");
 				else if (individualAuthorName.length() > 30) throw new IllegalArgumentException("Individual Author Name cannot exceed 30 characters long.");
 
-				IndividualAuthor authors = new IndividualAuthor();
-
-				authors.setIndividual_authors_email(individualAuthorEmail);
-				authors.setName(individualAuthorName);
-
-
-				jpa.entityManager.persist(authors);
+				write("add individual author " + individualAuthorName,
+						service -> service.addIndividualAuthor(individualAuthorName, individualAuthorEmail));
 
 				return true;
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -430,6 +685,7 @@ public class JPABooksProject {
 			try
 			{
 				AdHocTeam team = promptForAdHocTeamChoice(scanner);
+				if (team == null) return false;
 
 				boolean quit = false;
 
@@ -441,13 +697,20 @@ public class JPABooksProject {
 					{
 						quit = true;
 					}
-
-					team.getTeamMembers().add(author);
+					else
+					{
+						String teamEmail = team.getEmail();
+						String authorEmail = author.getEmail();
+						write("add " + author.getName() + " to " + team.getName(), service -> service.addTeamMembership(teamEmail, authorEmail));
+					}
 				}
 
-				jpa.entityManager.persist(team);
 				return true;
 			}
+			catch(RejectedExecutionException e)
+			{
+				throw e;
+			}
 			catch(Exception e)
 			{
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
@@ -486,15 +749,12 @@ public class JPABooksProject {
 				if (phone.trim().equalsIgnoreCase("q")) return false;
 				if (phone.trim().isEmpty()) throw new IllegalArgumentException("Publisher phone cannot be empty.");
 
-				Publishers publisher = new Publishers();
-				publisher.setName(name);
-				publisher.setEmail(email);
-				publisher.setPhone(phone);
-
-				jpa.entityManager.persist(publisher);
+				write("add publisher " + name, service -> service.addPublisher(name, email, phone));
 
 				return true;
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -513,8 +773,14 @@ public class JPABooksProject {
 	 *  		or {@code false} if the user chooses to cancel.
 	 */
 	private static boolean addBook(Scanner scanner) {
+		// The screen needs both lists, so load them side by side
+		CompletableFuture<List<Publishers>> publishersQuery = jpa.queries.getPublishers();
+		CompletableFuture<List<Authoring_Entities>> authorsQuery = jpa.queries.getAuthors();
+		List<Publishers> publishers = publishersQuery.join();
+		List<Authoring_Entities> authors = authorsQuery.join();
+
 		// Cannot add book if there are no publishers or authors
-		if (getAuthors().isEmpty() || getPublishers().isEmpty()) {
+		if (authors.isEmpty() || publishers.isEmpty()) {
 			System.out.println("Error: missing required database information to add a book.");
 			System.out.println("Please ensure at least one publisher and one author exist before attempting to add a book.\n");
 			return false;
@@ -526,11 +792,11 @@ public class JPABooksProject {
 				System.out.println("\n******** ADDING BOOK ********");
 
 				// Prompt for a publisher choice
-				Publishers publisher = promptForPublisherChoice(scanner);
+				Publishers publisher = promptForPublisherChoice(scanner, publishers);
 				if (publisher == null) return false;
 
 				// Prompt for an author choice
-				Authoring_Entities author = promptForAuthorChoice(scanner);
+				Authoring_Entities author = promptForAuthorChoice(scanner, authors);
 				if (author == null) return false;
 
 				// Prompt for an ISBN
@@ -550,17 +816,14 @@ public class JPABooksProject {
 				else if (title.trim().isEmpty()) throw new IllegalArgumentException("Title cannot be empty.");
 				else if (title.length() > 80) throw new IllegalArgumentException("Title cannot exceed 80 characters long.");
 
-				Books book = new Books();
-				book.setAuthor(author);
-				book.setPublisher(publisher);
-				book.setISBN(isbn);
-				book.setYearPublished(year);
-				book.setTitle(title);
-
-				jpa.entityManager.persist(book);
+				String authorEmail = author.getEmail();
+				String publisherName = publisher.getName();
+				write("add book " + isbn, service -> service.addBook(isbn, title, year, authorEmail, publisherName));
 
 				return true;
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -587,35 +850,61 @@ public class JPABooksProject {
 				if (response.trim().equalsIgnoreCase("q")) return false;
 
 				int choice = Integer.parseInt(response);
-				if (choice <= 0 || choice > 3) throw new IllegalArgumentException("Please enter a number 1-3.");
+				if (choice <= 0 || choice > 4) throw new IllegalArgumentException("Please enter a number 1-4.");
 
 				switch (choice) {
 					case 1 -> { // publisher info
 						Publishers publisher = promptForPublisherChoice(scanner);
 						if (publisher == null) return false;
-						displayPublisherInfo(publisher);
+						if (jpa.prefetcher != null) jpa.prefetcher.publisherSelected(publisher.getName(), NEWEST_BOOKS_SHOWN);
+						displayPublisherInfo(lookup(service -> service.getPublisher(publisher.getName())));
+						displayNewestBooks(publisher.getName());
 						return true;
 					}
 					case 2 -> { // book info
 						Books book = promptForBookChoice(scanner);
 						if (book == null) return false;
-						displayBookInfo(book);
+						displayBookInfo(lookup(service -> service.getBook(book.getISBN())));
 						return true;
 					}
 					case 3 -> { // writing group info
 						Writing_Groups writingGroup = promptForWritingGroupChoice(scanner);
 						if (writingGroup == null) return false;
-						displayWritingGroupInfo(writingGroup);
+						if (jpa.prefetcher != null) jpa.prefetcher.authorSelected(writingGroup.getEmail(), WORKS_PAGE_SIZE);
+						displayWritingGroupInfo(lookup(service -> service.getWritingGroup(writingGroup.getEmail())));
+						browseWorks(scanner, writingGroup);
+						return true;
+					}
+					case 4 -> { // catalog statistics
+						displayCatalogStatistics();
 						return true;
 					}
 				}
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
 		}
 	}
 
+	/**
+	 * Look up the entity an info screen shows, counting it towards the hot set.
+	 * @param query the lookup, run on a read-only service
+	 * @return the entity found, or {@code null}
+	 */
+	private static <T> T lookup(Function<CatalogService, T> query) {
+		long start = System.nanoTime();
+		T entity = jpa.router.read(query);
+		if (jpa.hotSet != null) {
+			jpa.hotSet.recordLookup(start);
+			jpa.hotSet.touch(entity);
+		}
+		if (jpa.purger != null) jpa.purger.recordForeground(start);
+		return entity;
+	}
+
 	/**
 	 * Display the menu of entity types to retrieve information for.
 	 */
@@ -624,6 +913,7 @@ public class JPABooksProject {
 		System.out.println("1. Get Publisher Info");
 		System.out.println("2. Get Book Info");
 		System.out.println("3. Get Writing Group Info");
+		System.out.println("4. Get Catalog Statistics");
 	}
 
 	/**
@@ -638,6 +928,22 @@ public class JPABooksProject {
 		System.out.println();
 	}
 
+	/**
+	 * Display the newest books of a publisher, newest first.
+	 * @param publisherName the name of the publisher
+	 */
+	private static void displayNewestBooks(String publisherName) {
+		List<Books> books = jpa.router.read(service -> jpa.prefetcher != null
+				? jpa.prefetcher.getNewestBooks(service, publisherName, NEWEST_BOOKS_SHOWN)
+				: service.getNewestBooks(publisherName, NEWEST_BOOKS_SHOWN));
+		System.out.println("Newest books:");
+		if (books.isEmpty()) System.out.println("  (none)");
+		for (Books book : books) {
+			System.out.println("  " + book.getYearPublished() + "  " + book.getISBN() + "  " + book.getTitle());
+		}
+		System.out.println();
+	}
+
 	/**
 	 * Display the title, author, year published, publisher, and ISBN of a book.
 	 * @param book the book retrieved from the database
@@ -665,6 +971,80 @@ public class JPABooksProject {
 		System.out.println();
 	}
 
+	/**
+	 * Display the number of books per publisher, per type of authoring entity and per year.
+	 * The counts are kept in memory, so the report is instant however large the catalog is.
+	 */
+	private static void displayCatalogStatistics() {
+		System.out.println("\n******** CATALOG STATISTICS ********");
+		System.out.println("Total books: " + jpa.statistics.getTotalBooks());
+		displayCounts("Books per publisher", jpa.statistics.getCounts(CatalogStatistics.Dimension.PUBLISHER));
+		displayCounts("Books per author type", jpa.statistics.getCounts(CatalogStatistics.Dimension.AUTHOR_TYPE));
+		displayCounts("Books per year", jpa.statistics.getCounts(CatalogStatistics.Dimension.YEAR));
+		System.out.println();
+	}
+
+	/**
+	 * Display one group of statistics as a two-column table.
+	 * @param title the heading of the group
+	 * @param counts the number of books in each bucket
+	 */
+	private static void displayCounts(String title, Map<String, Long> counts) {
+		System.out.println("\n" + title + ":");
+		if (counts.isEmpty()) System.out.println("  (none)");
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			System.out.printf("  %-40s %10d%n", entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Let the user page through the works of an authoring entity, oldest first, or check
+	 * whether it wrote a given book. Only the page on screen is ever loaded, so this
+	 * stays fast for authors with tens of thousands of works.
+	 * @param scanner the scanner to use for getting input
+	 * @param author the authoring entity whose works to show
+	 */
+	private static void browseWorks(Scanner scanner, Authoring_Entities author) {
+		long count = jpa.router.read(service -> jpa.prefetcher != null
+				? jpa.prefetcher.countWorks(service, author.getEmail())
+				: service.countWorks(author.getEmail()));
+		System.out.println("Works: " + count);
+		if (count == 0) return;
+
+		int pages = (int) ((count + WORKS_PAGE_SIZE - 1) / WORKS_PAGE_SIZE);
+		int page = 0;
+		while (true) {
+			int offset = page * WORKS_PAGE_SIZE;
+			List<Books> works;
+			if (jpa.prefetcher != null) {
+				works = jpa.router.read(service -> jpa.prefetcher.getWorksPage(service, author.getEmail(), offset, WORKS_PAGE_SIZE));
+				// Paging on is the likeliest next step
+				if (page + 1 < pages) jpa.prefetcher.worksPageShown(author.getEmail(), offset, WORKS_PAGE_SIZE);
+			} else {
+				works = jpa.router.read(service -> service.getWorksPage(author.getEmail(), offset, WORKS_PAGE_SIZE));
+			}
+			System.out.println("\n******** WORKS (page " + (page + 1) + " of " + pages + ") ********");
+			for (Books book : works) {
+				System.out.println(book.getYearPublished() + "  " + book.getISBN() + "  " + book.getTitle());
+			}
+
+			String response = promptForString(scanner, "\nN for the next page, P for the previous page, an ISBN to look for, or Q to finish: ").trim();
+			if (response.equalsIgnoreCase("q")) return;
+			else if (response.equalsIgnoreCase("n")) {
+				if (page + 1 < pages) page++;
+				else System.out.println("Error: this is the last page.");
+			}
+			else if (response.equalsIgnoreCase("p")) {
+				if (page > 0) page--;
+				else System.out.println("Error: this is the first page.");
+			}
+			else if (jpa.router.read(service -> service.hasWork(author.getEmail(), response))) {
+				System.out.println(response + " is a work of " + author.getName() + ".");
+			}
+			else System.out.println(response + " is not a work of " + author.getName() + ".");
+		}
+	}
+
 	/**
 	 * Display a list of books retrieved from the database, and
 	 * prompt the user for a choice.
@@ -695,6 +1075,8 @@ public class JPABooksProject {
 				// if the choice is valid, return that publisher
 				return books.get(choice - 1);
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -746,6 +1128,8 @@ public class JPABooksProject {
 				// if the choice is valid, return that publisher
 				return authors.get(choice - 1);
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -780,6 +1164,8 @@ public class JPABooksProject {
 				// if the choice is valid, return that team
 				return teams.get(choice - 1);
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -816,6 +1202,8 @@ public class JPABooksProject {
 				// if the choice is valid, return that publisher
 				return writingGroups.get(choice - 1);
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -892,11 +1280,14 @@ public class JPABooksProject {
 
 				// prompt for a new author using promptForAuthorChoice or whatever I called it
 				Authoring_Entities authorToUpdate = promptForAuthorChoice(scanner);
+				if (authorToUpdate == null) return false;
 
-				bookToEdit.setAuthor(authorToUpdate);
+				jpa.service.updateBookAuthor(bookToEdit.getISBN(), authorToUpdate.getEmail());
 
 				return true;
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -909,9 +1300,9 @@ public class JPABooksProject {
 		Books book = promptForBookChoice(scanner);
 
 		if(book!=null) {
+			jpa.service.deleteBook(book.getISBN());
 			// Provide helpful message for deleted book
 			System.out.println(book.getTitle() + " has been deleted (ISBN: " + book.getISBN() + ")");
-			jpa.entityManager.remove(book);
 			return true;
 		}
 
@@ -945,6 +1336,8 @@ public class JPABooksProject {
 
 				return true;
 
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -998,7 +1391,18 @@ public class JPABooksProject {
 	 * 			there are no existing publishers in the database
 	 */
 	private static Publishers promptForPublisherChoice(Scanner scanner) {
-		List<Publishers> publishers = getPublishers();
+		return promptForPublisherChoice(scanner, getPublishers());
+	}
+
+	/**
+	 * Display a list of publishers that was already retrieved, and
+	 * prompt the user for a choice.
+	 * @param scanner the scanner to use for getting input
+	 * @param publishers the publishers to choose from
+	 * @return the {@code Publishers} object corresponding to the user's choice,
+	 * 			or {@code null} if the user chooses to cancel or the list is empty
+	 */
+	private static Publishers promptForPublisherChoice(Scanner scanner, List<Publishers> publishers) {
 		if (publishers.isEmpty()) {
 			System.out.println("\nError: missing required database information.");
 			System.out.println("Please ensure at least one publisher entry exists before requesting publisher info.");
@@ -1017,6 +1421,8 @@ public class JPABooksProject {
 
 				// if the choice is valid, return that publisher
 				return publishers.get(choice - 1);
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -1049,7 +1455,18 @@ public class JPABooksProject {
 	 * 			cancel or there are no existing authors in the database
 	 */
 	private static Authoring_Entities promptForAuthorChoice(Scanner scanner) {
-		List<Authoring_Entities> authors = getAuthors();
+		return promptForAuthorChoice(scanner, getAuthors());
+	}
+
+	/**
+	 * Display a list of authoring entities that was already retrieved, and
+	 * prompt the user for a choice.
+	 * @param scanner the scanner to use for getting input
+	 * @param authors the authoring entities to choose from
+	 * @return the {@code Authoring_Entities} object corresponding to the user's
+	 * 			choice, or {@code null} if the user chooses to cancel or the list is empty
+	 */
+	private static Authoring_Entities promptForAuthorChoice(Scanner scanner, List<Authoring_Entities> authors) {
 		if (authors.isEmpty()) {
 			System.out.println("\nError: missing required database information.");
 			System.out.println("Please ensure at least one author entry exists before requesting author info.");
@@ -1068,6 +1485,8 @@ public class JPABooksProject {
 
 				// if the choice is valid, return that publisher
 				return authors.get(choice - 1);
+			} catch (RejectedExecutionException e) {
+				throw e;
 			} catch (Exception e) {
 				System.out.println("Error: " + e.getMessage() + "; Please try again.");
 			}
@@ -1125,7 +1544,7 @@ public class JPABooksProject {
 	 * @return a List of publishers retrieved
 	 */
 	public static List<Publishers> getPublishers() {
-		return jpa.entityManager.createNamedQuery("ReturnAllPublishers", Publishers.class).getResultList();
+		return jpa.router.read(CatalogService::getPublishers);
 	}
 
 	/**
@@ -1133,7 +1552,7 @@ public class JPABooksProject {
 	 * @return a List of all authoring entities retrieved
 	 */
 	public static List<Authoring_Entities> getAuthors() {
-		return jpa.entityManager.createNamedQuery("ReturnAllAuthors", Authoring_Entities.class).getResultList();
+		return jpa.router.read(CatalogService::getAuthors);
 	}
 
 	/**
@@ -1141,7 +1560,7 @@ public class JPABooksProject {
 	 * @return a List of all writing groups retrieved
 	 */
 	public static List<Writing_Groups> getWritingGroups() {
-		return jpa.entityManager.createNamedQuery("ReturnAllWritingGroups", Writing_Groups.class).getResultList();
+		return jpa.router.read(CatalogService::getWritingGroups);
 	}
 
 	/**
@@ -1149,7 +1568,7 @@ public class JPABooksProject {
 	 * @return a List of all individual authors retrieved
 	 */
 	public static List<IndividualAuthor> getIndividualAuthors() {
-		return jpa.entityManager.createNamedQuery("ReturnAllIndividualAuthors", IndividualAuthor.class).getResultList();
+		return jpa.router.read(CatalogService::getIndividualAuthors);
 	}
 
 	/**
@@ -1157,7 +1576,7 @@ public class JPABooksProject {
 	 * @return a List of all ad hoc teams retrieved
 	 */
 	public static List<AdHocTeam> getAdHocTeams() {
-		return jpa.entityManager.createNamedQuery("ReturnAllAdHocTeams", AdHocTeam.class).getResultList();
+		return jpa.router.read(CatalogService::getAdHocTeams);
 	}
 
 	/**
@@ -1165,7 +1584,7 @@ public class JPABooksProject {
 	 * @return a List of all books retrieved
 	 */
 	public static List<Books> getBooks() {
-		return jpa.entityManager.createNamedQuery("ReturnAllBooks", Books.class).getResultList();
+		return jpa.router.read(CatalogService::getBooks);
 	}
 
 	/**
@@ -1176,7 +1595,7 @@ public class JPABooksProject {
 	 */
 	public <E> void createEntity(List <E> entities) {
 		for (E next : entities) {
-			LOGGER.info("Persisting: " + next);
+			LOGGER.info(() -> "Persisting: " + next);
 			// Use the CustomerOrders entityManager instance variable to get our EntityManager.
 			this.entityManager.persist(next);
 		}
@@ -1185,7 +1604,7 @@ public class JPABooksProject {
 		// generate a value.  So the previous for loop will not show a value for the ID.  But
 		// now that the Entity has been persisted, JPA has generated the ID and filled that in.
 		for (E next : entities) {
-			LOGGER.info("Persisted object after flush (non-null id): " + next);
+			LOGGER.info(() -> "Persisted object after flush (non-null id): " + next);
 		}
 	} // End of createEntity member method
 
@@ -1197,14 +1616,7 @@ public class JPABooksProject {
 	 */
 	public Publishers getPublisher(String name) {
 		// Run the native query that we defined in the Publisher entity to find the right style.
-		List<Publishers> publishers = this.entityManager.createNamedQuery("ReturnPublisher",
-				Publishers.class).setParameter(1, name).getResultList();
-		if (publishers.size() == 0) {
-			// Invalid style name passed in.
-			return null;
-		} else {
-			// Return the style object that they asked for.
-			return publishers.get(0);
-		}
+		// Returns null if there is no publisher with that name.
+		return this.service.getPublisher(name);
 	}// End of the getStyle method
 } // End of CustomerOrders class
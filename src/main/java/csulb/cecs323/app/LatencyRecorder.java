@@ -0,0 +1,109 @@
+package csulb.cecs323.app;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free latency histogram. Each power of two is split into
+ * 16 linear sub-buckets, so recorded values keep about 6% precision from
+ * nanoseconds up to hours while the recorder itself never allocates.
+ */
+public class LatencyRecorder {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Record one latency.
+	 * @param nanos the latency in nanoseconds; negative values are treated as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Record the time elapsed since a {@link System#nanoTime()} reading.
+	 * @param startNanos the reading taken when the timed work began
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Add every value recorded by another recorder to this one.
+	 * @param other the recorder to merge in
+	 */
+	public void add(LatencyRecorder other) {
+		for (int i = 0; i < buckets.length(); i++) {
+			long n = other.buckets.get(i);
+			if (n != 0) buckets.addAndGet(i, n);
+		}
+		count.add(other.count.sum());
+		total.add(other.total.sum());
+		max.accumulate(other.max.get());
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMaxNanos() {
+		return max.get();
+	}
+
+	public double getMeanNanos() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	/**
+	 * @param percentile a value between 0 and 100
+	 * @return the latency below which the given share of recorded values fall, in nanoseconds
+	 */
+	public long getPercentileNanos(double percentile) {
+		long n = count.sum();
+		if (n == 0) return 0;
+		long rank = (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100.0);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) return Math.min(upperBoundOf(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return a one-line summary of the recorded latencies in microseconds
+	 */
+	public String summary() {
+		return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+				getCount(), getMeanNanos() / 1e3, getPercentileNanos(50) / 1e3, getPercentileNanos(90) / 1e3,
+				getPercentileNanos(99) / 1e3, getMaxNanos() / 1e3);
+	}
+
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long width = 1L << (magnitude - SUB_BUCKET_BITS);
+		return (1L << magnitude) + (sub + 1) * width - 1;
+	}
+}
@@ -0,0 +1,76 @@
+package csulb.cecs323.app;
+
+import org.apache.derby.drda.NetworkServerControl;
+
+import java.io.PrintWriter;
+import java.net.InetAddress;
+
+/**
+ * A Derby Network Server running inside this JVM, so that several instances of the
+ * application can share one catalog. Embedded Derby locks the database directory
+ * to a single JVM; with this mode, one node (started with
+ * {@code -Djpabooks.network.role=server}) opens the database and serves it, and every
+ * other node runs with {@code -Djpabooks.profile=network} and connects through the
+ * client driver.
+ */
+public class NetworkServer implements AutoCloseable {
+
+	/** System property naming this node's role: {@code server} starts the network server. */
+	public static final String ROLE_PROPERTY = "jpabooks.network.role";
+
+	private final NetworkServerControl control;
+
+	private NetworkServer(NetworkServerControl control) {
+		this.control = control;
+	}
+
+	/**
+	 * @return {@code true} if this node was started as the one serving the catalog
+	 */
+	public static boolean isServerNode() {
+		return "server".equalsIgnoreCase(System.getProperty(ROLE_PROPERTY, ""));
+	}
+
+	/**
+	 * Start a network server on the host and port named by {@code jpabooks.network.host}
+	 * and {@code jpabooks.network.port}, the same ones client nodes connect to.
+	 * @return the running server
+	 */
+	public static NetworkServer start() throws Exception {
+		return start(System.getProperty(PersistenceProfile.HOST_PROPERTY, PersistenceProfile.DEFAULT_HOST),
+				Integer.getInteger(PersistenceProfile.PORT_PROPERTY, PersistenceProfile.DEFAULT_PORT));
+	}
+
+	/**
+	 * Start a network server and wait until it accepts connections.
+	 * @param host the address to listen on
+	 * @param port the port to listen on
+	 * @return the running server
+	 */
+	public static NetworkServer start(String host, int port) throws Exception {
+		NetworkServerControl control = new NetworkServerControl(InetAddress.getByName(host), port);
+		control.start(new PrintWriter(System.err, true));
+
+		// start() returns before the server is listening, so poll until it answers
+		Exception lastFailure = null;
+		for (int attempt = 0; attempt < 50; attempt++) {
+			try {
+				control.ping();
+				return new NetworkServer(control);
+			} catch (Exception e) {
+				lastFailure = e;
+				Thread.sleep(100);
+			}
+		}
+		control.shutdown();
+		throw new IllegalStateException("The Derby network server did not start on " + host + ":" + port, lastFailure);
+	}
+
+	/**
+	 * Stop serving the catalog. Client nodes lose their connections.
+	 */
+	@Override
+	public void close() throws Exception {
+		control.shutdown();
+	}
+}
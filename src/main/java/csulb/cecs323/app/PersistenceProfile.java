@@ -0,0 +1,175 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ways the {@code JPABooksProject} persistence unit can reach its Derby database.
+ * The profile is picked at startup from the {@code jpabooks.profile} system property
+ * (or the {@code JPABOOKS_PROFILE} environment variable), so switching between them
+ * never requires editing {@code persistence.xml}.
+ */
+public enum PersistenceProfile {
+
+	/**
+	 * An on-disk database under {@code database/}, opened by the embedded driver.
+	 * This is what {@code persistence.xml} describes, and the default.
+	 */
+	EMBEDDED("org.apache.derby.jdbc.EmbeddedDriver"),
+
+	/**
+	 * A database that lives only in the memory of this JVM. Nothing touches the disk,
+	 * and nothing is left behind once the JVM exits.
+	 */
+	MEMORY("org.apache.derby.jdbc.EmbeddedDriver"),
+
+	/**
+	 * A database served by a Derby Network Server, reached with the client driver.
+	 * The server is found at {@code jpabooks.network.host} / {@code jpabooks.network.port},
+	 * and is usually a node started with {@code -Djpabooks.network.role=server} (see
+	 * {@link NetworkServer}). Connections are pooled, and the schema is left untouched.
+	 */
+	NETWORK("org.apache.derby.jdbc.ClientDriver");
+
+	/** Name of the persistence unit defined in {@code persistence.xml}. */
+	public static final String PERSISTENCE_UNIT = "JPABooksProject";
+
+	/** Name of the project's own database. */
+	public static final String DEFAULT_DATABASE = "JPABooksProject";
+
+	/** System property selecting the profile. */
+	public static final String PROFILE_PROPERTY = "jpabooks.profile";
+
+	public static final String HOST_PROPERTY = "jpabooks.network.host";
+	public static final String PORT_PROPERTY = "jpabooks.network.port";
+
+	public static final String DEFAULT_HOST = "localhost";
+	public static final int DEFAULT_PORT = 1527;
+
+	/** System properties sizing the connection pool of the network profile. */
+	public static final String POOL_MIN_PROPERTY = "jpabooks.pool.min";
+	public static final String POOL_MAX_PROPERTY = "jpabooks.pool.max";
+
+	/** System property setting how many prepared statements each connection keeps; 0 keeps none. */
+	public static final String STATEMENT_CACHE_PROPERTY = "jpabooks.statementcache.size";
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+	private final String driver;
+
+	PersistenceProfile(String driver) {
+		this.driver = driver;
+	}
+
+	/**
+	 * @return the profile named by the {@code jpabooks.profile} system property or the
+	 * 			{@code JPABOOKS_PROFILE} environment variable, or {@link #EMBEDDED} if neither is set
+	 */
+	public static PersistenceProfile fromEnvironment() {
+		String name = System.getProperty(PROFILE_PROPERTY, System.getenv("JPABOOKS_PROFILE"));
+		if (name == null || name.isBlank()) return EMBEDDED;
+		try {
+			return valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown persistence profile '" + name + "'; expected embedded, memory or network.");
+		}
+	}
+
+	/**
+	 * @return the JDBC driver class used by this profile
+	 */
+	public String getDriver() {
+		return driver;
+	}
+
+	/**
+	 * Build the JDBC URL of a database under this profile. On-disk and network databases
+	 * both live under {@code database/}, so a network server started from the project
+	 * directory serves the same files the embedded profile uses.
+	 * @param databaseName the name of the database
+	 * @return a URL that creates the database if it does not exist yet
+	 */
+	public String jdbcUrl(String databaseName) {
+		return switch (this) {
+			case EMBEDDED -> "jdbc:derby:database/" + databaseName + ";create=true";
+			case MEMORY -> "jdbc:derby:memory:" + databaseName + ";create=true";
+			case NETWORK -> "jdbc:derby://" + host() + ":" + port() + "/database/" + databaseName + ";create=true";
+		};
+	}
+
+	/**
+	 * Build the persistence unit property overrides for a database under this profile.
+	 * @param databaseName the name of the database
+	 * @return properties to pass to {@link Persistence#createEntityManagerFactory(String, Map)}
+	 */
+	public Map<String, Object> properties(String databaseName) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("javax.persistence.jdbc.driver", driver);
+		properties.put("javax.persistence.jdbc.url", jdbcUrl(databaseName));
+		// Each pooled connection keeps its most recent prepared statements, so the point
+		// lookups repeated on every screen skip the prepare after their first run
+		int statementCache = Integer.getInteger(STATEMENT_CACHE_PROPERTY, DEFAULT_STATEMENT_CACHE_SIZE);
+		properties.put("eclipselink.jdbc.cache-statements", Boolean.toString(statementCache > 0));
+		if (statementCache > 0) properties.put("eclipselink.jdbc.cache-statements.size", Integer.toString(statementCache));
+		if (Boolean.getBoolean(StatementCacheMonitor.ENABLED_PROPERTY)) {
+			properties.put("eclipselink.session.customizer", StatementCacheMonitor.class.getName());
+		}
+		if (this == NETWORK) {
+			// The node serving the catalog owns its schema; client nodes must never drop and recreate it
+			properties.put("javax.persistence.schema-generation.database.action", "none");
+			// Opening a client connection costs a network round trip or more, so keep a pool of them warm
+			int min = Integer.getInteger(POOL_MIN_PROPERTY, 2);
+			int max = Integer.getInteger(POOL_MAX_PROPERTY, 16);
+			properties.put("eclipselink.connection-pool.default.initial", Integer.toString(min));
+			properties.put("eclipselink.connection-pool.default.min", Integer.toString(min));
+			properties.put("eclipselink.connection-pool.default.max", Integer.toString(Math.max(min, max)));
+		}
+		return properties;
+	}
+
+	/**
+	 * Create a factory for the project's default database under this profile.
+	 * @return the new factory
+	 */
+	public EntityManagerFactory createEntityManagerFactory() {
+		return createEntityManagerFactory(DEFAULT_DATABASE, Map.of());
+	}
+
+	/**
+	 * Create a factory for a named database under this profile.
+	 * @param databaseName the name of the database
+	 * @param overrides additional persistence unit properties, which win over the profile's own
+	 * @return the new factory
+	 */
+	public EntityManagerFactory createEntityManagerFactory(String databaseName, Map<String, ?> overrides) {
+		Map<String, Object> properties = properties(databaseName);
+		properties.putAll(overrides);
+		return Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, properties);
+	}
+
+	/**
+	 * Throw away an in-memory database. Does nothing for the other profiles, whose
+	 * databases are meant to outlive the JVM.
+	 * @param databaseName the name of the database
+	 */
+	public void dropDatabase(String databaseName) {
+		if (this != MEMORY) return;
+		try {
+			DriverManager.getConnection("jdbc:derby:memory:" + databaseName + ";drop=true").close();
+		} catch (SQLException e) {
+			// Derby reports a successful drop with SQLState 08006
+			if (!"08006".equals(e.getSQLState())) throw new IllegalStateException("Could not drop " + databaseName, e);
+		}
+	}
+
+	private static String host() {
+		return System.getProperty(HOST_PROPERTY, DEFAULT_HOST);
+	}
+
+	private static int port() {
+		return Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+	}
+}
@@ -0,0 +1,240 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.feed.ChangeFeed;
+import csulb.cecs323.feed.TransactionCallbacks;
+import csulb.cecs323.model.Books;
+
+import javax.persistence.EntityManager;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Loads what the info screens are likely to show next while the operator is still
+ * reading the current one: once a publisher is picked its newest books, once an author
+ * is picked the number of its works and their first page, and while a page of works is
+ * on screen the page after it.
+ * <p>
+ * Prefetched results wait in a small cache, the least recently used dropped first when
+ * it is full. A screen asks the prefetcher instead of the service; if the result is
+ * cached, or still on its way, it is a hit and the screen takes it, otherwise a miss and
+ * the screen queries as usual. Any change committed to the catalog empties the cache. A
+ * transaction registered with {@link #invalidateOnCommit(EntityManager)}, as the console's
+ * are, empties it as it commits, so the screen after a change never shows results from
+ * before it; other commits, e.g. of the write-behind queue, empty it once the change feed
+ * delivers them, an instant later.
+ * <p>
+ * The hit rate and the number of prefetched results that were never used tell whether
+ * prefetching pays for the queries it adds.
+ */
+public class Prefetcher implements AutoCloseable {
+
+	/** System property that turns prefetching on in the application when {@code true}. */
+	public static final String ENABLED_PROPERTY = "jpabooks.prefetch";
+	/** System property setting the most results cached. */
+	public static final String CAPACITY_PROPERTY = "jpabooks.prefetch.capacity";
+
+	private final AsyncQueries queries;
+	private final Map<String, Entry> cache;
+	private final AutoCloseable subscription;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder prefetched = new LongAdder();
+	private final LongAdder unused = new LongAdder();
+
+	/**
+	 * @param queries where to run the prefetching queries
+	 * @param capacity the most results cached
+	 */
+	public Prefetcher(AsyncQueries queries, int capacity) {
+		this.queries = queries;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= capacity) return false;
+				if (!eldest.getValue().used) unused.increment();
+				return true;
+			}
+		};
+		this.subscription = ChangeFeed.getInstance().subscribe(event -> invalidate());
+	}
+
+	/**
+	 * @return a prefetcher configured by the {@code jpabooks.prefetch} system properties, or
+	 * 			{@code null} if prefetching was not requested
+	 */
+	public static Prefetcher fromEnvironment(AsyncQueries queries) {
+		if (!Boolean.getBoolean(ENABLED_PROPERTY)) return null;
+		return new Prefetcher(queries, Integer.getInteger(CAPACITY_PROPERTY, 64));
+	}
+
+	// ---- Hints that something was selected ----
+
+	/**
+	 * A publisher was picked; its newest books are likely next.
+	 * @param count how many of the newest books the screen shows
+	 */
+	public void publisherSelected(String publisherName, int count) {
+		prefetch(newestKey(publisherName, count), service -> service.getNewestBooks(publisherName, count));
+	}
+
+	/**
+	 * An authoring entity was picked; its works are likely next.
+	 * @param pageSize how many works the screen shows at a time
+	 */
+	public void authorSelected(String authorEmail, int pageSize) {
+		prefetch(countKey(authorEmail), service -> service.countWorks(authorEmail));
+		prefetch(pageKey(authorEmail, 0, pageSize), service -> service.getWorksPage(authorEmail, 0, pageSize));
+	}
+
+	/**
+	 * A page of works is on screen; the next page is likely next.
+	 * @param offset the offset of the page on screen
+	 * @param pageSize how many works the screen shows at a time
+	 */
+	public void worksPageShown(String authorEmail, int offset, int pageSize) {
+		int next = offset + pageSize;
+		prefetch(pageKey(authorEmail, next, pageSize), service -> service.getWorksPage(authorEmail, next, pageSize));
+	}
+
+	// ---- Reads that may be served from the cache ----
+	// Each takes the caller's own service, which answers on a miss.
+
+	public List<Books> getNewestBooks(CatalogService service, String publisherName, int count) {
+		return get(newestKey(publisherName, count), () -> service.getNewestBooks(publisherName, count));
+	}
+
+	public long countWorks(CatalogService service, String authorEmail) {
+		return get(countKey(authorEmail), () -> service.countWorks(authorEmail));
+	}
+
+	public List<Books> getWorksPage(CatalogService service, String authorEmail, int offset, int limit) {
+		return get(pageKey(authorEmail, offset, limit), () -> service.getWorksPage(authorEmail, offset, limit));
+	}
+
+	// ---- Metrics ----
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the share of reads served by a prefetch, from 0 to 1
+	 */
+	public double getHitRate() {
+		long total = hits.sum() + misses.sum();
+		return total == 0 ? 0 : (double) hits.sum() / total;
+	}
+
+	/**
+	 * @return the number of prefetching queries started
+	 */
+	public long getPrefetchCount() {
+		return prefetched.sum();
+	}
+
+	/**
+	 * @return the number of prefetched results dropped or invalidated without being read
+	 */
+	public long getUnusedCount() {
+		return unused.sum();
+	}
+
+	/**
+	 * @return a one-line account of how well prefetching did
+	 */
+	public String summary() {
+		return String.format("prefetched=%d hits=%d misses=%d hitRate=%.0f%% unused=%d",
+				getPrefetchCount(), getHitCount(), getMissCount(), getHitRate() * 100, getUnusedCount());
+	}
+
+	@Override
+	public void close() throws Exception {
+		subscription.close();
+		invalidate();
+	}
+
+	// ---- Cache ----
+
+	private void prefetch(String key, Function<CatalogService, ?> query) {
+		synchronized (cache) {
+			if (cache.containsKey(key)) return;
+			cache.put(key, new Entry(queries.query(query)));
+		}
+		prefetched.increment();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(String key, Supplier<T> query) {
+		Entry entry;
+		synchronized (cache) {
+			entry = cache.get(key);
+			if (entry != null) entry.used = true;
+		}
+		if (entry != null) {
+			try {
+				T result = (T) entry.result.join();
+				hits.increment();
+				return result;
+			} catch (RuntimeException e) {
+				// A failed prefetch is simply a miss
+			}
+		}
+		misses.increment();
+		return query.get();
+	}
+
+	/**
+	 * Drop every prefetched result once the transaction of an EntityManager commits, on the
+	 * committing thread, rather than when the change feed gets to it.
+	 * @param entityManager the EntityManager, with its transaction open
+	 */
+	public void invalidateOnCommit(EntityManager entityManager) {
+		TransactionCallbacks.afterCommit(entityManager, this::invalidate);
+	}
+
+	/**
+	 * Drop every prefetched result, e.g. because another process changed the catalog.
+	 */
+	public void invalidate() {
+		synchronized (cache) {
+			for (Entry entry : cache.values()) {
+				if (!entry.used) unused.increment();
+			}
+			cache.clear();
+		}
+	}
+
+	private static String newestKey(String publisherName, int count) {
+		return "newest:" + count + ":" + publisherName;
+	}
+
+	private static String countKey(String authorEmail) {
+		return "count:" + authorEmail;
+	}
+
+	private static String pageKey(String authorEmail, int offset, int limit) {
+		return "page:" + offset + ":" + limit + ":" + authorEmail;
+	}
+
+	/**
+	 * A cached result, possibly still being loaded.
+	 */
+	private static class Entry {
+		final CompletableFuture<?> result;
+		boolean used;
+
+		Entry(CompletableFuture<?> result) {
+			this.result = result;
+		}
+	}
+}
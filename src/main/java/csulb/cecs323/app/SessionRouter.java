@@ -0,0 +1,191 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sends reads and writes to separate pools of EntityManagers, so that a read never waits
+ * for a connection held by a write.
+ * <p>
+ * Reads run on read-only services ({@link CatalogService#readOnly}), whose queries hand
+ * back EclipseLink's shared cache objects instead of copies registered for change
+ * tracking; they run outside any transaction, and the objects they return must not be
+ * modified. Writes run on ordinary services, each in a transaction of its own that is
+ * committed when the write returns and rolled back if it throws.
+ * <p>
+ * When every EntityManager of a pool is busy, the next caller waits for one; the time
+ * spent waiting is recorded, so an undersized pool shows up in the metrics. With an
+ * {@link AdmissionController}, callers are admitted before they borrow an EntityManager,
+ * so that a burst is queued or turned away there instead.
+ */
+public class SessionRouter implements AutoCloseable {
+
+	/** System property setting the number of read-only EntityManagers. */
+	public static final String READERS_PROPERTY = "jpabooks.router.readers";
+	/** System property setting the number of read-write EntityManagers. */
+	public static final String WRITERS_PROPERTY = "jpabooks.router.writers";
+
+	private final List<EntityManager> entityManagers = new ArrayList<>();
+	private final BlockingQueue<CatalogService> readers;
+	private final BlockingQueue<CatalogService> writers;
+
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LatencyRecorder readWait = new LatencyRecorder();
+	private final LatencyRecorder writeWait = new LatencyRecorder();
+	private volatile AdmissionController admission;
+
+	/**
+	 * @param factory the database to route to
+	 * @param journal where to record the operations, or {@code null} not to record
+	 * @param statistics the statistics for writes to keep current, or {@code null} for none
+	 * @param readers the number of read-only EntityManagers
+	 * @param writers the number of read-write EntityManagers
+	 */
+	public SessionRouter(EntityManagerFactory factory, WorkloadJournal journal, CatalogStatistics statistics,
+	                     int readers, int writers) {
+		if (readers < 1 || writers < 1) throw new IllegalArgumentException("Each pool needs at least one EntityManager.");
+		this.readers = new ArrayBlockingQueue<>(readers);
+		this.writers = new ArrayBlockingQueue<>(writers);
+		for (int i = 0; i < readers; i++) {
+			EntityManager entityManager = factory.createEntityManager();
+			entityManagers.add(entityManager);
+			this.readers.add(CatalogService.readOnly(entityManager, journal));
+		}
+		for (int i = 0; i < writers; i++) {
+			EntityManager entityManager = factory.createEntityManager();
+			entityManagers.add(entityManager);
+			this.writers.add(new CatalogService(entityManager, journal, statistics));
+		}
+	}
+
+	/**
+	 * @return a router with {@code jpabooks.router.readers} read-only EntityManagers (default 4)
+	 * 			and {@code jpabooks.router.writers} read-write ones (default 1)
+	 */
+	public static SessionRouter fromEnvironment(EntityManagerFactory factory, WorkloadJournal journal,
+	                                            CatalogStatistics statistics) {
+		return new SessionRouter(factory, journal, statistics,
+				Integer.getInteger(READERS_PROPERTY, 4), Integer.getInteger(WRITERS_PROPERTY, 1));
+	}
+
+	/**
+	 * @param admission the admission control to run every read and write through, or {@code null} for none
+	 */
+	public void setAdmission(AdmissionController admission) {
+		this.admission = admission;
+	}
+
+	/**
+	 * Run a read on a read-only service, admitted as an info operation.
+	 * @param query the read; the objects it returns must not be modified
+	 * @return the query's result
+	 * @throws java.util.concurrent.RejectedExecutionException if admission control turns it away
+	 */
+	public <T> T read(Function<CatalogService, T> query) {
+		AdmissionController admission = this.admission;
+		if (admission == null) return readNow(query);
+		return admission.admit(AdmissionController.Lane.INFO, () -> readNow(query));
+	}
+
+	private <T> T readNow(Function<CatalogService, T> query) {
+		CatalogService service = borrow(readers, readWait);
+		try {
+			reads.increment();
+			return query.apply(service);
+		} finally {
+			service.getEntityManager().clear();
+			readers.add(service);
+		}
+	}
+
+	/**
+	 * Run a write on a read-write service, in a transaction of its own, admitted as an update.
+	 * @param change the write
+	 */
+	public void write(Consumer<CatalogService> change) {
+		write(AdmissionController.Lane.UPDATE, change);
+	}
+
+	/**
+	 * Run a write on a read-write service, in a transaction of its own.
+	 * @param lane the lane admission control admits the write in
+	 * @param change the write
+	 * @throws java.util.concurrent.RejectedExecutionException if admission control turns it away
+	 */
+	public void write(AdmissionController.Lane lane, Consumer<CatalogService> change) {
+		AdmissionController admission = this.admission;
+		if (admission == null) writeNow(change);
+		else admission.admit(lane, () -> writeNow(change));
+	}
+
+	private void writeNow(Consumer<CatalogService> change) {
+		CatalogService service = borrow(writers, writeWait);
+		EntityTransaction tx = service.getEntityManager().getTransaction();
+		try {
+			tx.begin();
+			change.accept(service);
+			tx.commit();
+			writes.increment();
+		} finally {
+			if (tx.isActive()) tx.rollback();
+			service.getEntityManager().clear();
+			writers.add(service);
+		}
+	}
+
+	public long getReadCount() {
+		return reads.sum();
+	}
+
+	public long getWriteCount() {
+		return writes.sum();
+	}
+
+	/**
+	 * @return how long reads waited for a free read-only EntityManager
+	 */
+	public LatencyRecorder getReadWait() {
+		return readWait;
+	}
+
+	/**
+	 * @return how long writes waited for a free read-write EntityManager
+	 */
+	public LatencyRecorder getWriteWait() {
+		return writeWait;
+	}
+
+	/**
+	 * @return a one-line account of the routing
+	 */
+	public String summary() {
+		return String.format("reads=%d writes=%d readWait[%s] writeWait[%s]",
+				getReadCount(), getWriteCount(), readWait.summary(), writeWait.summary());
+	}
+
+	@Override
+	public void close() {
+		for (EntityManager entityManager : entityManagers) entityManager.close();
+	}
+
+	private static CatalogService borrow(BlockingQueue<CatalogService> pool, LatencyRecorder wait) {
+		long start = System.nanoTime();
+		try {
+			CatalogService service = pool.take();
+			wait.recordSince(start);
+			return service;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for an EntityManager.", e);
+		}
+	}
+}
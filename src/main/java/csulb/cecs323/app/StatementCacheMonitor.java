@@ -0,0 +1,162 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.Connector;
+import org.eclipse.persistence.sessions.DatabaseLogin;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often EclipseLink's prepared-statement cache saves a prepare.
+ * <p>
+ * Every SQL statement EclipseLink runs is first obtained for its connection, and the
+ * profiler sees each of these requests. Only those the cache cannot serve reach the JDBC
+ * connection as a {@code prepareStatement}, which the monitor counts by wrapping the
+ * connections it hands out. The difference between the two is the number of cache hits.
+ * Statements prepared outside such a request, e.g. by schema generation, are not counted.
+ * <p>
+ * Registered as the {@code eclipselink.session.customizer} of a persistence unit, which
+ * {@link PersistenceProfile} does when {@code jpabooks.statementcache.monitor} is
+ * {@code true}. The counts are shared by every persistence unit customized this way.
+ */
+public class StatementCacheMonitor implements SessionCustomizer {
+
+	/** System property that installs the monitor when {@code true}. */
+	public static final String ENABLED_PROPERTY = "jpabooks.statementcache.monitor";
+
+	private static final LongAdder requests = new LongAdder();
+	private static final LongAdder prepares = new LongAdder();
+	// Whether the current thread is obtaining a statement for EclipseLink
+	private static final ThreadLocal<Boolean> inRequest = ThreadLocal.withInitial(() -> false);
+
+	@Override
+	public void customize(Session session) {
+		DatabaseLogin login = (DatabaseLogin) session.getDatasourceLogin();
+		login.setConnector(new CountingConnector(login.getConnector()));
+		session.setProfiler(new RequestCounter());
+	}
+
+	/**
+	 * @return the number of statements EclipseLink asked for
+	 */
+	public static long getRequestCount() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return the number of statements prepared on a connection, i.e. cache misses
+	 */
+	public static long getPrepareCount() {
+		return prepares.sum();
+	}
+
+	/**
+	 * @return the number of statements served from the cache
+	 */
+	public static long getHitCount() {
+		return Math.max(0, requests.sum() - prepares.sum());
+	}
+
+	/**
+	 * @return the share of statements served from the cache, from 0 to 1
+	 */
+	public static double getHitRate() {
+		long total = requests.sum();
+		return total == 0 ? 0 : (double) getHitCount() / total;
+	}
+
+	/**
+	 * Start counting afresh.
+	 */
+	public static void reset() {
+		requests.reset();
+		prepares.reset();
+	}
+
+	/**
+	 * @return a one-line account of the counts
+	 */
+	public static String summary() {
+		return String.format("statements=%d prepared=%d hits=%d hitRate=%.0f%%",
+				getRequestCount(), getPrepareCount(), getHitCount(), getHitRate() * 100);
+	}
+
+	/**
+	 * Sees every statement EclipseLink obtains before running it, cached or not.
+	 */
+	private static class RequestCounter extends SessionProfilerAdapter {
+
+		@Override
+		public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+			if (SessionProfiler.SqlPrepare.equals(operationName)) {
+				requests.increment();
+				inRequest.set(true);
+			}
+		}
+
+		@Override
+		public void endOperationProfile(String operationName, DatabaseQuery query, int weight) {
+			if (SessionProfiler.SqlPrepare.equals(operationName)) inRequest.set(false);
+		}
+
+		@Override
+		public int getProfileWeight() {
+			return SessionProfiler.ALL;
+		}
+	}
+
+	/**
+	 * Hands out connections that count the statements prepared on them.
+	 */
+	private static class CountingConnector implements Connector {
+		private static final long serialVersionUID = 1L;
+
+		private final Connector delegate;
+
+		CountingConnector(Connector delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Connection connect(Properties properties, Session session) {
+			Connection connection = delegate.connect(properties, session);
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+					(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "prepareStatement", "prepareCall" -> {
+						if (inRequest.get()) prepares.increment();
+					}
+				}
+				try {
+					return method.invoke(connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			});
+		}
+
+		@Override
+		public Object clone() {
+			return new CountingConnector((Connector) delegate.clone());
+		}
+
+		@Override
+		public void toString(PrintWriter writer) {
+			delegate.toString(writer);
+		}
+
+		@Override
+		public String getConnectionDetails() {
+			return delegate.getConnectionDetails();
+		}
+	}
+}
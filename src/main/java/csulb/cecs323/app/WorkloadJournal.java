@@ -0,0 +1,268 @@
+package csulb.cecs323.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A compact, append-only record of the operations the application performed, so that
+ * a session can later be replayed against another database.
+ * <p>
+ * A journal starts with the four bytes {@code JBWJ} and a version byte, followed by one
+ * record per operation:
+ * <pre>
+ *   operation code         varint
+ *   time since last record varint, microseconds
+ *   duration               varint, nanoseconds
+ *   argument count         varint
+ *   arguments              varint length + UTF-8 bytes, each
+ * </pre>
+ * Reopening an existing journal appends to it. Records are buffered and written out
+ * every {@value #FLUSH_EVERY} records and on {@link #close()}, so a crash loses the last
+ * few and may leave the last one incomplete; the incomplete record is ignored when the
+ * journal is read and removed when it is reopened.
+ */
+public class WorkloadJournal implements Closeable {
+
+	/** System property naming the journal file; recording is off when it is not set. */
+	public static final String JOURNAL_PROPERTY = "jpabooks.journal";
+
+	private static final Logger LOGGER = Logger.getLogger(WorkloadJournal.class.getName());
+
+	private static final byte[] MAGIC = {'J', 'B', 'W', 'J'};
+	private static final int VERSION = 1;
+	private static final int FLUSH_EVERY = 64;
+
+	private final OutputStream out;
+	private long lastRecordNanos;
+	private int unflushed;
+
+	/**
+	 * Open a journal for appending, creating it if needed.
+	 * @param file the journal file
+	 */
+	public WorkloadJournal(Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) Files.createDirectories(parent);
+		boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+		if (!fresh) truncateIncompleteRecord(file);
+		this.out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+		if (fresh) {
+			out.write(MAGIC);
+			out.write(VERSION);
+		}
+		this.lastRecordNanos = System.nanoTime();
+	}
+
+	/**
+	 * Cut off a record left incomplete by a crash, which would otherwise run into the first
+	 * record appended and make the rest of the journal unreadable.
+	 */
+	private static void truncateIncompleteRecord(Path file) throws IOException {
+		long complete = readEntries(file, null);
+		long size = Files.size(file);
+		if (complete == size) return;
+		LOGGER.warning(file + " ends in the middle of a record; its last " + (size - complete)
+				+ " bytes were removed before appending.");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(complete);
+		}
+	}
+
+	/**
+	 * @return the journal named by the {@code jpabooks.journal} system property, or
+	 * 			{@code null} if recording was not requested
+	 */
+	public static WorkloadJournal fromEnvironment() throws IOException {
+		String file = System.getProperty(JOURNAL_PROPERTY);
+		return file == null || file.isBlank() ? null : new WorkloadJournal(Path.of(file));
+	}
+
+	/**
+	 * Append one operation to the journal.
+	 * @param operation the operation performed
+	 * @param durationNanos how long it took
+	 * @param args the arguments needed to perform it again
+	 */
+	public synchronized void record(CatalogOperation operation, long durationNanos, String... args) throws IOException {
+		long now = System.nanoTime();
+		writeVarint(operation.getCode());
+		writeVarint(Math.max(0, (now - lastRecordNanos) / 1_000));
+		writeVarint(Math.max(0, durationNanos));
+		writeVarint(args.length);
+		for (String arg : args) {
+			byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length);
+			out.write(bytes);
+		}
+		lastRecordNanos = now;
+		if (++unflushed >= FLUSH_EVERY) {
+			out.flush();
+			unflushed = 0;
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * One operation read back from a journal.
+	 */
+	public static class Entry {
+		private final CatalogOperation operation;
+		private final long offsetMicros;
+		private final long durationNanos;
+		private final List<String> args;
+
+		Entry(CatalogOperation operation, long offsetMicros, long durationNanos, List<String> args) {
+			this.operation = operation;
+			this.offsetMicros = offsetMicros;
+			this.durationNanos = durationNanos;
+			this.args = args;
+		}
+
+		public CatalogOperation getOperation() {
+			return operation;
+		}
+
+		/**
+		 * @return time between the previous operation and this one when recorded, in microseconds
+		 */
+		public long getOffsetMicros() {
+			return offsetMicros;
+		}
+
+		/**
+		 * @return how long the operation took when recorded, in nanoseconds
+		 */
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+
+		public List<String> getArgs() {
+			return args;
+		}
+	}
+
+	/**
+	 * Read every entry of a journal. A journal whose last record is incomplete, as a crash
+	 * while recording leaves it, is read up to its last complete record, with a warning.
+	 * @param file the journal to read
+	 * @return the entries, in the order they were recorded
+	 */
+	public static List<Entry> read(Path file) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		long complete = readEntries(file, entries);
+		long size = Files.size(file);
+		if (complete < size) {
+			LOGGER.warning(file + " ends in the middle of a record; its last " + (size - complete)
+					+ " bytes were ignored.");
+		}
+		return entries;
+	}
+
+	/**
+	 * Read the complete records of a journal.
+	 * @param entries where to add the entries read, or {@code null} only to find where they end
+	 * @return the length of the journal up to the end of its last complete record
+	 */
+	private static long readEntries(Path file, List<Entry> entries) throws IOException {
+		try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			byte[] magic = in.readNBytes(MAGIC.length);
+			int version = in.read();
+			if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+				throw new IOException(file + " is not a version " + VERSION + " workload journal.");
+			}
+			long complete = in.count;
+			try {
+				while (true) {
+					long code = readVarint(in, true);
+					if (code < 0) break;
+					long offset = readVarint(in, false);
+					long duration = readVarint(in, false);
+					int count = (int) readVarint(in, false);
+					List<String> args = new ArrayList<>(count);
+					for (int i = 0; i < count; i++) {
+						int length = (int) readVarint(in, false);
+						byte[] bytes = in.readNBytes(length);
+						if (bytes.length < length) throw new EOFException("The journal ends in the middle of a record.");
+						args.add(new String(bytes, StandardCharsets.UTF_8));
+					}
+					if (entries != null) entries.add(new Entry(CatalogOperation.fromCode((int) code), offset, duration, args));
+					complete = in.count;
+				}
+			} catch (EOFException e) {
+				// The rest is what was being written when recording stopped
+			}
+			return complete;
+		}
+	}
+
+	/**
+	 * @param endAllowed whether the stream may end cleanly before this value
+	 * @return the value, or -1 if the stream ended where allowed
+	 */
+	private static long readVarint(InputStream in, boolean endAllowed) throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			int b = in.read();
+			if (b < 0) {
+				if (endAllowed && shift == 0) return -1;
+				throw new EOFException("The journal ends in the middle of a record.");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+			shift += 7;
+		}
+	}
+
+	/**
+	 * Counts the bytes read, to tell where the last complete record ends.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) count += read;
+			return read;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies writes in the background, committing many of them in one transaction.
+ * <p>
+ * Every commit forces Derby's log to disk, so committing each insert on its own caps
+ * throughput at the rate of the disk's syncs. Writes submitted to the queue are instead
+ * taken by a single writer thread, which keeps collecting further writes until it has
+ * {@code maxBatch} of them or {@code maxDelayMillis} have passed since the first, and
+ * then commits them together. Under load each sync is shared by a whole batch; when
+ * writes trickle in, none waits longer than the delay.
+ * <p>
+ * Each submission returns a future that completes once its write is committed, or
+ * completes exceptionally with the reason it could not be. If a batch fails, the writer
+ * rolls it back and retries each write in its own transaction, so a single bad write,
+ * e.g. a duplicate key, fails alone and does not take the rest of its batch with it.
+ * Futures are completed on the writer thread, so callbacks attached to them should be
+ * quick.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+	/** System property that turns on write-behind mode in the application when {@code true}. */
+	public static final String ENABLED_PROPERTY = "jpabooks.writebehind";
+	/** System property setting the most writes committed together. */
+	public static final String MAX_BATCH_PROPERTY = "jpabooks.writebehind.batch";
+	/** System property setting, in milliseconds, the longest a write waits for others to join it. */
+	public static final String MAX_DELAY_PROPERTY = "jpabooks.writebehind.delay";
+
+	private static final Logger LOGGER = Logger.getLogger(WriteBehindQueue.class.getName());
+
+	private final EntityManager entityManager;
+	private final CatalogService service;
+	private final int maxBatch;
+	private final long maxDelayNanos;
+	private final BlockingQueue<Request> queue;
+	private final Thread writer;
+	private volatile boolean closed;
+
+	private final LongAdder committed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+	private final LatencyRecorder commitLatency = new LatencyRecorder();
+
+	/**
+	 * @param factory the database to write to
+	 * @param journal where to record the writes, or {@code null} not to record
+	 * @param statistics the statistics to keep current, or {@code null} for none
+	 * @param maxBatch the most writes committed in one transaction
+	 * @param maxDelayMillis the longest the first write of a batch waits for others; 0 commits
+	 *                       whatever is already queued without waiting
+	 */
+	public WriteBehindQueue(EntityManagerFactory factory, WorkloadJournal journal, CatalogStatistics statistics,
+	                        int maxBatch, long maxDelayMillis) {
+		if (maxBatch < 1) throw new IllegalArgumentException("The batch size must be at least 1.");
+		if (maxDelayMillis < 0) throw new IllegalArgumentException("The delay cannot be negative.");
+		this.entityManager = factory.createEntityManager();
+		this.service = new CatalogService(entityManager, journal, statistics);
+		this.maxBatch = maxBatch;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		// Room for a few batches; beyond that, submitters wait instead of piling up memory
+		this.queue = new LinkedBlockingQueue<>(Math.max(1_024, maxBatch * 8));
+		this.writer = new Thread(this::runWriter, "write-behind");
+		writer.start();
+	}
+
+	/**
+	 * @return a queue configured by the {@code jpabooks.writebehind} system properties, or
+	 * 			{@code null} if write-behind mode was not requested
+	 */
+	public static WriteBehindQueue fromEnvironment(EntityManagerFactory factory, WorkloadJournal journal,
+	                                               CatalogStatistics statistics) {
+		if (!Boolean.getBoolean(ENABLED_PROPERTY)) return null;
+		return new WriteBehindQueue(factory, journal, statistics,
+				Integer.getInteger(MAX_BATCH_PROPERTY, 64), Long.getLong(MAX_DELAY_PROPERTY, 5));
+	}
+
+	/**
+	 * Queue a write, waiting for room if the queue is full.
+	 * @param write the write to make, e.g. {@code service -> service.addPublisher(...)}; it runs
+	 *              on the writer thread, inside a transaction shared with other writes
+	 * @return a future completing when the write is committed
+	 */
+	public CompletableFuture<Void> submit(Consumer<CatalogService> write) {
+		if (closed) throw new IllegalStateException("The write-behind queue is closed.");
+		Request request = new Request(write);
+		try {
+			queue.put(request);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			request.future.completeExceptionally(e);
+		}
+		return request.future;
+	}
+
+	/**
+	 * @return the number of writes committed
+	 */
+	public long getCommittedCount() {
+		return committed.sum();
+	}
+
+	/**
+	 * @return the number of writes that failed
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * @return the number of transactions committed, including retries of single writes
+	 */
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	/**
+	 * @return the number of batches that failed and were retried one write at a time
+	 */
+	public long getFallbackCount() {
+		return fallbacks.sum();
+	}
+
+	/**
+	 * @return how long applying and committing each batch took
+	 */
+	public LatencyRecorder getCommitLatency() {
+		return commitLatency;
+	}
+
+	/**
+	 * Stop accepting writes, commit every write already queued, and release the connection.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		closed = true;
+		writer.join();
+		entityManager.close();
+		// Anything that slipped in as the writer finished is refused rather than lost silently
+		for (Request request; (request = queue.poll()) != null; ) {
+			request.future.completeExceptionally(new IllegalStateException("The write-behind queue is closed."));
+		}
+	}
+
+	private void runWriter() {
+		List<Request> batch = new ArrayList<>(maxBatch);
+		try {
+			while (true) {
+				Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					if (closed && queue.isEmpty()) return;
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + maxDelayNanos;
+				queue.drainTo(batch, maxBatch - batch.size());
+				while (batch.size() < maxBatch) {
+					long wait = deadline - System.nanoTime();
+					Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+					if (next == null) break;
+					batch.add(next);
+					queue.drainTo(batch, maxBatch - batch.size());
+				}
+				commit(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			for (Request request : batch) request.future.completeExceptionally(e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Apply and commit a batch, falling back to one transaction per write if it fails.
+	 */
+	private void commit(List<Request> batch) {
+		EntityTransaction tx = entityManager.getTransaction();
+		long start = System.nanoTime();
+		try {
+			tx.begin();
+			for (Request request : batch) request.write.accept(service);
+			tx.commit();
+			commitLatency.recordSince(start);
+			batches.increment();
+			committed.add(batch.size());
+			for (Request request : batch) request.future.complete(null);
+		} catch (RuntimeException e) {
+			if (tx.isActive()) tx.rollback();
+			entityManager.clear();
+			if (batch.size() == 1) {
+				failed.increment();
+				batch.get(0).future.completeExceptionally(e);
+			} else {
+				LOGGER.log(Level.FINE, "A batch of " + batch.size() + " writes failed; retrying them one at a time.", e);
+				fallbacks.increment();
+				// The service journals each write when its transaction commits, so the writes of
+				// the failed batch were not recorded and each is recorded once by its retry
+				for (Request request : batch) commit(List.of(request));
+			}
+		} finally {
+			entityManager.clear();
+		}
+	}
+
+	/**
+	 * A queued write and the future of its caller.
+	 */
+	private static class Request {
+		final Consumer<CatalogService> write;
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		Request(Consumer<CatalogService> write) {
+			this.write = write;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.AdmissionController;
+import csulb.cecs323.app.AdmissionController.Lane;
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.app.SessionRouter;
+import csulb.cecs323.tools.ZipfDistribution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A burst of callers, each issuing operations back to back, against a {@link SessionRouter}
+ * with the application's default pools, first with every caller let through and then
+ * behind an {@link AdmissionController}. Most operations look up popular books; some
+ * give popular books another author and some add books.
+ * <p>
+ * Usage: {@code AdmissionBenchmark [profile] [callers] [seconds]}, default {@code embedded 64 10}.
+ */
+public class AdmissionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.EMBEDDED;
+		int callers = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-admission",
+				BenchmarkCatalog.smallCatalog(), Map.of())) {
+			AtomicInteger added = new AtomicInteger();
+			// Compile the code paths before measuring
+			burst(catalog, null, 4, 2, added);
+			System.out.println("no admission control");
+			System.out.println(burst(catalog, null, callers, seconds, added));
+			AdmissionController admission = new AdmissionController(32, 250, 16);
+			System.out.println("admission control, queue 32, wait 250 ms");
+			System.out.println(burst(catalog, admission, callers, seconds, added));
+			System.out.println(admission.summary());
+		}
+	}
+
+	/**
+	 * Run the callers for a while.
+	 * @param admission the admission control to put in front of the router, or {@code null}
+	 * @param added numbers the added books across runs
+	 * @return the throughput and latency of each lane, and the rejections
+	 */
+	private static String burst(BenchmarkCatalog catalog, AdmissionController admission, int callers, int seconds,
+	                            AtomicInteger added) throws InterruptedException {
+		Map<Lane, LatencyRecorder> latency = Map.of(Lane.INFO, new LatencyRecorder(),
+				Lane.UPDATE, new LatencyRecorder(), Lane.ADD, new LatencyRecorder());
+		LongAdder rejected = new LongAdder();
+		LongAdder failed = new LongAdder();
+		try (SessionRouter router = new SessionRouter(catalog.getFactory(), null, null, 4, 1)) {
+			router.setAdmission(admission);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < callers; t++) {
+				long seed = t;
+				Thread thread = new Thread(() -> {
+					ZipfDistribution zipf = new ZipfDistribution(10_000, 1.0);
+					SplittableRandom random = new SplittableRandom(seed);
+					while (System.nanoTime() < deadline) {
+						int rank = zipf.sample(random);
+						int dice = random.nextInt(100);
+						Lane lane = dice < 85 ? Lane.INFO : dice < 95 ? Lane.UPDATE : Lane.ADD;
+						long start = System.nanoTime();
+						try {
+							switch (lane) {
+								case INFO -> router.read(service -> service.getBook(catalog.isbn(rank)));
+								case UPDATE -> router.write(Lane.UPDATE, service ->
+										service.updateBookAuthor(catalog.isbn(rank), catalog.authorEmail(random.nextInt())));
+								default -> {
+									int i = added.getAndIncrement();
+									router.write(Lane.ADD, service -> service.addBook(String.format("AC-%08d", i),
+											"Burst " + i, 2000, catalog.authorEmail(i), catalog.publisherName(i)));
+								}
+							}
+							latency.get(lane).recordSince(start);
+						} catch (RejectedExecutionException e) {
+							rejected.increment();
+						} catch (RuntimeException e) {
+							failed.increment();
+						}
+					}
+				}, "caller-" + t);
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) thread.join();
+		}
+		StringBuilder result = new StringBuilder();
+		for (Lane lane : List.of(Lane.INFO, Lane.UPDATE, Lane.ADD)) {
+			LatencyRecorder recorder = latency.get(lane);
+			result.append(String.format("  %-6s %,7.0f ops/s [%s]%n", lane, recorder.getCount() / (double) seconds, recorder.summary()));
+		}
+		result.append(String.format("  rejected=%d failed=%d", rejected.sum(), failed.sum()));
+		return result.toString();
+	}
+}
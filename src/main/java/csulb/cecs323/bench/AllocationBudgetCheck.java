@@ -0,0 +1,287 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.JPABooksProject;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.model.Publishers;
+import csulb.cecs323.tools.CatalogGenerator;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the bytes a single call of each hot operation allocates, on generated catalogs
+ * of several sizes, and compares each with its budget in
+ * {@code allocation/allocation-budgets.properties}.
+ * <p>
+ * The allocation of the calling thread is read from its counter before and after every
+ * call, after a warm-up long enough for the JIT to settle, and the median call is kept.
+ * The EntityManager is cleared between calls, outside the measurement, so each call starts
+ * from the shared cache as the console's do. Writes are measured with their commit.
+ * <p>
+ * An operation over its budget by more than the tolerance, or without a budget, makes the
+ * check exit with status 1; the build runs it as {@code AllocationBudgetIT} in
+ * {@code mvn verify}. Operations well under their budget are
+ * reported, so that the budget can be tightened with {@code --update}, which records each
+ * operation's allocation with a little headroom.
+ * <p>
+ * Usage: {@code AllocationBudgetCheck [--sizes N,N,...] [--tolerance PERCENT] [--update FILE]}
+ * <ul>
+ *     <li>{@code --sizes}: the numbers of books generated, default 1000,10000,50000</li>
+ *     <li>{@code --tolerance}: how far over its budget an operation may go, default 10 percent</li>
+ *     <li>{@code --update FILE}: write the measured allocations to FILE as the new budgets,
+ *         e.g. {@code src/main/resources/allocation/allocation-budgets.properties}</li>
+ * </ul>
+ */
+public class AllocationBudgetCheck {
+
+	private static final String BUDGETS = "/allocation/allocation-budgets.properties";
+
+	// Below this many bytes, a difference is noise rather than a regression
+	private static final long SLACK_BYTES = 1_024;
+	// Added to the measured allocation when the budgets are written
+	private static final double HEADROOM = 0.05;
+	// An operation this far under its budget is reported, so the budget can be tightened
+	private static final double WELL_UNDER = 0.7;
+
+	// createEntity logs every entity it persists, which would flood the report; held here,
+	// as the level is lost if the logger is collected before the application's class holds it
+	private static final Logger APPLICATION_LOGGER = Logger.getLogger(JPABooksProject.class.getName());
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * One call of an operation; {@code i} numbers the calls, for operations that need distinct keys.
+	 */
+	@FunctionalInterface
+	private interface Operation {
+		void call(Harness harness, int i);
+	}
+
+	/**
+	 * An operation with the number of calls to warm up with and then to measure; the
+	 * listings, whose calls are long, get fewer.
+	 */
+	private record Measured(Operation operation, int warmUp, int calls) {
+	}
+
+	// In the order they are measured and reported
+	private static final Map<String, Measured> OPERATIONS = new LinkedHashMap<>();
+	static {
+		OPERATIONS.put("getPublisher", new Measured((h, i) -> h.service.getPublisher(h.catalog.publisherName(i)), 2_000, 1_000));
+		OPERATIONS.put("getBook", new Measured((h, i) -> h.service.getBook(h.catalog.isbn(i)), 2_000, 1_000));
+		OPERATIONS.put("getWorksPage", new Measured((h, i) -> h.service.getWorksPage(h.catalog.authorEmail(i), 0, 10), 2_000, 1_000));
+		OPERATIONS.put("getBooksByYear", new Measured((h, i) -> h.service.getBooksByYear(2000, 2000), 200, 50));
+		OPERATIONS.put("getBooks", new Measured((h, i) -> h.service.getBooks(), 20, 5));
+		OPERATIONS.put("addBook", new Measured((h, i) -> h.write(() -> h.service.addBook(String.format("AB-%09d", h.added++),
+				"Budget", 2000, h.catalog.authorEmail(i), h.catalog.publisherName(i))), 1_000, 500));
+		OPERATIONS.put("updateBookAuthor", new Measured((h, i) -> h.write(() -> h.service.updateBookAuthor(h.catalog.isbn(i),
+				h.catalog.authorEmail(i + 1))), 1_000, 500));
+		OPERATIONS.put("createEntity", new Measured((h, i) -> h.write(() -> {
+			int n = h.added++;
+			h.application.createEntity(List.of(new Publishers(String.format("AB-%09d", n),
+					String.format("ab%09d@budget.example", n), String.format("555-%09d", n))));
+		}), 1_000, 500));
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = {1_000, 10_000, 50_000};
+		double tolerance = 0.10;
+		Path update = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--sizes" -> sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+				case "--tolerance" -> tolerance = Double.parseDouble(args[++i]) / 100;
+				case "--update" -> update = Path.of(args[++i]);
+				default -> {
+					System.out.println("Usage: AllocationBudgetCheck [--sizes N,N,...] [--tolerance PERCENT] [--update FILE]");
+					System.exit(2);
+				}
+			}
+		}
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			System.out.println("Error: this JVM does not count the memory each thread allocates.");
+			System.exit(2);
+		}
+		if (check(sizes, tolerance, update) > 0) System.exit(1);
+	}
+
+	/**
+	 * Measure every operation on each catalog size and compare it with its budget, printing
+	 * the outcome of each; {@code AllocationBudgetIT} runs it in {@code mvn verify}.
+	 * @param sizes the numbers of books generated
+	 * @param tolerance how far over its budget an operation may go, e.g. 0.1 for 10 percent
+	 * @param update where to write the measured allocations as the new budgets, or
+	 *               {@code null} to check them
+	 * @return the number of operations that failed the check; 0 when updating
+	 */
+	public static int check(int[] sizes, double tolerance, Path update) throws Exception {
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			throw new IllegalStateException("This JVM does not count the memory each thread allocates.");
+		}
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+		APPLICATION_LOGGER.setLevel(Level.WARNING);
+
+		Properties budgets = loadBudgets();
+		Map<String, Long> measured = new TreeMap<>();
+		int failures = 0;
+		for (int books : sizes) {
+			CatalogGenerator generator = BenchmarkCatalog.smallCatalog();
+			generator.setBooks(books);
+			try (BenchmarkCatalog catalog = new BenchmarkCatalog(PersistenceProfile.MEMORY, "allocation-check", generator, Map.of())) {
+				Harness harness = new Harness(catalog);
+				try {
+					for (Map.Entry<String, Measured> operation : OPERATIONS.entrySet()) {
+						String key = operation.getKey() + "." + books;
+						long bytes = harness.measure(operation.getValue());
+						measured.put(key, bytes);
+						failures += report(key, budgets.getProperty(key), bytes, tolerance);
+					}
+				} finally {
+					harness.close();
+				}
+			}
+		}
+
+		if (update != null) {
+			writeBudgets(update, measured);
+			System.out.println("\nBudgets written to " + update);
+			return 0;
+		}
+		if (failures > 0) {
+			System.out.println("\n" + failures + " operation" + (failures == 1 ? "" : "s") + " failed the allocation check.");
+		} else {
+			System.out.println("\nAll operations within their budgets.");
+		}
+		return failures;
+	}
+
+	/**
+	 * Compare the bytes an operation allocated with its budget and print the outcome.
+	 * @return 1 if the operation failed the check, 0 otherwise
+	 */
+	private static int report(String key, String budget, long bytes, double tolerance) {
+		String status;
+		int failed = 0;
+		String detail = "";
+		if (budget == null) {
+			status = "NEW";
+			failed = 1;
+		} else {
+			long allowed = Long.parseLong(budget.trim());
+			detail = String.format("budget %,12d  %+6.1f%%", allowed, allowed == 0 ? 0 : 100.0 * (bytes - allowed) / allowed);
+			if (bytes > Math.max(allowed * (1 + tolerance), allowed + SLACK_BYTES)) {
+				status = "OVER";
+				failed = 1;
+			} else if (bytes < allowed * WELL_UNDER && allowed - bytes > SLACK_BYTES) {
+				status = "under";
+			} else {
+				status = "ok";
+			}
+		}
+		System.out.printf("%-26s %-6s %,14d bytes/call  %s%n", key, status, bytes, detail);
+		return failed;
+	}
+
+	/**
+	 * @return the budget for an operation that allocated the given bytes: a little more, as
+	 * 			the same call varies by a few percent from run to run with what the JIT inlines
+	 */
+	static long budget(long bytes) {
+		long padded = (long) Math.ceil(bytes * (1 + HEADROOM));
+		return (padded + 255) / 256 * 256;
+	}
+
+	private static Properties loadBudgets() throws IOException {
+		Properties budgets = new Properties();
+		try (InputStream in = AllocationBudgetCheck.class.getResourceAsStream(BUDGETS)) {
+			if (in != null) budgets.load(in);
+		}
+		return budgets;
+	}
+
+	private static void writeBudgets(Path file, Map<String, Long> measured) throws IOException {
+		if (file.getParent() != null) Files.createDirectories(file.getParent());
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+			out.println("# Bytes a single call of each operation may allocate, by operation and number of books");
+			out.println("# in the generated catalog; checked by csulb.cecs323.bench.AllocationBudgetCheck, which");
+			out.println("# rewrites this file when run with --update.");
+			for (Map.Entry<String, Long> entry : measured.entrySet()) {
+				out.println(entry.getKey() + "=" + budget(entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * The catalog and the EntityManager the operations run with.
+	 */
+	private static final class Harness {
+
+		final BenchmarkCatalog catalog;
+		final EntityManager manager;
+		final CatalogService service;
+		final JPABooksProject application;
+		int added;
+
+		Harness(BenchmarkCatalog catalog) {
+			this.catalog = catalog;
+			this.manager = catalog.getFactory().createEntityManager();
+			this.service = new CatalogService(manager);
+			this.application = new JPABooksProject(manager);
+		}
+
+		/**
+		 * Run a write and commit it.
+		 */
+		void write(Runnable write) {
+			EntityTransaction tx = manager.getTransaction();
+			tx.begin();
+			try {
+				write.run();
+				tx.commit();
+			} finally {
+				if (tx.isActive()) tx.rollback();
+			}
+		}
+
+		/**
+		 * Warm an operation up, then measure its calls one at a time.
+		 * @return the bytes allocated by the median call
+		 */
+		long measure(Measured measured) {
+			int i = 0;
+			for (int call = 0; call < measured.warmUp(); call++, i++) {
+				measured.operation().call(this, i);
+				manager.clear();
+			}
+			long[] bytes = new long[measured.calls()];
+			for (int call = 0; call < bytes.length; call++, i++) {
+				long before = THREADS.getCurrentThreadAllocatedBytes();
+				measured.operation().call(this, i);
+				bytes[call] = THREADS.getCurrentThreadAllocatedBytes() - before;
+				manager.clear();
+			}
+			Arrays.sort(bytes);
+			return bytes[bytes.length / 2];
+		}
+
+		void close() {
+			manager.close();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.AsyncQueries;
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.tools.CatalogGenerator;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads what a busy screen needs, the publisher and writing group lists plus a handful
+ * of books and publishers, first one query after another on a single EntityManager as
+ * the console does, then all at once through {@link AsyncQueries} with different
+ * numbers of threads. The latency reported is that of the whole screen.
+ * <p>
+ * Usage: {@code AsyncQueryBenchmark [profile]}, default {@code embedded}.
+ */
+public class AsyncQueryBenchmark {
+
+	private static final int POINT_LOOKUPS = 8;
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.EMBEDDED;
+		CatalogGenerator generator = BenchmarkCatalog.smallCatalog();
+		generator.setWritingGroups(500);
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-async-queries", generator, Map.of())) {
+			Benchmark benchmark = new Benchmark(50, 500);
+
+			EntityManager manager = catalog.getFactory().createEntityManager();
+			try {
+				CatalogService service = new CatalogService(manager);
+				benchmark.run("Screen, sequential", (thread, i) -> {
+					service.getPublishers();
+					service.getWritingGroups();
+					for (int k = 0; k < POINT_LOOKUPS; k++) {
+						service.getBook(catalog.isbn(i * POINT_LOOKUPS + k));
+						service.getPublisher(catalog.publisherName(i * POINT_LOOKUPS + k));
+					}
+					manager.clear();
+				});
+			} finally {
+				manager.close();
+			}
+
+			for (int threads : new int[] {2, 4, 8}) {
+				try (AsyncQueries queries = new AsyncQueries(catalog.getFactory(), threads, 1_024)) {
+					benchmark.run("Screen, async on " + threads + " threads", (thread, i) -> {
+						List<CompletableFuture<?>> parts = new ArrayList<>();
+						parts.add(queries.getPublishers());
+						parts.add(queries.getWritingGroups());
+						for (int k = 0; k < POINT_LOOKUPS; k++) {
+							parts.add(queries.getBook(catalog.isbn(i * POINT_LOOKUPS + k)));
+							parts.add(queries.getPublisher(catalog.publisherName(i * POINT_LOOKUPS + k)));
+						}
+						CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).join();
+					});
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.LatencyRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A small harness for the project's benchmarks: every operation is run for a number
+ * of warm-up iterations that are thrown away, then for a number of measured
+ * iterations, optionally from several threads at once. The outcome is the
+ * throughput and the latency distribution of the measured iterations.
+ */
+public class Benchmark {
+
+	/**
+	 * A benchmarked operation. {@code iteration} counts up from 0 on each thread, which
+	 * lets operations cycle through their inputs without sharing state.
+	 */
+	@FunctionalInterface
+	public interface Operation {
+		void run(int thread, int iteration) throws Exception;
+	}
+
+	/**
+	 * The outcome of one benchmark.
+	 */
+	public static class Result {
+		private final String name;
+		private final long operations;
+		private final long elapsedNanos;
+		private final LatencyRecorder latency;
+
+		Result(String name, long operations, long elapsedNanos, LatencyRecorder latency) {
+			this.name = name;
+			this.operations = operations;
+			this.elapsedNanos = elapsedNanos;
+			this.latency = latency;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public double getOperationsPerSecond() {
+			return operations / (elapsedNanos / 1e9);
+		}
+
+		public LatencyRecorder getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-44s %10.0f ops/s  %s", name, getOperationsPerSecond(), latency.summary());
+		}
+	}
+
+	private final int warmupIterations;
+	private final int iterations;
+
+	/**
+	 * @param warmupIterations unmeasured iterations per thread run first
+	 * @param iterations measured iterations per thread
+	 */
+	public Benchmark(int warmupIterations, int iterations) {
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Run an operation on the current thread.
+	 */
+	public Result run(String name, Operation operation) throws Exception {
+		return run(name, 1, operation);
+	}
+
+	/**
+	 * Run an operation on several threads at once and print the result.
+	 * @param name name printed with the result
+	 * @param threads number of threads running the operation concurrently
+	 * @param operation the operation to measure
+	 * @return the throughput and latency of the measured iterations
+	 */
+	public Result run(String name, int threads, Operation operation) throws Exception {
+		LatencyRecorder latency = new LatencyRecorder();
+		long elapsed;
+		if (threads == 1) {
+			for (int i = 0; i < warmupIterations; i++) operation.run(0, i);
+			long start = System.nanoTime();
+			measure(operation, 0, latency);
+			elapsed = System.nanoTime() - start;
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				runOnAll(executor, threads, thread -> {
+					for (int i = 0; i < warmupIterations; i++) operation.run(thread, i);
+				});
+				long start = System.nanoTime();
+				runOnAll(executor, threads, thread -> measure(operation, thread, latency));
+				elapsed = System.nanoTime() - start;
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		Result result = new Result(name, (long) iterations * threads, elapsed, latency);
+		System.out.println(result);
+		return result;
+	}
+
+	private void measure(Operation operation, int thread, LatencyRecorder latency) throws Exception {
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			operation.run(thread, warmupIterations + i);
+			latency.recordSince(start);
+		}
+	}
+
+	private interface PerThread {
+		void run(int thread) throws Exception;
+	}
+
+	private static void runOnAll(ExecutorService executor, int threads, PerThread body) throws Exception {
+		List<Future<Object>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			futures.add(executor.submit((Callable<Object>) () -> {
+				body.run(thread);
+				return null;
+			}));
+		}
+		for (Future<Object> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.tools.CatalogGenerator;
+import csulb.cecs323.tools.CsvSink;
+import csulb.cecs323.tools.SeedLoader;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A generated catalog in a dedicated database, ready to be benchmarked. The schema is
+ * created by the persistence unit, the rows are produced by the {@link CatalogGenerator}
+ * and bulk loaded by the {@link SeedLoader}, and a sample of primary keys is kept so
+ * that benchmarks can issue point lookups for rows that exist.
+ */
+public class BenchmarkCatalog implements AutoCloseable {
+
+	private final PersistenceProfile profile;
+	private final String databaseName;
+	private final EntityManagerFactory factory;
+
+	private final String[] publisherNames;
+	private final String[] authorEmails;
+	private final String[] authorNames;
+	private final String[] isbns;
+
+	/**
+	 * Create and populate a database.
+	 * @param profile where the database lives
+	 * @param databaseName name of the database; an existing database of that name is replaced
+	 * @param generator the settings of the catalog to generate
+	 * @param overrides extra persistence unit properties for the factory
+	 */
+	public BenchmarkCatalog(PersistenceProfile profile, String databaseName, CatalogGenerator generator,
+	                        Map<String, ?> overrides) throws IOException, SQLException, InterruptedException {
+		this.profile = profile;
+		this.databaseName = databaseName;
+		this.factory = profile.createEntityManagerFactory(databaseName, overrides);
+		// Creating the first entity manager deploys the unit, which drops and recreates the tables
+		factory.createEntityManager().close();
+
+		Path csv = Files.createTempDirectory("benchmark-catalog");
+		try {
+			try (CsvSink sink = new CsvSink(csv)) {
+				generator.generate(sink);
+			}
+			SeedLoader loader = new SeedLoader(profile.jdbcUrl(databaseName), "app", "app");
+			loader.setReportProgress(false);
+			loader.load(csv);
+		} finally {
+			try (Stream<Path> files = Files.walk(csv)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+
+		publisherNames = sampleKeys("SELECT NAME FROM PUBLISHERS");
+		authorEmails = sampleKeys("SELECT EMAIL FROM AUTHORING_ENTITIES");
+		authorNames = sampleKeys("SELECT NAME FROM AUTHORING_ENTITIES");
+		isbns = sampleKeys("SELECT ISBN FROM BOOKS");
+	}
+
+	/**
+	 * @return a generator producing a small catalog suitable for quick benchmark runs
+	 */
+	public static CatalogGenerator smallCatalog() {
+		CatalogGenerator generator = new CatalogGenerator();
+		generator.setPublishers(200);
+		generator.setWritingGroups(2_000);
+		generator.setIndividualAuthors(8_000);
+		generator.setAdHocTeams(2_000);
+		generator.setBooks(50_000);
+		return generator;
+	}
+
+	public PersistenceProfile getProfile() {
+		return profile;
+	}
+
+	public EntityManagerFactory getFactory() {
+		return factory;
+	}
+
+	/**
+	 * @return a new JDBC connection to the catalog's database
+	 */
+	public Connection openConnection() throws SQLException {
+		return DriverManager.getConnection(profile.jdbcUrl(databaseName), "app", "app");
+	}
+
+	/**
+	 * @param i any number; successive numbers cycle through the sampled keys
+	 */
+	public String publisherName(int i) {
+		return publisherNames[Math.floorMod(i, publisherNames.length)];
+	}
+
+	public String authorEmail(int i) {
+		return authorEmails[Math.floorMod(i * 7919, authorEmails.length)];
+	}
+
+	public String authorName(int i) {
+		return authorNames[Math.floorMod(i * 7919, authorNames.length)];
+	}
+
+	public String isbn(int i) {
+		return isbns[Math.floorMod(i * 7919, isbns.length)];
+	}
+
+	private String[] sampleKeys(String sql) throws SQLException {
+		List<String> keys = new ArrayList<>();
+		try (Connection connection = openConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery(sql)) {
+			while (results.next() && keys.size() < 10_000) keys.add(results.getString(1));
+		}
+		if (keys.isEmpty()) throw new IllegalStateException("The generated catalog is empty: " + sql);
+		return keys.toArray(new String[0]);
+	}
+
+	@Override
+	public void close() {
+		factory.close();
+		profile.dropDatabase(databaseName);
+	}
+}
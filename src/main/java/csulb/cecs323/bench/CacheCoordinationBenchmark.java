@@ -0,0 +1,155 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.app.NetworkServer;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.feed.CacheCoordinator;
+import csulb.cecs323.model.Books;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A two-node cluster on one host: this JVM serves an on-disk catalog over the network
+ * server and changes the authors of books, and a second JVM, started as a child process,
+ * reads the same books through the client driver and its own shared cache. The time from
+ * each commit to the second node reading the new author is the latency to consistency.
+ * <p>
+ * It is measured first with both {@link CacheCoordinator}s running, then after this
+ * node's coordinator stops, when the other node has to fall back to expiring its cache.
+ * <p>
+ * Usage: {@code CacheCoordinationBenchmark [changes] [ttlMillis]}, default {@code 200 1000}.
+ */
+public class CacheCoordinationBenchmark {
+
+	private static final String DATABASE = "bench-coordination";
+	private static final int LEADER_PORT = 47_701;
+	private static final int FOLLOWER_PORT = 47_702;
+	private static final long HEARTBEAT_MILLIS = 100;
+	// How long the follower waits for a change before calling it stale
+	private static final long GIVE_UP_MILLIS = 10_000;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--follower")) {
+			follow(Long.parseLong(args[1]));
+			return;
+		}
+		int changes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		long ttlMillis = args.length > 1 ? Long.parseLong(args[1]) : 1_000;
+
+		try (NetworkServer server = NetworkServer.start();
+		     BenchmarkCatalog catalog = new BenchmarkCatalog(PersistenceProfile.EMBEDDED, DATABASE,
+				     BenchmarkCatalog.smallCatalog(), Map.of())) {
+			Process follower = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+					"-cp", System.getProperty("java.class.path"), CacheCoordinationBenchmark.class.getName(),
+					"--follower", Long.toString(ttlMillis))
+					.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			BufferedReader in = new BufferedReader(new InputStreamReader(follower.getInputStream()));
+			PrintWriter out = new PrintWriter(follower.getOutputStream(), true);
+			EntityManager manager = catalog.getFactory().createEntityManager();
+			try {
+				expect(in, "ready");
+				CacheCoordinator coordinator = new CacheCoordinator(catalog.getFactory(), LEADER_PORT,
+						CacheCoordinator.parsePeers(Integer.toString(FOLLOWER_PORT)), ttlMillis, HEARTBEAT_MILLIS);
+				CatalogService service = new CatalogService(manager);
+
+				LatencyRecorder coordinated = measure(catalog, service, in, out, 0, changes);
+				System.out.println("coordinated         " + coordinated.summary());
+				System.out.println("  this node:  " + coordinator.summary());
+
+				coordinator.close();
+				// Let the follower notice the missing heartbeats
+				Thread.sleep(HEARTBEAT_MILLIS * 5);
+				LatencyRecorder ttl = measure(catalog, service, in, out, changes, Math.min(changes, 20));
+				System.out.println("peer unreachable    " + ttl.summary() + " (TTL " + ttlMillis + " ms)");
+
+				out.println("quit");
+				System.out.println("  other node: " + in.readLine());
+			} finally {
+				manager.close();
+				follower.destroy();
+				follower.waitFor(10, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Change the author of {@code count} books, one at a time, and record how long the
+	 * follower took to read each change.
+	 */
+	private static LatencyRecorder measure(BenchmarkCatalog catalog, CatalogService service, BufferedReader in,
+	                                       PrintWriter out, int first, int count) throws Exception {
+		LatencyRecorder latency = new LatencyRecorder();
+		int stale = 0;
+		for (int i = first; i < first + count; i++) {
+			String isbn = catalog.isbn(i);
+			String author = service.getBook(isbn).getAuthor().getEmail();
+			String next = catalog.authorEmail(i);
+			for (int j = i + 1; next.equals(author); j++) next = catalog.authorEmail(j);
+
+			// The follower caches the book as it is now, then waits for the change
+			out.println("watch " + isbn + " " + next);
+			expect(in, "cached");
+			EntityTransaction tx = service.getEntityManager().getTransaction();
+			tx.begin();
+			service.updateBookAuthor(isbn, next);
+			tx.commit();
+			long committed = System.nanoTime();
+			String outcome = in.readLine();
+			if ("seen".equals(outcome)) latency.recordSince(committed);
+			else stale++;
+			service.getEntityManager().clear();
+		}
+		if (stale > 0) System.out.println(stale + " changes were not seen within " + GIVE_UP_MILLIS + " ms");
+		return latency;
+	}
+
+	private static void expect(BufferedReader in, String line) throws Exception {
+		String actual = in.readLine();
+		if (!line.equals(actual)) throw new IllegalStateException("Expected \"" + line + "\" from the other node, got \"" + actual + "\".");
+	}
+
+	/**
+	 * The second node: read books through the network server until told to quit.
+	 */
+	private static void follow(long ttlMillis) throws Exception {
+		EntityManagerFactory factory = PersistenceProfile.NETWORK.createEntityManagerFactory(DATABASE,
+				// The first node created the tables; leave them as they are
+				Map.of("javax.persistence.schema-generation.database.action", "none"));
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		try (CacheCoordinator coordinator = new CacheCoordinator(factory, FOLLOWER_PORT,
+				CacheCoordinator.parsePeers(Integer.toString(LEADER_PORT)), ttlMillis, HEARTBEAT_MILLIS)) {
+			EntityManager manager = factory.createEntityManager();
+			System.out.println("ready");
+			for (String line = in.readLine(); line != null && !line.equals("quit"); line = in.readLine()) {
+				String[] command = line.split(" ");
+				String isbn = command[1];
+				String expected = command[2];
+				manager.find(Books.class, isbn).getAuthor().getEmail();
+				manager.clear();
+				System.out.println("cached");
+
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GIVE_UP_MILLIS);
+				boolean seen = false;
+				while (!seen && System.nanoTime() < deadline) {
+					seen = expected.equals(manager.find(Books.class, isbn).getAuthor().getEmail());
+					manager.clear();
+					if (!seen) Thread.sleep(0, 100_000);
+				}
+				System.out.println(seen ? "seen" : "stale");
+			}
+			manager.close();
+			System.out.println(coordinator.summary());
+		} finally {
+			factory.close();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.jfr.CatalogOperationEvent;
+import csulb.cecs323.jfr.QueryEvent;
+import csulb.cecs323.jfr.TransactionEvent;
+import csulb.cecs323.tools.ZipfDistribution;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Runs the same mix of catalog operations with no recording, with a recording that leaves
+ * the catalog's events off, and with one that records them, to show what the events cost;
+ * then reads the last recording back and counts its events, with a few of each kind.
+ * Most operations look up popular books, some list an author's works and some give a book
+ * another author in a transaction of its own.
+ * <p>
+ * Usage: {@code FlightRecorderBenchmark [profile] [operations]}, default {@code memory 50000}.
+ */
+public class FlightRecorderBenchmark {
+
+	private static final int ROUNDS = 3;
+	private static final String[] CATALOG_EVENTS = {CatalogOperationEvent.class.getName(),
+			QueryEvent.class.getName(), TransactionEvent.class.getName()};
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+		int operations = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-jfr", BenchmarkCatalog.smallCatalog(), Map.of())) {
+			// Compile the code paths, with the events on and off, and fill the cache before measuring
+			Path file = Files.createTempFile("catalog", ".jfr");
+			measure(catalog, operations, null, file);
+			measure(catalog, operations, false, file);
+
+			// Alternate the three, keeping the best of each, so that none gains from running later
+			double[] best = new double[3];
+			for (int round = 0; round < ROUNDS; round++) {
+				best[0] = Math.max(best[0], measure(catalog, operations, null, file));
+				best[1] = Math.max(best[1], measure(catalog, operations, false, file));
+				best[2] = Math.max(best[2], measure(catalog, operations, true, file));
+			}
+			System.out.printf("no recording             %,8.0f ops/s%n", best[0]);
+			System.out.printf("recording, events off    %,8.0f ops/s%n", best[1]);
+			System.out.printf("recording, events on     %,8.0f ops/s%n", best[2]);
+			try {
+				report(file);
+			} finally {
+				Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Run the mix of operations, with or without a recording.
+	 * @param events {@code null} for no recording, else whether the recording has the catalog's events on
+	 * @param file where to dump a recording with the events on
+	 * @return the operations per second
+	 */
+	private static double measure(BenchmarkCatalog catalog, int operations, Boolean events, Path file) throws Exception {
+		if (events == null) return run(catalog, operations);
+		try (Recording recording = new Recording()) {
+			for (String event : CATALOG_EVENTS) {
+				if (events) recording.enable(event);
+				else recording.disable(event);
+			}
+			recording.start();
+			double rate = run(catalog, operations);
+			recording.stop();
+			if (events) recording.dump(file);
+			return rate;
+		}
+	}
+
+	/**
+	 * Run the mix of operations. Every run picks the same books, so that the cache is as
+	 * warm for one as for the next.
+	 * @return the operations per second
+	 */
+	private static double run(BenchmarkCatalog catalog, int operations) {
+		ZipfDistribution zipf = new ZipfDistribution(10_000, 1.0);
+		SplittableRandom random = new SplittableRandom(42);
+		EntityManager manager = catalog.getFactory().createEntityManager();
+		try {
+			CatalogService service = new CatalogService(manager);
+			long start = System.nanoTime();
+			for (int i = 0; i < operations; i++) {
+				int rank = zipf.sample(random);
+				int dice = random.nextInt(100);
+				if (dice < 90) {
+					service.getBook(catalog.isbn(rank));
+				} else if (dice < 98) {
+					service.getWorksPage(catalog.authorEmail(rank), 0, 10);
+				} else {
+					EntityTransaction tx = manager.getTransaction();
+					tx.begin();
+					service.updateBookAuthor(catalog.isbn(rank), catalog.authorEmail(random.nextInt(1_000)));
+					tx.commit();
+				}
+				if (i % 100 == 0) manager.clear();
+			}
+			return operations / ((System.nanoTime() - start) / 1e9);
+		} finally {
+			manager.close();
+		}
+	}
+
+	/**
+	 * Count the catalog's events in a recording, by type and by operation or query name.
+	 */
+	private static void report(Path file) throws Exception {
+		Map<String, Integer> counts = new TreeMap<>();
+		Map<String, RecordedEvent> examples = new TreeMap<>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			String type = event.getEventType().getName();
+			if (!type.startsWith("csulb.cecs323.")) continue;
+			String detail = switch (type) {
+				case "csulb.cecs323.CatalogOperation" -> event.getString("operation");
+				case "csulb.cecs323.Query" -> event.getString("name");
+				default -> event.getBoolean("committed") ? "committed" : "rolled back";
+			};
+			String key = type.substring("csulb.cecs323.".length()) + " " + detail;
+			counts.merge(key, 1, Integer::sum);
+			examples.putIfAbsent(key, event);
+		}
+		for (Map.Entry<String, Integer> count : counts.entrySet()) {
+			RecordedEvent example = examples.get(count.getKey());
+			StringBuilder fields = new StringBuilder();
+			example.getFields().forEach(field -> {
+				if (!field.getName().equals("startTime") && !field.getName().equals("eventThread")
+						&& !field.getName().equals("stackTrace")) {
+					fields.append(' ').append(field.getName()).append('=').append(example.getValue(field.getName()).toString());
+				}
+			});
+			System.out.printf("  %-40s %,8d  e.g.%s%n", count.getKey(), count.getValue(), fields);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.graph.MembershipIndex;
+import csulb.cecs323.model.AdHocTeam;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.IndividualAuthor;
+
+import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers "which books did this author contribute to, including through teams" and
+ * "who shares a team with this author" by walking the entities, and again with the
+ * {@link MembershipIndex}. It then commits a new team membership and measures how long
+ * the index takes to reflect it.
+ * <p>
+ * Usage: {@code MembershipIndexBenchmark [profile]}, default {@code memory}.
+ */
+public class MembershipIndexBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-membership-index",
+				BenchmarkCatalog.smallCatalog(), Map.of())) {
+			String[] authors = sample(catalog, "IndividualAuthor");
+			String[] teams = sample(catalog, "AdHocTeam");
+
+			long start = System.nanoTime();
+			MembershipIndex index = MembershipIndex.open(catalog.getFactory());
+			System.out.printf("Index built in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+			EntityManager manager = catalog.getFactory().createEntityManager();
+			try {
+				Benchmark entities = new Benchmark(200, 2_000);
+				entities.run("Contributions (entities)", (thread, i) -> {
+					IndividualAuthor author = manager.find(IndividualAuthor.class, authors[i % authors.length]);
+					List<String> isbns = new ArrayList<>();
+					for (Books book : author.getWorks()) isbns.add(book.getISBN());
+					for (AdHocTeam team : author.getTeamMemberships()) {
+						for (Books book : team.getWorks()) isbns.add(book.getISBN());
+					}
+					manager.clear();
+				});
+				entities.run("Co-authors (entities)", (thread, i) -> {
+					IndividualAuthor author = manager.find(IndividualAuthor.class, authors[i % authors.length]);
+					Set<String> coAuthors = new HashSet<>();
+					for (AdHocTeam team : author.getTeamMemberships()) {
+						for (IndividualAuthor member : team.getTeamMembers()) coAuthors.add(member.getEmail());
+					}
+					coAuthors.remove(author.getEmail());
+					manager.clear();
+				});
+
+				Benchmark indexed = new Benchmark(20_000, 200_000);
+				indexed.run("Contributions (index)", (thread, i) -> index.getContributions(authors[i % authors.length]));
+				indexed.run("Co-authors (index)", (thread, i) -> index.getCoAuthors(authors[i % authors.length]));
+				indexed.run("Collaborators within 3 hops (index)", (thread, i) -> index.getCollaborators(authors[i % authors.length], 3));
+				indexed.run("Contributions (index, 4 threads)", 4, (thread, i) -> index.getContributions(authors[(i + thread) % authors.length]));
+
+				// Find a team the first author is not in yet, then add the author to it
+				String author = authors[0];
+				String team = null;
+				for (String candidate : teams) {
+					if (!index.isMember(candidate, author)) {
+						team = candidate;
+						break;
+					}
+				}
+				if (team == null) throw new IllegalStateException("No team left to add " + author + " to.");
+				manager.getTransaction().begin();
+				new CatalogService(manager).addTeamMembership(team, author);
+				manager.getTransaction().commit();
+				long committed = System.nanoTime();
+				while (!index.isMember(team, author)) Thread.onSpinWait();
+				System.out.printf("New membership visible in the index %.0f us after commit (%d refreshes, %d rebuilds)%n",
+						(System.nanoTime() - committed) / 1e3, index.getRefreshCount(), index.getRebuildCount());
+			} finally {
+				manager.close();
+				index.close();
+			}
+		}
+	}
+
+	private static String[] sample(BenchmarkCatalog catalog, String type) throws Exception {
+		List<String> emails = new ArrayList<>();
+		try (Connection connection = catalog.openConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery(
+				     "SELECT EMAIL FROM AUTHORING_ENTITIES WHERE AUTHORING_ENTITY_TYPE = '" + type + "'")) {
+			while (results.next() && emails.size() < 10_000) emails.add(results.getString(1));
+		}
+		if (emails.isEmpty()) throw new IllegalStateException("The catalog has no " + type + ".");
+		return emails.toArray(new String[0]);
+	}
+}
@@ -0,0 +1,77 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+import csulb.cecs323.model.Writing_Groups;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the application's named queries against the same generated catalog under
+ * different persistence profiles. Comparing the in-memory profile with the on-disk
+ * one separates the cost of the database engine from the cost of its storage.
+ * <p>
+ * Usage: {@code NamedQueryBenchmark [profile ...]}, default {@code memory embedded}.
+ */
+public class NamedQueryBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		List<PersistenceProfile> profiles = new ArrayList<>();
+		for (String arg : args) profiles.add(PersistenceProfile.valueOf(arg.toUpperCase()));
+		if (profiles.isEmpty()) profiles = List.of(PersistenceProfile.MEMORY, PersistenceProfile.EMBEDDED);
+
+		for (PersistenceProfile profile : profiles) {
+			System.out.println("\n==== " + profile + " ====");
+			try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-named-queries",
+					BenchmarkCatalog.smallCatalog(), Map.of())) {
+				run(catalog);
+			}
+		}
+	}
+
+	/**
+	 * Benchmark the point lookups and listings of the named queries on one catalog.
+	 */
+	static void run(BenchmarkCatalog catalog) throws Exception {
+		EntityManager manager = catalog.getFactory().createEntityManager();
+		try {
+			Benchmark points = new Benchmark(2_000, 20_000);
+			points.run("ReturnPublisher (point)", (thread, i) -> {
+				manager.createNamedQuery("ReturnPublisher", Publishers.class)
+						.setParameter(1, catalog.publisherName(i)).getResultList();
+				manager.clear();
+			});
+			points.run("ReturnAuthor (point)", (thread, i) -> {
+				manager.createNamedQuery("ReturnAuthor", Authoring_Entities.class)
+						.setParameter(1, catalog.authorName(i)).getResultList();
+				manager.clear();
+			});
+			points.run("ReturnBooks (point)", (thread, i) -> {
+				manager.createNamedQuery("ReturnBooks", Books.class)
+						.setParameter(1, catalog.isbn(i)).getResultList();
+				manager.clear();
+			});
+
+			Benchmark listings = new Benchmark(5, 30);
+			listings.run("ReturnAllPublishers (listing)", (thread, i) -> {
+				manager.createNamedQuery("ReturnAllPublishers", Publishers.class).getResultList();
+				manager.clear();
+			});
+			listings.run("ReturnAllWritingGroups (listing)", (thread, i) -> {
+				manager.createNamedQuery("ReturnAllWritingGroups", Writing_Groups.class).getResultList();
+				manager.clear();
+			});
+			listings.run("ReturnAllBooks (listing)", (thread, i) -> {
+				manager.createNamedQuery("ReturnAllBooks", Books.class).getResultList();
+				manager.clear();
+			});
+		} finally {
+			manager.close();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.NetworkServer;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+import csulb.cecs323.model.Writing_Groups;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+
+/**
+ * Compares embedded access with client/server access for the application's named
+ * queries. A network server is started in this JVM over an on-disk catalog, then the
+ * same queries are run through the embedded driver and through the pooled client
+ * driver, from one thread and from several.
+ * <p>
+ * Usage: {@code NetworkBenchmark [threads]}, default 4.
+ */
+public class NetworkBenchmark {
+
+	private static final String DATABASE = "bench-network";
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		System.setProperty(PersistenceProfile.POOL_MAX_PROPERTY, Integer.toString(Math.max(threads, 2)));
+
+		try (NetworkServer server = NetworkServer.start();
+		     BenchmarkCatalog catalog = new BenchmarkCatalog(PersistenceProfile.EMBEDDED, DATABASE,
+				     BenchmarkCatalog.smallCatalog(), Map.of())) {
+			EntityManagerFactory client = PersistenceProfile.NETWORK.createEntityManagerFactory(DATABASE, Map.of());
+			try {
+				for (int n : new int[] {1, threads}) {
+					System.out.println("\n==== embedded, " + n + " thread(s) ====");
+					run(catalog, catalog.getFactory(), n);
+					System.out.println("\n==== client/server, " + n + " thread(s) ====");
+					run(catalog, client, n);
+				}
+			} finally {
+				client.close();
+			}
+		}
+	}
+
+	private static void run(BenchmarkCatalog catalog, EntityManagerFactory factory, int threads) throws Exception {
+		EntityManager[] managers = new EntityManager[threads];
+		for (int i = 0; i < threads; i++) managers[i] = factory.createEntityManager();
+		try {
+			Benchmark points = new Benchmark(1_000, 10_000);
+			points.run("ReturnPublisher (point)", threads, (thread, i) -> {
+				managers[thread].createNamedQuery("ReturnPublisher", Publishers.class)
+						.setParameter(1, catalog.publisherName(i + thread)).getResultList();
+				managers[thread].clear();
+			});
+			points.run("ReturnAuthor (point)", threads, (thread, i) -> {
+				managers[thread].createNamedQuery("ReturnAuthor", Authoring_Entities.class)
+						.setParameter(1, catalog.authorName(i + thread)).getResultList();
+				managers[thread].clear();
+			});
+			points.run("ReturnBooks (point)", threads, (thread, i) -> {
+				managers[thread].createNamedQuery("ReturnBooks", Books.class)
+						.setParameter(1, catalog.isbn(i + thread)).getResultList();
+				managers[thread].clear();
+			});
+
+			Benchmark listings = new Benchmark(3, 20);
+			listings.run("ReturnAllPublishers (listing)", threads, (thread, i) -> {
+				managers[thread].createNamedQuery("ReturnAllPublishers", Publishers.class).getResultList();
+				managers[thread].clear();
+			});
+			listings.run("ReturnAllWritingGroups (listing)", threads, (thread, i) -> {
+				managers[thread].createNamedQuery("ReturnAllWritingGroups", Writing_Groups.class).getResultList();
+				managers[thread].clear();
+			});
+		} finally {
+			for (EntityManager manager : managers) manager.close();
+		}
+	}
+}
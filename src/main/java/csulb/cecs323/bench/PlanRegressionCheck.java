@@ -0,0 +1,216 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+import csulb.cecs323.tools.CatalogGenerator;
+
+import javax.persistence.NamedNativeQuery;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Captures the plan Derby chooses for every named native query on a large generated
+ * catalog, and compares each access path with the one expected in
+ * {@code plans/expected-plans.properties}.
+ * <p>
+ * A query has regressed if a table it used to read through an index is now scanned in
+ * full, or if rows it used to read in index order now have to be sorted. Any regression,
+ * and any named query without an expected plan, makes the check exit with status 1; the
+ * build runs it as {@code PlanRegressionIT} in {@code mvn verify}. Other differences, e.g. a
+ * different index, are reported but pass.
+ * <p>
+ * Usage: {@code PlanRegressionCheck [--books N] [--plans DIR] [--update FILE]}
+ * <ul>
+ *     <li>{@code --books N}: the number of books generated, default 200000</li>
+ *     <li>{@code --plans DIR}: also write the full plan of each query to {@code DIR/<query>.txt}</li>
+ *     <li>{@code --update FILE}: write the captured access paths to FILE as the new expectations,
+ *         e.g. {@code src/main/resources/plans/expected-plans.properties}</li>
+ * </ul>
+ */
+public class PlanRegressionCheck {
+
+	private static final String EXPECTED_PLANS = "/plans/expected-plans.properties";
+
+	// Entities carrying the named native queries
+	private static final Class<?>[] ENTITIES = {Publishers.class, Authoring_Entities.class, Books.class};
+
+	// Values bound to each query's parameters; a query with parameters must have an entry
+	private static final Map<String, Function<BenchmarkCatalog, Object[]>> PARAMETERS = Map.of(
+			"ReturnPublisher", catalog -> new Object[] {catalog.publisherName(0)},
+			"ReturnAuthor", catalog -> new Object[] {catalog.authorName(0)},
+			"ReturnBooks", catalog -> new Object[] {catalog.isbn(0)},
+			"CountWorks", catalog -> new Object[] {catalog.authorEmail(0)},
+			"ReturnWorksPage", catalog -> new Object[] {catalog.authorEmail(0), 0, 10},
+			"ContainsWork", catalog -> new Object[] {catalog.authorEmail(0), catalog.isbn(0)},
+			"ReturnBooksByYear", catalog -> new Object[] {2000, 2001},
+			"ReturnNewestBooksOfPublisher", catalog -> new Object[] {catalog.publisherName(0), 10},
+			"ReturnOldestBooksOfPublisher", catalog -> new Object[] {catalog.publisherName(0), 10},
+			"ReturnPublisherBooksByYear", catalog -> new Object[] {catalog.publisherName(0), 1990, 2000});
+
+	public static void main(String[] args) throws Exception {
+		int books = 200_000;
+		Path plans = null;
+		Path update = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--books" -> books = Integer.parseInt(args[++i]);
+				case "--plans" -> plans = Path.of(args[++i]);
+				case "--update" -> update = Path.of(args[++i]);
+				default -> {
+					System.out.println("Usage: PlanRegressionCheck [--books N] [--plans DIR] [--update FILE]");
+					System.exit(2);
+				}
+			}
+		}
+		if (check(books, plans, update) > 0) System.exit(1);
+	}
+
+	/**
+	 * Capture the plan of every named native query and compare it with the expected one,
+	 * printing the outcome of each; {@code PlanRegressionIT} runs it in {@code mvn verify}.
+	 * @param books the number of books generated
+	 * @param plans where to write the full plan of each query, or {@code null} not to
+	 * @param update where to write the captured access paths as the new expectations, or
+	 *               {@code null} to check them
+	 * @return the number of queries that failed the check; 0 when updating
+	 */
+	public static int check(int books, Path plans, Path update) throws Exception {
+		CatalogGenerator generator = BenchmarkCatalog.smallCatalog();
+		generator.setBooks(books);
+		Properties expected = loadExpectedPlans();
+		Map<String, QueryPlan> captured = new TreeMap<>();
+		int failures = 0;
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(PersistenceProfile.MEMORY, "plan-check", generator, Map.of());
+		     Connection connection = catalog.openConnection()) {
+			updateStatistics(connection);
+			for (NamedNativeQuery query : namedQueries()) {
+				Function<BenchmarkCatalog, Object[]> parameters = PARAMETERS.get(query.name());
+				if (parameters == null && query.query().contains("?")) {
+					System.out.printf("%-30s MISSING   no sample parameters; add them to PlanRegressionCheck%n", query.name());
+					failures++;
+					continue;
+				}
+				QueryPlan plan = QueryPlan.capture(connection, query.query(),
+						parameters == null ? new Object[0] : parameters.apply(catalog));
+				captured.put(query.name(), plan);
+				failures += report(query.name(), expected.getProperty(query.name()), plan);
+			}
+		}
+
+		if (plans != null) {
+			Files.createDirectories(plans);
+			for (Map.Entry<String, QueryPlan> entry : captured.entrySet()) {
+				Files.writeString(plans.resolve(entry.getKey() + ".txt"), entry.getValue().getText());
+			}
+			System.out.println("\nPlans written to " + plans);
+		}
+		if (update != null) {
+			writeExpectedPlans(update, captured);
+			System.out.println("\nExpected plans written to " + update);
+			return 0;
+		}
+		if (failures > 0) {
+			System.out.println("\n" + failures + " quer" + (failures == 1 ? "y" : "ies") + " failed the plan check.");
+		} else {
+			System.out.println("\nAll plans as expected.");
+		}
+		return failures;
+	}
+
+	/**
+	 * Compare a captured plan with the expected access path and print the outcome.
+	 * @return 1 if the query failed the check, 0 otherwise
+	 */
+	private static int report(String name, String expected, QueryPlan plan) {
+		String actual = plan.getAccessPath();
+		String status;
+		int failed = 0;
+		if (expected == null) {
+			status = "NEW";
+			failed = 1;
+		} else if (expected.equals(actual)) {
+			status = "ok";
+		} else if (isRegression(expected, plan)) {
+			status = "REGRESSED";
+			failed = 1;
+		} else {
+			status = "changed";
+		}
+		System.out.printf("%-30s %-9s %-70s %,10d rows visited%n", name, status, actual, plan.getRowsVisited());
+		if (expected != null && !expected.equals(actual)) System.out.printf("%-40s expected %s%n", "", expected);
+		return failed;
+	}
+
+	/**
+	 * @return whether a table the expected path reads through an index is now scanned, or a
+	 * 			sort appeared that the expected path did not need
+	 */
+	static boolean isRegression(String expected, QueryPlan plan) {
+		List<String> parts = List.of(expected.split("; "));
+		if (plan.isSorted() && !parts.contains("sort")) return true;
+		for (String part : parts) {
+			int index = part.indexOf(" index ");
+			if (index < 0) continue;
+			String table = part.substring(0, index);
+			if (plan.getAccesses().contains(table + " table scan")) return true;
+		}
+		return false;
+	}
+
+	private static List<NamedNativeQuery> namedQueries() {
+		List<NamedNativeQuery> queries = new ArrayList<>();
+		for (Class<?> entity : ENTITIES) queries.addAll(List.of(entity.getAnnotationsByType(NamedNativeQuery.class)));
+		return queries;
+	}
+
+	/**
+	 * Bring the optimizer's statistics up to date; the indexes were created on empty tables.
+	 */
+	private static void updateStatistics(Connection connection) throws Exception {
+		List<String> tables = new ArrayList<>();
+		try (Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery("SELECT TABLENAME FROM SYS.SYSTABLES WHERE TABLETYPE = 'T'")) {
+			while (results.next()) tables.add(results.getString(1));
+		}
+		try (Statement statement = connection.createStatement()) {
+			for (String table : tables) {
+				statement.execute("CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS('APP', '" + table + "', NULL)");
+			}
+		}
+	}
+
+	private static Properties loadExpectedPlans() throws IOException {
+		Properties expected = new Properties();
+		try (InputStream in = PlanRegressionCheck.class.getResourceAsStream(EXPECTED_PLANS)) {
+			if (in != null) expected.load(in);
+		}
+		return expected;
+	}
+
+	private static void writeExpectedPlans(Path file, Map<String, QueryPlan> plans) throws IOException {
+		if (file.getParent() != null) Files.createDirectories(file.getParent());
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+			out.println("# Access path Derby is expected to choose for each named native query on a generated");
+			out.println("# catalog; checked by csulb.cecs323.bench.PlanRegressionCheck, which rewrites this file");
+			out.println("# when run with --update.");
+			for (Map.Entry<String, QueryPlan> entry : plans.entrySet()) {
+				out.println(entry.getKey() + "=" + entry.getValue().getAccessPath());
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.AsyncQueries;
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.app.Prefetcher;
+import csulb.cecs323.model.Authoring_Entities;
+
+import javax.persistence.EntityManager;
+import java.util.Map;
+
+/**
+ * Plays an operator on the info screens: pick a publisher, read its details for a while,
+ * then look at its newest books; pick an author, then look at the first and second page
+ * of its works. The latency reported is only that of showing the books, the part a
+ * prefetch can hide, first without prefetching and then with it, for different lengths
+ * of the pause in between.
+ * <p>
+ * Usage: {@code PrefetchBenchmark [profile] [selections]}, default {@code embedded 300}.
+ */
+public class PrefetchBenchmark {
+
+	private static final int[] THINK_MILLIS = {0, 2, 10};
+	private static final int PAGE_SIZE = 10;
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.EMBEDDED;
+		int selections = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-prefetch",
+				BenchmarkCatalog.smallCatalog(), Map.of());
+		     AsyncQueries queries = new AsyncQueries(catalog.getFactory(), 2, 256)) {
+			EntityManager manager = catalog.getFactory().createEntityManager();
+			try {
+				CatalogService service = new CatalogService(manager);
+				// Warm up both paths before measuring
+				run(catalog, service, null, 100, 0, 0);
+				try (Prefetcher prefetcher = new Prefetcher(queries, 64)) {
+					run(catalog, service, prefetcher, 100, 0, 0);
+				}
+
+				for (int think : THINK_MILLIS) {
+					LatencyRecorder without = run(catalog, service, null, selections, think, 1_000);
+					System.out.printf("pause %2d ms, no prefetch  %s%n", think, without.summary());
+					try (Prefetcher prefetcher = new Prefetcher(queries, 64)) {
+						LatencyRecorder with = run(catalog, service, prefetcher, selections, think, 1_000);
+						System.out.printf("pause %2d ms, prefetch     %s%n", think, with.summary());
+						System.out.println("               " + prefetcher.summary());
+					}
+				}
+			} finally {
+				manager.close();
+			}
+		}
+	}
+
+	/**
+	 * @param prefetcher the prefetcher to go through, or {@code null} to query directly
+	 * @return the latency of the reads that follow each selection
+	 */
+	private static LatencyRecorder run(BenchmarkCatalog catalog, CatalogService service, Prefetcher prefetcher,
+	                                   int selections, int thinkMillis, int first) throws InterruptedException {
+		LatencyRecorder latency = new LatencyRecorder();
+		for (int i = first; i < first + selections; i++) {
+			String publisher = catalog.publisherName(i);
+			if (prefetcher != null) prefetcher.publisherSelected(publisher, PAGE_SIZE);
+			service.getPublisher(publisher);
+			Thread.sleep(thinkMillis);
+			long start = System.nanoTime();
+			if (prefetcher != null) prefetcher.getNewestBooks(service, publisher, PAGE_SIZE);
+			else service.getNewestBooks(publisher, PAGE_SIZE);
+			latency.recordSince(start);
+
+			String author = catalog.authorEmail(i);
+			if (prefetcher != null) prefetcher.authorSelected(author, PAGE_SIZE);
+			service.getEntityManager().find(Authoring_Entities.class, author);
+			Thread.sleep(thinkMillis);
+			start = System.nanoTime();
+			if (prefetcher != null) {
+				prefetcher.countWorks(service, author);
+				prefetcher.getWorksPage(service, author, 0, PAGE_SIZE);
+				prefetcher.worksPageShown(author, 0, PAGE_SIZE);
+			} else {
+				service.countWorks(author);
+				service.getWorksPage(author, 0, PAGE_SIZE);
+			}
+			latency.recordSince(start);
+
+			Thread.sleep(thinkMillis);
+			start = System.nanoTime();
+			if (prefetcher != null) prefetcher.getWorksPage(service, author, PAGE_SIZE, PAGE_SIZE);
+			else service.getWorksPage(author, PAGE_SIZE, PAGE_SIZE);
+			latency.recordSince(start);
+			service.getEntityManager().clear();
+		}
+		return latency;
+	}
+}
@@ -0,0 +1,151 @@
+package csulb.cecs323.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The execution plan Derby chose for one run of a query, captured with its runtime
+ * statistics ({@code SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS}).
+ * <p>
+ * Besides the full plan text, the plan is boiled down to its access path: for each table
+ * read, whether it was scanned in full or read through an index, and which one, plus
+ * whether the rows had to be sorted afterwards. Indexes Derby creates for constraints
+ * get generated names that differ from one database to the next, so those are named by
+ * their kind instead, e.g. {@code PUBLISHERS index PRIMARY KEY}.
+ */
+public class QueryPlan {
+
+	private static final Pattern SCAN = Pattern.compile(
+			"(Table|Index|Hash|Distinct|Bulk Table) Scan ResultSet for (\\S+)(?: using (?:index|constraint) (\\S+))?");
+	private static final Pattern ROWS_VISITED = Pattern.compile("Number of rows visited=(\\d+)");
+	private static final Pattern GENERATED_NAME = Pattern.compile("SQL\\d+");
+
+	private final String text;
+	private final List<String> accesses;
+	private final boolean sorted;
+	private final long rowsVisited;
+
+	private QueryPlan(String text, List<String> accesses, boolean sorted, long rowsVisited) {
+		this.text = text;
+		this.accesses = Collections.unmodifiableList(accesses);
+		this.sorted = sorted;
+		this.rowsVisited = rowsVisited;
+	}
+
+	/**
+	 * Run a query once, reading all of its results, and capture the plan Derby used.
+	 * @param connection an embedded connection to the database
+	 * @param sql the query, with {@code ?} placeholders
+	 * @param parameters the values to bind to the placeholders, in order
+	 * @return the plan of that run
+	 */
+	public static QueryPlan capture(Connection connection, String sql, Object... parameters) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+			try {
+				try (PreparedStatement query = connection.prepareStatement(sql)) {
+					for (int i = 0; i < parameters.length; i++) query.setObject(i + 1, parameters[i]);
+					try (ResultSet results = query.executeQuery()) {
+						while (results.next()) {
+							// The statistics are complete only once every row has been read
+						}
+					}
+				}
+				String text;
+				try (ResultSet statistics = statement.executeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+					statistics.next();
+					text = statistics.getString(1);
+				}
+				return parse(text, constraintKinds(connection));
+			} finally {
+				statement.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)");
+			}
+		}
+	}
+
+	/**
+	 * @return the plan as Derby reported it
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return how each table was read, in the order the plan lists them, e.g.
+	 * 			{@code BOOKS index BOOKS_YEAR} or {@code AUTHORING_ENTITIES table scan}
+	 */
+	public List<String> getAccesses() {
+		return accesses;
+	}
+
+	/**
+	 * @return whether the rows were sorted after being read
+	 */
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * @return the number of rows read from tables and indexes
+	 */
+	public long getRowsVisited() {
+		return rowsVisited;
+	}
+
+	/**
+	 * @return the access path in one line, e.g. {@code BOOKS index BOOKSPUBLISHERNAME; sort}
+	 */
+	public String getAccessPath() {
+		List<String> parts = new ArrayList<>(accesses);
+		if (sorted) parts.add("sort");
+		return String.join("; ", parts);
+	}
+
+	private static QueryPlan parse(String text, Map<String, String> constraintKinds) {
+		List<String> accesses = new ArrayList<>();
+		Matcher scan = SCAN.matcher(text);
+		while (scan.find()) {
+			String table = scan.group(2);
+			String index = scan.group(3);
+			if (index == null) {
+				accesses.add(table + " table scan");
+			} else {
+				if (GENERATED_NAME.matcher(index).matches()) index = constraintKinds.getOrDefault(index, index);
+				accesses.add(table + " index " + index);
+			}
+		}
+		long rowsVisited = 0;
+		Matcher rows = ROWS_VISITED.matcher(text);
+		while (rows.find()) rowsVisited += Long.parseLong(rows.group(1));
+		return new QueryPlan(text, accesses, text.contains("Sort ResultSet"), rowsVisited);
+	}
+
+	/**
+	 * @return the kind of each constraint, keyed by its name
+	 */
+	private static Map<String, String> constraintKinds(Connection connection) throws SQLException {
+		Map<String, String> kinds = new HashMap<>();
+		try (Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery("SELECT CONSTRAINTNAME, TYPE FROM SYS.SYSCONSTRAINTS")) {
+			while (results.next()) {
+				kinds.put(results.getString(1), switch (results.getString(2)) {
+					case "P" -> "PRIMARY KEY";
+					case "U" -> "UNIQUE";
+					case "F" -> "FOREIGN KEY";
+					default -> "CHECK";
+				});
+			}
+		}
+		return kinds;
+	}
+}
@@ -0,0 +1,88 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.app.SessionRouter;
+
+import javax.persistence.EntityManager;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures what the read-only sessions of a {@link SessionRouter} save: first the same
+ * reads on an ordinary EntityManager and on a read-only one, then reads through the
+ * router while another thread keeps writing books.
+ * <p>
+ * Usage: {@code ReadWriteSplitBenchmark [profile] [threads]}, default {@code embedded 4}.
+ */
+public class ReadWriteSplitBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.EMBEDDED;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-rwsplit",
+				BenchmarkCatalog.smallCatalog(), Map.of())) {
+			EntityManager readWrite = catalog.getFactory().createEntityManager();
+			EntityManager readOnly = catalog.getFactory().createEntityManager();
+			try {
+				compare("getBooksByYear, one year", new CatalogService(readWrite), CatalogService.readOnly(readOnly, null),
+						(service, i) -> service.getBooksByYear(1950 + i % 75, 1950 + i % 75));
+				compare("getPublishers", new CatalogService(readWrite), CatalogService.readOnly(readOnly, null),
+						(service, i) -> service.getPublishers());
+				compare("getWorksPage", new CatalogService(readWrite), CatalogService.readOnly(readOnly, null),
+						(service, i) -> service.getWorksPage(catalog.authorEmail(i), 0, 10));
+			} finally {
+				readWrite.close();
+				readOnly.close();
+			}
+
+			try (SessionRouter router = new SessionRouter(catalog.getFactory(), null, null, threads, 1)) {
+				Benchmark benchmark = new Benchmark(500, 5_000);
+				benchmark.run("router reads, " + threads + " threads, no writes", threads,
+						(thread, i) -> router.read(service -> service.getBook(catalog.isbn(i * 7919 + thread))));
+
+				AtomicBoolean writing = new AtomicBoolean(true);
+				AtomicInteger written = new AtomicInteger();
+				Thread writer = new Thread(() -> {
+					while (writing.get()) {
+						int i = written.getAndIncrement();
+						router.write(service -> service.addBook(String.format("RW-%08d", i), "Split " + i, 2000,
+								catalog.authorEmail(i), catalog.publisherName(i)));
+					}
+				}, "rwsplit-writer");
+				writer.start();
+				try {
+					benchmark.run("router reads, " + threads + " threads, one writer", threads,
+							(thread, i) -> router.read(service -> service.getBook(catalog.isbn(i * 7919 + thread))));
+				} finally {
+					writing.set(false);
+					writer.join();
+				}
+				System.out.println("books written meanwhile: " + written.get());
+				System.out.println(router.summary());
+			}
+		}
+	}
+
+	private interface Read {
+		Object apply(CatalogService service, int i);
+	}
+
+	/**
+	 * Run the same read on an ordinary service and on a read-only one, clearing the
+	 * persistence context after each run as the router does.
+	 */
+	private static void compare(String name, CatalogService readWrite, CatalogService readOnly, Read read) throws Exception {
+		Benchmark benchmark = new Benchmark(200, 2_000);
+		benchmark.run(name + ", read-write", (thread, i) -> {
+			read.apply(readWrite, i);
+			readWrite.getEntityManager().clear();
+		});
+		benchmark.run(name + ", read-only", (thread, i) -> {
+			read.apply(readOnly, i);
+			readOnly.getEntityManager().clear();
+		});
+	}
+}
@@ -0,0 +1,106 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.shard.ShardedCatalog;
+import csulb.cecs323.shard.ShardingSink;
+import csulb.cecs323.tools.CatalogGenerator;
+import csulb.cecs323.tools.CsvSink;
+import csulb.cecs323.tools.SeedLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Spreads the same generated catalog over 1, 2, 4 and 8 shards with a
+ * {@link ShardedCatalog}, and measures the operations that go to one shard, point
+ * lookups and inserts, next to those that go to all of them and merge the results.
+ * <p>
+ * Usage: {@code ShardingBenchmark [profile] [books]}, default {@code memory 100000}.
+ */
+public class ShardingBenchmark {
+
+	private static final int[] SHARD_COUNTS = {1, 2, 4, 8};
+	private static final int THREADS = 4;
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+		int books = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+		for (int shards : SHARD_COUNTS) {
+			System.out.println("\n==== " + shards + " shard" + (shards == 1 ? "" : "s") + " ====");
+			ShardedCatalog catalog = new ShardedCatalog(profile, "bench-sharding", shards, Map.of());
+			try {
+				load(catalog, books);
+				String[] isbns = sample(catalog, "SELECT ISBN FROM BOOKS");
+				String[] publishers = sample(catalog, "SELECT NAME FROM PUBLISHERS");
+				String[] authors = sample(catalog, "SELECT EMAIL FROM AUTHORING_ENTITIES");
+
+				Benchmark single = new Benchmark(1_000, 10_000);
+				single.run("getBook, " + THREADS + " threads", THREADS,
+						(thread, i) -> catalog.getBook(isbns[Math.floorMod(i * 7919 + thread, isbns.length)]));
+				single.run("addBook, " + THREADS + " threads", THREADS, (thread, i) ->
+						catalog.addBook(String.format("SH%d-%02d-%07d", shards, thread, i), "Sharded " + i, 2000,
+								authors[Math.floorMod(i * 31 + thread, authors.length)], publishers[Math.floorMod(i, publishers.length)]));
+
+				Benchmark scatter = new Benchmark(100, 1_000);
+				scatter.run("countWorks", (thread, i) -> catalog.countWorks(authors[Math.floorMod(i * 7919, authors.length)]));
+				scatter.run("getWorksPage, second page", (thread, i) ->
+						catalog.getWorksPage(authors[Math.floorMod(i * 7919, authors.length)], 10, 10));
+				scatter.run("getNewestBooks, top 10", (thread, i) -> catalog.getNewestBooks(publishers[Math.floorMod(i, publishers.length)], 10));
+				new Benchmark(5, 50).run("getBooksByYear, one year", (thread, i) -> catalog.getBooksByYear(1950 + i % 75, 1950 + i % 75));
+			} finally {
+				catalog.close();
+				for (int shard = 0; shard < shards; shard++) profile.dropDatabase(catalog.getDatabaseName(shard));
+			}
+		}
+	}
+
+	/**
+	 * Generate the catalog once, split over the shards, and bulk load each shard.
+	 */
+	private static void load(ShardedCatalog catalog, int books) throws Exception {
+		CatalogGenerator generator = BenchmarkCatalog.smallCatalog();
+		generator.setBooks(books);
+		Path csv = Files.createTempDirectory("sharded-catalog");
+		try {
+			List<CsvSink> sinks = new ArrayList<>();
+			for (int shard = 0; shard < catalog.getShardCount(); shard++) sinks.add(new CsvSink(csv.resolve("shard" + shard)));
+			try (ShardingSink sink = new ShardingSink(sinks)) {
+				generator.generate(sink);
+			}
+			for (int shard = 0; shard < catalog.getShardCount(); shard++) {
+				SeedLoader loader = new SeedLoader(catalog.getJdbcUrl(shard), "app", "app");
+				loader.setReportProgress(false);
+				loader.load(csv.resolve("shard" + shard));
+			}
+		} finally {
+			try (Stream<Path> files = Files.walk(csv)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * @return up to 10000 keys read from every shard
+	 */
+	private static String[] sample(ShardedCatalog catalog, String sql) throws Exception {
+		List<String> keys = new ArrayList<>();
+		for (int shard = 0; shard < catalog.getShardCount(); shard++) {
+			try (Connection connection = DriverManager.getConnection(catalog.getJdbcUrl(shard), "app", "app");
+			     Statement statement = connection.createStatement();
+			     ResultSet results = statement.executeQuery(sql)) {
+				while (results.next() && keys.size() < 10_000 * (shard + 1) / catalog.getShardCount()) keys.add(results.getString(1));
+			}
+		}
+		return keys.toArray(new String[0]);
+	}
+}
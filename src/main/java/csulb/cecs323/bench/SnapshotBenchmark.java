@@ -0,0 +1,89 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.tools.CatalogGenerator;
+import csulb.cecs323.tools.CatalogSnapshot;
+import csulb.cecs323.tools.CsvSink;
+import csulb.cecs323.tools.SeedLoader;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Backs a generated catalog up with {@link CatalogSnapshot} and restores it into an empty
+ * database, next to the CSV files and {@link SeedLoader} that restores used to go through.
+ * <p>
+ * Usage: {@code SnapshotBenchmark [profile] [books]}, default {@code memory 500000}.
+ */
+public class SnapshotBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+		int books = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+		CatalogGenerator generator = BenchmarkCatalog.smallCatalog();
+		generator.setBooks(books);
+		Path work = Files.createTempDirectory("snapshot-benchmark");
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-snapshot", generator, Map.of())) {
+			Path file = work.resolve("catalog.snapshot");
+			CatalogSnapshot source = new CatalogSnapshot(profile.jdbcUrl("bench-snapshot"), "app", "app");
+			// The first dump also compiles the code; time the second
+			source.dump(file);
+			System.out.println("dump     " + source.dump(file));
+			CatalogSnapshot.verify(file);
+			System.out.println("verify   " + CatalogSnapshot.verify(file));
+
+			long start = System.nanoTime();
+			try (CsvSink sink = new CsvSink(work.resolve("csv"))) {
+				generator.generate(sink);
+			}
+			long csvBytes;
+			try (Stream<Path> files = Files.list(work.resolve("csv"))) {
+				csvBytes = files.mapToLong(path -> path.toFile().length()).sum();
+			}
+			System.out.printf("csv      %,d bytes, %.1fx the snapshot, written in %.2f s%n",
+					csvBytes, (double) csvBytes / Files.size(file), (System.nanoTime() - start) / 1e9);
+
+			for (int run = 0; run < 2; run++) {
+				String restored = "bench-snapshot-restore" + run;
+				emptySchema(profile, restored);
+				CatalogSnapshot target = new CatalogSnapshot(profile.jdbcUrl(restored), "app", "app");
+				System.out.println("restore  " + target.restore(file));
+				// A dump of the restored catalog must come out the same, byte for byte
+				Path again = work.resolve("restored.snapshot");
+				target.dump(again);
+				System.out.println("         round trip identical: " + (Files.mismatch(file, again) == -1));
+				profile.dropDatabase(restored);
+
+				String loaded = "bench-snapshot-csv" + run;
+				emptySchema(profile, loaded);
+				SeedLoader loader = new SeedLoader(profile.jdbcUrl(loaded), "app", "app");
+				loader.setReportProgress(false);
+				start = System.nanoTime();
+				long rows = loader.load(work.resolve("csv")).values().stream().mapToLong(Long::longValue).sum();
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("csv load %,d rows, %,d bytes in %.2f s: %.1f MB/s, %,.0f rows/s%n",
+						rows, csvBytes, seconds, csvBytes / 1e6 / seconds, rows / seconds);
+				profile.dropDatabase(loaded);
+			}
+		} finally {
+			try (Stream<Path> files = Files.walk(work)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * Create the catalog's tables in a new database, without the seed data.
+	 */
+	private static void emptySchema(PersistenceProfile profile, String databaseName) {
+		EntityManagerFactory factory = profile.createEntityManagerFactory(databaseName,
+				Map.of("javax.persistence.sql-load-script-source", ""));
+		factory.createEntityManager().close();
+		factory.close();
+	}
+}
@@ -0,0 +1,119 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.BookPurger;
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.tools.ZipfDistribution;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deletes popular books while a reader keeps looking books up, first removing each book
+ * in its transaction as the console used to, then only marking it deleted, and measures
+ * both the deletes and the reader. The marked books are then purged by a
+ * {@link BookPurger}, once with the reader stopped, for the purge rate, and once while it
+ * runs, for what purging costs the reader.
+ * <p>
+ * Usage: {@code SoftDeleteBenchmark [profile] [deletes]}, default {@code memory 1000}.
+ */
+public class SoftDeleteBenchmark {
+
+	private static final String DATABASE = "bench-softdelete";
+	// Deletes and lookups both pick among the most popular books
+	private static final int HOT_BOOKS = 20_000;
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+		int deletes = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, DATABASE, BenchmarkCatalog.smallCatalog(), Map.of())) {
+			BookPurger purger = new BookPurger(catalog.getFactory(), 100, 0, 0, false);
+			// The first pass also compiles the code; measure the rest
+			deleteWhileReading(catalog, purger, 0, deletes / 4, false);
+			System.out.println("hard delete        " + deleteWhileReading(catalog, purger, deletes, deletes, false));
+			System.out.println("soft delete        " + deleteWhileReading(catalog, purger, 2 * deletes, deletes, true));
+
+			long start = System.nanoTime();
+			long purged = purger.purge();
+			System.out.printf("purge, quiet       %d books in %.2f s: %.0f books/s%n",
+					purged, (System.nanoTime() - start) / 1e9, purged / ((System.nanoTime() - start) / 1e9));
+
+			deleteWhileReading(catalog, purger, 3 * deletes, deletes, true);
+			LatencyRecorder reads = new LatencyRecorder();
+			AtomicBoolean stop = new AtomicBoolean();
+			Thread reader = reader(catalog, purger, reads, stop, 99);
+			Thread.sleep(200);
+			start = System.nanoTime();
+			purged = purger.purge();
+			double seconds = (System.nanoTime() - start) / 1e9;
+			stop.set(true);
+			reader.join();
+			System.out.printf("purge, under load  %d books in %.2f s: %.0f books/s%n", purged, seconds, purged / seconds);
+			System.out.println("  " + purger.summary());
+		}
+	}
+
+	/**
+	 * Delete books one transaction at a time while a reader looks books up.
+	 * @param first the rank of the first book to delete; each pass deletes books of its own
+	 * @param soft whether to mark the books rather than remove them
+	 * @return the latency of the deletes and of the reader's lookups
+	 */
+	private static String deleteWhileReading(BenchmarkCatalog catalog, BookPurger purger, int first, int count,
+	                                         boolean soft) throws InterruptedException {
+		LatencyRecorder reads = new LatencyRecorder();
+		LatencyRecorder writes = new LatencyRecorder();
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread reader = reader(catalog, purger, reads, stop, first);
+		EntityManager manager = catalog.getFactory().createEntityManager();
+		try {
+			CatalogService service = new CatalogService(manager);
+			service.setSoftDelete(soft);
+			for (int i = first; i < first + count; i++) {
+				long start = System.nanoTime();
+				EntityTransaction tx = manager.getTransaction();
+				tx.begin();
+				service.deleteBook(catalog.isbn(i));
+				tx.commit();
+				writes.recordSince(start);
+				manager.clear();
+			}
+		} finally {
+			manager.close();
+			stop.set(true);
+			reader.join();
+		}
+		return String.format("deletes[%s]%n                   lookups[%s]", writes.summary(), reads.summary());
+	}
+
+	/**
+	 * Start a thread looking up popular books, Zipf-skewed, until told to stop.
+	 */
+	private static Thread reader(BenchmarkCatalog catalog, BookPurger purger, LatencyRecorder latency,
+	                             AtomicBoolean stop, long seed) {
+		Thread thread = new Thread(() -> {
+			ZipfDistribution zipf = new ZipfDistribution(HOT_BOOKS, 1.0);
+			SplittableRandom random = new SplittableRandom(seed);
+			EntityManager manager = catalog.getFactory().createEntityManager();
+			try {
+				CatalogService service = CatalogService.readOnly(manager, null);
+				while (!stop.get()) {
+					long start = System.nanoTime();
+					service.getBook(catalog.isbn(zipf.sample(random)));
+					latency.recordSince(start);
+					purger.recordForeground(start);
+					manager.clear();
+				}
+			} finally {
+				manager.close();
+			}
+		}, "reader");
+		thread.start();
+		return thread;
+	}
+}
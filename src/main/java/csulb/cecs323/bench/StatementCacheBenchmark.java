@@ -0,0 +1,65 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.app.StatementCacheMonitor;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import javax.persistence.EntityManager;
+import java.util.Map;
+
+/**
+ * Runs the point lookups behind the info screens, {@code ReturnPublisher},
+ * {@code ReturnAuthor} and {@code ReturnBooks}, with EclipseLink's prepared-statement
+ * cache off and then on, and reports their latency together with how many of the
+ * statements were served from the cache, as counted by {@link StatementCacheMonitor}.
+ * <p>
+ * Usage: {@code StatementCacheBenchmark [profile]}, default {@code memory}.
+ */
+public class StatementCacheBenchmark {
+
+	private static final int[] CACHE_SIZES = {0, PersistenceProfile.DEFAULT_STATEMENT_CACHE_SIZE};
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+
+		for (int size : CACHE_SIZES) {
+			System.out.println("\n==== statement cache " + (size > 0 ? "of " + size : "off") + " ====");
+			Map<String, String> overrides = Map.of(
+					"eclipselink.jdbc.cache-statements", Boolean.toString(size > 0),
+					"eclipselink.jdbc.cache-statements.size", Integer.toString(Math.max(size, 1)),
+					"eclipselink.session.customizer", StatementCacheMonitor.class.getName());
+			try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-statement-cache",
+					BenchmarkCatalog.smallCatalog(), overrides)) {
+				EntityManager manager = catalog.getFactory().createEntityManager();
+				try {
+					Benchmark points = new Benchmark(2_000, 20_000);
+					run(points, "ReturnPublisher", (thread, i) -> {
+						manager.createNamedQuery("ReturnPublisher", Publishers.class)
+								.setParameter(1, catalog.publisherName(i)).getResultList();
+						manager.clear();
+					});
+					run(points, "ReturnAuthor", (thread, i) -> {
+						manager.createNamedQuery("ReturnAuthor", Authoring_Entities.class)
+								.setParameter(1, catalog.authorName(i)).getResultList();
+						manager.clear();
+					});
+					run(points, "ReturnBooks", (thread, i) -> {
+						manager.createNamedQuery("ReturnBooks", Books.class)
+								.setParameter(1, catalog.isbn(i)).getResultList();
+						manager.clear();
+					});
+				} finally {
+					manager.close();
+				}
+			}
+		}
+	}
+
+	private static void run(Benchmark benchmark, String name, Benchmark.Operation operation) throws Exception {
+		StatementCacheMonitor.reset();
+		benchmark.run(name, operation);
+		System.out.println("  " + StatementCacheMonitor.summary());
+	}
+}
@@ -0,0 +1,177 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.tools.CatalogGenerator;
+import csulb.cecs323.tools.CsvSink;
+import csulb.cecs323.tools.SeedLoader;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Loads a generated catalog, then resends it as a feed would, and compares the ways of
+ * taking the resend in:
+ * <ul>
+ *     <li>the plain {@link SeedLoader}, which fails on the first row already there,</li>
+ *     <li>one row at a time, inserting and updating instead when the insert is rejected,</li>
+ *     <li>the loader in upsert mode, unchanged and with one book in a hundred changed, and</li>
+ *     <li>the loader in upsert mode into empty tables, next to the plain load.</li>
+ * </ul>
+ * Usage: {@code UpsertBenchmark [profile] [books]}, default {@code memory 200000}.
+ */
+public class UpsertBenchmark {
+
+	private static final String DATABASE = "bench-upsert";
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+		int books = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+		CatalogGenerator generator = BenchmarkCatalog.smallCatalog();
+		generator.setBooks(books);
+		Path csv = Files.createTempDirectory("upsert-benchmark");
+		String url = profile.jdbcUrl(DATABASE);
+		try {
+			try (CsvSink sink = new CsvSink(csv)) {
+				generator.generate(sink);
+			}
+			emptySchema(profile);
+
+			System.out.println("plain load, empty tables    " + load(url, csv, false));
+			try {
+				load(url, csv, false);
+				System.out.println("plain load, resend          succeeded?");
+			} catch (SQLException e) {
+				System.out.println("plain load, resend          failed: " + e.getSQLState() + " " + e.getMessage());
+			}
+			System.out.println("row at a time, books resent " + rowAtATime(url));
+			// The first upsert also compiles the code; time the second
+			load(url, csv, true);
+			System.out.println("upsert, resend unchanged    " + load(url, csv, true));
+			int stale = staleBooks(url, 100);
+			System.out.println("upsert, " + stale + " books changed " + load(url, csv, true));
+
+			clear(url);
+			System.out.println("upsert, empty tables        " + load(url, csv, true));
+		} finally {
+			profile.dropDatabase(DATABASE);
+			try (Stream<Path> files = Files.walk(csv)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * Load the CSV files with the {@link SeedLoader}.
+	 * @return the rows loaded and changed, and the rate
+	 */
+	private static String load(String url, Path csv, boolean upsert) throws Exception {
+		SeedLoader loader = new SeedLoader(url, "app", "app");
+		loader.setReportProgress(false);
+		loader.setUpsert(upsert);
+		long start = System.nanoTime();
+		long rows = loader.load(csv).values().stream().mapToLong(Long::longValue).sum();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		String result = String.format("%,d rows in %.2f s: %,.0f rows/s", rows, seconds, rows / seconds);
+		if (upsert) result += String.format(", changed %,d", loader.getChanged().values().stream().mapToLong(Long::longValue).sum());
+		return result;
+	}
+
+	/**
+	 * Resend every book as the feeds used to take it in: try the insert and, when it is
+	 * rejected, update the row instead, one transaction per book.
+	 */
+	private static String rowAtATime(String url) throws SQLException {
+		List<String[]> rows = new ArrayList<>();
+		try (Connection connection = DriverManager.getConnection(url, "app", "app");
+		     Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery("SELECT ISBN, TITLE, YEAR_PUBLISHED, AUTHORING_ENTITY_NAME, PUBLISHER_NAME FROM BOOKS")) {
+			while (results.next()) {
+				rows.add(new String[] {results.getString(1), results.getString(2), results.getString(3),
+						results.getString(4), results.getString(5)});
+			}
+		}
+		int rejected = 0;
+		long start = System.nanoTime();
+		try (Connection connection = DriverManager.getConnection(url, "app", "app");
+		     PreparedStatement insert = connection.prepareStatement(
+				     "INSERT INTO BOOKS (ISBN, TITLE, YEAR_PUBLISHED, AUTHORING_ENTITY_NAME, PUBLISHER_NAME) VALUES (?, ?, ?, ?, ?)");
+		     PreparedStatement update = connection.prepareStatement(
+				     "UPDATE BOOKS SET TITLE = ?, YEAR_PUBLISHED = ?, AUTHORING_ENTITY_NAME = ?, PUBLISHER_NAME = ? WHERE ISBN = ?")) {
+			for (String[] row : rows) {
+				for (int i = 0; i < row.length; i++) insert.setString(i + 1, row[i]);
+				try {
+					insert.executeUpdate();
+				} catch (SQLIntegrityConstraintViolationException e) {
+					rejected++;
+					for (int i = 1; i < row.length; i++) update.setString(i, row[i]);
+					update.setString(row.length, row[0]);
+					update.executeUpdate();
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return String.format("%,d rows in %.2f s: %,.0f rows/s, %,d inserts rejected", rows.size(), seconds, rows.size() / seconds, rejected);
+	}
+
+	/**
+	 * Change the title of one book in {@code every}, so that a resend has something to update.
+	 * @return the number of books changed
+	 */
+	private static int staleBooks(String url, int every) throws SQLException {
+		List<String> isbns = new ArrayList<>();
+		try (Connection connection = DriverManager.getConnection(url, "app", "app");
+		     Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery("SELECT ISBN FROM BOOKS")) {
+			for (int i = 0; results.next(); i++) {
+				if (i % every == 0) isbns.add(results.getString(1));
+			}
+		}
+		try (Connection connection = DriverManager.getConnection(url, "app", "app");
+		     PreparedStatement update = connection.prepareStatement("UPDATE BOOKS SET TITLE = 'Superseded' WHERE ISBN = ?")) {
+			connection.setAutoCommit(false);
+			for (String isbn : isbns) {
+				update.setString(1, isbn);
+				update.addBatch();
+			}
+			update.executeBatch();
+			connection.commit();
+		}
+		return isbns.size();
+	}
+
+	/**
+	 * Delete every row, children first.
+	 */
+	private static void clear(String url) throws SQLException {
+		try (Connection connection = DriverManager.getConnection(url, "app", "app");
+		     Statement statement = connection.createStatement()) {
+			for (String table : List.of("AD_HOC_TEAMS_MEMBER", "BOOKS", "AUTHORING_ENTITIES", "PUBLISHERS")) {
+				statement.executeUpdate("DELETE FROM " + table);
+			}
+		}
+	}
+
+	/**
+	 * Create the catalog's tables in a new database, without the seed data.
+	 */
+	private static void emptySchema(PersistenceProfile profile) {
+		EntityManagerFactory factory = profile.createEntityManagerFactory(DATABASE,
+				Map.of("javax.persistence.sql-load-script-source", ""));
+		factory.createEntityManager().close();
+		factory.close();
+	}
+}
@@ -0,0 +1,159 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.AsyncQueries;
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.HotSet;
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.tools.CatalogGenerator;
+import csulb.cecs323.tools.ZipfDistribution;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Restarts the application over an on-disk catalog and measures the info-screen lookups
+ * that follow, with and without warming up from a {@link HotSet} snapshot.
+ * <p>
+ * A first run looks up books, publishers and authoring entities with a Zipf skew and
+ * saves its hot set. Each restart then shuts the database down, which empties Derby's
+ * page cache, opens a new factory with an empty shared cache, and repeats the same
+ * lookups: cold, after waiting for the warm-up, and while the warm-up runs. The
+ * operating system's file cache stays warm throughout, so the cold numbers are a lower
+ * bound.
+ * <p>
+ * Usage: {@code WarmUpBenchmark [books] [lookups]}, default {@code 200000 3000}.
+ */
+public class WarmUpBenchmark {
+
+	private static final String DATABASE = "bench-warmup";
+	private static final int HOT_SET_SIZE = 500;
+
+	public static void main(String[] args) throws Exception {
+		int books = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 3_000;
+
+		CatalogGenerator generator = BenchmarkCatalog.smallCatalog();
+		generator.setBooks(books);
+		Path snapshot = Files.createTempFile("hot-set", ".txt");
+		try {
+			BenchmarkCatalog catalog = new BenchmarkCatalog(PersistenceProfile.EMBEDDED, DATABASE, generator, Map.of());
+			int[] ranks = ranks(lookups, 42, 0);
+			try {
+				HotSet previous = new HotSet(snapshot, HOT_SET_SIZE, 0);
+				lookUp(catalog, catalog.getFactory(), ranks, previous, new LatencyRecorder());
+				previous.close();
+			} finally {
+				catalog.close();
+			}
+			shutDown();
+
+			// Compile the lookup path on other keys, so the first measured restart is not also the JVM's first
+			restart(catalog, ranks(lookups, 7, 5_000), snapshot, false, false);
+			System.out.println("cold start            " + restart(catalog, ranks, snapshot, false, false));
+			System.out.println("wait for warm-up      " + restart(catalog, ranks, snapshot, true, true));
+			System.out.println("warm up while serving " + restart(catalog, ranks, snapshot, true, false));
+		} finally {
+			Files.deleteIfExists(snapshot);
+		}
+	}
+
+	/**
+	 * Reopen the catalog as a restarted application would, and time the lookups.
+	 * @param warmUp whether to warm up from the snapshot
+	 * @param wait whether to wait for the warm-up before the first lookup
+	 * @return the lookup latency and the warm-up's own figures
+	 */
+	private static String restart(BenchmarkCatalog catalog, int[] ranks, Path snapshot,
+	                              boolean warmUp, boolean wait) throws Exception {
+		EntityManagerFactory factory = PersistenceProfile.EMBEDDED.createEntityManagerFactory(DATABASE,
+				// Keep the catalog the first run created
+				Map.of("javax.persistence.schema-generation.database.action", "none"));
+		// Not closed: closing would replace the snapshot with this run's, which looks nothing up
+		HotSet hotSet = new HotSet(snapshot, HOT_SET_SIZE, 0);
+		try (AsyncQueries queries = new AsyncQueries(factory, 4, 256)) {
+			long start = System.nanoTime();
+			CompletableFuture<Void> warming = warmUp ? hotSet.warmUp(queries) : CompletableFuture.completedFuture(null);
+			if (wait) warming.join();
+			LatencyRecorder first = new LatencyRecorder();
+			LatencyRecorder latency = lookUp(catalog, factory, ranks, null, first);
+			warming.join();
+			double totalMillis = (System.nanoTime() - start) / 1e6;
+			return String.format("all[%s]%n                      first %d[%s]%n                      total=%.0fms warmed=%d warmUp=%.0fms",
+					latency.summary(), first.getCount(), first.summary(), totalMillis, hotSet.getWarmedCount(), hotSet.getWarmUpMillis());
+		} finally {
+			factory.close();
+			shutDown();
+		}
+	}
+
+	/**
+	 * Look up a book, a publisher and an authoring entity per rank, as the info screens
+	 * do, on a read-only service cleared after each lookup.
+	 * @param hotSet the hot set to count the lookups towards, or {@code null}
+	 * @param first where to record the latency of the first tenth of the lookups, which pay most of a cold start
+	 * @return the latency of the lookups
+	 */
+	private static LatencyRecorder lookUp(BenchmarkCatalog catalog, EntityManagerFactory factory, int[] ranks,
+	                                      HotSet hotSet, LatencyRecorder first) {
+		LatencyRecorder latency = new LatencyRecorder();
+		EntityManager manager = factory.createEntityManager();
+		try {
+			CatalogService service = CatalogService.readOnly(manager, null);
+			for (int i = 0; i < ranks.length; i++) {
+				int rank = ranks[i];
+				long start = System.nanoTime();
+				Object entity = switch (i % 3) {
+					case 0 -> {
+						Books book = service.getBook(catalog.isbn(rank));
+						// The book's screen shows its author and publisher too
+						book.getAuthor().getName();
+						book.getPublisher().getName();
+						yield book;
+					}
+					case 1 -> service.getPublisher(catalog.publisherName(rank));
+					default -> manager.find(Authoring_Entities.class, catalog.authorEmail(rank));
+				};
+				latency.recordSince(start);
+				if (i < ranks.length / 10) first.recordSince(start);
+				manager.clear();
+				if (hotSet != null) hotSet.touch(entity);
+			}
+		} finally {
+			manager.close();
+		}
+		return latency;
+	}
+
+	/**
+	 * @param offset added to every rank, to look up other keys than another run
+	 */
+	private static int[] ranks(int lookups, long seed, int offset) {
+		ZipfDistribution zipf = new ZipfDistribution(10_000, 1.0);
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] ranks = new int[lookups];
+		for (int i = 0; i < lookups; i++) ranks[i] = zipf.sample(random) + offset;
+		return ranks;
+	}
+
+	/**
+	 * Shut the database down, dropping everything Derby has cached of it.
+	 */
+	private static void shutDown() {
+		try {
+			DriverManager.getConnection("jdbc:derby:database/" + DATABASE + ";shutdown=true").close();
+		} catch (SQLException e) {
+			// Derby reports a successful shutdown with SQLState 08006
+			if (!"08006".equals(e.getSQLState())) throw new IllegalStateException("Could not shut down " + DATABASE, e);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.app.WriteBehindQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Inserts books through a {@link WriteBehindQueue} with different batch sizes and
+ * reports the throughput. Batch size 1 commits every insert on its own, as the console
+ * does without write-behind mode. Several producer threads submit at once, as an intake
+ * service would; the latency of each insert is measured from submission to commit.
+ * <p>
+ * The point is the cost of forcing the log to disk, so the default profile is the
+ * on-disk {@code embedded} one.
+ * <p>
+ * Usage: {@code WriteBehindBenchmark [profile] [inserts per batch size]}, default
+ * {@code embedded 4000}.
+ */
+public class WriteBehindBenchmark {
+
+	private static final int[] BATCH_SIZES = {1, 4, 16, 64, 256};
+	private static final int PRODUCERS = 8;
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.EMBEDDED;
+		int inserts = args.length > 1 ? Integer.parseInt(args[1]) : 4_000;
+
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-write-behind",
+				BenchmarkCatalog.smallCatalog(), Map.of())) {
+			ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+			try {
+				for (int batchSize : BATCH_SIZES) {
+					WriteBehindQueue queue = new WriteBehindQueue(catalog.getFactory(), null, null, batchSize, 2);
+					LatencyRecorder latency = new LatencyRecorder();
+					long start = System.nanoTime();
+					List<Future<List<CompletableFuture<Void>>>> submitted = new ArrayList<>();
+					for (int p = 0; p < PRODUCERS; p++) {
+						int producer = p;
+						submitted.add(producers.submit(() -> {
+							List<CompletableFuture<Void>> futures = new ArrayList<>();
+							for (int i = producer; i < inserts; i += PRODUCERS) {
+								String isbn = String.format("WB%03d-%08d", batchSize, i);
+								String title = "Write-behind " + i;
+								String author = catalog.authorEmail(i);
+								String publisher = catalog.publisherName(i);
+								long submittedAt = System.nanoTime();
+								futures.add(queue.submit(service -> service.addBook(isbn, title, 2000, author, publisher))
+										.whenComplete((ignored, failure) -> latency.recordSince(submittedAt)));
+							}
+							return futures;
+						}));
+					}
+					for (Future<List<CompletableFuture<Void>>> producer : submitted) {
+						CompletableFuture.allOf(producer.get().toArray(new CompletableFuture<?>[0])).join();
+					}
+					long elapsed = System.nanoTime() - start;
+					queue.close();
+
+					System.out.printf("batch %-4d %9.0f inserts/s  %5d commits  %s%n", batchSize,
+							inserts / (elapsed / 1e9), queue.getBatchCount(), latency.summary());
+					if (queue.getFailedCount() > 0) System.out.println("  " + queue.getFailedCount() + " inserts failed");
+				}
+			} finally {
+				producers.shutdownNow();
+			}
+		}
+	}
+}
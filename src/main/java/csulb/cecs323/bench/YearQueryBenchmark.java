@@ -0,0 +1,76 @@
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.index.PublisherYearIndex;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the two ways of asking for a publisher's newest books or its books of a
+ * decade: the named queries served by the {@code BOOKS_PUBLISHER_YEAR} index, and the
+ * in-memory {@link PublisherYearIndex}. The named queries return entities and the
+ * in-memory index returns ISBNs, so a third variant runs the same SQL for ISBNs only
+ * to separate the cost of the database from the cost of building entities.
+ * <p>
+ * Usage: {@code YearQueryBenchmark [profile]}, default {@code memory}.
+ */
+public class YearQueryBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		PersistenceProfile profile = args.length > 0 ? PersistenceProfile.valueOf(args[0].toUpperCase()) : PersistenceProfile.MEMORY;
+		try (BenchmarkCatalog catalog = new BenchmarkCatalog(profile, "bench-year-queries",
+				BenchmarkCatalog.smallCatalog(), Map.of());
+		     PublisherYearIndex index = PublisherYearIndex.open(catalog.getFactory(), 20)) {
+			List<String> publishers = new ArrayList<>(index.getPublishers());
+			EntityManager manager = catalog.getFactory().createEntityManager();
+			try {
+				CatalogService service = new CatalogService(manager);
+				Benchmark topK = new Benchmark(200, 2_000);
+				topK.run("Newest 10 of a publisher (named query)", (thread, i) -> {
+					service.getNewestBooks(publishers.get(i % publishers.size()), 10);
+					manager.clear();
+				});
+				topK.run("Newest 10 of a publisher (SQL, ISBNs)", (thread, i) ->
+						manager.createNativeQuery("SELECT ISBN FROM BOOKS WHERE PUBLISHER_NAME = ? " +
+								"ORDER BY YEAR_PUBLISHED DESC, ISBN FETCH FIRST 10 ROWS ONLY")
+								.setParameter(1, publishers.get(i % publishers.size())).getResultList());
+				Benchmark ranges = new Benchmark(20, 300);
+				ranges.run("A decade of a publisher (named query)", (thread, i) -> {
+					int from = 1950 + i % 60;
+					service.getPublisherBooksByYear(publishers.get(i % publishers.size()), from, from + 9);
+					manager.clear();
+				});
+				ranges.run("A decade of a publisher (SQL, ISBNs)", (thread, i) -> {
+					int from = 1950 + i % 60;
+					manager.createNativeQuery("SELECT ISBN FROM BOOKS WHERE PUBLISHER_NAME = ? " +
+							"AND YEAR_PUBLISHED BETWEEN ? AND ? ORDER BY YEAR_PUBLISHED, ISBN")
+							.setParameter(1, publishers.get(i % publishers.size()))
+							.setParameter(2, from).setParameter(3, from + 9).getResultList();
+				});
+				ranges.run("A year of every publisher (named query)", (thread, i) -> {
+					int year = 1950 + i % 60;
+					service.getBooksByYear(year, year);
+					manager.clear();
+				});
+
+				Benchmark memory = new Benchmark(20_000, 200_000);
+				memory.run("Newest 10 of a publisher (in memory)", (thread, i) ->
+						index.getNewest(publishers.get(i % publishers.size()), 10));
+				memory.run("A decade of a publisher (in memory)", (thread, i) -> {
+					int from = 1950 + i % 60;
+					index.getByYear(publishers.get(i % publishers.size()), from, from + 9);
+				});
+				memory.run("A decade of a publisher (in memory, 4 threads)", 4, (thread, i) -> {
+					int from = 1950 + i % 60;
+					index.getByYear(publishers.get((i + thread) % publishers.size()), from, from + 9);
+				});
+			} finally {
+				manager.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,404 @@
+package csulb.cecs323.feed;
+
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.CacheInvalidationPolicy;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.jpa.JpaHelper;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the shared caches of several application processes on one host consistent.
+ * <p>
+ * Every JVM has its own EclipseLink shared cache, which knows nothing of changes other
+ * processes commit to the same database. The coordinator sends each change of this
+ * process's {@link ChangeFeed} to its peers as a UDP datagram, and evicts the entities
+ * named in the datagrams it receives, so the next read of a changed entity goes to the
+ * database. A changed book also evicts the authoring entities, whose lists of works may
+ * have gained or lost it.
+ * <p>
+ * Datagrams can be lost and peers can go away, so every node also sends a heartbeat
+ * carrying the number of changes it has sent. A gap in those numbers means an invalidation
+ * was lost, and the whole cache is evicted. A peer not heard from for three heartbeats is
+ * unreachable; until it is heard from again, cached entities expire after a time to live,
+ * which bounds how stale they can get, and once it is back the whole cache is evicted for
+ * whatever it changed in the meantime.
+ * <p>
+ * The time from a change being sent to its eviction on the receiving node is recorded,
+ * next to counts of what was sent, received and lost.
+ */
+public class CacheCoordinator implements AutoCloseable {
+
+	/** System property setting the UDP port this node listens on; coordination is off without it. */
+	public static final String PORT_PROPERTY = "jpabooks.cluster.port";
+	/** System property listing the peers, as comma separated {@code port} or {@code host:port}. */
+	public static final String PEERS_PROPERTY = "jpabooks.cluster.peers";
+	/** System property setting the time to live of cached entities while a peer is unreachable, in milliseconds. */
+	public static final String TTL_PROPERTY = "jpabooks.cluster.ttl";
+	/** System property setting the interval between heartbeats, in milliseconds. */
+	public static final String HEARTBEAT_PROPERTY = "jpabooks.cluster.heartbeat";
+
+	private static final byte HEARTBEAT = 0;
+	private static final byte INVALIDATION = 1;
+	// Heartbeats a peer may miss before it counts as unreachable
+	private static final int MISSED_HEARTBEATS = 3;
+
+	private final EntityManagerFactory factory;
+	private final DatagramSocket socket;
+	private final List<SocketAddress> peers;
+	private final long ttlMillis;
+	private final long heartbeatMillis;
+	private final long nodeId = ThreadLocalRandom.current().nextLong();
+
+	private final Map<SocketAddress, PeerState> states = new ConcurrentHashMap<>();
+	private final List<Consumer<ChangeEvent>> listeners = new CopyOnWriteArrayList<>();
+	private final Map<ClassDescriptor, CacheInvalidationPolicy> expiryPolicies = new HashMap<>();
+	private final AutoCloseable subscription;
+	private final ScheduledExecutorService heartbeats;
+	private final Thread receiver;
+	private long sent;
+	private volatile boolean degraded;
+	private volatile boolean closed;
+
+	private final LongAdder received = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder gaps = new LongAdder();
+	private final LongAdder sendFailures = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+	private final LatencyRecorder propagation = new LatencyRecorder();
+
+	/**
+	 * Start listening, and start sending this process's changes and heartbeats.
+	 * @param factory the factory whose shared cache to keep consistent
+	 * @param port the port to listen on, on the loopback address
+	 * @param peers the other nodes
+	 * @param ttlMillis how long entities stay cached while a peer is unreachable
+	 * @param heartbeatMillis the interval between heartbeats
+	 */
+	public CacheCoordinator(EntityManagerFactory factory, int port, List<SocketAddress> peers,
+	                        long ttlMillis, long heartbeatMillis) throws SocketException {
+		if (ttlMillis < 1 || heartbeatMillis < 1) throw new IllegalArgumentException("The TTL and heartbeat interval must be positive.");
+		this.factory = factory;
+		this.socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		this.peers = List.copyOf(peers);
+		this.ttlMillis = ttlMillis;
+		this.heartbeatMillis = heartbeatMillis;
+		long now = System.nanoTime();
+		for (SocketAddress peer : this.peers) states.put(peer, new PeerState(now));
+
+		this.receiver = new Thread(this::receive, "cache-coordinator-" + port);
+		receiver.setDaemon(true);
+		receiver.start();
+		this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cache-heartbeat-" + port);
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeats.scheduleAtFixedRate(this::heartbeat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+		this.subscription = ChangeFeed.getInstance().subscribe(this::broadcast);
+	}
+
+	/**
+	 * @return a coordinator configured by the {@code jpabooks.cluster} system properties, or
+	 * 			{@code null} if no port was given
+	 */
+	public static CacheCoordinator fromEnvironment(EntityManagerFactory factory) throws SocketException {
+		Integer port = Integer.getInteger(PORT_PROPERTY);
+		if (port == null) return null;
+		return new CacheCoordinator(factory, port, parsePeers(System.getProperty(PEERS_PROPERTY, "")),
+				Long.getLong(TTL_PROPERTY, 30_000), Long.getLong(HEARTBEAT_PROPERTY, 500));
+	}
+
+	/**
+	 * @param peers comma separated {@code port} or {@code host:port}; a bare port is on the loopback address
+	 * @return the addresses of the peers
+	 */
+	public static List<SocketAddress> parsePeers(String peers) {
+		List<SocketAddress> addresses = new ArrayList<>();
+		for (String peer : peers.split(",")) {
+			peer = peer.trim();
+			if (peer.isEmpty()) continue;
+			int colon = peer.lastIndexOf(':');
+			try {
+				if (colon < 0) addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(peer)));
+				else addresses.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid peer: " + peer + ".");
+			}
+		}
+		return addresses;
+	}
+
+	/**
+	 * Also tell a local cache of this process about changes made by other nodes, e.g. to
+	 * empty it; changes made here reach it through the {@link ChangeFeed} already.
+	 * @param listener called with each change received from a peer, on the receiving thread
+	 */
+	public void addListener(Consumer<ChangeEvent> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @return whether a peer is unreachable, so that cached entities expire after the TTL
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	public long getReceivedCount() {
+		return received.sum();
+	}
+
+	/**
+	 * @return the number of gaps in the changes received, each of which evicted the whole cache
+	 */
+	public long getGapCount() {
+		return gaps.sum();
+	}
+
+	/**
+	 * @return the number of times a peer became unreachable and cached entities started to expire
+	 */
+	public long getFallbackCount() {
+		return fallbacks.sum();
+	}
+
+	/**
+	 * @return the time from a peer sending a change to its eviction here
+	 */
+	public LatencyRecorder getPropagation() {
+		return propagation;
+	}
+
+	/**
+	 * @return a one-line account of the coordination
+	 */
+	public String summary() {
+		long sentCount;
+		synchronized (this) {
+			sentCount = sent;
+		}
+		return String.format("sent=%d received=%d evictions=%d gaps=%d sendFailures=%d fallbacks=%d degraded=%s propagation[%s]",
+				sentCount, getReceivedCount(), evictions.sum(), getGapCount(), sendFailures.sum(), getFallbackCount(),
+				degraded, propagation.summary());
+	}
+
+	@Override
+	public void close() throws Exception {
+		closed = true;
+		subscription.close();
+		heartbeats.shutdownNow();
+		socket.close();
+		receiver.join();
+		synchronized (expiryPolicies) {
+			if (degraded) restoreExpiry();
+		}
+	}
+
+	// ---- Sending ----
+
+	private void broadcast(ChangeEvent event) {
+		send(INVALIDATION, event);
+	}
+
+	private void heartbeat() {
+		send(HEARTBEAT, null);
+		checkPeers();
+	}
+
+	/**
+	 * Send a message to every peer. Changes are numbered as they are sent, and a heartbeat
+	 * carries the number of the last one, so a receiver can tell when it missed some.
+	 */
+	private synchronized void send(byte type, ChangeEvent event) {
+		if (closed) return;
+		if (type == INVALIDATION) sent++;
+		byte[] message;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(type);
+			out.writeLong(nodeId);
+			out.writeLong(sent);
+			if (type == INVALIDATION) {
+				out.writeByte(event.getKind().ordinal());
+				out.writeUTF(event.getEntityType().getName());
+				out.writeUTF(event.getKey());
+				out.writeLong(epochMicros());
+			}
+			out.flush();
+			message = bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not encode a cache message.", e);
+		}
+		for (SocketAddress peer : peers) {
+			try {
+				socket.send(new DatagramPacket(message, message.length, peer));
+			} catch (IOException e) {
+				// The peer's heartbeats tell whether it is really gone
+				sendFailures.increment();
+			}
+		}
+	}
+
+	// ---- Receiving ----
+
+	private void receive() {
+		byte[] buffer = new byte[2048];
+		while (!closed) {
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			try {
+				socket.receive(packet);
+			} catch (IOException e) {
+				// Closing the socket ends the loop
+				continue;
+			}
+			try {
+				handle(packet.getSocketAddress(), new DataInputStream(
+						new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength())));
+			} catch (IOException | RuntimeException e) {
+				// A malformed message is ignored; the heartbeats will reveal what it carried
+			}
+		}
+	}
+
+	private void handle(SocketAddress sender, DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		long senderId = in.readLong();
+		long sequence = in.readLong();
+		PeerState state = states.computeIfAbsent(sender, address -> new PeerState(System.nanoTime()));
+		boolean missed;
+		synchronized (state) {
+			state.lastHeardNanos = System.nanoTime();
+			if (state.nodeId != senderId) {
+				// A new peer, or one that restarted: start counting its changes afresh
+				state.nodeId = senderId;
+				state.lastSequence = type == INVALIDATION ? sequence - 1 : sequence;
+			}
+			long expected = type == INVALIDATION ? state.lastSequence + 1 : state.lastSequence;
+			missed = sequence > expected;
+			state.lastSequence = Math.max(state.lastSequence, sequence);
+		}
+		if (missed) {
+			gaps.increment();
+			factory.getCache().evictAll();
+		}
+		if (type != INVALIDATION) return;
+
+		ChangeEvent.Kind kind = ChangeEvent.Kind.values()[in.readByte()];
+		String className = in.readUTF();
+		String key = in.readUTF();
+		long sentMicros = in.readLong();
+		received.increment();
+		Class<?> entityType;
+		try {
+			entityType = Class.forName(className, false, CacheCoordinator.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			// A peer running other code: play it safe
+			factory.getCache().evictAll();
+			return;
+		}
+		factory.getCache().evict(entityType, key);
+		if (Books.class.isAssignableFrom(entityType)) factory.getCache().evict(Authoring_Entities.class);
+		evictions.increment();
+		propagation.record(Math.max(0, epochMicros() - sentMicros) * 1_000);
+
+		ChangeEvent event = new ChangeEvent(sequence, kind, entityType, key, sentMicros / 1_000);
+		for (Consumer<ChangeEvent> listener : listeners) {
+			try {
+				listener.accept(event);
+			} catch (RuntimeException e) {
+				// One listener's failure must not stop the others
+			}
+		}
+	}
+
+	// ---- Reachability ----
+
+	/**
+	 * Fall back to expiring cached entities while any peer is unreachable, and evict the
+	 * cache once all of them are back.
+	 */
+	private void checkPeers() {
+		long now = System.nanoTime();
+		long timeout = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis * MISSED_HEARTBEATS);
+		boolean unreachable = false;
+		for (SocketAddress peer : peers) {
+			PeerState state = states.get(peer);
+			synchronized (state) {
+				if (now - state.lastHeardNanos > timeout) unreachable = true;
+			}
+		}
+		synchronized (expiryPolicies) {
+			if (unreachable && !degraded) {
+				fallbacks.increment();
+				applyTtl();
+				degraded = true;
+			} else if (!unreachable && degraded) {
+				restoreExpiry();
+				factory.getCache().evictAll();
+				degraded = false;
+			}
+		}
+	}
+
+	private void applyTtl() {
+		for (ClassDescriptor descriptor : JpaHelper.getServerSession(factory).getDescriptors().values()) {
+			expiryPolicies.put(descriptor, descriptor.getCacheInvalidationPolicy());
+			descriptor.setCacheInvalidationPolicy(new TimeToLiveCacheInvalidationPolicy(ttlMillis));
+		}
+	}
+
+	private void restoreExpiry() {
+		for (Map.Entry<ClassDescriptor, CacheInvalidationPolicy> entry : expiryPolicies.entrySet()) {
+			entry.getKey().setCacheInvalidationPolicy(entry.getValue());
+		}
+		expiryPolicies.clear();
+	}
+
+	private static long epochMicros() {
+		Instant now = Instant.now();
+		return now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+	}
+
+	/**
+	 * What this node knows about another.
+	 */
+	private static class PeerState {
+		long lastHeardNanos;
+		long nodeId;
+		long lastSequence;
+
+		PeerState(long lastHeardNanos) {
+			this.lastHeardNanos = lastHeardNanos;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package csulb.cecs323.feed;
+
+/**
+ * A committed change to one entity of the catalog.
+ */
+public class ChangeEvent {
+
+	/**
+	 * What happened to the entity.
+	 */
+	public enum Kind { CREATED, UPDATED, DELETED }
+
+	private final long sequence;
+	private final Kind kind;
+	private final Class<?> entityType;
+	private final String key;
+	private final long committedAtMillis;
+
+	/**
+	 * @param sequence position of the event in the feed; consecutive events have consecutive numbers
+	 * @param kind what happened to the entity
+	 * @param entityType the concrete entity class, e.g. {@code Writing_Groups}
+	 * @param key the primary key of the entity
+	 * @param committedAtMillis wall clock time the change was committed
+	 */
+	public ChangeEvent(long sequence, Kind kind, Class<?> entityType, String key, long committedAtMillis) {
+		this.sequence = sequence;
+		this.kind = kind;
+		this.entityType = entityType;
+		this.key = key;
+		this.committedAtMillis = committedAtMillis;
+	}
+
+	/**
+	 * A subscriber that sees a jump in sequence numbers has missed events because it fell
+	 * too far behind, and should resynchronize whatever it derives from the feed.
+	 * @return position of the event in the feed
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Class<?> getEntityType() {
+		return entityType;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getCommittedAtMillis() {
+		return committedAtMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "#" + sequence + " " + kind + " " + entityType.getSimpleName() + " " + key;
+	}
+}
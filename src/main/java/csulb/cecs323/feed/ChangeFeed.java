@@ -0,0 +1,166 @@
+package csulb.cecs323.feed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * An in-process feed of committed changes to books, publishers and authoring entities,
+ * for downstream caches and indexes.
+ * <p>
+ * The {@link EntityChangeListener} collects the changes a transaction makes, and they
+ * are published only once the transaction commits; changes of a rolled back transaction
+ * are never seen. Each subscriber has its own bounded buffer and is fed on a separate
+ * thread, and publishing never blocks: if a subscriber falls so far behind that its
+ * buffer is full, further events are dropped for that subscriber and counted, and it can
+ * tell from the gap in {@link ChangeEvent#getSequence() sequence numbers} that it needs
+ * to resynchronize. The write path is therefore never slowed down by a consumer.
+ */
+public class ChangeFeed {
+
+	/** System property setting the per-subscriber buffer size. */
+	public static final String BUFFER_PROPERTY = "jpabooks.feed.buffer";
+
+	private static final ChangeFeed INSTANCE = new ChangeFeed(Integer.getInteger(BUFFER_PROPERTY, 1024));
+
+	private final SubmissionPublisher<ChangeEvent> publisher;
+	private final AtomicLong sequence = new AtomicLong();
+	private final LongAdder published = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * @param bufferCapacity the most events buffered for each subscriber
+	 */
+	ChangeFeed(int bufferCapacity) {
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "change-feed");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+	}
+
+	/**
+	 * @return the feed of the application's persistence unit
+	 */
+	public static ChangeFeed getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Subscribe with full control over demand. Events beyond what the subscriber has
+	 * requested wait in its buffer, and are dropped once the buffer is full.
+	 * @param subscriber the subscriber to add
+	 */
+	public void subscribe(Flow.Subscriber<? super ChangeEvent> subscriber) {
+		publisher.subscribe(subscriber);
+	}
+
+	/**
+	 * Subscribe a callback that handles one event at a time on the feed's own thread.
+	 * @param consumer the callback; exceptions it throws are ignored
+	 * @return a handle that cancels the subscription when closed
+	 */
+	public AutoCloseable subscribe(Consumer<ChangeEvent> consumer) {
+		ConsumerSubscriber subscriber = new ConsumerSubscriber(consumer);
+		publisher.subscribe(subscriber);
+		return subscriber;
+	}
+
+	/**
+	 * @return {@code true} if anyone is listening, so that changes are worth collecting at all
+	 */
+	public boolean hasSubscribers() {
+		return publisher.hasSubscribers();
+	}
+
+	/**
+	 * @return the number of events published since startup
+	 */
+	public long getPublishedCount() {
+		return published.sum();
+	}
+
+	/**
+	 * @return the number of events dropped since startup, counted once per subscriber that missed them
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Publish the changes of a committed transaction, in the order they were made.
+	 */
+	void publish(List<Pending> changes) {
+		long now = System.currentTimeMillis();
+		for (Pending change : changes) {
+			ChangeEvent event = new ChangeEvent(sequence.incrementAndGet(), change.kind, change.entityType, change.key, now);
+			publisher.offer(event, (subscriber, missed) -> {
+				dropped.increment();
+				return false;
+			});
+			published.increment();
+		}
+	}
+
+	/**
+	 * A change made by a transaction that has not committed yet.
+	 */
+	static class Pending {
+		final ChangeEvent.Kind kind;
+		final Class<?> entityType;
+		final String key;
+
+		Pending(ChangeEvent.Kind kind, Class<?> entityType, String key) {
+			this.kind = kind;
+			this.entityType = entityType;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Adapts a callback to a subscriber that asks for one event at a time.
+	 */
+	private static class ConsumerSubscriber implements Flow.Subscriber<ChangeEvent>, AutoCloseable {
+		private final Consumer<ChangeEvent> consumer;
+		private volatile Flow.Subscription subscription;
+
+		ConsumerSubscriber(Consumer<ChangeEvent> consumer) {
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(ChangeEvent event) {
+			try {
+				consumer.accept(event);
+			} catch (RuntimeException e) {
+				// One bad event must not end the subscription
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onError(Throwable throwable) { }
+
+		@Override
+		public void onComplete() { }
+
+		@Override
+		public void close() {
+			Flow.Subscription current = subscription;
+			if (current != null) current.cancel();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package csulb.cecs323.feed;
+
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JPA entity listener feeding the {@link ChangeFeed}. The callbacks run when changes are
+ * written to the database, which is before the transaction commits, so the changes are
+ * held per unit of work and only handed to the feed once its commit has succeeded.
+ */
+public class EntityChangeListener {
+
+	// The changes written by each unit of work on this thread, until it commits or rolls back
+	private static final ThreadLocal<Map<Object, List<ChangeFeed.Pending>>> PENDING = ThreadLocal.withInitial(IdentityHashMap::new);
+
+	@PostPersist
+	void created(Object entity) {
+		record(ChangeEvent.Kind.CREATED, entity);
+	}
+
+	@PostUpdate
+	void updated(Object entity) {
+		// A soft delete is an update of the row, but to subscribers the book is gone; the
+		// purger later removes the row with SQL, which publishes nothing
+		boolean softDeleted = entity instanceof Books && ((Books) entity).isDeleted();
+		record(softDeleted ? ChangeEvent.Kind.DELETED : ChangeEvent.Kind.UPDATED, entity);
+	}
+
+	@PostRemove
+	void deleted(Object entity) {
+		record(ChangeEvent.Kind.DELETED, entity);
+	}
+
+	private static void record(ChangeEvent.Kind kind, Object entity) {
+		ChangeFeed feed = ChangeFeed.getInstance();
+		// With nobody listening, stay off the write path entirely
+		if (!feed.hasSubscribers()) return;
+
+		Object unitOfWork = TransactionCallbacks.writingUnitOfWork();
+		Map<Object, List<ChangeFeed.Pending>> byUnitOfWork = PENDING.get();
+		List<ChangeFeed.Pending> pending = byUnitOfWork.get(unitOfWork);
+		if (pending == null) {
+			List<ChangeFeed.Pending> changes = new ArrayList<>();
+			byUnitOfWork.put(unitOfWork, changes);
+			pending = changes;
+			TransactionCallbacks.afterCommit(() -> {
+				forget(unitOfWork);
+				feed.publish(changes);
+			});
+			TransactionCallbacks.afterRollback(() -> forget(unitOfWork));
+		}
+		pending.add(new ChangeFeed.Pending(kind, entity.getClass(), keyOf(entity)));
+	}
+
+	private static void forget(Object unitOfWork) {
+		Map<Object, List<ChangeFeed.Pending>> byUnitOfWork = PENDING.get();
+		byUnitOfWork.remove(unitOfWork);
+		if (byUnitOfWork.isEmpty()) PENDING.remove();
+	}
+
+	private static String keyOf(Object entity) {
+		if (entity instanceof Books) return ((Books) entity).getISBN();
+		if (entity instanceof Publishers) return ((Publishers) entity).getName();
+		if (entity instanceof Authoring_Entities) return ((Authoring_Entities) entity).getEmail();
+		return String.valueOf(entity);
+	}
+}
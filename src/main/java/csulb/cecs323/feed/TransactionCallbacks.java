@@ -0,0 +1,131 @@
+package csulb.cecs323.feed;
+
+import org.eclipse.persistence.sessions.UnitOfWork;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Work to run as a transaction commits or once it ends. Callbacks are registered while a transaction is
+ * open, against the EclipseLink unit of work running it; the ones for the outcome that
+ * actually happens are run and the others are discarded. Each unit of work keeps its own
+ * callbacks, so a thread using several EntityManagers at once, e.g. a read on the router's
+ * EntityManager in the middle of a console transaction, does not end another's transaction
+ * early. The {@link TransactionEventListener} tells this class when units of work commit,
+ * roll back or are released.
+ */
+public final class TransactionCallbacks {
+
+	// The callbacks of each unit of work on this thread, by identity
+	private static final ThreadLocal<Map<Object, Callbacks>> PENDING = ThreadLocal.withInitial(IdentityHashMap::new);
+	// The unit of work whose changes were last written on this thread, during which entity listeners run
+	private static final ThreadLocal<Object> WRITING = new ThreadLocal<>();
+
+	private static final class Callbacks {
+		final List<Runnable> beforeCommit = new ArrayList<>();
+		final List<Runnable> afterCommit = new ArrayList<>();
+		final List<Runnable> afterRollback = new ArrayList<>();
+	}
+
+	private TransactionCallbacks() { }
+
+	/**
+	 * Run an action when the transaction of an EntityManager starts to commit, before its
+	 * pending changes are written; statements the action runs are part of the transaction,
+	 * and an exception it throws rolls the transaction back.
+	 * @param entityManager the EntityManager, with its transaction open
+	 * @param action the action to run; it must not flush the EntityManager
+	 */
+	public static void beforeCommit(EntityManager entityManager, Runnable action) {
+		callbacks(entityManager.unwrap(UnitOfWork.class)).beforeCommit.add(action);
+	}
+
+	/**
+	 * Run an action after the transaction of an EntityManager commits.
+	 * @param entityManager the EntityManager, with its transaction open
+	 * @param action the action to run; it should be quick and must not throw
+	 */
+	public static void afterCommit(EntityManager entityManager, Runnable action) {
+		callbacks(entityManager.unwrap(UnitOfWork.class)).afterCommit.add(action);
+	}
+
+	/**
+	 * Run an action after the transaction of an EntityManager rolls back.
+	 * @param entityManager the EntityManager, with its transaction open
+	 * @param action the action to run; it should be quick and must not throw
+	 */
+	public static void afterRollback(EntityManager entityManager, Runnable action) {
+		callbacks(entityManager.unwrap(UnitOfWork.class)).afterRollback.add(action);
+	}
+
+	/**
+	 * Run an action after the transaction whose changes are being written commits; for
+	 * entity listeners, which are not given the EntityManager.
+	 * @param action the action to run; it should be quick and must not throw
+	 */
+	static void afterCommit(Runnable action) {
+		callbacks(writingUnitOfWork()).afterCommit.add(action);
+	}
+
+	/**
+	 * Run an action after the transaction whose changes are being written rolls back.
+	 * @param action the action to run; it should be quick and must not throw
+	 */
+	static void afterRollback(Runnable action) {
+		callbacks(writingUnitOfWork()).afterRollback.add(action);
+	}
+
+	/**
+	 * @return the unit of work whose changes are being written on this thread
+	 * @throws IllegalStateException if no changes are being written
+	 */
+	static Object writingUnitOfWork() {
+		Object unitOfWork = WRITING.get();
+		if (unitOfWork == null) throw new IllegalStateException("No unit of work is writing its changes on this thread.");
+		return unitOfWork;
+	}
+
+	static void writing(Object unitOfWork) {
+		WRITING.set(unitOfWork);
+	}
+
+	/**
+	 * Run the before-commit callbacks of a unit of work, including any they register.
+	 */
+	static void committing(Object unitOfWork) {
+		Callbacks callbacks = PENDING.get().get(unitOfWork);
+		if (callbacks == null) return;
+		for (int i = 0; i < callbacks.beforeCommit.size(); i++) callbacks.beforeCommit.get(i).run();
+		callbacks.beforeCommit.clear();
+	}
+
+	static void committed(Object unitOfWork) {
+		end(unitOfWork, true);
+	}
+
+	static void rolledBack(Object unitOfWork) {
+		end(unitOfWork, false);
+	}
+
+	private static Callbacks callbacks(Object unitOfWork) {
+		return PENDING.get().computeIfAbsent(unitOfWork, key -> new Callbacks());
+	}
+
+	/**
+	 * Run the callbacks of a unit of work for the outcome of its transaction, in
+	 * registration order, and forget the others.
+	 */
+	private static void end(Object unitOfWork, boolean committed) {
+		if (WRITING.get() == unitOfWork) WRITING.remove();
+		Map<Object, Callbacks> pending = PENDING.get();
+		Callbacks callbacks = pending.remove(unitOfWork);
+		if (pending.isEmpty()) PENDING.remove();
+		if (callbacks == null) return;
+		for (Runnable action : committed ? callbacks.afterCommit : callbacks.afterRollback) {
+			action.run();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package csulb.cecs323.feed;
+
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+/**
+ * Tells {@link TransactionCallbacks} when a unit of work writes its changes, starts to
+ * commit, commits or is thrown away. Registered with the persistence unit through its subclass
+ * {@code csulb.cecs323.jfr.FlightRecorderListener}, named by the
+ * {@code eclipselink.session-event-listener} property in {@code persistence.xml}.
+ */
+public class TransactionEventListener extends SessionEventAdapter {
+
+	@Override
+	public void preCalculateUnitOfWorkChangeSet(SessionEvent event) {
+		// Raised on every flush and commit, just before the entity listeners run
+		TransactionCallbacks.writing(event.getSession());
+	}
+
+	@Override
+	public void preCommitUnitOfWork(SessionEvent event) {
+		// Raised once per commit, before the changes are calculated and written
+		TransactionCallbacks.committing(event.getSession());
+	}
+
+	@Override
+	public void postCommitUnitOfWork(SessionEvent event) {
+		TransactionCallbacks.committed(event.getSession());
+	}
+
+	@Override
+	public void postRollbackTransaction(SessionEvent event) {
+		// Raised again on the session beneath the unit of work, which has no callbacks
+		Session session = event.getSession();
+		if (session.isUnitOfWork()) TransactionCallbacks.rolledBack(session);
+	}
+
+	@Override
+	public void postReleaseUnitOfWork(SessionEvent event) {
+		// A unit of work is released without committing when its transaction is rolled back
+		// before anything was written; only its own callbacks are discarded
+		TransactionCallbacks.rolledBack(event.getSession());
+	}
+}
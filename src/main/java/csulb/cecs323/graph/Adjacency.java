@@ -0,0 +1,150 @@
+package csulb.cecs323.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Adjacency lists of a directed graph over dense int ids, stored in compressed sparse
+ * row form: the neighbours of node {@code n} are {@code targets[offsets[n]]} up to
+ * {@code targets[offsets[n + 1]]}, sorted. Two flat arrays hold the whole graph, so even
+ * millions of edges cost a few bytes each and are scanned sequentially.
+ * <p>
+ * Changes do not rewrite the arrays. The new list of a changed node is kept on the side
+ * and takes precedence over its row, and once enough nodes have changed the whole graph
+ * is compacted back into fresh arrays. Not thread safe; {@link MembershipIndex} guards it.
+ */
+final class Adjacency {
+
+	private static final int[] EMPTY = new int[0];
+
+	private int[] offsets;
+	private int[] targets;
+	private final Map<Integer, int[]> changed = new HashMap<>();
+
+	private Adjacency(int[] offsets, int[] targets) {
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Build the graph of a list of edges; duplicate edges are kept once.
+	 * @param nodes the number of nodes, ids 0 to nodes - 1
+	 * @param sources the source of each edge
+	 * @param destinations the destination of each edge, at the same positions as its source
+	 */
+	static Adjacency build(int nodes, IntList sources, IntList destinations) {
+		// Counting sort of the edges by source
+		int[] offsets = new int[nodes + 1];
+		for (int i = 0; i < sources.size(); i++) offsets[sources.get(i) + 1]++;
+		for (int n = 0; n < nodes; n++) offsets[n + 1] += offsets[n];
+		int[] targets = new int[sources.size()];
+		int[] fill = Arrays.copyOf(offsets, nodes);
+		for (int i = 0; i < sources.size(); i++) targets[fill[sources.get(i)]++] = destinations.get(i);
+
+		// Sort each row and squeeze out duplicates
+		int write = 0;
+		for (int n = 0; n < nodes; n++) {
+			int from = offsets[n], to = offsets[n + 1];
+			Arrays.sort(targets, from, to);
+			offsets[n] = write;
+			for (int i = from; i < to; i++) {
+				if (i == from || targets[i] != targets[i - 1]) targets[write++] = targets[i];
+			}
+		}
+		offsets[nodes] = write;
+		return new Adjacency(offsets, write == targets.length ? targets : Arrays.copyOf(targets, write));
+	}
+
+	/**
+	 * @return an empty graph
+	 */
+	static Adjacency empty() {
+		return new Adjacency(new int[1], EMPTY);
+	}
+
+	int degree(int node) {
+		int[] list = changed.get(node);
+		if (list != null) return list.length;
+		return node + 1 < offsets.length ? offsets[node + 1] - offsets[node] : 0;
+	}
+
+	/**
+	 * Call an action with each neighbour of a node, in ascending order.
+	 */
+	void forEach(int node, IntConsumer action) {
+		int[] list = changed.get(node);
+		if (list != null) {
+			for (int target : list) action.accept(target);
+		} else if (node + 1 < offsets.length) {
+			for (int i = offsets[node], end = offsets[node + 1]; i < end; i++) action.accept(targets[i]);
+		}
+	}
+
+	/**
+	 * @return a copy of the neighbours of a node, in ascending order
+	 */
+	int[] get(int node) {
+		int[] list = changed.get(node);
+		if (list != null) return list.clone();
+		if (node + 1 >= offsets.length) return EMPTY;
+		return Arrays.copyOfRange(targets, offsets[node], offsets[node + 1]);
+	}
+
+	boolean contains(int node, int target) {
+		int[] list = changed.get(node);
+		if (list != null) return Arrays.binarySearch(list, target) >= 0;
+		if (node + 1 >= offsets.length) return false;
+		return Arrays.binarySearch(targets, offsets[node], offsets[node + 1], target) >= 0;
+	}
+
+	/**
+	 * Replace the neighbours of a node.
+	 * @param neighbours the new neighbours, sorted and without duplicates
+	 */
+	void set(int node, int[] neighbours) {
+		changed.put(node, neighbours);
+	}
+
+	void add(int node, int target) {
+		int[] list = get(node);
+		int at = Arrays.binarySearch(list, target);
+		if (at >= 0) return;
+		at = -at - 1;
+		int[] grown = new int[list.length + 1];
+		System.arraycopy(list, 0, grown, 0, at);
+		grown[at] = target;
+		System.arraycopy(list, at, grown, at + 1, list.length - at);
+		changed.put(node, grown);
+	}
+
+	void remove(int node, int target) {
+		int[] list = get(node);
+		int at = Arrays.binarySearch(list, target);
+		if (at < 0) return;
+		int[] shrunk = new int[list.length - 1];
+		System.arraycopy(list, 0, shrunk, 0, at);
+		System.arraycopy(list, at + 1, shrunk, at, list.length - at - 1);
+		changed.put(node, shrunk);
+	}
+
+	/**
+	 * Fold the changed lists back into the flat arrays once they are numerous enough to
+	 * slow down lookups, or to cost more memory than rewriting the arrays would.
+	 * @param nodes the number of nodes the compacted graph must cover
+	 */
+	void compactIfNeeded(int nodes) {
+		if (changed.size() < Math.max(1_024, nodes / 16)) return;
+		int[] newOffsets = new int[nodes + 1];
+		for (int n = 0; n < nodes; n++) newOffsets[n + 1] = newOffsets[n] + degree(n);
+		int[] newTargets = new int[newOffsets[nodes]];
+		for (int n = 0; n < nodes; n++) {
+			int[] position = {newOffsets[n]};
+			forEach(n, target -> newTargets[position[0]++] = target);
+		}
+		offsets = newOffsets;
+		targets = newTargets;
+		changed.clear();
+	}
+}
@@ -0,0 +1,42 @@
+package csulb.cecs323.graph;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, so that building an index of millions of edges
+ * does not box every id.
+ */
+final class IntList {
+
+	private int[] values;
+	private int size;
+
+	IntList() {
+		this(16);
+	}
+
+	IntList(int capacity) {
+		this.values = new int[Math.max(1, capacity)];
+	}
+
+	void add(int value) {
+		if (size == values.length) values = Arrays.copyOf(values, size * 2);
+		values[size++] = value;
+	}
+
+	int get(int index) {
+		return values[index];
+	}
+
+	void set(int index, int value) {
+		values[index] = value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,442 @@
+package csulb.cecs323.graph;
+
+import csulb.cecs323.feed.ChangeEvent;
+import csulb.cecs323.feed.ChangeFeed;
+import csulb.cecs323.model.AdHocTeam;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory index of who wrote what: the members of every ad hoc team, the teams of
+ * every individual author, and the books of every authoring entity. Going through the
+ * entities means loading whole {@code teamMembers} and {@code works} sets, and their
+ * members' sets in turn; the index instead keeps each relation as a compact
+ * {@link Adjacency} over int ids and answers questions such as "every book this author
+ * contributed to, including through teams" without touching the database.
+ * <p>
+ * The index is built with three queries when opened and then follows the
+ * {@link ChangeFeed}: a committed change to an ad hoc team or a book re-reads just that
+ * team's members or that book's author. If the feed reports missed events the index is
+ * rebuilt. The feed is shared by every persistence unit in the process, so an index
+ * should only be opened while a single database is being changed.
+ * <p>
+ * Queries may run on any number of threads; they see each committed change at once or
+ * not at all.
+ */
+public class MembershipIndex implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(MembershipIndex.class.getName());
+
+	private final EntityManager entityManager;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AutoCloseable subscription;
+
+	// Authoring entities and books by id; ids of deleted rows are not reused until a rebuild
+	private final Map<String, Integer> entityIds = new HashMap<>();
+	private final List<String> entityEmails = new ArrayList<>();
+	private final Map<String, Integer> bookIds = new HashMap<>();
+	private final List<String> isbns = new ArrayList<>();
+	private IntList bookAuthors = new IntList();
+
+	private Adjacency teamMembers = Adjacency.empty();
+	private Adjacency memberships = Adjacency.empty();
+	private Adjacency works = Adjacency.empty();
+
+	private long lastSequence;
+	private long rebuilds;
+	private long refreshes;
+
+	private MembershipIndex(EntityManagerFactory factory) {
+		this.entityManager = factory.createEntityManager();
+		// Subscribe before reading so that no change can fall between the two; a change
+		// already included in the build is harmlessly applied again
+		this.subscription = ChangeFeed.getInstance().subscribe(this::apply);
+	}
+
+	/**
+	 * Build an index of a database and keep it up to date with the changes committed to it.
+	 * @param factory the database to index
+	 * @return the index, ready to query
+	 */
+	public static MembershipIndex open(EntityManagerFactory factory) {
+		MembershipIndex index = new MembershipIndex(factory);
+		index.rebuild();
+		return index;
+	}
+
+	// ---- Queries ----
+
+	/**
+	 * @param teamEmail email of an ad hoc team
+	 * @return emails of the individual authors in the team
+	 */
+	public List<String> getTeamMembers(String teamEmail) {
+		return neighbours(teamMembers, teamEmail);
+	}
+
+	/**
+	 * @param authorEmail email of an individual author
+	 * @return emails of the ad hoc teams the author belongs to
+	 */
+	public List<String> getTeams(String authorEmail) {
+		return neighbours(memberships, authorEmail);
+	}
+
+	/**
+	 * @param authorEmail email of an authoring entity
+	 * @return ISBNs of the books credited to exactly that entity
+	 */
+	public List<String> getWorks(String authorEmail) {
+		lock.readLock().lock();
+		try {
+			Integer id = entityIds.get(authorEmail);
+			List<String> result = new ArrayList<>();
+			if (id != null) works.forEach(id, book -> result.add(isbns.get(book)));
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Every book an authoring entity contributed to: its own books and, for an individual
+	 * author, the books of every ad hoc team it belongs to.
+	 * @param authorEmail email of an authoring entity
+	 * @return ISBNs of the books, each once
+	 */
+	public List<String> getContributions(String authorEmail) {
+		lock.readLock().lock();
+		try {
+			Integer id = entityIds.get(authorEmail);
+			List<String> result = new ArrayList<>();
+			if (id == null) return result;
+			works.forEach(id, book -> result.add(isbns.get(book)));
+			// A book has one author, so the books of different teams never overlap
+			memberships.forEach(id, team -> works.forEach(team, book -> result.add(isbns.get(book))));
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param authorEmail email of an authoring entity
+	 * @return the number of books {@link #getContributions(String)} would return
+	 */
+	public int countContributions(String authorEmail) {
+		lock.readLock().lock();
+		try {
+			Integer id = entityIds.get(authorEmail);
+			if (id == null) return 0;
+			int[] count = {works.degree(id)};
+			memberships.forEach(id, team -> count[0] += works.degree(team));
+			return count[0];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param authorEmail email of an individual author
+	 * @return emails of the other individual authors sharing at least one team with it
+	 */
+	public List<String> getCoAuthors(String authorEmail) {
+		return getCollaborators(authorEmail, 1);
+	}
+
+	/**
+	 * The individual authors within a number of hops of one another, where a hop joins
+	 * two members of the same ad hoc team.
+	 * @param authorEmail email of an individual author
+	 * @param maxHops 1 for co-authors, 2 to add their co-authors, and so on
+	 * @return emails of the authors reached, nearest first, excluding the author itself
+	 */
+	public List<String> getCollaborators(String authorEmail, int maxHops) {
+		if (maxHops < 1) throw new IllegalArgumentException("maxHops must be at least 1.");
+		lock.readLock().lock();
+		try {
+			Integer start = entityIds.get(authorEmail);
+			List<String> result = new ArrayList<>();
+			if (start == null) return result;
+
+			BitSet seenAuthors = new BitSet(entityEmails.size());
+			BitSet seenTeams = new BitSet(entityEmails.size());
+			seenAuthors.set(start);
+			// Breadth first; the authors of each hop follow those of the previous one in the queue
+			IntList queue = new IntList();
+			queue.add(start);
+			int hopStart = 0;
+			for (int hop = 0; hop < maxHops && hopStart < queue.size(); hop++) {
+				int hopEnd = queue.size();
+				for (int i = hopStart; i < hopEnd; i++) {
+					memberships.forEach(queue.get(i), team -> {
+						if (seenTeams.get(team)) return;
+						seenTeams.set(team);
+						teamMembers.forEach(team, member -> {
+							if (seenAuthors.get(member)) return;
+							seenAuthors.set(member);
+							queue.add(member);
+							result.add(entityEmails.get(member));
+						});
+					});
+				}
+				hopStart = hopEnd;
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param teamEmail email of an ad hoc team
+	 * @param authorEmail email of an individual author
+	 * @return {@code true} if the author is a member of the team
+	 */
+	public boolean isMember(String teamEmail, String authorEmail) {
+		lock.readLock().lock();
+		try {
+			Integer team = entityIds.get(teamEmail);
+			Integer author = entityIds.get(authorEmail);
+			return team != null && author != null && teamMembers.contains(team, author);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of full rebuilds, including the initial build
+	 */
+	public long getRebuildCount() {
+		return rebuilds;
+	}
+
+	/**
+	 * @return the number of teams and books re-read after a change
+	 */
+	public long getRefreshCount() {
+		return refreshes;
+	}
+
+	@Override
+	public void close() throws Exception {
+		subscription.close();
+		lock.writeLock().lock();
+		try {
+			entityManager.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// ---- Maintenance ----
+
+	/**
+	 * Discard the index and read it again from the database.
+	 */
+	public void rebuild() {
+		lock.writeLock().lock();
+		try {
+			entityIds.clear();
+			entityEmails.clear();
+			bookIds.clear();
+			isbns.clear();
+			entityManager.clear();
+
+			for (Object email : entityManager.createNativeQuery("SELECT EMAIL FROM AUTHORING_ENTITIES").getResultList()) {
+				entityId((String) email);
+			}
+
+			IntList teams = new IntList(1_024), members = new IntList(1_024);
+			for (Object row : entityManager.createNativeQuery(
+					"SELECT AD_HOC_TEAMS_EMAIL, INDIVIDUAL_AUTHORS_EMAIL FROM AD_HOC_TEAMS_MEMBER").getResultList()) {
+				Object[] columns = (Object[]) row;
+				teams.add(entityId((String) columns[0]));
+				members.add(entityId((String) columns[1]));
+			}
+
+			List<?> books = entityManager.createNativeQuery("SELECT ISBN, AUTHORING_ENTITY_NAME FROM BOOKS WHERE DELETED = 0").getResultList();
+			IntList authors = new IntList(books.size());
+			IntList bookList = new IntList(books.size());
+			bookAuthors = new IntList(books.size());
+			for (Object row : books) {
+				Object[] columns = (Object[]) row;
+				int book = bookId((String) columns[0]);
+				if (columns[1] == null) continue;
+				int author = entityId((String) columns[1]);
+				bookAuthors.set(book, author);
+				authors.add(author);
+				bookList.add(book);
+			}
+
+			int entities = entityEmails.size();
+			teamMembers = Adjacency.build(entities, teams, members);
+			memberships = Adjacency.build(entities, members, teams);
+			works = Adjacency.build(entities, authors, bookList);
+			rebuilds++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Bring the index up to date with one committed change. Runs on the feed's thread.
+	 */
+	private void apply(ChangeEvent event) {
+		try {
+			if (lastSequence != 0 && event.getSequence() != lastSequence + 1) {
+				LOGGER.info("Membership index missed " + (event.getSequence() - lastSequence - 1) + " changes; rebuilding.");
+				lastSequence = event.getSequence();
+				rebuild();
+				return;
+			}
+			lastSequence = event.getSequence();
+
+			Class<?> type = event.getEntityType();
+			if (Books.class.isAssignableFrom(type)) {
+				refreshBook(event.getKey(), event.getKind() == ChangeEvent.Kind.DELETED);
+			} else if (Authoring_Entities.class.isAssignableFrom(type)) {
+				if (event.getKind() == ChangeEvent.Kind.DELETED) {
+					removeEntity(event.getKey());
+				} else if (AdHocTeam.class.isAssignableFrom(type)) {
+					refreshTeam(event.getKey());
+				} else {
+					lock.writeLock().lock();
+					try {
+						entityId(event.getKey());
+					} finally {
+						lock.writeLock().unlock();
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Could not apply " + event + " to the membership index; rebuilding.", e);
+			rebuild();
+		}
+	}
+
+	/**
+	 * Re-read the members of one team.
+	 */
+	private void refreshTeam(String teamEmail) {
+		lock.writeLock().lock();
+		try {
+			List<?> rows = entityManager.createNativeQuery(
+					"SELECT INDIVIDUAL_AUTHORS_EMAIL FROM AD_HOC_TEAMS_MEMBER WHERE AD_HOC_TEAMS_EMAIL = ?")
+					.setParameter(1, teamEmail).getResultList();
+			int team = entityId(teamEmail);
+			int[] now = new int[rows.size()];
+			for (int i = 0; i < now.length; i++) now[i] = entityId((String) rows.get(i));
+			Arrays.sort(now);
+			int[] before = teamMembers.get(team);
+
+			for (int member : before) {
+				if (Arrays.binarySearch(now, member) < 0) memberships.remove(member, team);
+			}
+			for (int member : now) {
+				if (Arrays.binarySearch(before, member) < 0) memberships.add(member, team);
+			}
+			teamMembers.set(team, now);
+			refreshes++;
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Re-read the author of one book.
+	 * @param deleted {@code true} if the book is known to be gone
+	 */
+	private void refreshBook(String isbn, boolean deleted) {
+		lock.writeLock().lock();
+		try {
+			String authorEmail = null;
+			if (!deleted) {
+				List<?> rows = entityManager.createNativeQuery("SELECT AUTHORING_ENTITY_NAME FROM BOOKS WHERE ISBN = ? AND DELETED = 0")
+						.setParameter(1, isbn).getResultList();
+				if (!rows.isEmpty()) authorEmail = (String) rows.get(0);
+			}
+			int book = bookId(isbn);
+			int before = bookAuthors.get(book);
+			int now = authorEmail == null ? -1 : entityId(authorEmail);
+			if (before != now) {
+				if (before >= 0) works.remove(before, book);
+				if (now >= 0) works.add(now, book);
+				bookAuthors.set(book, now);
+			}
+			refreshes++;
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void removeEntity(String email) {
+		lock.writeLock().lock();
+		try {
+			Integer id = entityIds.get(email);
+			if (id == null) return;
+			for (int member : teamMembers.get(id)) memberships.remove(member, id);
+			for (int team : memberships.get(id)) teamMembers.remove(team, id);
+			for (int book : works.get(id)) bookAuthors.set(book, -1);
+			teamMembers.set(id, new int[0]);
+			memberships.set(id, new int[0]);
+			works.set(id, new int[0]);
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void compactIfNeeded() {
+		int entities = entityEmails.size();
+		teamMembers.compactIfNeeded(entities);
+		memberships.compactIfNeeded(entities);
+		works.compactIfNeeded(entities);
+	}
+
+	private List<String> neighbours(Adjacency adjacency, String email) {
+		lock.readLock().lock();
+		try {
+			Integer id = entityIds.get(email);
+			List<String> result = new ArrayList<>();
+			if (id != null) adjacency.forEach(id, neighbour -> result.add(entityEmails.get(neighbour)));
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private int entityId(String email) {
+		Integer id = entityIds.get(email);
+		if (id != null) return id;
+		int created = entityEmails.size();
+		entityIds.put(email, created);
+		entityEmails.add(email);
+		return created;
+	}
+
+	private int bookId(String isbn) {
+		Integer id = bookIds.get(isbn);
+		if (id != null) return id;
+		int created = isbns.size();
+		bookIds.put(isbn, created);
+		isbns.add(isbn);
+		bookAuthors.add(-1);
+		return created;
+	}
+}
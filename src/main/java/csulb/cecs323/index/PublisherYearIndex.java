@@ -0,0 +1,271 @@
+package csulb.cecs323.index;
+
+import csulb.cecs323.feed.ChangeEvent;
+import csulb.cecs323.feed.ChangeFeed;
+import csulb.cecs323.model.Books;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The books of the busiest publishers, sorted by year in memory, for top-K and year
+ * range questions that would otherwise query the {@code BOOKS_PUBLISHER_YEAR} index.
+ * <p>
+ * Each publisher's books are one sorted {@code long[]} whose entries pack the year
+ * published into the high 32 bits and a row number into the low 32 bits, the row
+ * number leading to the ISBN. The newest K books are the last K entries and a year
+ * range is two binary searches, with no objects touched until the ISBNs are copied
+ * out. Books of the same year are in the order the index first saw them.
+ * <p>
+ * The index follows the {@link ChangeFeed}: a committed change to a book re-reads its
+ * publisher and year, and the affected publisher's array is replaced by a new one, so
+ * queries never wait for updates. Like every feed subscriber, it assumes a single
+ * database is being changed while it is open.
+ */
+public class PublisherYearIndex implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(PublisherYearIndex.class.getName());
+
+	private final EntityManager entityManager;
+	private final AutoCloseable subscription;
+
+	// Written by one thread at a time (the opener, then the feed), read by any thread
+	private final Map<String, long[]> postings = new ConcurrentHashMap<>();
+	private final Map<String, Integer> rows = new ConcurrentHashMap<>();
+	private volatile String[] isbns = new String[1_024];
+	private int rowCount;
+
+	// Where each indexed book currently is, to find its entry again when it changes
+	private final Map<String, String> publisherOf = new HashMap<>();
+	private final Map<String, Integer> yearOf = new HashMap<>();
+
+	private PublisherYearIndex(EntityManagerFactory factory) {
+		this.entityManager = factory.createEntityManager();
+		this.subscription = ChangeFeed.getInstance().subscribe(this::apply);
+	}
+
+	/**
+	 * Index the publishers with the most books.
+	 * @param factory the database to index
+	 * @param publishers how many of the largest publishers to index
+	 * @return the index, ready to query
+	 */
+	public static PublisherYearIndex open(EntityManagerFactory factory, int publishers) {
+		PublisherYearIndex index = new PublisherYearIndex(factory);
+		synchronized (index) {
+			List<?> largest = index.entityManager.createNativeQuery(
+					"SELECT PUBLISHER_NAME FROM BOOKS WHERE DELETED = 0 GROUP BY PUBLISHER_NAME ORDER BY COUNT(*) DESC FETCH FIRST ? ROWS ONLY")
+					.setParameter(1, publishers).getResultList();
+			for (Object name : largest) index.load((String) name);
+		}
+		return index;
+	}
+
+	/**
+	 * Index one more publisher, e.g. one that has become busy.
+	 * @param publisherName name of the publisher
+	 */
+	public synchronized void add(String publisherName) {
+		if (!postings.containsKey(publisherName)) load(publisherName);
+	}
+
+	/**
+	 * @return {@code true} if the publisher's books are in the index
+	 */
+	public boolean isIndexed(String publisherName) {
+		return postings.containsKey(publisherName);
+	}
+
+	/**
+	 * @return the names of the indexed publishers
+	 */
+	public Set<String> getPublishers() {
+		return postings.keySet();
+	}
+
+	// ---- Queries ----
+
+	/**
+	 * @param publisherName name of an indexed publisher
+	 * @param count the most books to return
+	 * @return ISBNs of the publisher's most recently published books, newest first
+	 */
+	public List<String> getNewest(String publisherName, int count) {
+		long[] keys = postingsOf(publisherName);
+		String[] names = isbns;
+		int n = Math.min(count, keys.length);
+		List<String> result = new ArrayList<>(n);
+		for (int i = keys.length - 1; i >= keys.length - n; i--) result.add(names[row(keys[i])]);
+		return result;
+	}
+
+	/**
+	 * @param publisherName name of an indexed publisher
+	 * @param count the most books to return
+	 * @return ISBNs of the publisher's earliest published books, oldest first
+	 */
+	public List<String> getOldest(String publisherName, int count) {
+		long[] keys = postingsOf(publisherName);
+		String[] names = isbns;
+		int n = Math.min(count, keys.length);
+		List<String> result = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) result.add(names[row(keys[i])]);
+		return result;
+	}
+
+	/**
+	 * @param publisherName name of an indexed publisher
+	 * @param fromYear the first year to include
+	 * @param toYear the last year to include
+	 * @return ISBNs of the publisher's books published in the range, oldest first
+	 */
+	public List<String> getByYear(String publisherName, int fromYear, int toYear) {
+		long[] keys = postingsOf(publisherName);
+		String[] names = isbns;
+		int from = lowerBound(keys, pack(fromYear, 0));
+		int to = toYear == Integer.MAX_VALUE ? keys.length : lowerBound(keys, pack(toYear + 1, 0));
+		List<String> result = new ArrayList<>(Math.max(0, to - from));
+		for (int i = from; i < to; i++) result.add(names[row(keys[i])]);
+		return result;
+	}
+
+	/**
+	 * @param publisherName name of an indexed publisher
+	 * @param fromYear the first year to include
+	 * @param toYear the last year to include
+	 * @return the number of the publisher's books published in the range
+	 */
+	public int countByYear(String publisherName, int fromYear, int toYear) {
+		long[] keys = postingsOf(publisherName);
+		int from = lowerBound(keys, pack(fromYear, 0));
+		int to = toYear == Integer.MAX_VALUE ? keys.length : lowerBound(keys, pack(toYear + 1, 0));
+		return Math.max(0, to - from);
+	}
+
+	@Override
+	public void close() throws Exception {
+		subscription.close();
+		synchronized (this) {
+			entityManager.close();
+		}
+	}
+
+	// ---- Maintenance ----
+
+	private void load(String publisherName) {
+		List<?> books = entityManager.createNativeQuery(
+				"SELECT ISBN, YEAR_PUBLISHED FROM BOOKS WHERE PUBLISHER_NAME = ? AND DELETED = 0")
+				.setParameter(1, publisherName).getResultList();
+		long[] keys = new long[books.size()];
+		for (int i = 0; i < keys.length; i++) {
+			Object[] columns = (Object[]) books.get(i);
+			String isbn = (String) columns[0];
+			int year = ((Number) columns[1]).intValue();
+			keys[i] = pack(year, rowOf(isbn));
+			publisherOf.put(isbn, publisherName);
+			yearOf.put(isbn, year);
+		}
+		Arrays.sort(keys);
+		postings.put(publisherName, keys);
+	}
+
+	/**
+	 * Bring the index up to date with one committed change. Runs on the feed's thread.
+	 */
+	private synchronized void apply(ChangeEvent event) {
+		if (!Books.class.isAssignableFrom(event.getEntityType())) return;
+		String isbn = event.getKey();
+		try {
+			String publisher = null;
+			int year = 0;
+			if (event.getKind() != ChangeEvent.Kind.DELETED) {
+				List<?> found = entityManager.createNativeQuery("SELECT PUBLISHER_NAME, YEAR_PUBLISHED FROM BOOKS WHERE ISBN = ? AND DELETED = 0")
+						.setParameter(1, isbn).getResultList();
+				if (!found.isEmpty()) {
+					Object[] columns = (Object[]) found.get(0);
+					publisher = (String) columns[0];
+					year = ((Number) columns[1]).intValue();
+				}
+			}
+
+			String oldPublisher = publisherOf.get(isbn);
+			if (oldPublisher != null) {
+				if (oldPublisher.equals(publisher) && yearOf.get(isbn) == year) return;
+				postings.computeIfPresent(oldPublisher, (name, keys) -> without(keys, pack(yearOf.get(isbn), rows.get(isbn))));
+				publisherOf.remove(isbn);
+				yearOf.remove(isbn);
+			}
+			if (publisher != null && postings.containsKey(publisher)) {
+				long key = pack(year, rowOf(isbn));
+				postings.computeIfPresent(publisher, (name, keys) -> with(keys, key));
+				publisherOf.put(isbn, publisher);
+				yearOf.put(isbn, year);
+			}
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Could not apply " + event + " to the publisher year index.", e);
+		}
+	}
+
+	private int rowOf(String isbn) {
+		Integer row = rows.get(isbn);
+		if (row != null) return row;
+		String[] names = isbns;
+		if (rowCount == names.length) names = Arrays.copyOf(names, rowCount * 2);
+		names[rowCount] = isbn;
+		// Publishing the array again makes the ISBN visible before any posting refers to its row
+		isbns = names;
+		rows.put(isbn, rowCount);
+		return rowCount++;
+	}
+
+	private long[] postingsOf(String publisherName) {
+		long[] keys = postings.get(publisherName);
+		if (keys == null) throw new IllegalArgumentException("Publisher " + publisherName + " is not indexed.");
+		return keys;
+	}
+
+	private static long pack(int year, int row) {
+		return ((long) year << 32) | row;
+	}
+
+	private static int row(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * @return the position of the first key not less than {@code key}
+	 */
+	private static int lowerBound(long[] keys, long key) {
+		int at = Arrays.binarySearch(keys, key);
+		if (at < 0) return -at - 1;
+		while (at > 0 && keys[at - 1] == key) at--;
+		return at;
+	}
+
+	private static long[] with(long[] keys, long key) {
+		int at = lowerBound(keys, key);
+		long[] grown = new long[keys.length + 1];
+		System.arraycopy(keys, 0, grown, 0, at);
+		grown[at] = key;
+		System.arraycopy(keys, at, grown, at + 1, keys.length - at);
+		return grown;
+	}
+
+	private static long[] without(long[] keys, long key) {
+		int at = Arrays.binarySearch(keys, key);
+		if (at < 0) return keys;
+		long[] shrunk = new long[keys.length - 1];
+		System.arraycopy(keys, 0, shrunk, 0, at);
+		System.arraycopy(keys, at + 1, shrunk, at, keys.length - at - 1);
+		return shrunk;
+	}
+}
@@ -0,0 +1,36 @@
+package csulb.cecs323.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One operation of the {@code CatalogService}, from the moment it starts until it returns
+ * or fails. Operations run inside the caller's transaction, so the commit is recorded
+ * separately as a {@link TransactionEvent}.
+ */
+@Name("csulb.cecs323.CatalogOperation")
+@Label("Catalog Operation")
+@Category("JPA Books")
+@Description("An operation of the catalog service")
+public class CatalogOperationEvent extends Event {
+
+	@Label("Operation")
+	public String operation;
+
+	@Label("Key")
+	@Description("The first argument of the operation, usually the primary key it works on")
+	public String key;
+
+	@Label("Arguments")
+	public int argumentCount;
+
+	@Label("Read Only")
+	@Description("Whether the operation ran on a read-only service")
+	public boolean readOnly;
+
+	@Label("Succeeded")
+	public boolean succeeded;
+}
@@ -0,0 +1,127 @@
+package csulb.cecs323.jfr;
+
+import csulb.cecs323.feed.TransactionEventListener;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionEvent;
+
+import jdk.jfr.EventType;
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * Records the persistence unit's queries and transactions as {@link QueryEvent}s and
+ * {@link TransactionEvent}s for Java Flight Recorder, besides telling the
+ * {@code TransactionCallbacks} about commits and rollbacks as the listener it extends does.
+ * Registered with the persistence unit through the {@code eclipselink.session-event-listener}
+ * property in {@code persistence.xml}, which takes a single listener.
+ * <p>
+ * EclipseLink raises the events of a query or transaction on the unit of work and again on
+ * the session beneath it, so each thread keeps the events it has begun and only the
+ * outermost of a nest is recorded. Unless a recording has the events enabled, nothing is
+ * allocated or kept.
+ */
+public class FlightRecorderListener extends TransactionEventListener {
+
+	private static final EventType QUERIES = EventType.getEventType(QueryEvent.class);
+	private static final EventType TRANSACTIONS = EventType.getEventType(TransactionEvent.class);
+
+	private static final ThreadLocal<ArrayDeque<Running<DatabaseQuery, QueryEvent>>> QUERIES_RUNNING =
+			ThreadLocal.withInitial(ArrayDeque::new);
+	private static final ThreadLocal<Running<Object, TransactionEvent>> TRANSACTION_RUNNING = new ThreadLocal<>();
+
+	/**
+	 * An event begun on this thread, with what it was begun for and how many times the same
+	 * begin has been raised again inside it.
+	 */
+	private static final class Running<K, E> {
+		final K subject;
+		final E event;
+		int depth = 1;
+
+		Running(K subject, E event) {
+			this.subject = subject;
+			this.event = event;
+		}
+	}
+
+	@Override
+	public void preExecuteQuery(SessionEvent event) {
+		if (!QUERIES.isEnabled()) return;
+		ArrayDeque<Running<DatabaseQuery, QueryEvent>> running = QUERIES_RUNNING.get();
+		DatabaseQuery query = event.getQuery();
+		Running<DatabaseQuery, QueryEvent> top = running.peek();
+		if (top != null && top.subject == query) {
+			top.depth++;
+			return;
+		}
+		QueryEvent queryEvent = new QueryEvent();
+		queryEvent.begin();
+		running.push(new Running<>(query, queryEvent));
+	}
+
+	@Override
+	public void postExecuteQuery(SessionEvent event) {
+		ArrayDeque<Running<DatabaseQuery, QueryEvent>> running = QUERIES_RUNNING.get();
+		Running<DatabaseQuery, QueryEvent> top = running.peek();
+		// Begun before a recording enabled the events, or abandoned by a failure
+		while (top != null && top.subject != event.getQuery()) {
+			running.pop();
+			top = running.peek();
+		}
+		if (top == null || --top.depth > 0) return;
+		running.pop();
+
+		DatabaseQuery query = top.subject;
+		QueryEvent queryEvent = top.event;
+		queryEvent.end();
+		if (!queryEvent.shouldCommit()) return;
+		String name = query.getName();
+		queryEvent.name = name == null || name.isEmpty() ? query.getClass().getSimpleName() : name;
+		String entity = query.getReferenceClassName();
+		queryEvent.entity = entity == null ? null : entity.substring(entity.lastIndexOf('.') + 1);
+		queryEvent.parameterCount = query.getArguments().size();
+		queryEvent.rows = rows(event.getResult());
+		queryEvent.commit();
+	}
+
+	@Override
+	public void postBeginTransaction(SessionEvent event) {
+		if (!TRANSACTIONS.isEnabled()) return;
+		Running<Object, TransactionEvent> running = TRANSACTION_RUNNING.get();
+		if (running != null) {
+			running.depth++;
+			return;
+		}
+		TransactionEvent transaction = new TransactionEvent();
+		transaction.begin();
+		TRANSACTION_RUNNING.set(new Running<>(null, transaction));
+	}
+
+	@Override
+	public void postCommitTransaction(SessionEvent event) {
+		endTransaction(true);
+	}
+
+	@Override
+	public void postRollbackTransaction(SessionEvent event) {
+		super.postRollbackTransaction(event);
+		endTransaction(false);
+	}
+
+	private static void endTransaction(boolean committed) {
+		Running<Object, TransactionEvent> running = TRANSACTION_RUNNING.get();
+		if (running == null || --running.depth > 0) return;
+		TRANSACTION_RUNNING.remove();
+		running.event.committed = committed;
+		running.event.commit();
+	}
+
+	/**
+	 * @return the rows a query read, or for a modification the rows it changed
+	 */
+	private static long rows(Object result) {
+		if (result instanceof Collection<?> collection) return collection.size();
+		if (result instanceof Number number) return number.longValue();
+		return result == null ? 0 : 1;
+	}
+}
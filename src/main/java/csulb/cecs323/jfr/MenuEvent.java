@@ -0,0 +1,25 @@
+package csulb.cecs323.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One choice made from the console's main menu, from the choice until its transaction is
+ * committed or rolled back, including the time spent answering the prompts that follow.
+ */
+@Name("csulb.cecs323.Menu")
+@Label("Menu Choice")
+@Category("JPA Books")
+@Description("A choice made from the console's main menu")
+public class MenuEvent extends Event {
+
+	@Label("Choice")
+	public String choice;
+
+	@Label("Outcome")
+	@Description("committed, queued, rolled back, read, cancelled, failed or quit")
+	public String outcome;
+}
@@ -0,0 +1,32 @@
+package csulb.cecs323.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One query executed by EclipseLink, whether a named query, a lookup by primary key, a
+ * relationship being loaded or the SQL of a commit. Queries that fail are not recorded.
+ */
+@Name("csulb.cecs323.Query")
+@Label("Query")
+@Category("JPA Books")
+@Description("A query executed by the persistence unit")
+public class QueryEvent extends Event {
+
+	@Label("Name")
+	@Description("The name of the named query, or the kind of query for the others")
+	public String name;
+
+	@Label("Entity")
+	public String entity;
+
+	@Label("Parameters")
+	public int parameterCount;
+
+	@Label("Rows")
+	@Description("The rows read, or for a modification the rows changed")
+	public long rows;
+}
@@ -0,0 +1,18 @@
+package csulb.cecs323.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One database transaction, from its beginning until it commits or rolls back.
+ */
+@Name("csulb.cecs323.Transaction")
+@Label("Transaction")
+@Category("JPA Books")
+public class TransactionEvent extends Event {
+
+	@Label("Committed")
+	public boolean committed;
+}
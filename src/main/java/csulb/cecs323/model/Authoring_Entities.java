@@ -1,9 +1,12 @@
 package csulb.cecs323.model;
 
+import csulb.cecs323.feed.EntityChangeListener;
+
 import javax.persistence.*;
 import java.util.Set;
 
 @Entity
+@EntityListeners(EntityChangeListener.class)
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "AUTHORING_ENTITY_TYPE")
 @NamedNativeQuery(
@@ -31,7 +34,7 @@ import java.util.Set;
 		query = "SELECT * " +
 				"FROM   AUTHORING_ENTITIES " +
 				"WHERE  AUTHORING_ENTITY_TYPE = 'IndividualAuthor'",
-		resultClass = Individual_Author.class
+		resultClass = IndividualAuthor.class
 )
 @NamedNativeQuery(
 		name="ReturnAllAdHocTeams",
@@ -40,6 +43,8 @@ import java.util.Set;
 				"WHERE  AUTHORING_ENTITY_TYPE = 'AdHocTeam'",
 		resultClass = AdHocTeam.class
 )
+// ReturnAuthor looks authors up by name, not by their key
+@Table(indexes = @Index(name = "AUTHORING_ENTITIES_NAME", columnList = "NAME"))
 public abstract class Authoring_Entities {
 
 	@Column(nullable = false, length = 80)
@@ -49,6 +54,8 @@ public abstract class Authoring_Entities {
 	@Column(nullable = false, length = 30)
 	private String email;
 
+	// Loaded in full the first time it is touched; CatalogService can count, page and
+	// search an author's works without loading them
 	@OneToMany
 	@JoinColumn(name = "AUTHORING_ENTITY_NAME")
 	private Set<Books> works;
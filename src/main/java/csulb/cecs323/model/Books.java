@@ -1,21 +1,97 @@
 package csulb.cecs323.model;
 
+import csulb.cecs323.feed.EntityChangeListener;
+
+import org.eclipse.persistence.annotations.AdditionalCriteria;
+
 import javax.persistence.*;
 
 @Entity(name = "Books")
+@EntityListeners(EntityChangeListener.class)
+// Deleted books stay in the table until the BookPurger removes them; JPQL queries and
+// relationships never see them, and every native query below filters them out itself
+@AdditionalCriteria("this.deleted = false")
 @NamedNativeQuery(
 		name="ReturnBooks",
 		query=	"SELECT * " +
 				"FROM BOOKS " +
-				"WHERE ISBN = ? ",
+				"WHERE ISBN = ? AND DELETED = 0",
 		resultClass = Books.class
 )
 @NamedNativeQuery(
 		name="ReturnAllBooks",
 		query = "SELECT * " +
-				"FROM   BOOKS ",
+				"FROM   BOOKS " +
+				"WHERE  DELETED = 0",
 		resultClass = Books.class
 )
+@NamedNativeQuery(
+		name="CountWorks",
+		query = "SELECT COUNT(*) " +
+				"FROM   BOOKS " +
+				"WHERE  AUTHORING_ENTITY_NAME = ? AND DELETED = 0"
+)
+@NamedNativeQuery(
+		name="ReturnWorksPage",
+		query = "SELECT * " +
+				"FROM   BOOKS " +
+				"WHERE  AUTHORING_ENTITY_NAME = ? AND DELETED = 0 " +
+				"ORDER BY YEAR_PUBLISHED, ISBN " +
+				"OFFSET ? ROWS FETCH NEXT ? ROWS ONLY",
+		resultClass = Books.class
+)
+@NamedNativeQuery(
+		name="ContainsWork",
+		query = "SELECT COUNT(*) " +
+				"FROM   BOOKS " +
+				"WHERE  AUTHORING_ENTITY_NAME = ? AND ISBN = ? AND DELETED = 0"
+)
+@NamedNativeQuery(
+		name="ReturnBooksByYear",
+		query = "SELECT * " +
+				"FROM   BOOKS " +
+				"WHERE  YEAR_PUBLISHED BETWEEN ? AND ? AND DELETED = 0 " +
+				"ORDER BY YEAR_PUBLISHED, ISBN",
+		resultClass = Books.class
+)
+@NamedNativeQuery(
+		name="ReturnNewestBooksOfPublisher",
+		query = "SELECT * " +
+				"FROM   BOOKS " +
+				"WHERE  PUBLISHER_NAME = ? AND DELETED = 0 " +
+				"ORDER BY YEAR_PUBLISHED DESC, ISBN " +
+				"FETCH FIRST ? ROWS ONLY",
+		resultClass = Books.class
+)
+@NamedNativeQuery(
+		name="ReturnOldestBooksOfPublisher",
+		query = "SELECT * " +
+				"FROM   BOOKS " +
+				"WHERE  PUBLISHER_NAME = ? AND DELETED = 0 " +
+				"ORDER BY YEAR_PUBLISHED, ISBN " +
+				"FETCH FIRST ? ROWS ONLY",
+		resultClass = Books.class
+)
+@NamedNativeQuery(
+		name="ReturnPublisherBooksByYear",
+		query = "SELECT * " +
+				"FROM   BOOKS " +
+				"WHERE  PUBLISHER_NAME = ? AND YEAR_PUBLISHED BETWEEN ? AND ? AND DELETED = 0 " +
+				"ORDER BY YEAR_PUBLISHED, ISBN",
+		resultClass = Books.class
+)
+@Table(indexes = {
+		// Serves the works queries above: counts read only the index, and pages come in
+		// year and ISBN order, with no sort
+		@Index(name = "BOOKS_AUTHOR_YEAR", columnList = "AUTHORING_ENTITY_NAME, YEAR_PUBLISHED, ISBN, DELETED"),
+		// Serve the year range and newest/oldest queries in index order, with no sort; Derby
+		// cannot scan an index backwards, so newest first needs a descending one of its own
+		@Index(name = "BOOKS_PUBLISHER_YEAR", columnList = "PUBLISHER_NAME, YEAR_PUBLISHED, ISBN"),
+		@Index(name = "BOOKS_PUBLISHER_YEAR_DESC", columnList = "PUBLISHER_NAME, YEAR_PUBLISHED DESC, ISBN"),
+		@Index(name = "BOOKS_YEAR", columnList = "YEAR_PUBLISHED, ISBN"),
+		// Lets the purger find soft-deleted books, and count them, without scanning the table
+		@Index(name = "BOOKS_DELETED", columnList = "DELETED, ISBN")
+})
 public class Books {
 
 	@Id
@@ -35,6 +111,10 @@ public class Books {
 	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "PUBLISHER_NAME", nullable = false)
 	private Publishers publisher;
+
+	// Set by a soft delete; the default lets loaders and scripts that do not know the column insert live books
+	@Column(name = "DELETED", nullable = false, columnDefinition = "SMALLINT DEFAULT 0 NOT NULL")
+	private boolean deleted;
 	
 	// Empty book constructor
 	public Books() {}
@@ -63,6 +143,11 @@ public class Books {
 	public Publishers getPublisher() {
 		return publisher;
 	}
+
+	// get method for whether the book has been soft deleted and awaits purging
+	public boolean isDeleted() {
+		return deleted;
+	}
 	
 	/*
 	* set method for changing an ISBN
@@ -103,4 +188,12 @@ public class Books {
 	public void setPublisher(Publishers publisher) {
 		this.publisher = publisher;
 	}
+
+	/*
+	* set method for marking a book deleted without removing its row
+	* @param deleted - whether the book is deleted
+	*/
+	public void setDeleted(boolean deleted) {
+		this.deleted = deleted;
+	}
 }
@@ -0,0 +1,73 @@
+package csulb.cecs323.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/*
+* One row of the catalog summary table: the number of books in one bucket of one
+* dimension, e.g. the books of one publisher or of one year. The rows are maintained
+* with SQL by csulb.cecs323.app.CatalogStatistics; the entity declares the table.
+*/
+@Entity(name = "Catalog_Statistics")
+@IdClass(Catalog_Statistics.Key.class)
+public class Catalog_Statistics {
+
+	@Id
+	@Column(nullable = false, length = 20)
+	private String dimension;
+
+	@Id
+	@Column(nullable = false, length = 80)
+	private String bucket;
+
+	@Column(name = "BOOK_COUNT", nullable = false)
+	private long bookCount;
+
+	// Empty constructor
+	public Catalog_Statistics() {}
+
+	// get method for the dimension, e.g. PUBLISHER
+	public String getDimension() {
+		return dimension;
+	}
+
+	// get method for the bucket within the dimension, e.g. the publisher's name
+	public String getBucket() {
+		return bucket;
+	}
+
+	// get method for the number of books in the bucket
+	public long getBookCount() {
+		return bookCount;
+	}
+
+	/*
+	* The primary key of a summary row.
+	*/
+	public static class Key implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private String dimension;
+		private String bucket;
+
+		public Key() {}
+
+		public Key(String dimension, String bucket) {
+			this.dimension = dimension;
+			this.bucket = bucket;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return Objects.equals(dimension, key.dimension) && Objects.equals(bucket, key.bucket);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(dimension, bucket);
+		}
+	}
+}
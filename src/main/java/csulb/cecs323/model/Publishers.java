@@ -1,7 +1,11 @@
 package csulb.cecs323.model;
+
+import csulb.cecs323.feed.EntityChangeListener;
+
 import javax.persistence.*;
 
 @Entity(name = "Publishers")
+@EntityListeners(EntityChangeListener.class)
 @NamedNativeQuery(
 	name="ReturnPublisher",
 	query=	"SELECT * " +
@@ -0,0 +1,319 @@
+package csulb.cecs323.shard;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.model.Authoring_Entities;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The book catalog spread over several Derby databases, the shards, each with an
+ * EntityManagerFactory of its own.
+ * <p>
+ * Books are partitioned: each lives on exactly one shard, picked by the hash of its ISBN
+ * ({@link #shardOf(String, int)}). Publishers and authoring entities are replicated: every
+ * shard holds all of them, so each shard can check its books' foreign keys on its own.
+ * <p>
+ * Operations on a single book go to its shard only. Operations that span books, such as
+ * counting an author's works or listing the books of a year, run on every shard at once,
+ * and the partial results are merged, in the order the single-database query would have
+ * returned them. Reference data is read from one replica, chosen by its key so that
+ * reads spread over all shards.
+ * <p>
+ * Replicated writes are applied to the first shard, which decides whether they are valid,
+ * e.g. that the key is not taken, and then to the others. Shards do not share transactions,
+ * so if a later shard fails, the replicas are out of step and an
+ * {@link IllegalStateException} says so.
+ */
+public class ShardedCatalog implements AutoCloseable {
+
+	// Order of the year queries and of works pages: oldest first, then by ISBN
+	private static final Comparator<Books> OLDEST_FIRST =
+			Comparator.comparingInt(Books::getYearPublished).thenComparing(Books::getISBN);
+	// Order of the newest books of a publisher: newest first, then by ISBN
+	private static final Comparator<Books> NEWEST_FIRST =
+			Comparator.comparingInt(Books::getYearPublished).reversed().thenComparing(Books::getISBN);
+
+	private final PersistenceProfile profile;
+	private final String databaseName;
+	private final List<EntityManagerFactory> factories = new ArrayList<>();
+	private final ExecutorService executor;
+
+	/**
+	 * Open, and create if need be, the databases of every shard.
+	 * @param profile where the databases live
+	 * @param databaseName name of the catalog; shard {@code i} is the database {@code NAME-shardI}
+	 * @param shards the number of shards
+	 * @param overrides additional persistence unit properties for every shard
+	 */
+	public ShardedCatalog(PersistenceProfile profile, String databaseName, int shards, Map<String, ?> overrides) {
+		if (shards < 1) throw new IllegalArgumentException("There must be at least one shard.");
+		this.profile = profile;
+		this.databaseName = databaseName;
+		for (int i = 0; i < shards; i++) {
+			EntityManagerFactory factory = profile.createEntityManagerFactory(getDatabaseName(i), overrides);
+			// Deploy now, so that each shard's schema is in place before the first operation
+			factory.createEntityManager().close();
+			factories.add(factory);
+		}
+		AtomicInteger created = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(shards, runnable -> {
+			Thread thread = new Thread(runnable, "shard-query-" + created.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @param isbn the ISBN of a book
+	 * @param shards the number of shards
+	 * @return the shard the book lives on, from 0 to {@code shards - 1}
+	 */
+	public static int shardOf(String isbn, int shards) {
+		int hash = isbn.hashCode();
+		// ISBNs differ mostly in their last digits; spread those over the high bits too
+		return Math.floorMod(hash ^ (hash >>> 16), shards);
+	}
+
+	public int getShardCount() {
+		return factories.size();
+	}
+
+	/**
+	 * @param shard a shard number
+	 * @return the name of the database holding the shard
+	 */
+	public String getDatabaseName(int shard) {
+		return databaseName + "-shard" + shard;
+	}
+
+	/**
+	 * @param shard a shard number
+	 * @return the JDBC URL of the database holding the shard
+	 */
+	public String getJdbcUrl(int shard) {
+		return profile.jdbcUrl(getDatabaseName(shard));
+	}
+
+	// ---- Replicated reference data ----
+
+	public void addPublisher(String name, String email, String phone) {
+		replicate(service -> service.addPublisher(name, email, phone));
+	}
+
+	public void addWritingGroup(String name, String email, String headWriter, int yearFormed) {
+		replicate(service -> service.addWritingGroup(name, email, headWriter, yearFormed));
+	}
+
+	public void addIndividualAuthor(String name, String email) {
+		replicate(service -> service.addIndividualAuthor(name, email));
+	}
+
+	public void addAdHocTeam(String name, String email) {
+		replicate(service -> service.addAdHocTeam(name, email));
+	}
+
+	public void addTeamMembership(String teamEmail, String authorEmail) {
+		replicate(service -> service.addTeamMembership(teamEmail, authorEmail));
+	}
+
+	public Publishers getPublisher(String name) {
+		return read(replicaOf(name), service -> service.getPublisher(name));
+	}
+
+	public List<Publishers> getPublishers() {
+		return read(0, CatalogService::getPublishers);
+	}
+
+	public List<Authoring_Entities> getAuthors() {
+		return read(0, CatalogService::getAuthors);
+	}
+
+	// ---- Partitioned books ----
+
+	public void addBook(String isbn, String title, int yearPublished, String authorEmail, String publisherName) {
+		write(shardOf(isbn), service -> service.addBook(isbn, title, yearPublished, authorEmail, publisherName));
+	}
+
+	public void updateBookAuthor(String isbn, String authorEmail) {
+		write(shardOf(isbn), service -> service.updateBookAuthor(isbn, authorEmail));
+	}
+
+	public void deleteBook(String isbn) {
+		write(shardOf(isbn), service -> service.deleteBook(isbn));
+	}
+
+	/**
+	 * @return the book with the given ISBN, or {@code null} if there is none
+	 */
+	public Books getBook(String isbn) {
+		return read(shardOf(isbn), service -> service.getBook(isbn));
+	}
+
+	/**
+	 * @return the number of books on all shards
+	 */
+	public long countBooks() {
+		long total = 0;
+		for (long count : scatter(service -> ((Number) service.getEntityManager()
+				.createNativeQuery("SELECT COUNT(*) FROM BOOKS WHERE DELETED = 0").getSingleResult()).longValue())) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of books credited to an authoring entity, on all shards
+	 */
+	public long countWorks(String authorEmail) {
+		long total = 0;
+		for (long count : scatter(service -> service.countWorks(authorEmail))) total += count;
+		return total;
+	}
+
+	/**
+	 * Read one page of the books credited to an authoring entity, ordered by year published
+	 * and then by ISBN. Each shard returns its first {@code offset + limit} works, since any
+	 * of them may belong on the page.
+	 */
+	public List<Books> getWorksPage(String authorEmail, int offset, int limit) {
+		if (offset < 0 || limit < 1) throw new IllegalArgumentException("Invalid page: offset " + offset + ", limit " + limit + ".");
+		return merge(scatter(service -> service.getWorksPage(authorEmail, 0, offset + limit)), OLDEST_FIRST, offset, limit);
+	}
+
+	/**
+	 * @return the books published in the range on all shards, oldest first
+	 */
+	public List<Books> getBooksByYear(int fromYear, int toYear) {
+		return merge(scatter(service -> service.getBooksByYear(fromYear, toYear)), OLDEST_FIRST, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return the publisher's most recently published books on all shards, newest first
+	 */
+	public List<Books> getNewestBooks(String publisherName, int count) {
+		return merge(scatter(service -> service.getNewestBooks(publisherName, count)), NEWEST_FIRST, 0, count);
+	}
+
+	/**
+	 * @return every book on all shards, shard by shard
+	 */
+	public List<Books> getBooks() {
+		List<Books> books = new ArrayList<>();
+		for (List<Books> shard : scatter(CatalogService::getBooks)) books.addAll(shard);
+		return books;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+		for (EntityManagerFactory factory : factories) factory.close();
+	}
+
+	// ---- Routing ----
+
+	private int shardOf(String isbn) {
+		return shardOf(isbn, factories.size());
+	}
+
+	private int replicaOf(String key) {
+		return Math.floorMod(key.hashCode(), factories.size());
+	}
+
+	/**
+	 * Apply a write to every shard, the first one before the others.
+	 */
+	private void replicate(Consumer<CatalogService> change) {
+		write(0, change);
+		List<CompletableFuture<Void>> replicas = new ArrayList<>();
+		for (int shard = 1; shard < factories.size(); shard++) {
+			int target = shard;
+			replicas.add(CompletableFuture.runAsync(() -> write(target, change), executor));
+		}
+		for (int i = 0; i < replicas.size(); i++) {
+			try {
+				replicas.get(i).join();
+			} catch (CompletionException e) {
+				throw new IllegalStateException("Shard " + (i + 1) + " could not apply a change the first shard accepted; "
+						+ "the replicas are out of step: " + e.getCause().getMessage(), e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Run a write on one shard in a transaction of its own.
+	 */
+	private void write(int shard, Consumer<CatalogService> change) {
+		EntityManager entityManager = factories.get(shard).createEntityManager();
+		EntityTransaction tx = entityManager.getTransaction();
+		try {
+			tx.begin();
+			change.accept(new CatalogService(entityManager));
+			tx.commit();
+		} finally {
+			if (tx.isActive()) tx.rollback();
+			entityManager.close();
+		}
+	}
+
+	/**
+	 * Run a read on one shard; the entities returned are detached.
+	 */
+	private <T> T read(int shard, Function<CatalogService, T> query) {
+		EntityManager entityManager = factories.get(shard).createEntityManager();
+		try {
+			return query.apply(new CatalogService(entityManager));
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	/**
+	 * Run a read on every shard at once.
+	 * @return the result of each shard, in shard order
+	 */
+	private <T> List<T> scatter(Function<CatalogService, T> query) {
+		List<CompletableFuture<T>> parts = new ArrayList<>();
+		for (int shard = 0; shard < factories.size(); shard++) {
+			int target = shard;
+			parts.add(CompletableFuture.supplyAsync(() -> read(target, query), executor));
+		}
+		List<T> results = new ArrayList<>();
+		for (CompletableFuture<T> part : parts) {
+			try {
+				results.add(part.join());
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException cause) throw cause;
+				throw e;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Merge the sorted results of each shard into one sorted list, and cut a page out of it.
+	 */
+	private static List<Books> merge(List<List<Books>> shards, Comparator<Books> order, int offset, int limit) {
+		List<Books> merged = new ArrayList<>();
+		for (List<Books> shard : shards) merged.addAll(shard);
+		// Each shard's list is already sorted, which the sort takes advantage of
+		merged.sort(order);
+		if (offset >= merged.size()) return new ArrayList<>();
+		return new ArrayList<>(merged.subList(offset, (int) Math.min(merged.size(), (long) offset + limit)));
+	}
+}
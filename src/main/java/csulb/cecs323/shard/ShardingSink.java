@@ -0,0 +1,62 @@
+package csulb.cecs323.shard;
+
+import csulb.cecs323.tools.CatalogSink;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Splits generated rows the way a {@link ShardedCatalog} stores them: every publisher,
+ * authoring entity and team membership goes to the sink of every shard, and each book
+ * only to the sink of its own shard.
+ */
+public class ShardingSink implements CatalogSink {
+
+	private final List<? extends CatalogSink> shards;
+
+	/**
+	 * @param shards one sink per shard, in shard order
+	 */
+	public ShardingSink(List<? extends CatalogSink> shards) {
+		if (shards.isEmpty()) throw new IllegalArgumentException("There must be at least one shard.");
+		this.shards = shards;
+	}
+
+	@Override
+	public void publisher(String name, String email, String phone) throws IOException {
+		for (CatalogSink shard : shards) shard.publisher(name, email, phone);
+	}
+
+	@Override
+	public void writingGroup(String name, String email, String headWriter, int yearFormed) throws IOException {
+		for (CatalogSink shard : shards) shard.writingGroup(name, email, headWriter, yearFormed);
+	}
+
+	@Override
+	public void individualAuthor(String name, String email) throws IOException {
+		for (CatalogSink shard : shards) shard.individualAuthor(name, email);
+	}
+
+	@Override
+	public void adHocTeam(String name, String email, List<String> memberEmails) throws IOException {
+		for (CatalogSink shard : shards) shard.adHocTeam(name, email, memberEmails);
+	}
+
+	@Override
+	public void book(String isbn, String title, int yearPublished, String authorEmail, String publisherName) throws IOException {
+		shards.get(ShardedCatalog.shardOf(isbn, shards.size())).book(isbn, title, yearPublished, authorEmail, publisherName);
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (CatalogSink shard : shards) {
+			try {
+				shard.close();
+			} catch (IOException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) throw failure;
+	}
+}
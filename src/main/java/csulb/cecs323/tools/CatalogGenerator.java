@@ -0,0 +1,291 @@
+package csulb.cecs323.tools;
+
+import csulb.cecs323.app.PersistenceProfile;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a synthetic catalog for the {@code csulb.cecs323.model} schema so that
+ * benchmarks and soak tests can run against realistic volumes of data.
+ * <p>
+ * The number of books per authoring entity and per publisher follows a Zipf
+ * distribution, as does the size of each ad hoc team, so a few authors are very
+ * prolific while most have only a handful of works. Output is fully determined
+ * by the seed: the same settings always produce the same catalog.
+ */
+public class CatalogGenerator {
+
+	private static final String[] FIRST_NAMES = {
+			"Ada", "Alan", "Barbara", "Charles", "Dana", "Edsger", "Frances", "Grace", "Hedy", "Ivan",
+			"Joan", "Ken", "Leslie", "Margaret", "Niklaus", "Olga", "Peter", "Radia", "Sophie", "Tim"
+	};
+
+	private static final String[] LAST_NAMES = {
+			"Allen", "Backus", "Cerf", "Dijkstra", "Engelbart", "Floyd", "Gray", "Hopper", "Iverson", "Johnson",
+			"Knuth", "Lamport", "Liskov", "McCarthy", "Naur", "Perlman", "Ritchie", "Stonebraker", "Turing", "Wirth"
+	};
+
+	private static final String[] TITLE_WORDS = {
+			"Silent", "River", "Garden", "Empire", "Shadow", "Light", "Winter", "Machine", "Ocean", "Memory",
+			"Glass", "Iron", "Paper", "Crown", "Storm", "City", "Orchard", "Signal", "Harbor", "Atlas",
+			"Lantern", "Engine", "Meadow", "Archive", "Compass", "Ember", "Frontier", "Canyon", "Tide", "Echo"
+	};
+
+	private long seed = 323L;
+	private int publishers = 2_000;
+	private int writingGroups = 50_000;
+	private int individualAuthors = 200_000;
+	private int adHocTeams = 50_000;
+	private int books = 1_000_000;
+	private double zipfExponent = 1.07;
+	private int maxTeamSize = 12;
+	private int firstYear = 1950;
+	private int lastYear = 2024;
+
+	/**
+	 * Generate the catalog, delivering every row to the sink in dependency order.
+	 * The sink is not closed.
+	 * @param sink the destination of the generated rows
+	 */
+	public void generate(CatalogSink sink) throws IOException {
+		if (individualAuthors < 1 && adHocTeams > 0) throw new IllegalStateException("Ad hoc teams need at least one individual author.");
+		if (books > 0 && (publishers < 1 || writingGroups + individualAuthors + adHocTeams < 1)) {
+			throw new IllegalStateException("Books need at least one publisher and one authoring entity.");
+		}
+
+		// Each kind of row gets its own stream so that changing one volume does not reshuffle the others
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom groupRandom = root.split();
+		SplittableRandom authorRandom = root.split();
+		SplittableRandom teamRandom = root.split();
+		SplittableRandom bookRandom = root.split();
+
+		for (int i = 0; i < publishers; i++) {
+			sink.publisher(publisherName(i), String.format("contact%07d@publisher.example", i), String.format("+1 555-%07d", i));
+		}
+
+		for (int i = 0; i < writingGroups; i++) {
+			sink.writingGroup(String.format("Writing Group %07d", i), writingGroupEmail(i), personName(groupRandom), year(groupRandom));
+		}
+
+		for (int i = 0; i < individualAuthors; i++) {
+			sink.individualAuthor(personName(authorRandom), individualAuthorEmail(i));
+		}
+
+		if (adHocTeams > 0) {
+			ZipfDistribution teamSizes = new ZipfDistribution(Math.max(1, Math.min(maxTeamSize, individualAuthors) - 1), zipfExponent);
+			for (int i = 0; i < adHocTeams; i++) {
+				int size = Math.min(individualAuthors, 2 + teamSizes.sample(teamRandom));
+				sink.adHocTeam(String.format("Ad Hoc Team %07d", i), adHocTeamEmail(i), pickMembers(teamRandom, size));
+			}
+		}
+
+		if (books > 0) {
+			int authors = writingGroups + individualAuthors + adHocTeams;
+			ZipfDistribution authorRanks = new ZipfDistribution(authors, zipfExponent);
+			ZipfDistribution publisherRanks = new ZipfDistribution(publishers, zipfExponent);
+			// Scatter the ranks so the most prolific authors are spread over all three author types
+			long authorStride = coprimeStride(authors);
+			long publisherStride = coprimeStride(publishers);
+
+			for (int i = 0; i < books; i++) {
+				int author = (int) ((authorRanks.sample(bookRandom) * authorStride) % authors);
+				int publisher = (int) ((publisherRanks.sample(bookRandom) * publisherStride) % publishers);
+				sink.book(String.format("978%010d", i), title(bookRandom), year(bookRandom), authorEmail(author), publisherName(publisher));
+			}
+		}
+	}
+
+	/**
+	 * Map an index over all authoring entities (writing groups first, then individual
+	 * authors, then ad hoc teams) to that entity's email.
+	 */
+	private String authorEmail(int index) {
+		if (index < writingGroups) return writingGroupEmail(index);
+		index -= writingGroups;
+		if (index < individualAuthors) return individualAuthorEmail(index);
+		return adHocTeamEmail(index - individualAuthors);
+	}
+
+	private List<String> pickMembers(SplittableRandom random, int size) {
+		List<String> members = new ArrayList<>(size);
+		Set<Integer> chosen = new HashSet<>();
+		while (members.size() < size) {
+			int candidate = random.nextInt(individualAuthors);
+			if (chosen.add(candidate)) members.add(individualAuthorEmail(candidate));
+		}
+		return members;
+	}
+
+	private String title(SplittableRandom random) {
+		int words = 1 + random.nextInt(4);
+		StringBuilder title = new StringBuilder("The");
+		for (int i = 0; i < words; i++) {
+			title.append(' ').append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+		}
+		return title.toString();
+	}
+
+	private int year(SplittableRandom random) {
+		return firstYear + random.nextInt(lastYear - firstYear + 1);
+	}
+
+	private static String personName(SplittableRandom random) {
+		return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+	}
+
+	private static String publisherName(int index) {
+		return String.format("Publisher %07d", index);
+	}
+
+	private static String writingGroupEmail(int index) {
+		return String.format("wg%07d@gen.example", index);
+	}
+
+	private static String individualAuthorEmail(int index) {
+		return String.format("ia%07d@gen.example", index);
+	}
+
+	private static String adHocTeamEmail(int index) {
+		return String.format("aht%07d@gen.example", index);
+	}
+
+	/**
+	 * Find a stride that is coprime with {@code n}, so that {@code rank * stride mod n}
+	 * visits every index exactly once.
+	 */
+	private static long coprimeStride(int n) {
+		long stride = Math.max(1, (long) (n * 0.618));
+		while (gcd(stride, n) != 1) stride++;
+		return stride;
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	// Setters for the generator settings
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public void setPublishers(int publishers) {
+		this.publishers = publishers;
+	}
+
+	public void setWritingGroups(int writingGroups) {
+		this.writingGroups = writingGroups;
+	}
+
+	public void setIndividualAuthors(int individualAuthors) {
+		this.individualAuthors = individualAuthors;
+	}
+
+	public void setAdHocTeams(int adHocTeams) {
+		this.adHocTeams = adHocTeams;
+	}
+
+	public void setBooks(int books) {
+		this.books = books;
+	}
+
+	/**
+	 * @param zipfExponent skew of books-per-author, books-per-publisher and team sizes
+	 */
+	public void setZipfExponent(double zipfExponent) {
+		this.zipfExponent = zipfExponent;
+	}
+
+	/**
+	 * @param maxTeamSize the largest number of members an ad hoc team can have (at least 2)
+	 */
+	public void setMaxTeamSize(int maxTeamSize) {
+		if (maxTeamSize < 2) throw new IllegalArgumentException("Teams need room for at least two members.");
+		this.maxTeamSize = maxTeamSize;
+	}
+
+	/**
+	 * @param firstYear earliest publication / formation year
+	 * @param lastYear latest publication / formation year
+	 */
+	public void setYearRange(int firstYear, int lastYear) {
+		if (lastYear < firstYear) throw new IllegalArgumentException("The last year cannot precede the first year.");
+		this.firstYear = firstYear;
+		this.lastYear = lastYear;
+	}
+
+	/**
+	 * Command line entry point. Options (all optional):
+	 * <pre>
+	 *   --seed N  --publishers N  --writing-groups N  --individual-authors N  --ad-hoc-teams N
+	 *   --books N  --zipf X  --max-team-size N  --batch-size N
+	 *   --output sql:FILE | csv:DIRECTORY | jpa
+	 * </pre>
+	 * The {@code jpa} output writes through the {@code JPABooksProject} persistence unit, using
+	 * the persistence profile selected with {@code -Djpabooks.profile}.
+	 */
+	public static void main(String[] args) throws IOException {
+		CatalogGenerator generator = new CatalogGenerator();
+		String output = "sql:target/generated/catalog.sql";
+		int batchSize = 1_000;
+
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+			switch (option) {
+				case "--seed" -> generator.setSeed(Long.parseLong(value));
+				case "--publishers" -> generator.setPublishers(Integer.parseInt(value));
+				case "--writing-groups" -> generator.setWritingGroups(Integer.parseInt(value));
+				case "--individual-authors" -> generator.setIndividualAuthors(Integer.parseInt(value));
+				case "--ad-hoc-teams" -> generator.setAdHocTeams(Integer.parseInt(value));
+				case "--books" -> generator.setBooks(Integer.parseInt(value));
+				case "--zipf" -> generator.setZipfExponent(Double.parseDouble(value));
+				case "--max-team-size" -> generator.setMaxTeamSize(Integer.parseInt(value));
+				case "--batch-size" -> batchSize = Integer.parseInt(value);
+				case "--output" -> output = value;
+				default -> throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+
+		long start = System.nanoTime();
+		if (output.startsWith("sql:")) {
+			try (CatalogSink sink = new SqlScriptSink(Path.of(output.substring(4)))) {
+				generator.generate(sink);
+			}
+		} else if (output.startsWith("csv:")) {
+			try (CatalogSink sink = new CsvSink(Path.of(output.substring(4)))) {
+				generator.generate(sink);
+			}
+		} else if (output.equals("jpa")) {
+			Map<String, Object> properties = new HashMap<>();
+			properties.put("eclipselink.jdbc.batch-writing", "JDBC");
+			properties.put("eclipselink.jdbc.batch-writing.size", Integer.toString(batchSize));
+			EntityManagerFactory factory = PersistenceProfile.fromEnvironment()
+					.createEntityManagerFactory(PersistenceProfile.DEFAULT_DATABASE, properties);
+			try (CatalogSink sink = new PersistenceUnitSink(factory, batchSize)) {
+				generator.generate(sink);
+			} finally {
+				factory.close();
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown output " + output);
+		}
+		System.out.printf("Generated catalog in %.1f s%n", (System.nanoTime() - start) / 1e9);
+	}
+}
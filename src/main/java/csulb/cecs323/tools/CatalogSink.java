@@ -0,0 +1,56 @@
+package csulb.cecs323.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the rows produced by the {@link CatalogGenerator}. Rows arrive in
+ * dependency order: every publisher and authoring entity is delivered before
+ * any book that refers to it, and every individual author is delivered before
+ * any ad hoc team that lists it as a member.
+ */
+public interface CatalogSink extends Closeable {
+
+	/**
+	 * Accept a publisher row.
+	 * @param name name of the publisher (primary key)
+	 * @param email email of the publisher
+	 * @param phone phone number of the publisher
+	 */
+	void publisher(String name, String email, String phone) throws IOException;
+
+	/**
+	 * Accept a writing group row.
+	 * @param name name of the group
+	 * @param email email of the group (primary key)
+	 * @param headWriter head writer of the group
+	 * @param yearFormed year the group was formed
+	 */
+	void writingGroup(String name, String email, String headWriter, int yearFormed) throws IOException;
+
+	/**
+	 * Accept an individual author row.
+	 * @param name name of the author
+	 * @param email email of the author (primary key)
+	 */
+	void individualAuthor(String name, String email) throws IOException;
+
+	/**
+	 * Accept an ad hoc team row along with its membership rows.
+	 * @param name name of the team
+	 * @param email email of the team (primary key)
+	 * @param memberEmails emails of the individual authors on the team
+	 */
+	void adHocTeam(String name, String email, List<String> memberEmails) throws IOException;
+
+	/**
+	 * Accept a book row.
+	 * @param isbn ISBN of the book (primary key)
+	 * @param title title of the book
+	 * @param yearPublished year the book was published
+	 * @param authorEmail email of the authoring entity that wrote the book
+	 * @param publisherName name of the publisher of the book
+	 */
+	void book(String isbn, String title, int yearPublished, String authorEmail, String publisherName) throws IOException;
+}
@@ -0,0 +1,646 @@
+package csulb.cecs323.tools;
+
+import csulb.cecs323.app.PersistenceProfile;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Backs the whole catalog up to a compact binary file, and restores it from one.
+ * <p>
+ * The file holds four sections, {@code PUBLISHERS}, {@code AUTHORING_ENTITIES},
+ * {@code AD_HOC_TEAMS_MEMBER} and {@code BOOKS}, each a row count followed by its rows.
+ * Numbers are unsigned LEB128 varints, so a year takes two bytes (a negative one five);
+ * strings are a varint length and their UTF-8 bytes. An authoring entity's type byte has
+ * its high bit set when the entity has a year formed, written after its other columns.
+ * The publishers and authoring entities double as string dictionaries: a book names its
+ * publisher and author, and a team membership its team and member, by their position in
+ * those sections rather than by name or email. A footer gives the offset of each
+ * section, and ends with a CRC-32 of everything before it.
+ * <p>
+ * The dump reads all tables in one serializable transaction, so the snapshot is
+ * consistent; writers wait until it is done. The restore maps the file into memory,
+ * checks it, and loads the sections with batched multi-row INSERTs, the publishers and
+ * authoring entities in parallel before the books and team memberships, each section over
+ * a connection of its own. Catalog statistics are not part of a snapshot; the application
+ * recomputes them at startup.
+ */
+public class CatalogSnapshot {
+
+	private static final int MAGIC = 0x4A42534E; // "JBSN"
+	// Version 1 wrote a year formed as itself plus one, which made a year of -1 read back as NULL
+	private static final byte VERSION = 2;
+	// Four section offsets and the checksum
+	private static final int FOOTER_BYTES = 5 * Long.BYTES;
+
+	// Values of the AUTHORING_ENTITY_TYPE discriminator, stored as their position here
+	private static final List<String> AUTHOR_TYPES = List.of("WritingGroup", "IndividualAuthor", "AdHocTeam");
+	// Set in the type byte when a year formed follows the head writer
+	private static final int HAS_YEAR_FORMED = 0x80;
+
+	private static final String[] PUBLISHER_COLUMNS = {"NAME", "EMAIL", "PHONE"};
+	private static final String[] AUTHOR_COLUMNS = {"NAME", "AUTHORING_ENTITY_TYPE", "EMAIL", "HEADWRITER", "YEARFORMED"};
+	private static final String[] MEMBER_COLUMNS = {"AD_HOC_TEAMS_EMAIL", "INDIVIDUAL_AUTHORS_EMAIL"};
+	private static final String[] BOOK_COLUMNS = {"ISBN", "TITLE", "YEAR_PUBLISHED", "AUTHORING_ENTITY_NAME", "PUBLISHER_NAME"};
+
+	/**
+	 * What a dump or a restore moved, and how fast.
+	 */
+	public static class Result {
+		private final long rows;
+		private final long bytes;
+		private final long nanos;
+
+		Result(long rows, long bytes, long nanos) {
+			this.rows = rows;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public double getSeconds() {
+			return nanos / 1e9;
+		}
+
+		public double getMegabytesPerSecond() {
+			return bytes / 1e6 / Math.max(getSeconds(), 1e-9);
+		}
+
+		public double getRowsPerSecond() {
+			return rows / Math.max(getSeconds(), 1e-9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%,d rows, %,d bytes in %.2f s: %.1f MB/s, %,.0f rows/s",
+					rows, bytes, getSeconds(), getMegabytesPerSecond(), getRowsPerSecond());
+		}
+	}
+
+	private final String url;
+	private final String user;
+	private final String password;
+
+	private int rowsPerStatement = 50;
+	private int statementsPerBatch = 20;
+	private int rowsPerCommit = 10_000;
+
+	/**
+	 * @param url JDBC URL of the database
+	 * @param user database user
+	 * @param password database password
+	 */
+	public CatalogSnapshot(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * @param rowsPerStatement the number of rows bound into each INSERT statement of a restore
+	 */
+	public void setRowsPerStatement(int rowsPerStatement) {
+		if (rowsPerStatement < 1) throw new IllegalArgumentException("Each statement needs at least one row.");
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+	/**
+	 * @param statementsPerBatch the number of INSERT statements sent per JDBC batch
+	 */
+	public void setStatementsPerBatch(int statementsPerBatch) {
+		if (statementsPerBatch < 1) throw new IllegalArgumentException("Each batch needs at least one statement.");
+		this.statementsPerBatch = statementsPerBatch;
+	}
+
+	/**
+	 * @param rowsPerCommit the number of rows restored before each commit (rounded up to a whole batch)
+	 */
+	public void setRowsPerCommit(int rowsPerCommit) {
+		if (rowsPerCommit < 1) throw new IllegalArgumentException("Each commit needs at least one row.");
+		this.rowsPerCommit = rowsPerCommit;
+	}
+
+	// ---- Dump ----
+
+	/**
+	 * Write a snapshot of the catalog.
+	 * @param file the snapshot file, replaced if it exists
+	 * @return the rows and bytes written
+	 */
+	public Result dump(Path file) throws IOException, SQLException {
+		long start = System.nanoTime();
+		long rows = 0;
+		long[] offsets = new long[4];
+		CRC32 crc = new CRC32();
+		try (Connection connection = DriverManager.getConnection(url, user, password);
+		     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				     new CheckedOutputStream(Files.newOutputStream(file), crc), 1 << 16))) {
+			connection.setAutoCommit(false);
+			connection.setReadOnly(true);
+			connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+			try {
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+
+				// Position of each publisher and authoring entity, by which the other sections refer to them
+				Map<String, Integer> publishers = new HashMap<>();
+				Map<String, Integer> authors = new HashMap<>();
+
+				offsets[0] = out.size();
+				writeVarint(out, count(connection, "PUBLISHERS"));
+				try (Statement statement = connection.createStatement();
+				     ResultSet results = statement.executeQuery(select("PUBLISHERS", PUBLISHER_COLUMNS))) {
+					while (results.next()) {
+						publishers.put(results.getString(1), publishers.size());
+						writeString(out, results.getString(1));
+						writeString(out, results.getString(2));
+						writeString(out, results.getString(3));
+						rows++;
+					}
+				}
+
+				offsets[1] = out.size();
+				writeVarint(out, count(connection, "AUTHORING_ENTITIES"));
+				try (Statement statement = connection.createStatement();
+				     ResultSet results = statement.executeQuery(select("AUTHORING_ENTITIES", AUTHOR_COLUMNS))) {
+					while (results.next()) {
+						int type = AUTHOR_TYPES.indexOf(results.getString(2));
+						if (type < 0) throw new IOException("Unknown authoring entity type " + results.getString(2) + ".");
+						authors.put(results.getString(3), authors.size());
+						int yearFormed = results.getInt(5);
+						boolean hasYearFormed = !results.wasNull();
+						writeString(out, results.getString(1));
+						out.writeByte(hasYearFormed ? type | HAS_YEAR_FORMED : type);
+						writeString(out, results.getString(3));
+						writeString(out, results.getString(4));
+						if (hasYearFormed) writeVarint(out, yearFormed);
+						rows++;
+					}
+				}
+
+				offsets[2] = out.size();
+				writeVarint(out, count(connection, "AD_HOC_TEAMS_MEMBER"));
+				try (Statement statement = connection.createStatement();
+				     ResultSet results = statement.executeQuery(select("AD_HOC_TEAMS_MEMBER", MEMBER_COLUMNS))) {
+					while (results.next()) {
+						writeVarint(out, reference(authors, results.getString(1)));
+						writeVarint(out, reference(authors, results.getString(2)));
+						rows++;
+					}
+				}
+
+				// Soft-deleted books are no longer part of the catalog, even before they are purged
+				offsets[3] = out.size();
+				writeVarint(out, count(connection, "BOOKS WHERE DELETED = 0"));
+				try (Statement statement = connection.createStatement();
+				     ResultSet results = statement.executeQuery(select("BOOKS", BOOK_COLUMNS) + " WHERE DELETED = 0")) {
+					while (results.next()) {
+						writeString(out, results.getString(1));
+						writeString(out, results.getString(2));
+						writeVarint(out, results.getInt(3));
+						writeVarint(out, reference(authors, results.getString(4)));
+						writeVarint(out, reference(publishers, results.getString(5)));
+						rows++;
+					}
+				}
+
+				for (long offset : offsets) out.writeLong(offset);
+				out.flush();
+				out.writeLong(crc.getValue());
+			} finally {
+				connection.rollback();
+			}
+		}
+		return new Result(rows, Files.size(file), System.nanoTime() - start);
+	}
+
+	// ---- Restore ----
+
+	/**
+	 * Load a snapshot into the database, whose tables must exist and hold none of its rows.
+	 * @param file the snapshot file
+	 * @return the rows and bytes read
+	 */
+	public Result restore(Path file) throws IOException, SQLException, InterruptedException {
+		long start = System.nanoTime();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = map(file, channel);
+			int[] offsets = offsets(buffer);
+			// Decoded first, as the dictionaries the later sections refer to
+			List<String> publishers = new ArrayList<>();
+			List<String> authors = new ArrayList<>();
+			long rows;
+			ExecutorService workers = Executors.newFixedThreadPool(2);
+			try {
+				Future<Long> publisherRows = workers.submit(() -> {
+					try (BatchInserter insert = new BatchInserter("PUBLISHERS", PUBLISHER_COLUMNS)) {
+						long read = readPublishers(section(buffer, offsets[0]), publishers, insert);
+						insert.finish();
+						return read;
+					}
+				});
+				Future<Long> authorRows = workers.submit(() -> {
+					try (BatchInserter insert = new BatchInserter("AUTHORING_ENTITIES", AUTHOR_COLUMNS)) {
+						long read = readAuthors(section(buffer, offsets[1]), authors, insert);
+						insert.finish();
+						return read;
+					}
+				});
+				rows = join(publisherRows) + join(authorRows);
+				Future<Long> memberRows = workers.submit(() -> {
+					try (BatchInserter insert = new BatchInserter("AD_HOC_TEAMS_MEMBER", MEMBER_COLUMNS)) {
+						long read = readMembers(section(buffer, offsets[2]), authors, insert);
+						insert.finish();
+						return read;
+					}
+				});
+				Future<Long> bookRows = workers.submit(() -> {
+					try (BatchInserter insert = new BatchInserter("BOOKS", BOOK_COLUMNS)) {
+						long read = readBooks(section(buffer, offsets[3]), authors, publishers, insert);
+						insert.finish();
+						return read;
+					}
+				});
+				rows += join(memberRows) + join(bookRows);
+			} finally {
+				workers.shutdownNow();
+			}
+			return new Result(rows, buffer.capacity(), System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Check a snapshot and decode every row of it without touching the database, e.g. to
+	 * make sure a backup is intact.
+	 * @param file the snapshot file
+	 * @return the rows and bytes read
+	 */
+	public static Result verify(Path file) throws IOException {
+		long start = System.nanoTime();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = map(file, channel);
+			int[] offsets = offsets(buffer);
+			List<String> publishers = new ArrayList<>();
+			List<String> authors = new ArrayList<>();
+			Rows ignore = values -> { };
+			try {
+				long rows = readPublishers(section(buffer, offsets[0]), publishers, ignore)
+						+ readAuthors(section(buffer, offsets[1]), authors, ignore)
+						+ readMembers(section(buffer, offsets[2]), authors, ignore)
+						+ readBooks(section(buffer, offsets[3]), authors, publishers, ignore);
+				return new Result(rows, buffer.capacity(), System.nanoTime() - start);
+			} catch (SQLException | RuntimeException e) {
+				throw new IOException(file + " is damaged: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Map a snapshot file into memory, and check its header and checksum.
+	 */
+	private static ByteBuffer map(Path file, FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) throw new IOException(file + " is too large to map at once.");
+		if (size < 5 + FOOTER_BYTES) throw new IOException(file + " is not a catalog snapshot.");
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		if (buffer.getInt(0) != MAGIC) throw new IOException(file + " is not a catalog snapshot.");
+		if (buffer.get(4) != VERSION) throw new IOException(file + " has unsupported snapshot version " + buffer.get(4) + ".");
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.duplicate().limit((int) size - Long.BYTES));
+		if (crc.getValue() != buffer.getLong((int) size - Long.BYTES)) throw new IOException(file + " is damaged: checksum mismatch.");
+		return buffer;
+	}
+
+	/**
+	 * @return where each section starts, read from the footer
+	 */
+	private static int[] offsets(ByteBuffer buffer) {
+		int[] offsets = new int[4];
+		int footer = buffer.capacity() - FOOTER_BYTES;
+		for (int i = 0; i < offsets.length; i++) offsets[i] = (int) buffer.getLong(footer + i * Long.BYTES);
+		return offsets;
+	}
+
+	/**
+	 * Where decoded rows go, in the order of the table's columns.
+	 */
+	private interface Rows {
+		void row(Object... values) throws SQLException;
+	}
+
+	private static long readPublishers(ByteBuffer in, List<String> dictionary, Rows out) throws SQLException {
+		int count = readVarint(in);
+		for (int i = 0; i < count; i++) {
+			String name = readString(in);
+			dictionary.add(name);
+			out.row(name, readString(in), readString(in));
+		}
+		return count;
+	}
+
+	private static long readAuthors(ByteBuffer in, List<String> dictionary, Rows out) throws SQLException {
+		int count = readVarint(in);
+		for (int i = 0; i < count; i++) {
+			String name = readString(in);
+			int type = in.get() & 0xFF;
+			String email = readString(in);
+			dictionary.add(email);
+			String headWriter = readString(in);
+			Integer yearFormed = (type & HAS_YEAR_FORMED) != 0 ? readVarint(in) : null;
+			out.row(name, AUTHOR_TYPES.get(type & ~HAS_YEAR_FORMED), email, headWriter, yearFormed);
+		}
+		return count;
+	}
+
+	private static long readMembers(ByteBuffer in, List<String> authors, Rows out) throws SQLException {
+		int count = readVarint(in);
+		for (int i = 0; i < count; i++) out.row(authors.get(readVarint(in)), authors.get(readVarint(in)));
+		return count;
+	}
+
+	private static long readBooks(ByteBuffer in, List<String> authors, List<String> publishers, Rows out) throws SQLException {
+		int count = readVarint(in);
+		for (int i = 0; i < count; i++) {
+			out.row(readString(in), readString(in), readVarint(in),
+					authors.get(readVarint(in)), publishers.get(readVarint(in)));
+		}
+		return count;
+	}
+
+	/**
+	 * Inserts the rows of one table over a connection of its own, binding
+	 * {@code rowsPerStatement} rows into each multi-row INSERT, sending
+	 * {@code statementsPerBatch} of those per JDBC batch, and committing every
+	 * {@code rowsPerCommit} rows.
+	 */
+	private class BatchInserter implements Rows, AutoCloseable {
+		private final Connection connection;
+		private final String table;
+		private final String[] columns;
+		private final PreparedStatement full;
+		private final int[] types;
+		private final List<Object[]> rows = new ArrayList<>();
+		private int batched;
+		private long uncommitted;
+		private boolean finished;
+
+		BatchInserter(String table, String[] columns) throws SQLException {
+			this.connection = DriverManager.getConnection(url, user, password);
+			this.table = table;
+			this.columns = columns;
+			try {
+				connection.setAutoCommit(false);
+				this.full = connection.prepareStatement(insertSql(rowsPerStatement));
+				this.types = new int[columns.length];
+				ParameterMetaData metaData = full.getParameterMetaData();
+				for (int i = 0; i < columns.length; i++) types[i] = metaData.getParameterType(i + 1);
+			} catch (SQLException e) {
+				connection.close();
+				throw e;
+			}
+		}
+
+		@Override
+		public void row(Object... values) throws SQLException {
+			rows.add(values);
+			if (rows.size() < rowsPerStatement) return;
+			bind(full);
+			full.addBatch();
+			if (++batched < statementsPerBatch) return;
+			full.executeBatch();
+			batched = 0;
+			if (uncommitted >= rowsPerCommit) {
+				connection.commit();
+				uncommitted = 0;
+			}
+		}
+
+		/**
+		 * Send the rows still pending and commit, once every row of the table has been read.
+		 */
+		void finish() throws SQLException {
+			if (batched > 0) full.executeBatch();
+			// The last few rows do not fill a whole statement
+			if (!rows.isEmpty()) {
+				try (PreparedStatement rest = connection.prepareStatement(insertSql(rows.size()))) {
+					bind(rest);
+					rest.executeUpdate();
+				}
+			}
+			connection.commit();
+			finished = true;
+		}
+
+		/**
+		 * Roll back what was not committed unless {@link #finish()} completed, as when
+		 * decoding the table failed, and release the connection.
+		 */
+		@Override
+		public void close() throws SQLException {
+			try {
+				if (!finished) connection.rollback();
+			} finally {
+				full.close();
+				connection.close();
+			}
+		}
+
+		private void bind(PreparedStatement statement) throws SQLException {
+			int index = 1;
+			for (Object[] row : rows) {
+				for (int i = 0; i < row.length; i++) {
+					if (row[i] == null) statement.setNull(index++, types[i]);
+					else if (row[i] instanceof Integer value) statement.setInt(index++, value);
+					else statement.setString(index++, (String) row[i]);
+				}
+			}
+			uncommitted += rows.size();
+			rows.clear();
+		}
+
+		private String insertSql(int rowCount) {
+			String row = "(" + "?, ".repeat(columns.length - 1) + "?)";
+			StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+					.append(" (").append(String.join(", ", columns)).append(") VALUES ");
+			for (int i = 0; i < rowCount; i++) {
+				if (i > 0) sql.append(", ");
+				sql.append(row);
+			}
+			return sql.toString();
+		}
+	}
+
+	// ---- Encoding ----
+
+	private static String select(String table, String[] columns) {
+		return "SELECT " + String.join(", ", columns) + " FROM " + table;
+	}
+
+	private static int count(Connection connection, String table) throws SQLException {
+		try (Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+			results.next();
+			return results.getInt(1);
+		}
+	}
+
+	private static int reference(Map<String, Integer> dictionary, String key) throws IOException {
+		Integer position = dictionary.get(key);
+		if (position == null) throw new IOException("Dangling reference to " + key + ".");
+		return position;
+	}
+
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+	}
+
+	/**
+	 * Write a string as its UTF-8 length plus one, 0 standing for NULL, and its bytes.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = readVarint(in) - 1;
+		if (length < 0) return null;
+		String value = StandardCharsets.UTF_8.decode(in.slice().limit(length)).toString();
+		in.position(in.position() + length);
+		return value;
+	}
+
+	/**
+	 * @return a buffer of its own over the file, positioned at the start of a section
+	 */
+	private static ByteBuffer section(ByteBuffer buffer, int offset) {
+		return buffer.duplicate().position(offset);
+	}
+
+	private static long join(Future<Long> section) throws SQLException, InterruptedException {
+		try {
+			return section.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException cause) throw cause;
+			throw new IllegalStateException("Could not restore the snapshot: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Command line entry point. Usage:
+	 * <pre>
+	 *   CatalogSnapshot dump FILE    [--url URL] [--user USER] [--password PASSWORD]
+	 *   CatalogSnapshot restore FILE [--url URL] [--user USER] [--password PASSWORD] [--create-schema]
+	 *   CatalogSnapshot verify FILE
+	 * </pre>
+	 * The URL defaults to the project's database under the persistence profile selected
+	 * with {@code -Djpabooks.profile}. With {@code --create-schema}, the persistence unit
+	 * is started once to create empty tables before restoring.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2 || !List.of("dump", "restore", "verify").contains(args[0])) {
+			throw new IllegalArgumentException("Usage: CatalogSnapshot dump|restore|verify FILE [options]");
+		}
+		Path file = Path.of(args[1]);
+		if (args[0].equals("verify")) {
+			System.out.println("Verified " + verify(file));
+			return;
+		}
+		PersistenceProfile profile = PersistenceProfile.fromEnvironment();
+		String url = profile.jdbcUrl(PersistenceProfile.DEFAULT_DATABASE);
+		String user = "app";
+		String password = "app";
+		boolean createSchema = false;
+
+		for (int i = 2; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("--create-schema")) {
+				createSchema = true;
+				continue;
+			}
+			if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+			switch (option) {
+				case "--url" -> url = value;
+				case "--user" -> user = value;
+				case "--password" -> password = value;
+				default -> throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+
+		CatalogSnapshot snapshot = new CatalogSnapshot(url, user, password);
+		if (args[0].equals("dump")) {
+			System.out.println("Dumped " + snapshot.dump(file));
+			return;
+		}
+		if (createSchema) {
+			Map<String, Object> properties = profile.properties(PersistenceProfile.DEFAULT_DATABASE);
+			properties.put("javax.persistence.jdbc.url", url);
+			properties.put("javax.persistence.jdbc.user", user);
+			properties.put("javax.persistence.jdbc.password", password);
+			// Tables only; the seed data would collide with the snapshot's rows
+			properties.put("javax.persistence.sql-load-script-source", "");
+			// Creating the first EntityManager generates the tables; the factory is done with then
+			EntityManagerFactory factory = Persistence.createEntityManagerFactory(PersistenceProfile.PERSISTENCE_UNIT, properties);
+			try {
+				factory.createEntityManager().close();
+			} finally {
+				factory.close();
+			}
+		}
+		System.out.println("Restored " + snapshot.restore(file));
+	}
+}
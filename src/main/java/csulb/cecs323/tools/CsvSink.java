@@ -0,0 +1,89 @@
+package csulb.cecs323.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes generated rows as one CSV file per table into a directory. The first
+ * line of each file names the table's columns; an empty field stands for NULL.
+ */
+public class CsvSink implements CatalogSink {
+
+	private final BufferedWriter publishers;
+	private final BufferedWriter authoringEntities;
+	private final BufferedWriter teamMembers;
+	private final BufferedWriter books;
+
+	/**
+	 * Create a sink writing {@code PUBLISHERS.csv}, {@code AUTHORING_ENTITIES.csv},
+	 * {@code AD_HOC_TEAMS_MEMBER.csv} and {@code BOOKS.csv} into a directory.
+	 * @param directory the directory to write the files into; created if missing
+	 */
+	public CsvSink(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		publishers = open(directory, "PUBLISHERS", "NAME,EMAIL,PHONE");
+		authoringEntities = open(directory, "AUTHORING_ENTITIES", "NAME,AUTHORING_ENTITY_TYPE,EMAIL,HEADWRITER,YEARFORMED");
+		teamMembers = open(directory, "AD_HOC_TEAMS_MEMBER", "AD_HOC_TEAMS_EMAIL,INDIVIDUAL_AUTHORS_EMAIL");
+		books = open(directory, "BOOKS", "ISBN,TITLE,YEAR_PUBLISHED,AUTHORING_ENTITY_NAME,PUBLISHER_NAME");
+	}
+
+	@Override
+	public void publisher(String name, String email, String phone) throws IOException {
+		row(publishers, field(name), field(email), field(phone));
+	}
+
+	@Override
+	public void writingGroup(String name, String email, String headWriter, int yearFormed) throws IOException {
+		row(authoringEntities, field(name), "WritingGroup", field(email), field(headWriter), Integer.toString(yearFormed));
+	}
+
+	@Override
+	public void individualAuthor(String name, String email) throws IOException {
+		row(authoringEntities, field(name), "IndividualAuthor", field(email), "", "");
+	}
+
+	@Override
+	public void adHocTeam(String name, String email, List<String> memberEmails) throws IOException {
+		row(authoringEntities, field(name), "AdHocTeam", field(email), "", "");
+		for (String member : memberEmails) {
+			row(teamMembers, field(email), field(member));
+		}
+	}
+
+	@Override
+	public void book(String isbn, String title, int yearPublished, String authorEmail, String publisherName) throws IOException {
+		row(books, field(isbn), field(title), Integer.toString(yearPublished), field(authorEmail), field(publisherName));
+	}
+
+	@Override
+	public void close() throws IOException {
+		publishers.close();
+		authoringEntities.close();
+		teamMembers.close();
+		books.close();
+	}
+
+	private static BufferedWriter open(Path directory, String table, String header) throws IOException {
+		BufferedWriter writer = Files.newBufferedWriter(directory.resolve(table + ".csv"), StandardCharsets.UTF_8);
+		writer.write(header);
+		writer.newLine();
+		return writer;
+	}
+
+	private static void row(BufferedWriter writer, String... fields) throws IOException {
+		writer.write(String.join(",", fields));
+		writer.newLine();
+	}
+
+	/**
+	 * Quote a field if it contains a separator or a quote character.
+	 */
+	private static String field(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
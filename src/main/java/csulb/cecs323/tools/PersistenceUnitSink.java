@@ -0,0 +1,119 @@
+package csulb.cecs323.tools;
+
+import csulb.cecs323.model.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists generated rows as entities through a persistence unit. Entities are
+ * committed in batches, and the persistence context is cleared after each batch
+ * so that memory use stays flat no matter how large the catalog gets.
+ */
+public class PersistenceUnitSink implements CatalogSink {
+
+	private final EntityManager entityManager;
+	private final int batchSize;
+	private int pending;
+	private long persisted;
+
+	// The concrete type of every authoring entity written so far, so that books can reference
+	// their author without a lookup query
+	private final Map<String, Class<? extends Authoring_Entities>> authorTypes = new HashMap<>();
+
+	/**
+	 * Create a sink writing through the given factory.
+	 * @param factory the factory of the persistence unit to write to
+	 * @param batchSize the number of entities per transaction
+	 */
+	public PersistenceUnitSink(EntityManagerFactory factory, int batchSize) {
+		if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1.");
+		this.entityManager = factory.createEntityManager();
+		this.batchSize = batchSize;
+		this.entityManager.getTransaction().begin();
+	}
+
+	@Override
+	public void publisher(String name, String email, String phone) {
+		persist(new Publishers(name, email, phone));
+	}
+
+	@Override
+	public void writingGroup(String name, String email, String headWriter, int yearFormed) {
+		Writing_Groups writingGroup = new Writing_Groups();
+		writingGroup.setName(name);
+		writingGroup.setEmail(email);
+		writingGroup.setHeadWriter(headWriter);
+		writingGroup.setYearFormed(yearFormed);
+		authorTypes.put(email, Writing_Groups.class);
+		persist(writingGroup);
+	}
+
+	@Override
+	public void individualAuthor(String name, String email) {
+		IndividualAuthor author = new IndividualAuthor();
+		author.setName(name);
+		author.setIndividual_authors_email(email);
+		authorTypes.put(email, IndividualAuthor.class);
+		persist(author);
+	}
+
+	@Override
+	public void adHocTeam(String name, String email, List<String> memberEmails) {
+		AdHocTeam team = new AdHocTeam();
+		team.setName(name);
+		team.setAd_hoc_teams_email(email);
+		for (String member : memberEmails) {
+			team.getTeamMembers().add(entityManager.getReference(IndividualAuthor.class, member));
+		}
+		authorTypes.put(email, AdHocTeam.class);
+		persist(team);
+	}
+
+	@Override
+	public void book(String isbn, String title, int yearPublished, String authorEmail, String publisherName) {
+		Class<? extends Authoring_Entities> authorType = authorTypes.getOrDefault(authorEmail, Authoring_Entities.class);
+
+		Books book = new Books();
+		book.setISBN(isbn);
+		book.setTitle(title);
+		book.setYearPublished(yearPublished);
+		book.setAuthor(entityManager.getReference(authorType, authorEmail));
+		book.setPublisher(entityManager.getReference(Publishers.class, publisherName));
+		persist(book);
+	}
+
+	/**
+	 * @return the number of entities committed so far
+	 */
+	public long getPersisted() {
+		return persisted;
+	}
+
+	@Override
+	public void close() {
+		try {
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().commit();
+				persisted += pending;
+				pending = 0;
+			}
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	private void persist(Object entity) {
+		entityManager.persist(entity);
+		if (++pending >= batchSize) {
+			entityManager.getTransaction().commit();
+			entityManager.clear();
+			persisted += pending;
+			pending = 0;
+			entityManager.getTransaction().begin();
+		}
+	}
+}
@@ -0,0 +1,744 @@
+package csulb.cecs323.tools;
+
+import csulb.cecs323.app.PersistenceProfile;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Bulk loader for large seed files. Unlike {@code javax.persistence.sql-load-script-source},
+ * which runs one auto-committed INSERT per line, the loader
+ * <ul>
+ *     <li>binds rows into multi-row INSERT statements,</li>
+ *     <li>sends those statements to the database in JDBC batches,</li>
+ *     <li>commits in chunks rather than per row, and</li>
+ *     <li>loads independent tables in parallel, one connection per table, before the tables that depend on them.</li>
+ * </ul>
+ * Input is either a SQL script in the {@code seed-data.sql} format (one INSERT per line,
+ * no semicolons) or a directory of {@code TABLE.csv} files whose first line names the
+ * columns, as written by the {@link CsvSink}. Progress and throughput are printed while loading.
+ * <p>
+ * In upsert mode ({@link #setUpsert}) the same input can be loaded again without failing on
+ * the rows already there. Each chunk of rows is staged in a temporary table and merged into
+ * its table with one MERGE statement: new rows are inserted, rows whose columns differ are
+ * updated, and identical rows are left alone, so a resent feed costs one set-based statement
+ * per chunk rather than an integrity violation.
+ */
+public class SeedLoader {
+
+	/**
+	 * Tables grouped into stages; the tables of a stage only refer to tables of earlier stages,
+	 * so each stage can be loaded in parallel. Tables not listed here are loaded last.
+	 */
+	private static final List<List<String>> STAGES = List.of(
+			List.of("PUBLISHERS", "AUTHORING_ENTITIES"),
+			List.of("BOOKS", "AD_HOC_TEAMS_MEMBER")
+	);
+
+	/**
+	 * The key columns that MERGE matches rows on in upsert mode. A table not listed here is
+	 * matched on all of its columns, so its rows are only ever inserted.
+	 */
+	private static final Map<String, List<String>> KEYS = Map.of(
+			"PUBLISHERS", List.of("NAME"),
+			"AUTHORING_ENTITIES", List.of("EMAIL"),
+			"BOOKS", List.of("ISBN")
+	);
+
+	/**
+	 * Tables whose rows can be soft-deleted. In upsert mode, a row sent again for a key that
+	 * is only marked deleted brings it back; see {@link #reviveSql}.
+	 */
+	private static final Set<String> SOFT_DELETED = Set.of("BOOKS");
+
+	private final String url;
+	private final String user;
+	private final String password;
+
+	private int rowsPerStatement = 50;
+	private int statementsPerBatch = 20;
+	private int rowsPerCommit = 10_000;
+	private boolean reportProgress = true;
+	private boolean upsert;
+
+	private final Map<String, AtomicLong> loaded = new LinkedHashMap<>();
+	// Rows inserted, updated or brought back from soft deletion in upsert mode; the rest of
+	// those loaded were unchanged. A row brought back and updated counts twice.
+	private final Map<String, AtomicLong> changed = new LinkedHashMap<>();
+
+	/**
+	 * Create a loader for the given database.
+	 * @param url JDBC URL of the database, whose schema must already exist
+	 * @param user database user
+	 * @param password database password
+	 */
+	public SeedLoader(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * Load a SQL script or a directory of CSV files.
+	 * @param source the script or directory to load
+	 * @return the number of rows loaded per table
+	 */
+	public Map<String, Long> load(Path source) throws IOException, SQLException, InterruptedException {
+		if (Files.isDirectory(source)) return loadCsvDirectory(source);
+
+		// Split the script into one CSV spool per table so that tables can be loaded independently
+		Path spool = Files.createTempDirectory("seed-loader");
+		try {
+			splitScript(source, spool);
+			return loadCsvDirectory(spool);
+		} finally {
+			try (Stream<Path> files = Files.walk(spool)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * Load every {@code TABLE.csv} file of a directory, stage by stage.
+	 */
+	private Map<String, Long> loadCsvDirectory(Path directory) throws IOException, SQLException, InterruptedException {
+		Map<String, Path> files = new LinkedHashMap<>();
+		try (Stream<Path> listing = Files.list(directory)) {
+			listing.filter(path -> path.getFileName().toString().endsWith(".csv")).sorted().forEach(path -> {
+				String name = path.getFileName().toString();
+				files.put(name.substring(0, name.length() - 4).toUpperCase(), path);
+			});
+		}
+
+		List<List<String>> stages = new ArrayList<>();
+		for (List<String> stage : STAGES) {
+			List<String> present = new ArrayList<>();
+			for (String table : stage) {
+				if (files.containsKey(table)) present.add(table);
+			}
+			if (!present.isEmpty()) stages.add(present);
+		}
+		for (String table : files.keySet()) {
+			if (STAGES.stream().noneMatch(stage -> stage.contains(table))) stages.add(List.of(table));
+		}
+		for (String table : files.keySet()) {
+			loaded.put(table, new AtomicLong());
+			changed.put(table, new AtomicLong());
+		}
+
+		long start = System.nanoTime();
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		if (reportProgress) reporter.scheduleAtFixedRate(() -> report(start), 1, 1, TimeUnit.SECONDS);
+		ExecutorService workers = Executors.newCachedThreadPool();
+		try {
+			for (List<String> stage : stages) {
+				List<Future<?>> running = new ArrayList<>();
+				for (String table : stage) {
+					running.add(workers.submit(() -> {
+						if (upsert) upsertTable(table, files.get(table));
+						else loadTable(table, files.get(table));
+						return null;
+					}));
+				}
+				for (Future<?> future : running) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+						if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+						throw new IllegalStateException(e.getCause());
+					}
+				}
+			}
+		} finally {
+			workers.shutdownNow();
+			reporter.shutdownNow();
+		}
+		if (reportProgress) report(start);
+
+		Map<String, Long> result = new LinkedHashMap<>();
+		loaded.forEach((table, count) -> result.put(table, count.get()));
+		return result;
+	}
+
+	/**
+	 * Load one CSV file into its table over a dedicated connection.
+	 */
+	private void loadTable(String table, Path file) throws IOException, SQLException {
+		AtomicLong counter = loaded.get(table);
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		     Connection connection = DriverManager.getConnection(url, user, password)) {
+			String header = reader.readLine();
+			if (header == null) return;
+			List<String> columns = parseCsvLine(header);
+			connection.setAutoCommit(false);
+
+			try (PreparedStatement full = connection.prepareStatement(insertSql(table, columns, rowsPerStatement))) {
+				int[] types = parameterTypes(full, columns.size());
+				List<List<String>> rows = new ArrayList<>(rowsPerStatement);
+				int batched = 0;
+				long uncommitted = 0;
+
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty()) continue;
+					rows.add(parseCsvLine(line));
+					if (rows.size() == rowsPerStatement) {
+						bind(full, rows, types);
+						full.addBatch();
+						uncommitted += rows.size();
+						rows.clear();
+						if (++batched == statementsPerBatch) {
+							full.executeBatch();
+							batched = 0;
+							if (uncommitted >= rowsPerCommit) {
+								connection.commit();
+								counter.addAndGet(uncommitted);
+								uncommitted = 0;
+							}
+						}
+					}
+				}
+				if (batched > 0) full.executeBatch();
+
+				// The last few rows do not fill a whole statement
+				if (!rows.isEmpty()) {
+					try (PreparedStatement rest = connection.prepareStatement(insertSql(table, columns, rows.size()))) {
+						bind(rest, rows, types);
+						rest.executeUpdate();
+					}
+					uncommitted += rows.size();
+				}
+				connection.commit();
+				counter.addAndGet(uncommitted);
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Merge one CSV file into its table over a dedicated connection. The rows of each chunk
+	 * are staged in a temporary table, then merged with a single MERGE statement and
+	 * committed. Within a chunk a later row replaces an earlier one with the same key, since
+	 * MERGE refuses to match one target row twice.
+	 */
+	private void upsertTable(String table, Path file) throws IOException, SQLException {
+		AtomicLong counter = loaded.get(table);
+		AtomicLong changedCounter = changed.get(table);
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		     Connection connection = DriverManager.getConnection(url, user, password)) {
+			String header = reader.readLine();
+			if (header == null) return;
+			List<String> columns = parseCsvLine(header);
+			List<String> keys = KEYS.getOrDefault(table, columns);
+			int[] keyIndexes = new int[keys.size()];
+			for (int i = 0; i < keys.size(); i++) {
+				keyIndexes[i] = columns.indexOf(keys.get(i));
+				if (keyIndexes[i] < 0) throw new IOException(file + " has no " + keys.get(i) + " column to match rows of " + table + " on.");
+			}
+			connection.setAutoCommit(false);
+			String staging = declareStaging(connection, table, columns);
+
+			try (PreparedStatement full = connection.prepareStatement(insertSql(staging, columns, rowsPerStatement));
+			     PreparedStatement merge = connection.prepareStatement(mergeSql(table, staging, columns, keys));
+			     PreparedStatement revive = SOFT_DELETED.contains(table)
+					     ? connection.prepareStatement(reviveSql(table, staging, keys)) : null;
+			     PreparedStatement clear = connection.prepareStatement("DELETE FROM " + staging)) {
+				int[] types = parameterTypes(full, columns.size());
+				Map<List<String>, List<String>> chunk = new LinkedHashMap<>();
+				long read = 0;
+
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty()) continue;
+					List<String> row = parseCsvLine(line);
+					if (row.size() != columns.size()) throw new SQLException("Expected " + columns.size() + " values but found " + row.size() + ": " + row);
+					List<String> key = new ArrayList<>(keyIndexes.length);
+					for (int index : keyIndexes) key.add(row.get(index));
+					chunk.put(key, row);
+					read++;
+					if (chunk.size() >= rowsPerCommit) {
+						changedCounter.addAndGet(mergeChunk(connection, staging, columns, types, chunk.values(), full, merge, revive, clear));
+						counter.addAndGet(read);
+						read = 0;
+						chunk.clear();
+					}
+				}
+				if (!chunk.isEmpty()) changedCounter.addAndGet(mergeChunk(connection, staging, columns, types, chunk.values(), full, merge, revive, clear));
+				counter.addAndGet(read);
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Stage a chunk of rows, bring back the soft-deleted ones, merge them into the table and commit.
+	 * @param revive the UPDATE bringing back soft-deleted rows, or {@code null} if the table has none
+	 * @return the number of rows brought back, plus those the MERGE inserted or updated
+	 */
+	private int mergeChunk(Connection connection, String staging, List<String> columns, int[] types,
+	                       Collection<List<String>> chunk, PreparedStatement full, PreparedStatement merge,
+	                       PreparedStatement revive, PreparedStatement clear) throws SQLException {
+		List<List<String>> rows = new ArrayList<>(rowsPerStatement);
+		int batched = 0;
+		for (List<String> row : chunk) {
+			rows.add(row);
+			if (rows.size() == rowsPerStatement) {
+				bind(full, rows, types);
+				full.addBatch();
+				rows.clear();
+				if (++batched == statementsPerBatch) {
+					full.executeBatch();
+					batched = 0;
+				}
+			}
+		}
+		if (batched > 0) full.executeBatch();
+		if (!rows.isEmpty()) {
+			try (PreparedStatement rest = connection.prepareStatement(insertSql(staging, columns, rows.size()))) {
+				bind(rest, rows, types);
+				rest.executeUpdate();
+			}
+		}
+		int merged = revive == null ? 0 : revive.executeUpdate();
+		merged += merge.executeUpdate();
+		clear.executeUpdate();
+		connection.commit();
+		return merged;
+	}
+
+	/**
+	 * Declare a temporary table with the given columns of a table, typed as they are there.
+	 * It belongs to the connection, so tables loaded in parallel do not share one.
+	 * @return the qualified name of the temporary table
+	 */
+	private static String declareStaging(Connection connection, String table, List<String> columns) throws SQLException {
+		StringBuilder definitions = new StringBuilder();
+		try (Statement statement = connection.createStatement();
+		     ResultSet empty = statement.executeQuery("SELECT " + String.join(", ", columns) + " FROM " + table + " WHERE 1 = 0")) {
+			ResultSetMetaData metaData = empty.getMetaData();
+			for (int i = 1; i <= metaData.getColumnCount(); i++) {
+				if (i > 1) definitions.append(", ");
+				String type = metaData.getColumnTypeName(i);
+				definitions.append(columns.get(i - 1)).append(' ').append(type);
+				if (type.endsWith("CHAR")) definitions.append('(').append(metaData.getPrecision(i)).append(')');
+			}
+		}
+		String staging = "SESSION.STAGE_" + table;
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DECLARE GLOBAL TEMPORARY TABLE " + staging + " (" + definitions
+					+ ") ON COMMIT PRESERVE ROWS NOT LOGGED");
+		}
+		return staging;
+	}
+
+	/**
+	 * Build the MERGE of a staging table into a table: insert the rows whose key is new, and
+	 * update those whose other columns differ, comparing NULLs as equal to each other.
+	 */
+	private static String mergeSql(String table, String staging, List<String> columns, List<String> keys) {
+		List<String> match = new ArrayList<>();
+		for (String key : keys) match.add("t." + key + " = s." + key);
+		List<String> differences = new ArrayList<>();
+		List<String> assignments = new ArrayList<>();
+		for (String column : columns) {
+			if (keys.contains(column)) continue;
+			String t = "t." + column;
+			String s = "s." + column;
+			differences.add("(" + t + " <> " + s + " OR (" + t + " IS NULL AND " + s + " IS NOT NULL) OR ("
+					+ t + " IS NOT NULL AND " + s + " IS NULL))");
+			assignments.add(column + " = " + s);
+		}
+		List<String> values = new ArrayList<>();
+		for (String column : columns) values.add("s." + column);
+
+		StringBuilder sql = new StringBuilder("MERGE INTO ").append(table).append(" t USING ").append(staging)
+				.append(" s ON ").append(String.join(" AND ", match));
+		if (!assignments.isEmpty()) {
+			sql.append(" WHEN MATCHED AND (").append(String.join(" OR ", differences))
+					.append(") THEN UPDATE SET ").append(String.join(", ", assignments));
+		}
+		sql.append(" WHEN NOT MATCHED THEN INSERT (").append(String.join(", ", columns))
+				.append(") VALUES (").append(String.join(", ", values)).append(')');
+		return sql.toString();
+	}
+
+	/**
+	 * Build the UPDATE bringing back the soft-deleted rows of a table that a staging table
+	 * sends again. This is a statement of its own rather than part of the MERGE because
+	 * Derby's MERGE, setting {@code DELETED} to a constant, changes the row but leaves its
+	 * entries in the indexes on {@code DELETED} as they were.
+	 */
+	private static String reviveSql(String table, String staging, List<String> keys) {
+		List<String> match = new ArrayList<>();
+		for (String key : keys) match.add("s." + key + " = " + table + "." + key);
+		return "UPDATE " + table + " SET DELETED = 0 WHERE DELETED <> 0 AND EXISTS (SELECT 1 FROM " + staging
+				+ " s WHERE " + String.join(" AND ", match) + ")";
+	}
+
+	private static String insertSql(String table, List<String> columns, int rows) {
+		StringBuilder row = new StringBuilder("(");
+		for (int i = 0; i < columns.size(); i++) {
+			row.append(i == 0 ? "?" : ", ?");
+		}
+		row.append(')');
+
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+				.append(" (").append(String.join(", ", columns)).append(") VALUES ");
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) sql.append(", ");
+			sql.append(row);
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Look up the SQL type of each column once, so that NULLs can be bound with the right type.
+	 */
+	private static int[] parameterTypes(PreparedStatement statement, int columns) throws SQLException {
+		ParameterMetaData metaData = statement.getParameterMetaData();
+		int[] types = new int[columns];
+		for (int i = 0; i < columns; i++) {
+			types[i] = metaData.getParameterType(i + 1);
+		}
+		return types;
+	}
+
+	private static void bind(PreparedStatement statement, List<List<String>> rows, int[] types) throws SQLException {
+		int index = 1;
+		for (List<String> row : rows) {
+			if (row.size() != types.length) throw new SQLException("Expected " + types.length + " values but found " + row.size() + ": " + row);
+			for (int i = 0; i < types.length; i++) {
+				String value = row.get(i);
+				if (value == null) statement.setNull(index++, types[i]);
+				else statement.setString(index++, value);
+			}
+		}
+	}
+
+	private void report(long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		StringBuilder line = new StringBuilder(String.format("[%6.1f s]", seconds));
+		long total = 0;
+		for (Map.Entry<String, AtomicLong> entry : loaded.entrySet()) {
+			long rows = entry.getValue().get();
+			total += rows;
+			line.append(' ').append(entry.getKey()).append('=').append(rows);
+		}
+		line.append(String.format("  total=%d (%.0f rows/s)", total, total / Math.max(seconds, 1e-9)));
+		if (upsert) line.append("  changed=").append(changed.values().stream().mapToLong(AtomicLong::get).sum());
+		System.out.println(line);
+	}
+
+	// ---- Parsing ----
+
+	/**
+	 * Convert a script of single-line INSERT statements into one CSV file per table.
+	 */
+	private static void splitScript(Path script, Path spool) throws IOException {
+		Map<String, BufferedWriter> writers = new LinkedHashMap<>();
+		Map<String, String> headers = new LinkedHashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("--")) continue;
+
+				InsertStatement insert = InsertStatement.parse(line, lineNumber);
+				String header = String.join(",", insert.columns);
+				String known = headers.putIfAbsent(insert.table, header);
+				if (known != null && !known.equals(header)) {
+					throw new IOException("Line " + lineNumber + ": all INSERTs into " + insert.table + " must list the same columns.");
+				}
+				BufferedWriter writer = writers.get(insert.table);
+				if (writer == null) {
+					writer = Files.newBufferedWriter(spool.resolve(insert.table + ".csv"), StandardCharsets.UTF_8);
+					writer.write(header);
+					writer.newLine();
+					writers.put(insert.table, writer);
+				}
+				writer.write(toCsvLine(insert.values));
+				writer.newLine();
+			}
+		} finally {
+			for (BufferedWriter writer : writers.values()) {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Write values as a CSV line. NULL is an empty field, and an empty string is written as
+	 * {@code ""} so the two can be told apart.
+	 */
+	private static String toCsvLine(List<String> values) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) line.append(',');
+			String value = values.get(i);
+			if (value == null) continue;
+			if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+				line.append('"').append(value.replace("\"", "\"\"")).append('"');
+			} else {
+				line.append(value);
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Split a CSV line into fields. An unquoted empty field is NULL.
+	 */
+	static List<String> parseCsvLine(String line) {
+		List<String> fields = new ArrayList<>();
+		int i = 0;
+		while (true) {
+			if (i < line.length() && line.charAt(i) == '"') {
+				StringBuilder field = new StringBuilder();
+				i++;
+				while (i < line.length()) {
+					char c = line.charAt(i++);
+					if (c == '"') {
+						if (i < line.length() && line.charAt(i) == '"') {
+							field.append('"');
+							i++;
+						} else {
+							break;
+						}
+					} else {
+						field.append(c);
+					}
+				}
+				fields.add(field.toString());
+			} else {
+				int end = line.indexOf(',', i);
+				if (end < 0) end = line.length();
+				fields.add(end == i ? null : line.substring(i, end));
+				i = end;
+			}
+			if (i >= line.length()) break;
+			i++; // skip the separator
+			if (i == line.length()) {
+				fields.add(null);
+				break;
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * A parsed {@code INSERT INTO table (columns) VALUES (values)} statement.
+	 */
+	private static class InsertStatement {
+		String table;
+		List<String> columns = new ArrayList<>();
+		List<String> values = new ArrayList<>();
+
+		static InsertStatement parse(String sql, int lineNumber) throws IOException {
+			String upper = sql.toUpperCase();
+			int open = sql.indexOf('(');
+			int close = sql.indexOf(')', open);
+			int valuesKeyword = upper.indexOf("VALUES", close);
+			if (!upper.startsWith("INSERT INTO ") || open < 0 || close < 0 || valuesKeyword < 0) {
+				throw new IOException("Line " + lineNumber + " is not an INSERT INTO table (columns) VALUES (...) statement.");
+			}
+
+			InsertStatement insert = new InsertStatement();
+			insert.table = sql.substring("INSERT INTO ".length(), open).trim().toUpperCase();
+			for (String column : sql.substring(open + 1, close).split(",")) {
+				insert.columns.add(column.trim().toUpperCase());
+			}
+
+			int i = sql.indexOf('(', valuesKeyword);
+			if (i < 0) throw new IOException("Line " + lineNumber + " has no value list.");
+			i++;
+			while (i < sql.length()) {
+				char c = sql.charAt(i);
+				if (Character.isWhitespace(c) || c == ',') {
+					i++;
+				} else if (c == ')') {
+					break;
+				} else if (c == '\'') {
+					StringBuilder literal = new StringBuilder();
+					i++;
+					while (i < sql.length()) {
+						char d = sql.charAt(i++);
+						if (d == '\'') {
+							if (i < sql.length() && sql.charAt(i) == '\'') {
+								literal.append('\'');
+								i++;
+							} else {
+								break;
+							}
+						} else {
+							literal.append(d);
+						}
+					}
+					insert.values.add(literal.toString());
+				} else {
+					int end = i;
+					while (end < sql.length() && sql.charAt(end) != ',' && sql.charAt(end) != ')') end++;
+					String token = sql.substring(i, end).trim();
+					insert.values.add(token.equalsIgnoreCase("NULL") ? null : token);
+					i = end;
+				}
+			}
+			if (insert.values.size() != insert.columns.size()) {
+				throw new IOException("Line " + lineNumber + " has " + insert.columns.size() + " columns but " + insert.values.size() + " values.");
+			}
+			return insert;
+		}
+	}
+
+	// Setters for the loader settings
+
+	/**
+	 * @param rowsPerStatement the number of rows in each multi-row INSERT
+	 */
+	public void setRowsPerStatement(int rowsPerStatement) {
+		if (rowsPerStatement < 1) throw new IllegalArgumentException("Each statement needs at least one row.");
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+	/**
+	 * @param statementsPerBatch the number of INSERT statements sent per JDBC batch
+	 */
+	public void setStatementsPerBatch(int statementsPerBatch) {
+		if (statementsPerBatch < 1) throw new IllegalArgumentException("Each batch needs at least one statement.");
+		this.statementsPerBatch = statementsPerBatch;
+	}
+
+	/**
+	 * @param rowsPerCommit the number of rows loaded before each commit (rounded up to a whole batch)
+	 */
+	public void setRowsPerCommit(int rowsPerCommit) {
+		if (rowsPerCommit < 1) throw new IllegalArgumentException("Each commit needs at least one row.");
+		this.rowsPerCommit = rowsPerCommit;
+	}
+
+	/**
+	 * @param upsert whether to merge the input into the tables, inserting new rows and
+	 *               updating changed ones, rather than only inserting it
+	 */
+	public void setUpsert(boolean upsert) {
+		this.upsert = upsert;
+	}
+
+	/**
+	 * @return the number of rows inserted or updated per table by the last load in upsert
+	 * 			mode; the other rows loaded were already in the table as they are
+	 */
+	public Map<String, Long> getChanged() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		changed.forEach((table, count) -> result.put(table, count.get()));
+		return result;
+	}
+
+	public void setReportProgress(boolean reportProgress) {
+		this.reportProgress = reportProgress;
+	}
+
+	/**
+	 * Command line entry point. Usage:
+	 * <pre>
+	 *   SeedLoader SOURCE [--url URL] [--user USER] [--password PASSWORD] [--create-schema] [--upsert]
+	 *              [--rows-per-statement N] [--statements-per-batch N] [--rows-per-commit N]
+	 * </pre>
+	 * SOURCE is a SQL script or a directory of CSV files. The URL defaults to the project's
+	 * database under the persistence profile selected with {@code -Djpabooks.profile}. With
+	 * {@code --create-schema}, the persistence unit is started once to create the tables first.
+	 * With {@code --upsert}, rows already in the tables are updated rather than rejected.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) throw new IllegalArgumentException("Usage: SeedLoader SOURCE [options]");
+		Path source = Path.of(args[0]);
+		PersistenceProfile profile = PersistenceProfile.fromEnvironment();
+		String url = profile.jdbcUrl(PersistenceProfile.DEFAULT_DATABASE);
+		String user = "app";
+		String password = "app";
+		boolean createSchema = false;
+		boolean upsert = false;
+		int rowsPerStatement = 50;
+		int statementsPerBatch = 20;
+		int rowsPerCommit = 10_000;
+
+		for (int i = 1; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("--create-schema")) {
+				createSchema = true;
+				continue;
+			}
+			if (option.equals("--upsert")) {
+				upsert = true;
+				continue;
+			}
+			if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+			switch (option) {
+				case "--url" -> url = value;
+				case "--user" -> user = value;
+				case "--password" -> password = value;
+				case "--rows-per-statement" -> rowsPerStatement = Integer.parseInt(value);
+				case "--statements-per-batch" -> statementsPerBatch = Integer.parseInt(value);
+				case "--rows-per-commit" -> rowsPerCommit = Integer.parseInt(value);
+				default -> throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+
+		if (createSchema) {
+			Map<String, Object> properties = profile.properties(PersistenceProfile.DEFAULT_DATABASE);
+			properties.put("javax.persistence.jdbc.url", url);
+			properties.put("javax.persistence.jdbc.user", user);
+			properties.put("javax.persistence.jdbc.password", password);
+			// Creating the first EntityManager generates the tables; the factory is done with then
+			EntityManagerFactory factory = Persistence.createEntityManagerFactory(PersistenceProfile.PERSISTENCE_UNIT, properties);
+			try {
+				factory.createEntityManager().close();
+			} finally {
+				factory.close();
+			}
+		}
+
+		SeedLoader loader = new SeedLoader(url, user, password);
+		loader.setRowsPerStatement(rowsPerStatement);
+		loader.setStatementsPerBatch(statementsPerBatch);
+		loader.setRowsPerCommit(rowsPerCommit);
+		loader.setUpsert(upsert);
+		loader.load(source);
+	}
+}
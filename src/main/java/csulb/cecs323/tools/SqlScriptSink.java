@@ -0,0 +1,81 @@
+package csulb.cecs323.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes generated rows as a SQL script in the same format as
+ * {@code sql/seed-data.sql}: one INSERT statement per line, no semicolons.
+ * The result can be used as a {@code javax.persistence.sql-load-script-source}
+ * or handed to the {@link SeedLoader}.
+ */
+public class SqlScriptSink implements CatalogSink {
+
+	private final BufferedWriter writer;
+
+	/**
+	 * Create a sink writing to the given file, replacing it if it exists.
+	 * @param file the script to write
+	 */
+	public SqlScriptSink(Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) Files.createDirectories(parent);
+		this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void publisher(String name, String email, String phone) throws IOException {
+		writer.write("INSERT INTO PUBLISHERS (NAME, EMAIL, PHONE) VALUES (");
+		writer.write(quote(name) + ", " + quote(email) + ", " + quote(phone) + ")");
+		writer.newLine();
+	}
+
+	@Override
+	public void writingGroup(String name, String email, String headWriter, int yearFormed) throws IOException {
+		writer.write("INSERT INTO AUTHORING_ENTITIES (NAME, AUTHORING_ENTITY_TYPE, EMAIL, HEADWRITER, YEARFORMED) VALUES (");
+		writer.write(quote(name) + ", 'WritingGroup', " + quote(email) + ", " + quote(headWriter) + ", " + yearFormed + ")");
+		writer.newLine();
+	}
+
+	@Override
+	public void individualAuthor(String name, String email) throws IOException {
+		writer.write("INSERT INTO AUTHORING_ENTITIES (NAME, AUTHORING_ENTITY_TYPE, EMAIL, HEADWRITER, YEARFORMED) VALUES (");
+		writer.write(quote(name) + ", 'IndividualAuthor', " + quote(email) + ", NULL, NULL)");
+		writer.newLine();
+	}
+
+	@Override
+	public void adHocTeam(String name, String email, List<String> memberEmails) throws IOException {
+		writer.write("INSERT INTO AUTHORING_ENTITIES (NAME, AUTHORING_ENTITY_TYPE, EMAIL, HEADWRITER, YEARFORMED) VALUES (");
+		writer.write(quote(name) + ", 'AdHocTeam', " + quote(email) + ", NULL, NULL)");
+		writer.newLine();
+		for (String member : memberEmails) {
+			writer.write("INSERT INTO AD_HOC_TEAMS_MEMBER (AD_HOC_TEAMS_EMAIL, INDIVIDUAL_AUTHORS_EMAIL) VALUES (");
+			writer.write(quote(email) + ", " + quote(member) + ")");
+			writer.newLine();
+		}
+	}
+
+	@Override
+	public void book(String isbn, String title, int yearPublished, String authorEmail, String publisherName) throws IOException {
+		writer.write("INSERT INTO BOOKS (ISBN, TITLE, YEAR_PUBLISHED, AUTHORING_ENTITY_NAME, PUBLISHER_NAME) VALUES (");
+		writer.write(quote(isbn) + ", " + quote(title) + ", " + yearPublished + ", " + quote(authorEmail) + ", " + quote(publisherName) + ")");
+		writer.newLine();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Turn a value into a SQL string literal, doubling any embedded quotes.
+	 */
+	private static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+}
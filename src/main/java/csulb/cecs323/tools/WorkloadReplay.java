@@ -0,0 +1,167 @@
+package csulb.cecs323.tools;
+
+import csulb.cecs323.app.CatalogOperation;
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.LatencyRecorder;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.app.WorkloadJournal;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Re-executes a recorded {@link WorkloadJournal} against a database and reports the
+ * latency of each operation type. Each operation runs in its own transaction, so the
+ * reported latency of a write includes its commit.
+ * <p>
+ * Usage:
+ * <pre>
+ *   WorkloadReplay JOURNAL [--threads N] [--speed X] [--database NAME]
+ * </pre>
+ * With the default {@code --speed 0} operations are issued back to back; a positive
+ * speed keeps the recorded pacing, sped up by that factor. With {@code --threads N},
+ * N workers take operations from the journal in order, each with its own
+ * EntityManager. The database is reached with the persistence profile selected with
+ * {@code -Djpabooks.profile}.
+ */
+public class WorkloadReplay {
+
+	private final List<WorkloadJournal.Entry> entries;
+	private final Map<CatalogOperation, LatencyRecorder> replayed = new EnumMap<>(CatalogOperation.class);
+	private final Map<CatalogOperation, LatencyRecorder> recorded = new EnumMap<>(CatalogOperation.class);
+	private final Map<CatalogOperation, LongAdder> failures = new EnumMap<>(CatalogOperation.class);
+
+	/**
+	 * @param entries the operations to replay, in order
+	 */
+	public WorkloadReplay(List<WorkloadJournal.Entry> entries) {
+		this.entries = entries;
+		for (CatalogOperation operation : CatalogOperation.values()) {
+			replayed.put(operation, new LatencyRecorder());
+			recorded.put(operation, new LatencyRecorder());
+			failures.put(operation, new LongAdder());
+		}
+		for (WorkloadJournal.Entry entry : entries) {
+			recorded.get(entry.getOperation()).record(entry.getDurationNanos());
+		}
+	}
+
+	/**
+	 * Replay every operation.
+	 * @param factory the database to replay against
+	 * @param threads the number of concurrent workers
+	 * @param speed 0 to replay at full speed, or the factor to speed the recorded pacing up by
+	 * @return the wall clock time the replay took, in nanoseconds
+	 */
+	public long replay(EntityManagerFactory factory, int threads, double speed) throws Exception {
+		// When each operation is due, relative to the start of the replay
+		long[] due = new long[entries.size()];
+		long offset = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			offset += entries.get(i).getOffsetMicros();
+			due[i] = speed > 0 ? (long) (offset * 1_000 / speed) : 0;
+		}
+
+		AtomicInteger next = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> running = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				running.add(workers.submit(() -> {
+					EntityManager manager = factory.createEntityManager();
+					try {
+						CatalogService service = new CatalogService(manager);
+						int i;
+						while ((i = next.getAndIncrement()) < entries.size()) {
+							long wait = start + due[i] - System.nanoTime();
+							if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+							execute(manager, service, entries.get(i));
+						}
+					} finally {
+						manager.close();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : running) future.get();
+		} finally {
+			workers.shutdownNow();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private void execute(EntityManager manager, CatalogService service, WorkloadJournal.Entry entry) {
+		CatalogOperation operation = entry.getOperation();
+		EntityTransaction tx = manager.getTransaction();
+		long start = System.nanoTime();
+		try {
+			tx.begin();
+			operation.replay(service, entry.getArgs());
+			tx.commit();
+			replayed.get(operation).recordSince(start);
+		} catch (RuntimeException e) {
+			if (tx.isActive()) tx.rollback();
+			failures.get(operation).increment();
+		} finally {
+			manager.clear();
+		}
+	}
+
+	/**
+	 * Print the replayed and originally recorded latency of every operation type that occurred.
+	 * @param elapsedNanos the wall clock time of the replay
+	 */
+	public void report(long elapsedNanos) {
+		System.out.printf("%nReplayed %d operations in %.2f s (%.0f ops/s)%n", entries.size(), elapsedNanos / 1e9,
+				entries.size() / (elapsedNanos / 1e9));
+		System.out.printf("%-24s %8s %8s  %s%n", "OPERATION", "OK", "FAILED", "REPLAYED LATENCY  |  RECORDED p50");
+		for (CatalogOperation operation : CatalogOperation.values()) {
+			LatencyRecorder latency = replayed.get(operation);
+			long failed = failures.get(operation).sum();
+			if (latency.getCount() == 0 && failed == 0) continue;
+			System.out.printf("%-24s %8d %8d  %s  |  %.1fus%n", operation, latency.getCount(), failed, latency.summary(),
+					recorded.get(operation).getPercentileNanos(50) / 1e3);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) throw new IllegalArgumentException("Usage: WorkloadReplay JOURNAL [--threads N] [--speed X] [--database NAME]");
+		Path journal = Path.of(args[0]);
+		int threads = 1;
+		double speed = 0;
+		String database = PersistenceProfile.DEFAULT_DATABASE;
+
+		for (int i = 1; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+			switch (option) {
+				case "--threads" -> threads = Integer.parseInt(value);
+				case "--speed" -> speed = Double.parseDouble(value);
+				case "--database" -> database = value;
+				default -> throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+
+		WorkloadReplay replay = new WorkloadReplay(WorkloadJournal.read(journal));
+		EntityManagerFactory factory = PersistenceProfile.fromEnvironment().createEntityManagerFactory(database, Map.of());
+		try {
+			replay.report(replay.replay(factory, threads, speed));
+		} finally {
+			factory.close();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package csulb.cecs323.tools;
+
+import java.util.SplittableRandom;
+
+/**
+ * A Zipf distribution over the ranks {@code 1..n}, where the probability of
+ * rank {@code k} is proportional to {@code 1 / k^exponent}. The cumulative
+ * distribution is computed once, so each sample is a single binary search.
+ */
+public class ZipfDistribution {
+
+	private final double[] cumulative;
+
+	/**
+	 * Build a Zipf distribution.
+	 * @param n the number of ranks, must be at least 1
+	 * @param exponent the skew of the distribution; 0 is uniform, larger values
+	 *                 concentrate more of the mass on the first ranks
+	 */
+	public ZipfDistribution(int n, double exponent) {
+		if (n < 1) throw new IllegalArgumentException("A Zipf distribution needs at least one rank.");
+		if (exponent < 0) throw new IllegalArgumentException("The Zipf exponent cannot be negative.");
+
+		cumulative = new double[n];
+		double total = 0;
+		for (int k = 1; k <= n; k++) {
+			total += 1.0 / Math.pow(k, exponent);
+			cumulative[k - 1] = total;
+		}
+		for (int i = 0; i < n; i++) {
+			cumulative[i] /= total;
+		}
+	}
+
+	/**
+	 * @return the number of ranks in this distribution
+	 */
+	public int size() {
+		return cumulative.length;
+	}
+
+	/**
+	 * Draw a rank from the distribution.
+	 * @param random the source of randomness
+	 * @return a zero-based rank, {@code 0} being the most likely
+	 */
+	public int sample(SplittableRandom random) {
+		double u = random.nextDouble();
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] < u) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+}
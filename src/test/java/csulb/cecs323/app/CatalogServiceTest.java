@@ -0,0 +1,308 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.feed.ChangeEvent;
+import csulb.cecs323.feed.ChangeFeed;
+import csulb.cecs323.model.Books;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.RollbackException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the catalog's operations against an in-memory database, created empty of the seed
+ * data for the whole class. Each test works on books of its own ISBNs.
+ */
+class CatalogServiceTest {
+
+	private static final String DATABASE = "CatalogServiceTest";
+	private static final String PUBLISHER = "Test Publisher";
+	private static final String AUTHOR = "author@test.example";
+	private static final String OTHER_AUTHOR = "other@test.example";
+
+	private static EntityManagerFactory factory;
+
+	private EntityManager entityManager;
+	private CatalogService service;
+
+	@BeforeAll
+	static void createCatalog() {
+		factory = PersistenceProfile.MEMORY.createEntityManagerFactory(DATABASE,
+				Map.of("javax.persistence.sql-load-script-source", ""));
+		EntityManager entityManager = factory.createEntityManager();
+		try {
+			write(entityManager, service -> {
+				service.addPublisher(PUBLISHER, "publisher@test.example", "555-0100");
+				service.addIndividualAuthor("Author", AUTHOR);
+				service.addIndividualAuthor("Other Author", OTHER_AUTHOR);
+			});
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	@AfterAll
+	static void dropCatalog() {
+		factory.close();
+		PersistenceProfile.MEMORY.dropDatabase(DATABASE);
+	}
+
+	@BeforeEach
+	void open() {
+		entityManager = factory.createEntityManager();
+		service = new CatalogService(entityManager);
+	}
+
+	@AfterEach
+	void close() {
+		entityManager.close();
+	}
+
+	@Test
+	void addedBookIsFound() {
+		write(entityManager, service -> service.addBook("T-ADD", "Added", 2001, AUTHOR, PUBLISHER));
+		entityManager.clear();
+
+		Books book = service.getBook("T-ADD");
+		assertNotNull(book);
+		assertEquals("Added", book.getTitle());
+		assertEquals(2001, book.getYearPublished());
+		assertEquals(AUTHOR, book.getAuthor().getEmail());
+		assertEquals(PUBLISHER, book.getPublisher().getName());
+		assertTrue(service.hasWork(AUTHOR, "T-ADD"));
+	}
+
+	@Test
+	void bookNeedsExistingAuthorAndPublisher() {
+		EntityTransaction tx = entityManager.getTransaction();
+		tx.begin();
+		try {
+			assertThrows(IllegalArgumentException.class,
+					() -> service.addBook("T-BAD", "Bad", 2001, "nobody@test.example", PUBLISHER));
+			assertThrows(IllegalArgumentException.class,
+					() -> service.addBook("T-BAD", "Bad", 2001, AUTHOR, "No Such Publisher"));
+		} finally {
+			tx.rollback();
+		}
+		assertNull(service.getBook("T-BAD"));
+	}
+
+	@Test
+	void rolledBackBookIsNotAdded() {
+		EntityTransaction tx = entityManager.getTransaction();
+		tx.begin();
+		service.addBook("T-ROLLBACK", "Rolled back", 2001, AUTHOR, PUBLISHER);
+		tx.rollback();
+		entityManager.clear();
+
+		assertNull(service.getBook("T-ROLLBACK"));
+	}
+
+	@Test
+	void updatedAuthorIsCredited() {
+		write(entityManager, service -> service.addBook("T-UPDATE", "Updated", 2002, AUTHOR, PUBLISHER));
+		long before = service.countWorks(OTHER_AUTHOR);
+		write(entityManager, service -> service.updateBookAuthor("T-UPDATE", OTHER_AUTHOR));
+		entityManager.clear();
+
+		assertEquals(OTHER_AUTHOR, service.getBook("T-UPDATE").getAuthor().getEmail());
+		assertEquals(before + 1, service.countWorks(OTHER_AUTHOR));
+		assertFalse(service.hasWork(AUTHOR, "T-UPDATE"));
+	}
+
+	@Test
+	void worksArePagedByYearThenIsbn() {
+		write(entityManager, service -> {
+			service.addBook("T-PAGE-2", "Second", 1952, OTHER_AUTHOR, PUBLISHER);
+			service.addBook("T-PAGE-1", "First", 1951, OTHER_AUTHOR, PUBLISHER);
+			service.addBook("T-PAGE-3", "Third", 1952, OTHER_AUTHOR, PUBLISHER);
+		});
+		entityManager.clear();
+
+		List<Books> page = service.getWorksPage(OTHER_AUTHOR, 0, 2);
+		assertEquals(List.of("T-PAGE-1", "T-PAGE-2"), page.stream().map(Books::getISBN).toList());
+		assertEquals("T-PAGE-3", service.getWorksPage(OTHER_AUTHOR, 2, 2).get(0).getISBN());
+		assertThrows(IllegalArgumentException.class, () -> service.getWorksPage(OTHER_AUTHOR, -1, 2));
+		assertThrows(IllegalArgumentException.class, () -> service.getWorksPage(OTHER_AUTHOR, 0, 0));
+	}
+
+	@Test
+	void booksByYearAreInRange() {
+		write(entityManager, service -> {
+			service.addBook("T-YEAR-1", "Before", 1899, AUTHOR, PUBLISHER);
+			service.addBook("T-YEAR-2", "Within", 1900, AUTHOR, PUBLISHER);
+			service.addBook("T-YEAR-3", "After", 1901, AUTHOR, PUBLISHER);
+		});
+		entityManager.clear();
+
+		List<Books> books = service.getBooksByYear(1900, 1900);
+		assertEquals(List.of("T-YEAR-2"), books.stream().map(Books::getISBN).toList());
+	}
+
+	@Test
+	void deletedBookIsGone() {
+		write(entityManager, service -> service.addBook("T-DELETE", "Deleted", 2003, AUTHOR, PUBLISHER));
+		write(entityManager, service -> service.deleteBook("T-DELETE"));
+		entityManager.clear();
+
+		assertNull(service.getBook("T-DELETE"));
+		assertThrows(IllegalArgumentException.class, () -> service.deleteBook("T-DELETE"));
+	}
+
+	@Test
+	void softDeletedBookIsHiddenAndItsIsbnReusable() {
+		service.setSoftDelete(true);
+		write(entityManager, service -> service.addBook("T-SOFT", "Soft", 1850, AUTHOR, PUBLISHER));
+		write(entityManager, service -> service.deleteBook("T-SOFT"));
+		entityManager.clear();
+
+		assertNull(service.getBook("T-SOFT"));
+		assertTrue(service.getBooksByYear(1850, 1850).isEmpty());
+
+		write(entityManager, service -> service.addBook("T-SOFT", "Soft again", 1850, AUTHOR, PUBLISHER));
+		entityManager.clear();
+		assertEquals("Soft again", service.getBook("T-SOFT").getTitle());
+	}
+
+	@Test
+	void softDeleteIsPublishedAsDelete() throws Exception {
+		service.setSoftDelete(true);
+		write(entityManager, service -> service.addBook("T-FEED", "Published", 1860, AUTHOR, PUBLISHER));
+		BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+		try (AutoCloseable subscription = ChangeFeed.getInstance().subscribe(event -> {
+			if ("T-FEED".equals(event.getKey())) events.add(event);
+		})) {
+			write(entityManager, writes -> service.deleteBook("T-FEED"));
+			ChangeEvent event = events.poll(10, TimeUnit.SECONDS);
+			assertNotNull(event);
+			assertEquals(ChangeEvent.Kind.DELETED, event.getKind());
+		}
+	}
+
+	@Test
+	void duplicateBookFailsAtCommitWithStatistics() {
+		CatalogStatistics statistics = new CatalogStatistics();
+		EntityTransaction tx = entityManager.getTransaction();
+		tx.begin();
+		statistics.rebuild(entityManager);
+		tx.commit();
+		CatalogService counted = new CatalogService(entityManager, null, statistics);
+
+		tx.begin();
+		counted.addBook("T-STATS-1", "Counted", 1700, AUTHOR, PUBLISHER);
+		tx.commit();
+		assertEquals(1, yearCount(statistics, "1700"));
+
+		// The duplicate is only found when the book is written, at commit, as without statistics
+		tx.begin();
+		counted.addBook("T-STATS-1", "Duplicate", 1700, AUTHOR, PUBLISHER);
+		assertThrows(RollbackException.class, tx::commit);
+		entityManager.clear();
+		assertEquals(1, yearCount(statistics, "1700"));
+
+		// Nothing of the failed transaction is left to break the next one
+		tx.begin();
+		counted.addBook("T-STATS-2", "Counted too", 1700, AUTHOR, PUBLISHER);
+		tx.commit();
+		assertEquals(2, yearCount(statistics, "1700"));
+	}
+
+	@Test
+	void prefetchedResultsAreDroppedAsTheTransactionCommits() throws Exception {
+		try (AsyncQueries queries = new AsyncQueries(factory, 1, 16);
+		     Prefetcher prefetcher = new Prefetcher(queries, 16)) {
+			prefetcher.authorSelected(OTHER_AUTHOR, 10);
+			long before = prefetcher.countWorks(service, OTHER_AUTHOR);
+			assertEquals(1, prefetcher.getHitCount());
+
+			EntityTransaction tx = entityManager.getTransaction();
+			tx.begin();
+			prefetcher.invalidateOnCommit(entityManager);
+			service.addBook("T-PREFETCH", "Prefetched", 2006, OTHER_AUTHOR, PUBLISHER);
+			tx.commit();
+
+			// Without waiting for the change feed, the count is read again
+			assertEquals(before + 1, prefetcher.countWorks(service, OTHER_AUTHOR));
+			assertEquals(1, prefetcher.getMissCount());
+		}
+	}
+
+	@Test
+	void readOnlyServiceRefusesWrites() {
+		CatalogService readOnly = CatalogService.readOnly(entityManager, null);
+		assertTrue(readOnly.isReadOnly());
+		assertThrows(IllegalStateException.class,
+				() -> readOnly.addBook("T-READ-ONLY", "Refused", 2004, AUTHOR, PUBLISHER));
+	}
+
+	@Test
+	void onlyCommittedWritesAreJournaled() throws Exception {
+		Path file = Files.createTempFile("catalog-service-test", ".journal");
+		try {
+			try (WorkloadJournal journal = new WorkloadJournal(file)) {
+				CatalogService journaled = new CatalogService(entityManager, journal);
+				EntityTransaction tx = entityManager.getTransaction();
+				tx.begin();
+				journaled.addBook("T-JOURNAL-1", "Rolled back", 2005, AUTHOR, PUBLISHER);
+				tx.rollback();
+				entityManager.clear();
+				tx.begin();
+				journaled.addBook("T-JOURNAL-2", "Committed", 2005, AUTHOR, PUBLISHER);
+				tx.commit();
+				journaled.getBook("T-JOURNAL-2");
+			}
+			List<WorkloadJournal.Entry> entries = WorkloadJournal.read(file);
+			assertEquals(List.of(CatalogOperation.ADD_BOOK, CatalogOperation.INFO_BOOK),
+					entries.stream().map(WorkloadJournal.Entry::getOperation).toList());
+			assertEquals("T-JOURNAL-2", entries.get(0).getArgs().get(0));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @return the books of a year, after checking the summary table agrees with the statistics
+	 */
+	private long yearCount(CatalogStatistics statistics, String year) {
+		long counted = statistics.getCounts(CatalogStatistics.Dimension.YEAR).getOrDefault(year, 0L);
+		List<?> rows = entityManager.createNativeQuery(
+				"SELECT BOOK_COUNT FROM CATALOG_STATISTICS WHERE DIMENSION = 'YEAR' AND BUCKET = ?")
+				.setParameter(1, year).getResultList();
+		assertEquals(counted, rows.isEmpty() ? 0 : ((Number) rows.get(0)).longValue());
+		return counted;
+	}
+
+	/**
+	 * Make writes through a service of the EntityManager, and commit them.
+	 */
+	private static void write(EntityManager entityManager, Consumer<CatalogService> writes) {
+		EntityTransaction tx = entityManager.getTransaction();
+		tx.begin();
+		try {
+			writes.accept(new CatalogService(entityManager));
+			tx.commit();
+		} finally {
+			if (tx.isActive()) tx.rollback();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package csulb.cecs323.app;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cuts a journal short at every byte, as a crash while recording could, and checks that
+ * what is read back is its complete records, and that a journal reopened after the cut
+ * takes new records after them.
+ */
+class WorkloadJournalTest {
+
+	// Held here so that the quieter level is not lost with the logger; every cut warns
+	private static final Logger JOURNAL_LOGGER = Logger.getLogger(WorkloadJournal.class.getName());
+
+	private static final List<List<String>> RECORDS = List.of(
+			List.of(CatalogOperation.ADD_PUBLISHER.name(), "Journal Publisher", "journal@test.example", "555-0400"),
+			// Long enough for its length to take two bytes, and not all ASCII
+			List.of(CatalogOperation.ADD_BOOK.name(), "J-1", "Ü".repeat(100), "2000", "author@test.example", "Journal Publisher"),
+			List.of(CatalogOperation.INFO_BOOK.name(), "J-1"),
+			List.of(CatalogOperation.DELETE_BOOK.name()));
+	private static final List<String> APPENDED = List.of(CatalogOperation.INFO_BOOK.name(), "J-2");
+
+	private static Level level;
+
+	@BeforeAll
+	static void quiet() {
+		level = JOURNAL_LOGGER.getLevel();
+		JOURNAL_LOGGER.setLevel(Level.SEVERE);
+	}
+
+	@AfterAll
+	static void restore() {
+		JOURNAL_LOGGER.setLevel(level);
+	}
+
+	@Test
+	void cutJournalIsReadAndAppendedAfterItsLastCompleteRecord() throws Exception {
+		Path file = Files.createTempFile("workload-journal-test", ".journal");
+		Path cut = Files.createTempFile("workload-journal-test", ".journal");
+		try {
+			try (WorkloadJournal journal = new WorkloadJournal(file)) {
+				for (List<String> record : RECORDS) record(journal, record);
+			}
+			byte[] full = Files.readAllBytes(file);
+			assertEquals(RECORDS, contents(WorkloadJournal.read(file)));
+
+			// Every length from the bare header to the whole journal
+			int previous = 0;
+			for (int length = 5; length <= full.length; length++) {
+				Files.write(cut, Arrays.copyOf(full, length));
+				List<List<String>> read = contents(WorkloadJournal.read(cut));
+				assertEquals(RECORDS.subList(0, read.size()), read, "cut at " + length);
+				assertTrue(read.size() >= previous, "cut at " + length);
+				previous = read.size();
+
+				try (WorkloadJournal journal = new WorkloadJournal(cut)) {
+					record(journal, APPENDED);
+				}
+				List<List<String>> expected = new ArrayList<>(read);
+				expected.add(APPENDED);
+				assertEquals(expected, contents(WorkloadJournal.read(cut)), "cut at " + length + ", then appended to");
+			}
+			assertEquals(RECORDS.size(), previous);
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(cut);
+		}
+	}
+
+	private static void record(WorkloadJournal journal, List<String> record) throws Exception {
+		journal.record(CatalogOperation.valueOf(record.get(0)), 1_000, record.subList(1, record.size()).toArray(String[]::new));
+	}
+
+	/**
+	 * @return each entry as its operation's name followed by its arguments
+	 */
+	private static List<List<String>> contents(List<WorkloadJournal.Entry> entries) {
+		List<List<String>> contents = new ArrayList<>();
+		for (WorkloadJournal.Entry entry : entries) {
+			List<String> record = new ArrayList<>();
+			record.add(entry.getOperation().name());
+			record.addAll(entry.getArgs());
+			contents.add(record);
+		}
+		return contents;
+	}
+}
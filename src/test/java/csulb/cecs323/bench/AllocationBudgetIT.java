@@ -0,0 +1,22 @@
+package csulb.cecs323.bench;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs {@link AllocationBudgetCheck} in {@code mvn verify}, on catalogs of the sizes in
+ * {@code jpabooks.allocationcheck.sizes}, by default all those with a budget.
+ */
+class AllocationBudgetIT {
+
+	@Test
+	void operationsWithinBudgets() throws Exception {
+		int[] sizes = Arrays.stream(System.getProperty("jpabooks.allocationcheck.sizes", "1000,10000,50000").split(","))
+				.mapToInt(Integer::parseInt).toArray();
+		assertEquals(0, AllocationBudgetCheck.check(sizes, 0.10, null),
+				"Operations failed the allocation check; see the report above");
+	}
+}
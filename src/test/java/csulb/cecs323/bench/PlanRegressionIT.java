@@ -0,0 +1,19 @@
+package csulb.cecs323.bench;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs {@link PlanRegressionCheck} in {@code mvn verify}, on a catalog of
+ * {@code jpabooks.plancheck.books} books, 200000 by default.
+ */
+class PlanRegressionIT {
+
+	@Test
+	void plansAsExpected() throws Exception {
+		int books = Integer.getInteger("jpabooks.plancheck.books", 200_000);
+		assertEquals(0, PlanRegressionCheck.check(books, null, null),
+				"Queries failed the plan check; see the report above");
+	}
+}
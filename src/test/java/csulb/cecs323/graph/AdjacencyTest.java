@@ -0,0 +1,99 @@
+package csulb.cecs323.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the compressed graph against plain sets of neighbours, before and after its
+ * changed lists are compacted back into its arrays.
+ */
+class AdjacencyTest {
+
+	@Test
+	void buildSortsEachRowAndDropsDuplicateEdges() {
+		IntList sources = new IntList(), destinations = new IntList();
+		int[][] edges = {{2, 5}, {0, 3}, {2, 1}, {0, 3}, {2, 5}, {0, 1}};
+		for (int[] edge : edges) {
+			sources.add(edge[0]);
+			destinations.add(edge[1]);
+		}
+		Adjacency adjacency = Adjacency.build(4, sources, destinations);
+
+		assertArrayEquals(new int[] {1, 3}, adjacency.get(0));
+		assertArrayEquals(new int[0], adjacency.get(1));
+		assertArrayEquals(new int[] {1, 5}, adjacency.get(2));
+		assertEquals(2, adjacency.degree(2));
+		assertTrue(adjacency.contains(2, 5));
+		assertFalse(adjacency.contains(3, 5));
+		// Past the nodes it was built with, a node has no neighbours
+		assertEquals(0, adjacency.degree(10));
+		assertArrayEquals(new int[0], adjacency.get(10));
+	}
+
+	@Test
+	void changesSurviveCompaction() {
+		Random random = new Random(42);
+		int nodes = 4_000;
+		List<TreeSet<Integer>> expected = new ArrayList<>();
+		IntList sources = new IntList(), destinations = new IntList();
+		for (int node = 0; node < nodes; node++) {
+			expected.add(new TreeSet<>());
+			for (int edge = random.nextInt(4); edge > 0; edge--) {
+				int target = random.nextInt(nodes);
+				sources.add(node);
+				destinations.add(target);
+				expected.get(node).add(target);
+			}
+		}
+		Adjacency adjacency = Adjacency.build(nodes, sources, destinations);
+		assertSame(expected, adjacency);
+
+		// Enough distinct nodes change for compaction to happen at least once, with nodes
+		// added along the way that the arrays built at first do not cover
+		for (int round = 0; round < 3; round++) {
+			for (int added = 0; added < 100; added++) expected.add(new TreeSet<>());
+			nodes = expected.size();
+			for (int change = 0; change < 3_000; change++) {
+				int node = random.nextInt(nodes);
+				int target = random.nextInt(nodes);
+				if (random.nextInt(3) == 0 && !expected.get(node).isEmpty()) {
+					target = expected.get(node).first();
+					adjacency.remove(node, target);
+					expected.get(node).remove(target);
+				} else if (random.nextInt(10) == 0) {
+					int[] replaced = target + 1 < nodes ? new int[] {target, target + 1} : new int[] {target};
+					adjacency.set(node, replaced);
+					expected.get(node).clear();
+					for (int neighbour : replaced) expected.get(node).add(neighbour);
+				} else {
+					adjacency.add(node, target);
+					expected.get(node).add(target);
+				}
+			}
+			assertSame(expected, adjacency);
+			adjacency.compactIfNeeded(nodes);
+			assertSame(expected, adjacency);
+		}
+	}
+
+	private static void assertSame(List<TreeSet<Integer>> expected, Adjacency adjacency) {
+		for (int node = 0; node < expected.size(); node++) {
+			int[] neighbours = expected.get(node).stream().mapToInt(Integer::intValue).toArray();
+			assertArrayEquals(neighbours, adjacency.get(node), "neighbours of " + node);
+			assertEquals(neighbours.length, adjacency.degree(node));
+			IntList visited = new IntList();
+			adjacency.forEach(node, visited::add);
+			assertArrayEquals(neighbours, visited.toArray());
+			for (int neighbour : neighbours) assertTrue(adjacency.contains(node, neighbour));
+		}
+	}
+}
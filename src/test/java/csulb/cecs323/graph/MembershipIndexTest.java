@@ -0,0 +1,169 @@
+package csulb.cecs323.graph;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Follows a catalog through changes made after the index was opened, and checks that the
+ * index refreshed one change at a time answers as an index rebuilt from scratch does, and
+ * as the database does.
+ */
+class MembershipIndexTest {
+
+	private static final String DATABASE = "MembershipIndexTest";
+	private static final String PUBLISHER = "Graph Publisher";
+	// Enough entities changed at once for the index to compact its graphs
+	private static final int NEW_AUTHORS = 1_100;
+
+	private static EntityManagerFactory factory;
+
+	@BeforeAll
+	static void createCatalog() {
+		factory = PersistenceProfile.MEMORY.createEntityManagerFactory(DATABASE,
+				Map.of("javax.persistence.sql-load-script-source", ""));
+		write(service -> {
+			service.addPublisher(PUBLISHER, "graph@test.example", "555-0101");
+			for (int i = 0; i < 6; i++) service.addIndividualAuthor("Author " + i, author(i));
+			service.addAdHocTeam("Team A", "team-a@test.example");
+			service.addAdHocTeam("Team B", "team-b@test.example");
+			service.addWritingGroup("Group", "group@test.example", "Head", 1999);
+		});
+		write(service -> {
+			service.addTeamMembership("team-a@test.example", author(0));
+			service.addTeamMembership("team-a@test.example", author(1));
+			service.addTeamMembership("team-b@test.example", author(1));
+			service.addTeamMembership("team-b@test.example", author(2));
+			service.addBook("G-1", "One", 2001, author(0), PUBLISHER);
+			service.addBook("G-2", "Two", 2002, "team-a@test.example", PUBLISHER);
+			service.addBook("G-3", "Three", 2003, "team-b@test.example", PUBLISHER);
+			service.addBook("G-4", "Four", 2004, "group@test.example", PUBLISHER);
+		});
+	}
+
+	@AfterAll
+	static void dropCatalog() {
+		factory.close();
+		PersistenceProfile.MEMORY.dropDatabase(DATABASE);
+	}
+
+	@Test
+	void refreshedIndexMatchesRebuildAndDatabase() throws Exception {
+		try (MembershipIndex index = MembershipIndex.open(factory)) {
+			write(service -> {
+				service.addTeamMembership("team-a@test.example", author(3));
+				service.addTeamMembership("team-b@test.example", author(4));
+				service.addBook("G-5", "Five", 2005, author(5), PUBLISHER);
+				service.updateBookAuthor("G-1", "team-b@test.example");
+				service.deleteBook("G-4");
+			});
+			write(service -> {
+				service.setSoftDelete(true);
+				service.deleteBook("G-3");
+			});
+			// In batches the feed's buffer can hold, waiting for the index to catch up after each
+			for (int batch = 0; batch < NEW_AUTHORS; batch += 200) {
+				int from = batch, to = Math.min(batch + 200, NEW_AUTHORS);
+				write(service -> {
+					for (int i = from; i < to; i++) {
+						service.addIndividualAuthor("New " + i, newAuthor(i));
+						service.addBook(String.format("N-%04d", i), "New", 2010, newAuthor(i), PUBLISHER);
+					}
+				});
+				awaitWorks(index, newAuthor(to - 1), String.format("N-%04d", to - 1));
+			}
+
+			Map<String, List<String>> members = query("SELECT AD_HOC_TEAMS_EMAIL, INDIVIDUAL_AUTHORS_EMAIL FROM AD_HOC_TEAMS_MEMBER");
+			Map<String, List<String>> works = query("SELECT AUTHORING_ENTITY_NAME, ISBN FROM BOOKS WHERE DELETED = 0");
+			List<String> emails = new ArrayList<>(query("SELECT EMAIL, EMAIL FROM AUTHORING_ENTITIES").keySet());
+
+			assertEquals(1, index.getRebuildCount(), "the changes were applied one at a time, not by a rebuild");
+			try (MembershipIndex rebuilt = MembershipIndex.open(factory)) {
+				for (String email : emails) {
+					List<String> expectedMembers = members.getOrDefault(email, List.of());
+					List<String> expectedWorks = works.getOrDefault(email, List.of());
+					assertEquals(expectedMembers, sorted(index.getTeamMembers(email)), "members of " + email);
+					assertEquals(expectedWorks, sorted(index.getWorks(email)), "works of " + email);
+					assertEquals(sorted(rebuilt.getTeams(email)), sorted(index.getTeams(email)), "teams of " + email);
+					assertEquals(sorted(rebuilt.getContributions(email)), sorted(index.getContributions(email)), "contributions of " + email);
+					assertEquals(rebuilt.countContributions(email), index.countContributions(email));
+					assertEquals(sorted(rebuilt.getCollaborators(email, 2)), sorted(index.getCollaborators(email, 2)), "collaborators of " + email);
+				}
+			}
+			assertTrue(index.isMember("team-a@test.example", author(3)));
+			assertEquals(List.of("G-1", "G-2"), sorted(index.getContributions(author(1))));
+		}
+	}
+
+	private static String author(int i) {
+		return "author" + i + "@test.example";
+	}
+
+	private static String newAuthor(int i) {
+		return String.format("new%04d@test.example", i);
+	}
+
+	/**
+	 * Wait for the feed's thread to bring a change to the index.
+	 */
+	private static void awaitWorks(MembershipIndex index, String authorEmail, String isbn) throws InterruptedException {
+		long deadline = System.nanoTime() + 10_000_000_000L;
+		while (!index.getWorks(authorEmail).equals(List.of(isbn)) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static List<String> sorted(List<String> values) {
+		List<String> copy = new ArrayList<>(values);
+		copy.sort(null);
+		return copy;
+	}
+
+	/**
+	 * @return the second column of each row, sorted, grouped by the first
+	 */
+	private static Map<String, List<String>> query(String sql) {
+		EntityManager entityManager = factory.createEntityManager();
+		try {
+			Map<String, List<String>> grouped = new TreeMap<>();
+			for (Object row : entityManager.createNativeQuery(sql).getResultList()) {
+				Object[] columns = (Object[]) row;
+				grouped.computeIfAbsent((String) columns[0], key -> new ArrayList<>()).add((String) columns[1]);
+			}
+			grouped.values().forEach(values -> values.sort(null));
+			return grouped;
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	/**
+	 * Make writes through a service of a new EntityManager, and commit them.
+	 */
+	private static void write(Consumer<CatalogService> writes) {
+		EntityManager entityManager = factory.createEntityManager();
+		EntityTransaction tx = entityManager.getTransaction();
+		try {
+			tx.begin();
+			writes.accept(new CatalogService(entityManager));
+			tx.commit();
+		} finally {
+			if (tx.isActive()) tx.rollback();
+			entityManager.close();
+		}
+	}
+}
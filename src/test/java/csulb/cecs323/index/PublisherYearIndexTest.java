@@ -0,0 +1,185 @@
+package csulb.cecs323.index;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import csulb.cecs323.model.Books;
+import csulb.cecs323.model.Publishers;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the index's year ranges against the database, at their bounds, and follows it
+ * through books added, moved and deleted after it was opened. Each test has a publisher
+ * of its own; a third publisher, with fewer books, is left out of the index.
+ */
+class PublisherYearIndexTest {
+
+	private static final String DATABASE = "PublisherYearIndexTest";
+	private static final String RANGES = "Range Publisher";
+	private static final String CHANGES = "Change Publisher";
+	private static final String QUIET = "Quiet Publisher";
+	private static final String AUTHOR = "author@test.example";
+
+	private static EntityManagerFactory factory;
+
+	@BeforeAll
+	static void createCatalog() {
+		factory = PersistenceProfile.MEMORY.createEntityManagerFactory(DATABASE,
+				Map.of("javax.persistence.sql-load-script-source", ""));
+		write(service -> {
+			service.addPublisher(RANGES, "ranges@test.example", "555-0201");
+			service.addPublisher(CHANGES, "changes@test.example", "555-0202");
+			service.addPublisher(QUIET, "quiet@test.example", "555-0203");
+			service.addIndividualAuthor("Author", AUTHOR);
+		});
+		write(service -> {
+			service.addBook("R-1", "Ninety", 1990, AUTHOR, RANGES);
+			service.addBook("R-2", "Millennium", 2000, AUTHOR, RANGES);
+			service.addBook("R-3", "Millennium too", 2000, AUTHOR, RANGES);
+			service.addBook("R-4", "Ten", 2010, AUTHOR, RANGES);
+			service.addBook("R-5", "Before the era", -50, AUTHOR, RANGES);
+			service.addBook("C-1", "First", 2000, AUTHOR, CHANGES);
+			service.addBook("C-2", "Second", 2000, AUTHOR, CHANGES);
+			service.addBook("Q-1", "Quiet", 2000, AUTHOR, QUIET);
+		});
+	}
+
+	@AfterAll
+	static void dropCatalog() {
+		factory.close();
+		PersistenceProfile.MEMORY.dropDatabase(DATABASE);
+	}
+
+	@Test
+	void rangesIncludeBothBounds() throws Exception {
+		try (PublisherYearIndex index = PublisherYearIndex.open(factory, 1)) {
+			assertTrue(index.isIndexed(RANGES));
+			assertFalse(index.isIndexed(QUIET));
+			assertThrows(IllegalArgumentException.class, () -> index.getByYear(QUIET, 2000, 2000));
+
+			int[][] ranges = {
+					{2000, 2000}, {1990, 2010}, {1991, 2009}, {2001, 2009}, {-50, -50}, {-51, 1989},
+					{2010, Integer.MAX_VALUE}, {2011, Integer.MAX_VALUE},
+					{Integer.MIN_VALUE, Integer.MAX_VALUE}, {Integer.MIN_VALUE, 1990}, {2010, 1990}};
+			for (int[] range : ranges) {
+				String name = RANGES + " from " + range[0] + " to " + range[1];
+				List<String> found = index.getByYear(RANGES, range[0], range[1]);
+				assertEquals(query(RANGES, range[0], range[1]), sorted(found), name);
+				assertEquals(found.size(), index.countByYear(RANGES, range[0], range[1]), name);
+			}
+
+			// Oldest first, with books of the same year in the order the index saw them
+			List<String> all = index.getByYear(RANGES, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			assertEquals("R-5", all.get(0));
+			assertEquals("R-1", all.get(1));
+			assertEquals(List.of("R-2", "R-3"), sorted(all.subList(2, 4)));
+			assertEquals("R-4", all.get(4));
+			assertEquals(List.of("R-4"), index.getNewest(RANGES, 1));
+			assertEquals(List.of("R-5", "R-1"), index.getOldest(RANGES, 2));
+			assertEquals(5, index.getNewest(RANGES, 10).size());
+		}
+	}
+
+	@Test
+	void changesAreAppliedAsTheyCommit() throws Exception {
+		try (PublisherYearIndex index = PublisherYearIndex.open(factory, 2)) {
+			assertTrue(index.isIndexed(CHANGES));
+
+			// A book of a year already indexed goes after the ones seen before it
+			write(service -> service.addBook("C-3", "Third", 2000, AUTHOR, CHANGES));
+			await(() -> index.countByYear(CHANGES, 2000, 2000) == 3);
+			assertEquals("C-3", index.getByYear(CHANGES, 2000, 2000).get(2));
+
+			write(service -> service.addBook("C-4", "Early", 1500, AUTHOR, CHANGES));
+			await(() -> index.countByYear(CHANGES, 1500, 1500) == 1);
+			assertEquals(List.of("C-4"), index.getOldest(CHANGES, 1));
+
+			write(service -> {
+				EntityManager entityManager = service.getEntityManager();
+				entityManager.find(Books.class, "C-1").setYearPublished(Integer.MAX_VALUE);
+				entityManager.find(Books.class, "C-2").setPublisher(entityManager.find(Publishers.class, QUIET));
+				service.deleteBook("C-3");
+			});
+			write(service -> {
+				service.setSoftDelete(true);
+				service.deleteBook("C-4");
+			});
+			List<String> expected = query(CHANGES, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			assertEquals(List.of("C-1"), expected);
+			await(() -> expected.equals(index.getByYear(CHANGES, Integer.MIN_VALUE, Integer.MAX_VALUE)));
+			assertEquals(expected, index.getByYear(CHANGES, Integer.MIN_VALUE, Integer.MAX_VALUE));
+			assertEquals(List.of("C-1"), index.getByYear(CHANGES, Integer.MAX_VALUE, Integer.MAX_VALUE));
+			assertEquals(0, index.countByYear(CHANGES, Integer.MIN_VALUE, Integer.MAX_VALUE - 1));
+
+			// A publisher indexed later is read as it is now
+			assertFalse(index.isIndexed(QUIET));
+			index.add(QUIET);
+			assertEquals(query(QUIET, 2000, 2000), sorted(index.getByYear(QUIET, 2000, 2000)));
+		}
+	}
+
+	/**
+	 * Wait for the feed's thread to bring the changes to the index.
+	 */
+	private static void await(BooleanSupplier caughtUp) throws InterruptedException {
+		long deadline = System.nanoTime() + 10_000_000_000L;
+		while (!caughtUp.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static List<String> sorted(List<String> values) {
+		List<String> copy = new ArrayList<>(values);
+		copy.sort(null);
+		return copy;
+	}
+
+	/**
+	 * @return ISBNs of the publisher's books published in the range, sorted
+	 */
+	private static List<String> query(String publisherName, int fromYear, int toYear) {
+		EntityManager entityManager = factory.createEntityManager();
+		try {
+			List<String> isbns = new ArrayList<>();
+			for (Object isbn : entityManager.createNativeQuery(
+					"SELECT ISBN FROM BOOKS WHERE PUBLISHER_NAME = ? AND DELETED = 0 AND YEAR_PUBLISHED BETWEEN ? AND ? ORDER BY ISBN")
+					.setParameter(1, publisherName).setParameter(2, fromYear).setParameter(3, toYear).getResultList()) {
+				isbns.add((String) isbn);
+			}
+			return isbns;
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	/**
+	 * Make writes through a service of a new EntityManager, and commit them.
+	 */
+	private static void write(Consumer<CatalogService> writes) {
+		EntityManager entityManager = factory.createEntityManager();
+		EntityTransaction tx = entityManager.getTransaction();
+		try {
+			tx.begin();
+			writes.accept(new CatalogService(entityManager));
+			tx.commit();
+		} finally {
+			if (tx.isActive()) tx.rollback();
+			entityManager.close();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package csulb.cecs323.tools;
+
+import csulb.cecs323.app.CatalogService;
+import csulb.cecs323.app.PersistenceProfile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Dumps a small catalog with the values the encoding has to take care over, restores it
+ * into an empty database, and compares the two databases table by table.
+ */
+class CatalogSnapshotTest {
+
+	private static final String SOURCE = "CatalogSnapshotTest";
+	private static final String TARGET = "CatalogSnapshotTestRestored";
+	private static final String PUBLISHER = "Snapshot Publisher";
+
+	private static EntityManagerFactory source;
+	private static EntityManagerFactory target;
+
+	@BeforeAll
+	static void createCatalogs() {
+		Map<String, String> empty = Map.of("javax.persistence.sql-load-script-source", "");
+		source = PersistenceProfile.MEMORY.createEntityManagerFactory(SOURCE, empty);
+		target = PersistenceProfile.MEMORY.createEntityManagerFactory(TARGET, empty);
+		// The first EntityManager creates the tables
+		target.createEntityManager().close();
+		write(service -> {
+			service.addPublisher(PUBLISHER, "publisher@test.example", "555-0300");
+			service.addPublisher("Publicações Ñandú", "ñandú@test.example", "555-0301");
+			// Individual authors and teams have no year formed: a NULL column
+			service.addIndividualAuthor("Author", "author@test.example");
+			service.addIndividualAuthor("Member", "member@test.example");
+			service.addAdHocTeam("Team", "team@test.example");
+			// Negative years take the varint's longest form, and -1 must not read back as NULL
+			service.addWritingGroup("Ancients", "ancients@test.example", "Head", -1);
+			service.addWritingGroup("Elders", "elders@test.example", null, Integer.MIN_VALUE);
+			service.addWritingGroup("Moderns", "moderns@test.example", "Head", 1999);
+			service.addWritingGroup("Founders", "founders@test.example", "Head", 0);
+		});
+		write(service -> {
+			service.addTeamMembership("team@test.example", "author@test.example");
+			service.addTeamMembership("team@test.example", "member@test.example");
+			service.addBook("S-1", "Old", -500, "ancients@test.example", PUBLISHER);
+			service.addBook("S-2", "Zero", 0, "founders@test.example", PUBLISHER);
+			service.addBook("S-3", "Far off", Integer.MAX_VALUE, "team@test.example", PUBLISHER);
+			service.addBook("S-4", "Lowest", Integer.MIN_VALUE, "elders@test.example", "Publicações Ñandú");
+			service.addBook("S-5", "Título", 2000, "author@test.example", "Publicações Ñandú");
+			service.addBook("S-6", "Deleted", 2001, "author@test.example", PUBLISHER);
+		});
+		write(service -> {
+			service.setSoftDelete(true);
+			service.deleteBook("S-6");
+		});
+	}
+
+	@AfterAll
+	static void dropCatalogs() {
+		source.close();
+		target.close();
+		PersistenceProfile.MEMORY.dropDatabase(SOURCE);
+		PersistenceProfile.MEMORY.dropDatabase(TARGET);
+	}
+
+	@Test
+	void restoredCatalogMatchesDumped() throws Exception {
+		Path file = Files.createTempFile("catalog-snapshot-test", ".snapshot");
+		try {
+			CatalogSnapshot dumped = new CatalogSnapshot(PersistenceProfile.MEMORY.jdbcUrl(SOURCE), "app", "app");
+			CatalogSnapshot.Result dump = dumped.dump(file);
+			// 2 publishers, 7 authoring entities, 2 memberships and the 5 books not deleted
+			assertEquals(16, dump.getRows());
+			assertEquals(dump.getRows(), CatalogSnapshot.verify(file).getRows());
+
+			CatalogSnapshot restored = new CatalogSnapshot(PersistenceProfile.MEMORY.jdbcUrl(TARGET), "app", "app");
+			// Statements of fewer rows than a table, so both full and partial statements are used
+			restored.setRowsPerStatement(2);
+			restored.setStatementsPerBatch(2);
+			restored.setRowsPerCommit(3);
+			assertEquals(dump.getRows(), restored.restore(file).getRows());
+
+			String[] tables = {
+					"SELECT NAME, EMAIL, PHONE FROM PUBLISHERS ORDER BY NAME",
+					"SELECT NAME, AUTHORING_ENTITY_TYPE, EMAIL, HEADWRITER, YEARFORMED FROM AUTHORING_ENTITIES ORDER BY EMAIL",
+					"SELECT AD_HOC_TEAMS_EMAIL, INDIVIDUAL_AUTHORS_EMAIL FROM AD_HOC_TEAMS_MEMBER ORDER BY 1, 2",
+					"SELECT ISBN, TITLE, YEAR_PUBLISHED, AUTHORING_ENTITY_NAME, PUBLISHER_NAME, DELETED FROM BOOKS WHERE DELETED = 0 ORDER BY ISBN"};
+			for (String table : tables) assertEquals(query(SOURCE, table), query(TARGET, table), table);
+			assertEquals(List.of(Arrays.asList("ancients@test.example", -1)),
+					query(TARGET, "SELECT EMAIL, YEARFORMED FROM AUTHORING_ENTITIES WHERE NAME = 'Ancients'"));
+			assertEquals(List.of(Arrays.asList("S-4", Integer.MIN_VALUE)),
+					query(TARGET, "SELECT ISBN, YEAR_PUBLISHED FROM BOOKS WHERE YEAR_PUBLISHED < -500"));
+			assertEquals(5, query(TARGET, "SELECT ISBN FROM BOOKS").size());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	void damagedSnapshotIsRefused() throws Exception {
+		Path file = Files.createTempFile("catalog-snapshot-test", ".snapshot");
+		try {
+			new CatalogSnapshot(PersistenceProfile.MEMORY.jdbcUrl(SOURCE), "app", "app").dump(file);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				ByteBuffer flipped = ByteBuffer.allocate(1);
+				channel.read(flipped, 20);
+				flipped.put(0, (byte) ~flipped.get(0));
+				channel.write(flipped.rewind(), 20);
+			}
+			IOException e = assertThrows(IOException.class, () -> CatalogSnapshot.verify(file));
+			assertEquals(file + " is damaged: checksum mismatch.", e.getMessage());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @return every row of the query, as lists of its column values
+	 */
+	private static List<List<Object>> query(String database, String sql) throws SQLException {
+		try (Connection connection = DriverManager.getConnection(PersistenceProfile.MEMORY.jdbcUrl(database), "app", "app");
+		     Statement statement = connection.createStatement();
+		     ResultSet results = statement.executeQuery(sql)) {
+			int columns = results.getMetaData().getColumnCount();
+			List<List<Object>> rows = new ArrayList<>();
+			while (results.next()) {
+				List<Object> row = new ArrayList<>(columns);
+				for (int i = 1; i <= columns; i++) row.add(results.getObject(i));
+				rows.add(row);
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * Make writes to the source catalog through a service of a new EntityManager, and commit them.
+	 */
+	private static void write(Consumer<CatalogService> writes) {
+		EntityManager entityManager = source.createEntityManager();
+		EntityTransaction tx = entityManager.getTransaction();
+		try {
+			tx.begin();
+			writes.accept(new CatalogService(entityManager));
+			tx.commit();
+		} finally {
+			if (tx.isActive()) tx.rollback();
+			entityManager.close();
+		}
+	}
+}